@@ -1,12 +1,19 @@
 /** @author UCSD MOOC development team */
 package application;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import geography.GeographicPoint;
+import roadgraph.Landmarks;
+import roadgraph.TravelTimeProfiles;
+import roadgraph.TurnCosts;
 import util.GraphLoader;
+import util.MapSnapshot;
 
 /** Class to wrap the graph, current .map file map, and 
  * other pertinent information about the map data sets */
@@ -59,7 +66,56 @@ public class DataSet {
         roads = new HashMap<geography.GeographicPoint, HashSet<geography.RoadSegment>>();
         intersections = new HashSet<GeographicPoint>();
         // change to use intersections for points in graph.
-    		GraphLoader.loadRoadMap(filePath, graph, roads, intersections);
+    		// read the snapshot written by util.MapSnapshot.main if it is up to date
+    		if (MapSnapshot.isCurrent(filePath)) {
+    			try {
+    				graph = MapSnapshot.load(MapSnapshot.getFile(filePath), true, roads, intersections);
+    			} catch (IOException e) {
+    				System.err.println("Problem loading snapshot file: " + MapSnapshot.getFile(filePath));
+    				e.printStackTrace();
+    				roads.clear();
+    				intersections.clear();
+    				GraphLoader.loadRoadMap(filePath, graph, roads, intersections, ForkJoinPool.commonPool());
+    			}
+    		}
+    		else {
+    			GraphLoader.loadRoadMap(filePath, graph, roads, intersections, ForkJoinPool.commonPool());
+    		}
+    		// routes on roads follow the shape of the roads
+    		graph.setRoadGeometry(roads);
+    		
+    		// use the landmarks written by roadgraph.Landmarks.main if there are any
+    		String landmarksFile = Landmarks.getFile(filePath, true);
+    		if (new File(landmarksFile).exists()) {
+    			try {
+    				graph.loadLandmarks(landmarksFile);
+    			} catch (IOException e) {
+    				System.err.println("Problem loading landmarks file: " + landmarksFile);
+    				e.printStackTrace();
+    			}
+    		}
+    		
+    		// use the travel time profiles written by roadgraph.TravelTimeProfiles.main if there are any
+    		String profilesFile = TravelTimeProfiles.getFile(filePath);
+    		if (new File(profilesFile).exists()) {
+    			try {
+    				graph.loadTravelTimeProfiles(profilesFile);
+    			} catch (IOException e) {
+    				System.err.println("Problem loading travel time profiles file: " + profilesFile);
+    				e.printStackTrace();
+    			}
+    		}
+    		
+    		// use the turns written by roadgraph.TurnCosts.main if there are any
+    		String turnsFile = TurnCosts.getFile(filePath);
+    		if (new File(turnsFile).exists()) {
+    			try {
+    				graph.loadTurnCosts(turnsFile);
+    			} catch (IOException e) {
+    				System.err.println("Problem loading turns file: " + turnsFile);
+    				e.printStackTrace();
+    			}
+    		}
     }
 
 	public String getFilePath() {
@@ -35,6 +35,8 @@ public class RouteController {
 	public static final int DISABLE = 0;
 	public static final int START = 1;
 	public static final int DESTINATION = 2;
+	// minutes of driving shown around the start
+	public static final double ISOCHRONE_MINUTES = 10;
 
     private int selectedToggle = DIJ;
 
@@ -111,6 +113,9 @@ public class RouteController {
     private void setupRouteButtons() {
 	    	startButton.setOnAction(e -> {
 	            selectManager.setStart();
+	            // show what can be reached from the new start
+	            if(selectManager.getStart() != null)
+	            		routeService.displayIsochrone(selectManager.getStart(), ISOCHRONE_MINUTES);
 	    	});
 
         destinationButton.setOnAction( e-> {
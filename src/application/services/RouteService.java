@@ -25,7 +25,10 @@ import gmapsfx.javascript.object.GoogleMap;
 import gmapsfx.javascript.object.LatLong;
 import gmapsfx.javascript.object.LatLongBounds;
 import gmapsfx.javascript.object.MVCArray;
+import gmapsfx.shapes.Polygon;
+import gmapsfx.shapes.PolygonOptions;
 import gmapsfx.shapes.Polyline;
+import roadgraph.Isochrone;
 import javafx.scene.control.Button;
 
 public class RouteService {
@@ -34,6 +37,7 @@ public class RouteService {
     // static variable
     private MarkerManager markerManager;
     private Polyline routeLine;
+    private Polygon isochroneArea;
     private RouteVisualization rv;
 
 	public RouteService(GoogleMapView mapComponent, MarkerManager manager) {
@@ -74,6 +78,37 @@ public class RouteService {
 
     public void reset() {
         removeRouteLine();
+        hideIsochrone();
+    }
+
+    /** Displays the area reachable from start within a time on Google Map.
+     * Cheap enough to call again every time the start marker is moved.
+     * @param start - the starting intersection
+     * @param minutes - the time budget
+     * @return returns false if the area fails to display */
+    public boolean displayIsochrone(geography.GeographicPoint start, double minutes) {
+        hideIsochrone();
+        Isochrone reachable = markerManager.getDataSet().getGraph().reachableWithinTime(start, minutes);
+        if(reachable == null)
+        		return false;
+
+        List<geography.GeographicPoint> boundary = reachable.getBoundary();
+        if(boundary.size() < 3)
+        		return false;
+        MVCArray path = new MVCArray();
+        for(geography.GeographicPoint point : boundary)
+        		path.push(new LatLong(point.getX(), point.getY()));
+        isochroneArea = new Polygon(new PolygonOptions().paths(path)
+        		.strokeColor("#3366cc").strokeWeight(2).fillColor("#3366cc").fillOpacity(0.2));
+        map.addMapShape(isochroneArea);
+        return true;
+    }
+
+    public void hideIsochrone() {
+        if(isochroneArea != null) {
+        		map.removeMapShape(isochroneArea);
+        		isochroneArea = null;
+        }
     }
 
     public boolean isRouteDisplayed() {
@@ -0,0 +1,177 @@
+/** Latency benchmark of the MapGraph searches, runnable without the JavaFX app:
+ *   java -cp bin:libs/javax.json-1.0.4.jar benchmark.SearchBenchmark [options] [map files]
+ * Options: -pairs N (origin-destination pairs per map, default 200),
+ * -rounds N (measured passes over the pairs, default 5), -seed N (default 42).
+ * Without map files every .map file in data/maps is measured.
+ *
+ * For every map the pairs are drawn from the intersections with a fixed seed
+ * and kept only if the goal can be reached, so every run searches the same
+ * routes. Each of bfs, dijkstra and aStarSearch runs over all pairs in both
+ * the length and the time mode: first as warm-up for the JIT, then for the
+ * measured rounds, timing every query on its own. Warm-up takes at least three
+ * rounds and half a second. The report gives latency
+ * percentiles, the intersections settled per query (counted through the
+ * nodeSearched hook), the bytes allocated per query and the allocation rate
+ * (from the per-thread allocation counter of the JVM), and the garbage
+ * collections during the measurement. */
+package benchmark;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+import roadgraph.MapGraph;
+import util.GraphLoader;
+
+public class SearchBenchmark {
+	private static final int WARMUP_ROUNDS = 3;
+	/** warm-up continues until this much time has passed */
+	private static final long WARMUP_NANOS = 500000000L;
+
+	/** one of the searches of MapGraph */
+	private interface Search {
+		List<GeographicPoint> run(MapGraph graph, GeographicPoint start, GeographicPoint goal,
+				Consumer<GeographicPoint> nodeSearched);
+	}
+
+	private static final String[] NAMES = { "bfs", "dijkstra", "aStarSearch" };
+	private static final Search[] SEARCHES = { MapGraph::bfs, MapGraph::dijkstra, MapGraph::aStarSearch };
+
+	/** keeps the results alive */
+	private static long sink;
+	/** intersections settled by the current query */
+	private static long settled;
+
+	public static void main(String[] args) {
+		int pairCount = 200;
+		int rounds = 5;
+		long seed = 42;
+		List<String> maps = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++) {
+			if(args[i].equals("-pairs") && i + 1 < args.length)
+				pairCount = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-rounds") && i + 1 < args.length)
+				rounds = Integer.parseInt(args[++i]);
+			else if(args[i].equals("-seed") && i + 1 < args.length)
+				seed = Long.parseLong(args[++i]);
+			else
+				maps.add(args[i]);
+		}
+		if(maps.isEmpty())
+			maps = findMaps("data/maps");
+
+		System.out.printf("%-22s %-6s %-12s %6s %9s %9s %9s %9s %9s %10s %9s %4s%n", "map", "mode", "search",
+				"pairs", "p50 us", "p90 us", "p99 us", "max us", "settled", "bytes/q", "MB/s", "gc");
+		for(String map : maps) {
+			for(boolean isLengthCompare : new boolean[] { true, false }) {
+				MapGraph graph = new MapGraph(isLengthCompare);
+				GraphLoader.loadRoadMap(map, graph);
+				graph.freeze();
+				GeographicPoint[][] pairs = choosePairs(graph, pairCount, seed);
+				for(int s = 0; s < SEARCHES.length; s++) {
+					measure(new File(map).getName(), isLengthCompare ? "length" : "time", NAMES[s], graph, SEARCHES[s],
+							pairs, rounds);
+				}
+			}
+		}
+		if(sink == 42)
+			System.out.println();
+	}
+
+	/** random pairs of intersections, in the same order for the same seed, with a path between them */
+	static GeographicPoint[][] choosePairs(MapGraph graph, int count, long seed) {
+		GeographicPoint[] vertices = graph.getVertices().toArray(new GeographicPoint[0]);
+		// the order of a hash set is not part of its contract
+		Arrays.sort(vertices, (a, b) -> a.getX() != b.getX() ? Double.compare(a.getX(), b.getX())
+				: Double.compare(a.getY(), b.getY()));
+		Random random = new Random(seed);
+		List<GeographicPoint[]> pairs = new ArrayList<GeographicPoint[]>();
+		for(int attempt = 0; attempt < count * 20 && pairs.size() < count && vertices.length > 0; attempt++) {
+			GeographicPoint start = vertices[random.nextInt(vertices.length)];
+			GeographicPoint goal = vertices[random.nextInt(vertices.length)];
+			if(graph.aStarSearch(start, goal) != null)
+				pairs.add(new GeographicPoint[] { start, goal });
+		}
+		return pairs.toArray(new GeographicPoint[pairs.size()][]);
+	}
+
+	private static void measure(String map, String mode, String name, MapGraph graph, Search search,
+			GeographicPoint[][] pairs, int rounds) {
+		Consumer<GeographicPoint> counter = (point) -> settled++;
+		long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+		for(int round = 0; round < WARMUP_ROUNDS || System.nanoTime() < warmupEnd; round++) {
+			for(GeographicPoint[] pair : pairs)
+				sink += search.run(graph, pair[0], pair[1], counter).size();
+		}
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long[] latencies = new long[pairs.length * rounds];
+		int count = 0;
+		settled = 0;
+		long collections = collectionCount();
+		long allocated = allocatedBytes(threads);
+		long start = System.nanoTime();
+		for(int round = 0; round < rounds; round++) {
+			for(GeographicPoint[] pair : pairs) {
+				long queryStart = System.nanoTime();
+				sink += search.run(graph, pair[0], pair[1], counter).size();
+				latencies[count++] = System.nanoTime() - queryStart;
+			}
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long bytes = allocatedBytes(threads) - allocated;
+		collections = collectionCount() - collections;
+
+		Arrays.sort(latencies);
+		int queries = Math.max(count, 1);
+		System.out.printf("%-22s %-6s %-12s %6d %9.1f %9.1f %9.1f %9.1f %9.0f %10.0f %9.1f %4d%n", map, mode, name,
+				pairs.length, percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+				count == 0 ? 0 : latencies[count - 1] / 1e3, (double)settled / queries, bytes < 0 ? -1.0 : (double)bytes / queries,
+				bytes < 0 || seconds == 0 ? -1.0 : bytes / 1e6 / seconds, collections);
+	}
+
+	/** bytes allocated by this thread so far, or -1 if the JVM does not count them */
+	private static long allocatedBytes(ThreadMXBean threads) {
+		if(threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean)threads;
+			if(counter.isThreadAllocatedMemorySupported() && counter.isThreadAllocatedMemoryEnabled())
+				return counter.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static long collectionCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(collector.getCollectionCount(), 0);
+		return count;
+	}
+
+	/** latency in microseconds below which percent of the sorted latencies lie */
+	private static double percentile(long[] sorted, int percent) {
+		if(sorted.length == 0)
+			return 0;
+		int index = (int)Math.ceil(percent / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e3;
+	}
+
+	private static List<String> findMaps(String directory) {
+		List<String> maps = new ArrayList<String>();
+		File[] files = new File(directory).listFiles();
+		if(files != null) {
+			Arrays.sort(files);
+			for(File file : files) {
+				if(file.getName().endsWith(".map"))
+					maps.add(file.getPath());
+			}
+		}
+		return maps;
+	}
+}
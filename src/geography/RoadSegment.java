@@ -98,6 +98,21 @@ public class RoadSegment {
 		return this.length;
 	}
 	
+	// get the name of the road
+	public String getRoadName() {
+		return this.roadName;
+	}
+	
+	// get the type of the road
+	public String getRoadType() {
+		return this.roadType;
+	}
+	
+	// true if the segment joins the two points, in either direction
+	public boolean connects(geography.GeographicPoint a, geography.GeographicPoint b) {
+		return (point1.equals(a) && point2.equals(b)) || (point1.equals(b) && point2.equals(a));
+	}
+	
 	// given one end, return the other.
 	public geography.GeographicPoint getOtherPoint(geography.GeographicPoint point) {
 		if(point.equals(point1)) {
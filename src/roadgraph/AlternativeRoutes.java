@@ -0,0 +1,314 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+
+/** Alternative routes by the via-node method with plateaus.
+ * A forward search from start and a backward search from goal grow their
+ * shortest path trees in turn, as in BidirectionalSearch, but keep going
+ * until both have passed half the cost that an alternative may have. Every
+ * intersection v reached by both defines the via route: the forward tree
+ * from start to v, then the backward tree from v to goal. Where the two
+ * trees run along the same roads they form a plateau, and all intersections
+ * of a plateau give the same via route, so each plateau is one candidate.
+ *
+ * Candidates are ranked as by Abraham et al.: twice their cost minus the
+ * length of their plateau, so cheap routes with long plateaus come first.
+ * A candidate is taken if it passes three tests:
+ * - bounded stretch: it costs at most MAX_STRETCH more than the best route;
+ * - limited sharing: the roads it shares with the routes taken before it
+ *   cost at most MAX_SHARING of the best route;
+ * - local optimality: the piece of LOCAL_OPTIMALITY of the best route's cost
+ *   around its via intersection is a shortest path (the T-test), so the route
+ *   makes no needless detour.
+ * The searches settle the intersections within about (1 + MAX_STRETCH) / 2 of
+ * the best cost from either end, little more than a bidirectional search. */
+final class AlternativeRoutes {
+	/** share of the best cost that an alternative may cost more */
+	static final double MAX_STRETCH = 0.25;
+	/** share of the best cost that an alternative may share with the routes before it */
+	static final double MAX_SHARING = 0.8;
+	/** share of the best cost around the via intersection that must be a shortest path */
+	static final double LOCAL_OPTIMALITY = 0.25;
+
+	private static final Consumer<GeographicPoint> IGNORE = (x) -> {};
+
+	/** a plateau of the two trees, from its first to its last intersection in the direction of travel */
+	private static final class Plateau {
+		final int first;
+		final int last;
+		final double cost;
+		final double length;
+
+		Plateau(int first, int last, double cost, double length) {
+			this.first = first;
+			this.last = last;
+			this.cost = cost;
+			this.length = length;
+		}
+
+		double rank() {
+			return 2 * cost - length;
+		}
+	}
+
+	private AlternativeRoutes() {
+	}
+
+	/** Find the best route from start to goal and up to count - 1 alternatives.
+	 * The work of both searches is counted in the stats of the forward context, if it has any.
+	 * @param weights The cost of every edge, either graph.lengths or graph.times
+	 * @param local A third context for the local optimality tests
+	 * @return The routes as intersections from start to goal, best first; empty if goal can not be reached */
+	static List<int[]> find(CompactRoadGraph graph, SearchContext forward, SearchContext backward, SearchContext local,
+			double[] weights, int start, int goal, int count) {
+		double best = grow(graph, forward, backward, weights, start, goal);
+		List<int[]> routes = new ArrayList<int[]>();
+		if(best == Double.POSITIVE_INFINITY)
+			return routes;
+		if(start == goal) {
+			routes.add(new int[] { start });
+			return routes;
+		}
+
+		List<Plateau> plateaus = findPlateaus(graph, forward, backward, (1 + MAX_STRETCH) * best);
+		// the best route first, then the others by rank
+		Plateau shortest = plateaus.get(0);
+		for(Plateau plateau : plateaus) {
+			if(plateau.cost < shortest.cost || (plateau.cost == shortest.cost && plateau.length > shortest.length))
+				shortest = plateau;
+		}
+		plateaus.remove(shortest);
+		plateaus.sort((a, b) -> Double.compare(a.rank(), b.rank()));
+
+		int n = graph.getNumVertices();
+		HashSet<Long> used = new HashSet<Long>();
+		int[] route = viaRoute(graph, forward, backward, local, shortest.first, start, goal);
+		addRoads(used, route, n);
+		routes.add(route);
+		for(Plateau plateau : plateaus) {
+			if(routes.size() >= count)
+				break;
+			route = viaRoute(graph, forward, backward, local, plateau.first, start, goal);
+			if(route == null)
+				continue;
+			double[] costs = prefixCosts(forward, backward, route, plateau.first);
+			if(shared(used, route, costs, n) > MAX_SHARING * best)
+				continue;
+			if(!isLocallyOptimal(graph, forward, backward, local, weights, route, costs, plateau, best))
+				continue;
+			addRoads(used, route, n);
+			routes.add(route);
+		}
+		return routes;
+	}
+
+	/** grow both trees until every intersection within half the allowed cost is settled
+	 * @return The cost of the best route, infinity if there is none */
+	private static double grow(CompactRoadGraph graph, SearchContext forward, SearchContext backward,
+			double[] weights, int start, int goal) {
+		SearchStats stats = forward.stats;
+		// the candidates are among the intersections reached by the forward tree
+		int[] reached = forward.fifo;
+		int count = 0;
+
+		forward.reach(start, 0, -1);
+		forward.queue.push(start, 0);
+		reached[count++] = start;
+		backward.reach(goal, 0, -1);
+		backward.queue.push(goal, 0);
+		if(stats != null) {
+			stats.pushed(1);
+			stats.pushed(2);
+		}
+
+		double best = (start == goal) ? 0 : Double.POSITIVE_INFINITY;
+		while(true) {
+			double forwardKey = topKey(forward);
+			double backwardKey = topKey(backward);
+			// the middle of every alternative lies within this radius of both ends
+			double radius = (1 + MAX_STRETCH) * best / 2;
+			boolean isForward = forwardKey <= backwardKey;
+			double key = isForward ? forwardKey : backwardKey;
+			if(key == Double.POSITIVE_INFINITY || key > radius)
+				break;
+
+			SearchContext context = isForward ? forward : backward;
+			SearchContext other = isForward ? backward : forward;
+			int current = context.queue.poll();
+			context.settle(current);
+			if(stats != null) {
+				stats.popped(false);
+				stats.settled++;
+			}
+
+			double currentDistance = context.getDistance(current);
+			int first = isForward ? graph.offsets[current] : graph.inOffsets[current];
+			int end = isForward ? graph.offsets[current + 1] : graph.inOffsets[current + 1];
+			for(int i = first; i < end; i++) {
+				int e = isForward ? i : graph.inEdges[i];
+				int next = isForward ? graph.targets[e] : graph.sources[e];
+				if(stats != null)
+					stats.relaxed++;
+				if(context.isSettled(next))
+					continue;
+
+				double distance = currentDistance + weights[e];
+				if(distance < context.getDistance(next)) {
+					if(isForward && !context.isReached(next))
+						reached[count++] = next;
+					context.reach(next, distance, current);
+					context.queue.push(next, distance);
+					if(stats != null)
+						stats.pushed(context.queue.size());
+					// a later label of the other side is checked by that side
+					if(other.isReached(next))
+						best = Math.min(best, distance + other.getDistance(next));
+				}
+			}
+		}
+		if(count < reached.length)
+			reached[count] = -1;
+		return best;
+	}
+
+	/** smallest key in the queue of context, skipping intersections that are already settled */
+	private static double topKey(SearchContext context) {
+		VertexQueue queue = context.queue;
+		while(!queue.isEmpty() && context.isSettled(queue.peek()))
+			queue.poll();
+		return queue.isEmpty() ? Double.POSITIVE_INFINITY : queue.peekKey();
+	}
+
+	/** check if v is reached by both trees with a via route of at most limit */
+	private static boolean isCandidate(SearchContext forward, SearchContext backward, int v, double limit) {
+		return v >= 0 && forward.isReached(v) && backward.isReached(v)
+				&& forward.getDistance(v) + backward.getDistance(v) <= limit;
+	}
+
+	/** the plateaus of all via routes of at most limit */
+	private static List<Plateau> findPlateaus(CompactRoadGraph graph, SearchContext forward, SearchContext backward,
+			double limit) {
+		List<Plateau> plateaus = new ArrayList<Plateau>();
+		int[] reached = forward.fifo;
+		for(int i = 0; i < reached.length && reached[i] >= 0; i++) {
+			int v = reached[i];
+			if(!isCandidate(forward, backward, v, limit))
+				continue;
+			// v starts a plateau unless the trees already agree on the road into it
+			int parent = forward.getParent(v);
+			if(isCandidate(forward, backward, parent, limit) && backward.getParent(parent) == v)
+				continue;
+			int last = v;
+			for(int next = backward.getParent(last); isCandidate(forward, backward, next, limit)
+					&& forward.getParent(next) == last; next = backward.getParent(last))
+				last = next;
+			plateaus.add(new Plateau(v, last, forward.getDistance(v) + backward.getDistance(v),
+					forward.getDistance(last) - forward.getDistance(v)));
+		}
+		return plateaus;
+	}
+
+	/** the forward tree from start to via, then the backward tree on to goal, or null if it passes an intersection twice
+	 * @param local A context to mark the intersections of the route in */
+	private static int[] viaRoute(CompactRoadGraph graph, SearchContext forward, SearchContext backward,
+			SearchContext local, int via, int start, int goal) {
+		int before = 0;
+		for(int v = via; v != start; v = forward.getParent(v))
+			before++;
+		int after = 0;
+		for(int v = via; v != goal; v = backward.getParent(v))
+			after++;
+
+		int[] route = new int[before + after + 1];
+		int v = via;
+		for(int i = before; i >= 0; i--) {
+			route[i] = v;
+			v = forward.getParent(v);
+		}
+		v = via;
+		for(int i = before + 1; i < route.length; i++) {
+			v = backward.getParent(v);
+			route[i] = v;
+		}
+
+		local.reset(graph.getNumVertices());
+		for(int w : route) {
+			if(local.isReached(w))
+				return null;
+			local.reach(w, 0, -1);
+		}
+		return route;
+	}
+
+	/** cost from start to every intersection of a via route */
+	private static double[] prefixCosts(SearchContext forward, SearchContext backward, int[] route, int via) {
+		double[] costs = new double[route.length];
+		double total = forward.getDistance(via) + backward.getDistance(via);
+		boolean isBefore = true;
+		for(int i = 0; i < route.length; i++) {
+			costs[i] = isBefore ? forward.getDistance(route[i]) : total - backward.getDistance(route[i]);
+			if(route[i] == via)
+				isBefore = false;
+		}
+		return costs;
+	}
+
+	private static void addRoads(HashSet<Long> used, int[] route, int n) {
+		for(int i = 0; i + 1 < route.length; i++)
+			used.add((long)route[i] * n + route[i + 1]);
+	}
+
+	/** cost of the roads of route that are in used */
+	private static double shared(HashSet<Long> used, int[] route, double[] costs, int n) {
+		double shared = 0;
+		for(int i = 0; i + 1 < route.length; i++) {
+			if(used.contains((long)route[i] * n + route[i + 1]))
+				shared += costs[i + 1] - costs[i];
+		}
+		return shared;
+	}
+
+	/** T-test: check that the piece of the route around the middle of its plateau is a shortest path */
+	private static boolean isLocallyOptimal(CompactRoadGraph graph, SearchContext forward, SearchContext backward,
+			SearchContext local, double[] weights, int[] route, double[] costs, Plateau plateau, double best) {
+		int firstIndex = indexOf(route, plateau.first);
+		int lastIndex = indexOf(route, plateau.last);
+		double middle = (costs[firstIndex] + costs[lastIndex]) / 2;
+		int via = firstIndex;
+		while(via < lastIndex && costs[via + 1] <= middle)
+			via++;
+
+		double half = LOCAL_OPTIMALITY * best / 2;
+		int from = via;
+		while(from > 0 && costs[via] - costs[from] < half)
+			from--;
+		int to = via;
+		while(to < route.length - 1 && costs[to] - costs[via] < half)
+			to++;
+
+		// a piece of a settled part of either tree is a shortest path already
+		if(to <= firstIndex && forward.isSettled(route[to]))
+			return true;
+		if(from >= firstIndex && backward.isSettled(route[from]))
+			return true;
+
+		double cost = costs[to] - costs[from];
+		local.reset(graph.getNumVertices());
+		if(!GraphSearch.search(graph, local, weights, null, route[from], route[to], IGNORE))
+			return false;
+		return local.getDistance(route[to]) >= cost - 1e-9 * Math.max(1, cost);
+	}
+
+	private static int indexOf(int[] route, int v) {
+		for(int i = 0; i < route.length; i++) {
+			if(route[i] == v)
+				return i;
+		}
+		throw new IllegalStateException("AlternativeRoutes: " + v + " is not on the route");
+	}
+}
@@ -0,0 +1,142 @@
+/** Grader for the alternative routes.
+ * Checks that the first route of alternativeRoutes costs the same as
+ * dijkstra, that every alternative is a simple path from start to goal
+ * that costs at most MAX_STRETCH more, and that it shares at most
+ * MAX_SHARING of the best cost with the routes before it. */
+package roadgraph;
+
+import java.util.HashSet;
+import java.util.List;
+
+import util.GraphLoader;
+import geography.*;
+
+public class AlternativeRoutesGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 9;
+    private static final int QUERIES = 30;
+    private static final int COUNT = 4;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        AlternativeRoutesGrader grader = new AlternativeRoutesGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Find alternative routes on one map.
+     * @param i The number of the first of the three tests
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true to compare lengths, false to compare times */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        GraderFixture fixture = new GraderFixture(graph, i, QUERIES);
+        double[] expected = fixture.dijkstraCosts(graph, isLengthCompare);
+        @SuppressWarnings("unchecked")
+        List<List<GeographicPoint>>[] routes = new List[QUERIES];
+        for (int q = 0; q < QUERIES; q++)
+            routes[q] = graph.alternativeRoutes(fixture.starts[q], fixture.goals[q], COUNT);
+
+        feedback += appendFeedback(i, "Finding the best of up to " + COUNT + " routes for " + QUERIES + " queries");
+        int wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            List<GeographicPoint> best = (routes[q] == null) ? null : routes[q].get(0);
+            if (!GraderFixture.isSame(expected[q], GraderFixture.pathCost(graph, best, isLengthCompare)))
+                wrong++;
+        }
+        judge(wrong, "first routes cost other than dijkstra");
+
+        feedback += appendFeedback(i + 1, "Checking that the alternatives are simple paths within the stretch");
+        wrong = 0;
+        int alternatives = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            if (routes[q] == null)
+                continue;
+            double limit = (1 + AlternativeRoutes.MAX_STRETCH) * expected[q];
+            for (List<GeographicPoint> route : routes[q]) {
+                if (!route.get(0).equals(fixture.starts[q]) || !route.get(route.size() - 1).equals(fixture.goals[q])
+                        || new HashSet<GeographicPoint>(route).size() != route.size()
+                        || GraderFixture.pathCost(graph, route, isLengthCompare) > limit + 1e-9 * Math.max(1, limit))
+                    wrong++;
+            }
+            alternatives += routes[q].size() - 1;
+        }
+        if (wrong > 0)
+            feedback += "FAILED. " + wrong + " routes did not go once from start to goal or cost too much.";
+        else if (alternatives == 0)
+            feedback += "FAILED. No alternative was found.";
+        else {
+            feedback += "PASSED.";
+            correct++;
+        }
+
+        feedback += appendFeedback(i + 2, "Checking what the alternatives share with the routes before them");
+        wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            if (routes[q] == null)
+                continue;
+            double limit = AlternativeRoutes.MAX_SHARING * expected[q];
+            HashSet<String> used = new HashSet<String>();
+            for (List<GeographicPoint> route : routes[q]) {
+                double shared = 0;
+                for (int p = 1; p < route.size(); p++) {
+                    if (used.contains(route.get(p - 1) + " " + route.get(p)))
+                        shared += GraderFixture.pathCost(graph, route.subList(p - 1, p + 1), isLengthCompare);
+                }
+                if (shared > limit + 1e-9 * Math.max(1, limit))
+                    wrong++;
+                for (int p = 1; p < route.size(); p++)
+                    used.add(route.get(p - 1) + " " + route.get(p));
+            }
+        }
+        judge(wrong, "alternatives share too much with the routes before them");
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, String problem) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " " + problem + ".";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "hollywood_large.map", "HOLLYWOOD MAP: Hollywood and around, fastest paths", false);
+
+            runTest(4, "new_york.map", "NEW YORK MAP: Manhattan grid, fastest paths", false);
+
+            runTest(7, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, shortest paths", true);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,112 @@
+package roadgraph;
+
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+
+/** Bidirectional Dijkstra and A-Star searches over a CompactRoadGraph.
+ * One search runs forward from start over the outgoing roads, the other
+ * backward from goal over the incoming roads, and the side with the
+ * smaller queue key is expanded next. Every time a road reaches an
+ * intersection already reached by the other side, the length of the path
+ * through it is a candidate for the best path (mu).
+ *
+ * The A-Star variant uses the average potential
+ * p(v) = (estimate(v, goal) - estimate(start, v)) / 2 for the forward side
+ * and -p(v) for the backward side. Intersections with an infinite estimate
+ * are not on any path from start to goal and are skipped. Both sides then work on the same graph
+ * with non-negative reduced costs, so for both variants the search can stop
+ * as soon as the two smallest queue keys add up to at least mu. */
+final class BidirectionalSearch {
+	private BidirectionalSearch() {
+	}
+
+	/** Search from start to goal in both directions.
+	 * @param weights The cost of every edge, either graph.lengths or graph.times
+	 * @param estimate Lower bounds of the cost for A-Star, or null for Dijkstra
+	 * 	The work of both sides is counted in the stats of the forward context, if it has any.
+	 * @return The intersection where the best path passes from the forward to
+	 * 	the backward search, or -1 if goal can not be reached */
+	static int search(CompactRoadGraph graph, SearchContext forward, SearchContext backward, double[] weights,
+			DistanceEstimate estimate, int start, int goal, Consumer<GeographicPoint> nodeSearched) {
+		VertexQueue forwardQueue = forward.queue;
+		VertexQueue backwardQueue = backward.queue;
+		SearchStats stats = forward.stats;
+		if(estimate != null && estimate.toGoal(start) == Double.POSITIVE_INFINITY)
+			return -1;
+
+		forward.reach(start, 0, -1);
+		forwardQueue.push(start, potential(estimate, start));
+		backward.reach(goal, 0, -1);
+		backwardQueue.push(goal, -potential(estimate, goal));
+		if(stats != null) {
+			stats.pushed(1);
+			stats.pushed(2);
+		}
+
+		double best = (start == goal) ? 0 : Double.POSITIVE_INFINITY;
+		int meeting = (start == goal) ? start : -1;
+		while(true) {
+			double forwardKey = topKey(forward);
+			double backwardKey = topKey(backward);
+			if(forwardKey + backwardKey >= best)
+				break;
+
+			boolean isForward = forwardKey <= backwardKey;
+			SearchContext context = isForward ? forward : backward;
+			SearchContext other = isForward ? backward : forward;
+			int current = context.queue.poll();
+			context.settle(current);
+			if(stats != null) {
+				stats.popped(false);
+				stats.settled++;
+			}
+
+			// hook for visualization
+			nodeSearched.accept(graph.points[current]);
+
+			double currentDistance = context.getDistance(current);
+			int first = isForward ? graph.offsets[current] : graph.inOffsets[current];
+			int end = isForward ? graph.offsets[current + 1] : graph.inOffsets[current + 1];
+			for(int i = first; i < end; i++) {
+				int e = isForward ? i : graph.inEdges[i];
+				int next = isForward ? graph.targets[e] : graph.sources[e];
+				if(stats != null)
+					stats.relaxed++;
+				if(context.isSettled(next))
+					continue;
+
+				double distance = currentDistance + weights[e];
+				if(distance < context.getDistance(next)) {
+					double potential = potential(estimate, next);
+					// next is not on any path from start to goal
+					if(Double.isInfinite(potential) || Double.isNaN(potential))
+						continue;
+					context.reach(next, distance, current);
+					context.queue.push(next, distance + (isForward ? potential : -potential));
+					if(stats != null)
+						stats.pushed(forwardQueue.size() + backwardQueue.size());
+
+					double through = distance + other.getDistance(next);
+					if(through < best) {
+						best = through;
+						meeting = next;
+					}
+				}
+			}
+		}
+		return meeting;
+	}
+
+	/** smallest key of a queue, infinity if it is empty */
+	private static double topKey(SearchContext context) {
+		return context.queue.isEmpty() ? Double.POSITIVE_INFINITY : context.queue.peekKey();
+	}
+
+	/** potential of v for the forward search; the backward search uses its negation */
+	private static double potential(DistanceEstimate estimate, int v) {
+		if(estimate == null)
+			return 0;
+		return (estimate.toGoal(v) - estimate.fromStart(v)) / 2;
+	}
+}
@@ -0,0 +1,99 @@
+/** Grader for the bidirectional searches.
+ * Compares the costs of bidirectionalDijkstra and bidirectionalAStar with
+ * dijkstra on random queries of the bundled maps, in both metrics. */
+package roadgraph;
+
+import util.GraphLoader;
+import geography.*;
+
+public class BidirectionalSearchGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 8;
+    private static final int QUERIES = 200;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        BidirectionalSearchGrader grader = new BidirectionalSearchGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Run both bidirectional searches on one map.
+     * @param i The number of the first of the two tests
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true to compare lengths, false to compare times */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+
+        GraderFixture fixture = new GraderFixture(graph, i, QUERIES);
+        GeographicPoint[] starts = fixture.starts;
+        GeographicPoint[] goals = fixture.goals;
+        double[] expected = fixture.dijkstraCosts(graph, isLengthCompare);
+
+        feedback += appendFeedback(i, "Running " + QUERIES + " bidirectional Dijkstra searches");
+        int wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            if (!GraderFixture.isSame(expected[q], GraderFixture.pathCost(graph, graph.bidirectionalDijkstra(starts[q], goals[q]), isLengthCompare)))
+                wrong++;
+        }
+        judge(wrong);
+
+        feedback += appendFeedback(i + 1, "Running " + QUERIES + " bidirectional A-Star searches");
+        wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            if (!GraderFixture.isSame(expected[q], GraderFixture.pathCost(graph, graph.bidirectionalAStar(starts[q], goals[q]), isLengthCompare)))
+                wrong++;
+        }
+        judge(wrong);
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " of " + QUERIES + " paths cost other than the path of dijkstra.";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD, shortest paths", true);
+
+            runTest(3, "new_york.map", "NEW YORK MAP: Manhattan grid, fastest paths", false);
+
+            runTest(5, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, shortest paths", true);
+
+            runTest(7, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, fastest paths", false);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,440 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import geography.GeographicPoint;
+
+/** An immutable compressed sparse row (CSR) copy of a MapGraph.
+ * Intersections are numbered 0..n-1 and the roads leaving intersection v
+ * are stored at positions offsets[v] .. offsets[v+1]-1 of the edge arrays.
+ * The searches in this package work on these arrays directly; the
+ * GeographicPoint based API of MapGraph is translated at the boundary.
+ * The roads entering intersection v are listed, as edge indices, at positions
+ * inOffsets[v] .. inOffsets[v+1]-1 of inEdges for the backward searches. */
+public final class CompactRoadGraph {
+	final GeographicPoint[] points;
+	final int[] offsets;
+	final int[] targets;
+	final double[] lengths;
+	final double[] times;
+	final String[] roadNames;
+	final String[] roadTypes;
+	final int[] sources;
+	final int[] inOffsets;
+	final int[] inEdges;
+	final double maxSpeed;
+	/** the share of the straight line between its ends that every road is at least long, at most 1 */
+	final double lengthScale;
+
+	private final HashMap<GeographicPoint, Integer> ids;
+
+	/** create a graph from already filled arrays */
+	CompactRoadGraph(GeographicPoint[] points, int[] offsets, int[] targets, double[] lengths, double[] times,
+			String[] roadNames, String[] roadTypes) {
+		this.points = points;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.lengths = lengths;
+		this.times = times;
+		this.roadNames = roadNames;
+		this.roadTypes = roadTypes;
+
+		this.ids = new HashMap<GeographicPoint, Integer>(points.length * 4 / 3 + 1);
+		for(int v = 0; v < points.length; v++)
+			ids.put(points[v], v);
+
+		// reverse adjacency: count incoming roads, then place them
+		int n = points.length;
+		sources = new int[targets.length];
+		inOffsets = new int[n + 1];
+		inEdges = new int[targets.length];
+		for(int v = 0; v < n; v++) {
+			for(int e = offsets[v]; e < offsets[v + 1]; e++) {
+				sources[e] = v;
+				inOffsets[targets[e] + 1]++;
+			}
+		}
+		for(int v = 0; v < n; v++)
+			inOffsets[v + 1] += inOffsets[v];
+		int[] next = new int[n];
+		for(int e = 0; e < targets.length; e++) {
+			int v = targets[e];
+			inEdges[inOffsets[v] + next[v]++] = e;
+		}
+
+		maxSpeed = highestSpeed(this, times);
+		lengthScale = shortestLength(this);
+	}
+
+	/** create a graph with the roads of base and other costs, sharing all other arrays */
+	private CompactRoadGraph(CompactRoadGraph base, double[] lengths, double[] times) {
+		this.points = base.points;
+		this.offsets = base.offsets;
+		this.targets = base.targets;
+		this.lengths = lengths;
+		this.times = times;
+		this.roadNames = base.roadNames;
+		this.roadTypes = base.roadTypes;
+		this.ids = base.ids;
+		this.sources = base.sources;
+		this.inOffsets = base.inOffsets;
+		this.inEdges = base.inEdges;
+		this.maxSpeed = highestSpeed(this, times);
+		this.lengthScale = shortestLength(this);
+	}
+
+	/** highest straight line speed (kph) of any open road, see straightLineSpeed */
+	static double highestSpeed(CompactRoadGraph graph, double[] times) {
+		double speed = 0;
+		for(int e = 0; e < times.length; e++)
+			speed = Math.max(speed, graph.straightLineSpeed(e, times[e]));
+		return speed;
+	}
+
+	/** Get the speed (kph) at which road e covers its length, or the straight line between
+	 * its ends if that is longer, in time. Costs may be set lower than the geometry
+	 * through MapGraph.updateWeights, so a road that takes no time has an infinite
+	 * speed; a closed road has speed 0.
+	 * @param time The time the road takes (min) */
+	double straightLineSpeed(int e, double time) {
+		if(time == Double.POSITIVE_INFINITY)
+			return 0;
+		double distance = points[sources[e]].distance(points[targets[e]]);
+		if(lengths[e] < Double.POSITIVE_INFINITY)
+			distance = Math.max(distance, lengths[e]);
+		if(distance == 0)
+			return 0;
+		return (time > 0) ? distance / time * 60 : Double.POSITIVE_INFINITY;
+	}
+
+	/** the least length of any road over the straight line between its ends, at most 1 */
+	private static double shortestLength(CompactRoadGraph graph) {
+		double scale = 1;
+		for(int e = 0; e < graph.targets.length; e++) {
+			double distance = graph.points[graph.sources[e]].distance(graph.points[graph.targets[e]]);
+			if(distance > 0)
+				scale = Math.min(scale, graph.lengths[e] / distance);
+		}
+		return scale;
+	}
+
+	/** Get the factor that turns the straight line distance (km) between two intersections
+	 * into a lower bound of the cost of any path between them, for the A-Star estimates
+	 * @param isLengthCompare true for the cost in km, false for the cost in min
+	 * @return The factor, 0 if the straight line gives no bound */
+	double straightLineScale(boolean isLengthCompare) {
+		if(isLengthCompare)
+			return lengthScale;
+		return (maxSpeed > 0) ? 60 / maxSpeed : 0;
+	}
+
+	/** Create a graph with the same intersections and roads but other costs.
+	 * The arrays are used as they are, so the caller must not change them afterwards. */
+	CompactRoadGraph withWeights(double[] lengths, double[] times) {
+		return new CompactRoadGraph(this, lengths, times);
+	}
+
+	/** check if road e is closed, which it is if either of its costs is infinite */
+	boolean isClosed(int e) {
+		return lengths[e] == Double.POSITIVE_INFINITY || times[e] == Double.POSITIVE_INFINITY;
+	}
+
+	/** check if other has the same intersections and roads as this graph, whatever their costs */
+	boolean hasSameRoads(CompactRoadGraph other) {
+		return other != null && other.points == points && other.targets == targets;
+	}
+
+	/** Create a graph from arrays in the layout described above, for example
+	 * read back from a file. The arrays are used as they are, not copied.
+	 * @param roadNames The name of every road, may share strings
+	 * @param roadTypes The type of every road, may share strings
+	 * @throws IllegalArgumentException If the arrays do not form a valid graph */
+	public static CompactRoadGraph create(GeographicPoint[] points, int[] offsets, int[] targets, double[] lengths,
+			double[] times, String[] roadNames, String[] roadTypes) throws IllegalArgumentException {
+		int n = points.length;
+		int m = targets.length;
+		if(offsets.length != n + 1 || offsets[0] != 0 || offsets[n] != m)
+			throw new IllegalArgumentException("CompactRoadGraph: offsets do not match the roads");
+		if(lengths.length != m || times.length != m || roadNames.length != m || roadTypes.length != m)
+			throw new IllegalArgumentException("CompactRoadGraph: road arrays differ in length");
+		for(int v = 0; v < n; v++) {
+			if(points[v] == null || offsets[v] > offsets[v + 1])
+				throw new IllegalArgumentException("CompactRoadGraph: bad intersection " + v);
+		}
+		for(int e = 0; e < m; e++) {
+			if(targets[e] < 0 || targets[e] >= n || !(lengths[e] >= 0) || !(times[e] >= 0))
+				throw new IllegalArgumentException("CompactRoadGraph: bad road " + e);
+		}
+		return new CompactRoadGraph(points, offsets, targets, lengths, times, roadNames, roadTypes);
+	}
+
+	/** Build the compact graph from the intersections of a MapGraph.
+	 * Vertex ids follow the iteration order of the map and the edges of a
+	 * vertex keep the order in which the roads were added. */
+	static CompactRoadGraph build(Map<GeographicPoint, IntersectionNode> intersections) {
+		int n = intersections.size();
+		GeographicPoint[] points = new GeographicPoint[n];
+		HashMap<GeographicPoint, Integer> ids = new HashMap<GeographicPoint, Integer>(n * 4 / 3 + 1);
+
+		int m = 0;
+		int v = 0;
+		for(IntersectionNode node : intersections.values()) {
+			points[v] = node.getLocation();
+			ids.put(points[v], v);
+			m += node.getNextRoads().size();
+			v++;
+		}
+
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[m];
+		double[] lengths = new double[m];
+		double[] times = new double[m];
+		String[] roadNames = new String[m];
+		String[] roadTypes = new String[m];
+
+		int e = 0;
+		v = 0;
+		for(IntersectionNode node : intersections.values()) {
+			offsets[v] = e;
+			for(RoadNode road : node.getNextRoads()) {
+				targets[e] = ids.get(road.getEndLocation());
+				lengths[e] = road.getLength();
+				times[e] = road.getRoadTime();
+				roadNames[e] = road.getRoadName();
+				roadTypes[e] = road.getRoadType();
+				e++;
+			}
+			v++;
+		}
+		offsets[n] = e;
+
+		return new CompactRoadGraph(points, offsets, targets, lengths, times, roadNames, roadTypes);
+	}
+
+	/** Build the graph of the kept intersections and the roads between them.
+	 * The kept intersections keep their order, and their roads keep their order.
+	 * @param isKept Whether to keep every intersection */
+	CompactRoadGraph subgraph(boolean[] isKept) {
+		int n = 0;
+		int[] ids = new int[points.length];
+		for(int v = 0; v < points.length; v++)
+			ids[v] = isKept[v] ? n++ : -1;
+		int m = 0;
+		for(int e = 0; e < targets.length; e++) {
+			if(isKept[sources[e]] && isKept[targets[e]])
+				m++;
+		}
+
+		GeographicPoint[] keptPoints = new GeographicPoint[n];
+		int[] keptOffsets = new int[n + 1];
+		int[] keptTargets = new int[m];
+		double[] keptLengths = new double[m];
+		double[] keptTimes = new double[m];
+		String[] keptNames = new String[m];
+		String[] keptTypes = new String[m];
+		int k = 0;
+		for(int v = 0; v < points.length; v++) {
+			if(ids[v] < 0)
+				continue;
+			keptPoints[ids[v]] = points[v];
+			keptOffsets[ids[v]] = k;
+			for(int e = offsets[v]; e < offsets[v + 1]; e++) {
+				if(ids[targets[e]] < 0)
+					continue;
+				keptTargets[k] = ids[targets[e]];
+				keptLengths[k] = lengths[e];
+				keptTimes[k] = times[e];
+				keptNames[k] = roadNames[e];
+				keptTypes[k] = roadTypes[e];
+				k++;
+			}
+		}
+		keptOffsets[n] = m;
+		return new CompactRoadGraph(keptPoints, keptOffsets, keptTargets, keptLengths, keptTimes, keptNames, keptTypes);
+	}
+
+	/** Rebuild the mutable intersection nodes from this graph */
+	HashMap<GeographicPoint, IntersectionNode> toIntersections() {
+		HashMap<GeographicPoint, IntersectionNode> intersections = new HashMap<GeographicPoint, IntersectionNode>();
+		for(int v = 0; v < points.length; v++) {
+			IntersectionNode node = new IntersectionNode(points[v]);
+			for(int e = offsets[v]; e < offsets[v + 1]; e++)
+				node.addRoad(points[targets[e]], roadNames[e], roadTypes[e], lengths[e], times[e]);
+			intersections.put(points[v], node);
+		}
+		return intersections;
+	}
+
+	/** get number of intersections */
+	public int getNumVertices() {
+		return points.length;
+	}
+
+	/** get number of roads */
+	public int getNumEdges() {
+		return targets.length;
+	}
+
+	/** get intersections as a read-only set */
+	public Set<GeographicPoint> getVertices() {
+		return Collections.unmodifiableSet(ids.keySet());
+	}
+
+	/** get id of the intersection in location, or -1 if there is no such intersection */
+	public int getId(GeographicPoint location) {
+		if(location == null)
+			return -1;
+		Integer id = ids.get(location);
+		return id == null ? -1 : id;
+	}
+
+	/** get location of intersection v */
+	public GeographicPoint getLocation(int v) {
+		return points[v];
+	}
+
+	/** get index of the first road leaving intersection v */
+	public int getFirstEdge(int v) {
+		return offsets[v];
+	}
+
+	/** get index after the last road leaving intersection v */
+	public int getEndEdge(int v) {
+		return offsets[v + 1];
+	}
+
+	/** get end intersection of road e */
+	public int getTarget(int e) {
+		return targets[e];
+	}
+
+	/** get start intersection of road e */
+	public int getSource(int e) {
+		return sources[e];
+	}
+
+	/** get index of the first road entering intersection v */
+	public int getFirstInEdge(int v) {
+		return inOffsets[v];
+	}
+
+	/** get index after the last road entering intersection v */
+	public int getEndInEdge(int v) {
+		return inOffsets[v + 1];
+	}
+
+	/** get the index of the i-th road entering an intersection, for i from getFirstInEdge to getEndInEdge */
+	public int getInEdge(int i) {
+		return inEdges[i];
+	}
+
+	/** get the highest speed (kph) of any road along the straight line between its ends,
+	 * the bound used to estimate remaining time; infinity if a road takes no time */
+	public double getMaxSpeed() {
+		return maxSpeed;
+	}
+
+	/** Get a hash of the locations, roads and costs of this graph.
+	 * Files with preprocessed data store it to make sure they are only used
+	 * with the graph they were computed for. */
+	public long getFingerprint() {
+		long hash = 1125899906842597L;
+		for(GeographicPoint point : points) {
+			hash = 31 * hash + Double.doubleToLongBits(point.getX());
+			hash = 31 * hash + Double.doubleToLongBits(point.getY());
+		}
+		for(int v = 0; v <= points.length; v++)
+			hash = 31 * hash + offsets[v];
+		for(int e = 0; e < targets.length; e++) {
+			hash = 31 * hash + targets[e];
+			hash = 31 * hash + Double.doubleToLongBits(lengths[e]);
+			hash = 31 * hash + Double.doubleToLongBits(times[e]);
+		}
+		return hash;
+	}
+
+	/** get length of road e (km) */
+	public double getLength(int e) {
+		return lengths[e];
+	}
+
+	/** get time of road e (min) */
+	public double getTime(int e) {
+		return times[e];
+	}
+
+	/** get name of road e */
+	public String getRoadName(int e) {
+		return roadNames[e];
+	}
+
+	/** get type of road e */
+	public String getRoadType(int e) {
+		return roadTypes[e];
+	}
+
+	/** Follow the parent links of a finished search from goal back to start.
+	 * @return The intersections from start to goal, or null if goal was not reached */
+	List<GeographicPoint> buildPath(int start, int goal, SearchContext context) {
+		int count = 1;
+		for(int v = goal; v != start; v = context.getParent(v)) {
+			if(v < 0)
+				return null;
+			count++;
+		}
+
+		GeographicPoint[] path = new GeographicPoint[count];
+		int v = goal;
+		for(int i = count - 1; i >= 0; i--) {
+			path[i] = points[v];
+			v = context.getParent(v);
+		}
+
+		List<GeographicPoint> result = new ArrayList<>(count);
+		Collections.addAll(result, path);
+		return result;
+	}
+
+	/** Follow the parent roads of a finished edge based search back from the last road.
+	 * An intersection may be passed more than once, where turning was not allowed.
+	 * @return The intersections from the start of the first road to the end of the last */
+	List<GeographicPoint> buildEdgePath(int last, SearchContext context) {
+		int count = 1;
+		for(int e = last; e >= 0; e = context.getParent(e))
+			count++;
+
+		GeographicPoint[] path = new GeographicPoint[count];
+		int e = last;
+		path[count - 1] = points[targets[last]];
+		for(int i = count - 2; i >= 0; i--) {
+			path[i] = points[sources[e]];
+			e = context.getParent(e);
+		}
+
+		List<GeographicPoint> result = new ArrayList<>(count);
+		Collections.addAll(result, path);
+		return result;
+	}
+
+	/** Join the paths of a finished bidirectional search at the meeting intersection.
+	 * @param forward The context of the search from start, its parents lead back to start
+	 * @param backward The context of the search from goal, its parents lead on to goal
+	 * @return The intersections from start to goal */
+	List<GeographicPoint> buildPath(int start, int meeting, int goal, SearchContext forward, SearchContext backward) {
+		List<GeographicPoint> result = buildPath(start, meeting, forward);
+		if(result == null)
+			return null;
+		for(int v = meeting; v != goal; ) {
+			v = backward.getParent(v);
+			if(v < 0)
+				return null;
+			result.add(points[v]);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,125 @@
+/** Stress test for searches running on one MapGraph from many threads.
+ * Every thread answers the same queries in its own random order and the
+ * paths are compared with the single-threaded results. */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import util.GraphLoader;
+import geography.*;
+
+public class ConcurrentSearchGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 3;
+    private static final int THREADS = 8;
+    private static final int QUERIES = 200;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        ConcurrentSearchGrader grader = new ConcurrentSearchGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Run the same random queries single-threaded and from THREADS threads at once.
+     * @param i The test number
+     * @param file The map file to read from
+     * @param desc A description of the map */
+    public void runTest(int i, String file, String desc) throws Exception {
+        final MapGraph graph = new MapGraph();
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        feedback += appendFeedback(i, "Running " + QUERIES + " queries on " + THREADS + " threads");
+
+        GraderFixture fixture = new GraderFixture(graph, i, QUERIES);
+        final GeographicPoint[] starts = fixture.starts;
+        final GeographicPoint[] goals = fixture.goals;
+
+        // single-threaded baseline
+        final List<List<List<GeographicPoint>>> expected = new ArrayList<List<List<GeographicPoint>>>();
+        for (int q = 0; q < QUERIES; q++)
+            expected.add(runQuery(graph, starts[q], goals[q]));
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int t = 0; t < THREADS; t++) {
+            final long seed = t;
+            results.add(pool.submit(() -> {
+                List<Integer> order = new ArrayList<Integer>();
+                for (int q = 0; q < QUERIES; q++)
+                    order.add(q);
+                Collections.shuffle(order, new Random(seed));
+
+                int wrong = 0;
+                for (int q : order) {
+                    if (!expected.get(q).equals(runQuery(graph, starts[q], goals[q])))
+                        wrong++;
+                }
+                return wrong;
+            }));
+        }
+
+        int wrong = 0;
+        for (Future<Integer> result : results)
+            wrong += result.get();
+        pool.shutdown();
+
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " of " + (THREADS * QUERIES) + " concurrent queries differ from the single-threaded result.";
+        }
+    }
+
+    /** Run bfs, dijkstra and aStarSearch for one start and goal */
+    private static List<List<GeographicPoint>> runQuery(MapGraph graph, GeographicPoint start, GeographicPoint goal) {
+        List<List<GeographicPoint>> paths = new ArrayList<List<GeographicPoint>>();
+        paths.add(graph.dijkstra(start, goal));
+        paths.add(graph.aStarSearch(start, goal));
+        // bfs prints a message for every missing path, so only ask when dijkstra found one
+        paths.add(paths.get(0) == null ? null : graph.bfs(start, goal));
+        return paths;
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD");
+
+            runTest(2, "new_york.map", "NEW YORK MAP: Manhattan grid");
+
+            runTest(3, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego");
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,618 @@
+package roadgraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A contraction hierarchy over a CompactRoadGraph for one metric.
+ * Intersections are contracted one by one in the order of their rank.
+ * Contracting v adds a shortcut u->w for every path u->v->w that is the only
+ * shortest connection between u and w among the remaining intersections.
+ * A query then only follows roads and shortcuts that lead to a higher rank,
+ * forward from start and backward from goal, and settles a few hundred
+ * intersections instead of thousands. Shortcuts remember the two edges
+ * they replace, so a path can be unpacked back into intersections.
+ *
+ * Edges 0..m-1 are the roads of the graph, higher ids are shortcuts. */
+public final class ContractionHierarchy {
+	private static final int MAGIC = 0x55434348;
+	private static final int VERSION = 1;
+	/** intersections a witness search may settle before it gives up and a shortcut is added */
+	private static final int WITNESS_SETTLE_LIMIT = 500;
+
+	private final CompactRoadGraph graph;
+	private final boolean isLengthCompare;
+	private final int[] ranks;
+
+	private final int[] edgeSources;
+	private final int[] edgeTargets;
+	private final double[] edgeWeights;
+	private final int[] edgeFirst;
+	private final int[] edgeSecond;
+
+	/** edges from v to a higher rank, at upEdges[upOffsets[v] .. upOffsets[v+1]-1] */
+	private final int[] upOffsets;
+	private final int[] upEdges;
+	/** edges into v from a higher rank, at downEdges[downOffsets[v] .. downOffsets[v+1]-1] */
+	private final int[] downOffsets;
+	private final int[] downEdges;
+
+	private ContractionHierarchy(CompactRoadGraph graph, boolean isLengthCompare, int[] ranks, int[] edgeSources,
+			int[] edgeTargets, double[] edgeWeights, int[] edgeFirst, int[] edgeSecond) {
+		this.graph = graph;
+		this.isLengthCompare = isLengthCompare;
+		this.ranks = ranks;
+		this.edgeSources = edgeSources;
+		this.edgeTargets = edgeTargets;
+		this.edgeWeights = edgeWeights;
+		this.edgeFirst = edgeFirst;
+		this.edgeSecond = edgeSecond;
+
+		int n = graph.getNumVertices();
+		upOffsets = new int[n + 1];
+		downOffsets = new int[n + 1];
+		for(int e = 0; e < edgeSources.length; e++) {
+			if(ranks[edgeSources[e]] < ranks[edgeTargets[e]])
+				upOffsets[edgeSources[e] + 1]++;
+			else if(ranks[edgeSources[e]] > ranks[edgeTargets[e]])
+				downOffsets[edgeTargets[e] + 1]++;
+		}
+		for(int v = 0; v < n; v++) {
+			upOffsets[v + 1] += upOffsets[v];
+			downOffsets[v + 1] += downOffsets[v];
+		}
+		upEdges = new int[upOffsets[n]];
+		downEdges = new int[downOffsets[n]];
+		int[] upNext = Arrays.copyOf(upOffsets, n);
+		int[] downNext = Arrays.copyOf(downOffsets, n);
+		for(int e = 0; e < edgeSources.length; e++) {
+			if(ranks[edgeSources[e]] < ranks[edgeTargets[e]])
+				upEdges[upNext[edgeSources[e]]++] = e;
+			else if(ranks[edgeSources[e]] > ranks[edgeTargets[e]])
+				downEdges[downNext[edgeTargets[e]]++] = e;
+		}
+	}
+
+	/** Contract all intersections of a graph.
+	 * @param isLengthCompare true to build the hierarchy for length, false for time */
+	public static ContractionHierarchy build(CompactRoadGraph graph, boolean isLengthCompare) {
+		return new Builder(graph, isLengthCompare).build();
+	}
+
+	/** get the graph this hierarchy was built for */
+	public CompactRoadGraph getGraph() {
+		return graph;
+	}
+
+	/** true if this hierarchy finds shortest paths, false if it finds fastest paths */
+	public boolean isLengthCompare() {
+		return isLengthCompare;
+	}
+
+	/** get number of shortcuts added by the contraction */
+	public int getNumShortcuts() {
+		return edgeSources.length - graph.getNumEdges();
+	}
+
+	/** Find the path from start to goal with an upward search from both ends.
+	 * @param forward An empty context for the search from start
+	 * @param backward An empty context for the search from goal
+	 * 	The work of both sides is counted in the stats of the forward context, if it has any.
+	 * @return The intersections from start to goal, or null if there is no path */
+	List<GeographicPoint> search(SearchContext forward, SearchContext backward, int start, int goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		VertexQueue forwardQueue = forward.queue;
+		VertexQueue backwardQueue = backward.queue;
+		SearchStats stats = forward.stats;
+		forward.reach(start, 0, -1);
+		forwardQueue.push(start, 0);
+		backward.reach(goal, 0, -1);
+		backwardQueue.push(goal, 0);
+		if(stats != null) {
+			stats.pushed(1);
+			stats.pushed(2);
+		}
+
+		double best = (start == goal) ? 0 : Double.POSITIVE_INFINITY;
+		int meeting = (start == goal) ? start : -1;
+		while(true) {
+			double forwardKey = forwardQueue.isEmpty() ? Double.POSITIVE_INFINITY : forwardQueue.peekKey();
+			double backwardKey = backwardQueue.isEmpty() ? Double.POSITIVE_INFINITY : backwardQueue.peekKey();
+			// each side only has to run while it can still improve the best path
+			if(forwardKey >= best && backwardKey >= best)
+				break;
+
+			boolean isForward = forwardKey <= backwardKey;
+			SearchContext context = isForward ? forward : backward;
+			SearchContext other = isForward ? backward : forward;
+			int current = context.queue.poll();
+			boolean isStale = context.isSettled(current);
+			if(stats != null)
+				stats.popped(isStale);
+			if(isStale)
+				continue;
+			context.settle(current);
+			if(stats != null)
+				stats.settled++;
+
+			// hook for visualization
+			nodeSearched.accept(graph.points[current]);
+
+			double currentDistance = context.getDistance(current);
+			int[] offsets = isForward ? upOffsets : downOffsets;
+			int[] edges = isForward ? upEdges : downEdges;
+			for(int i = offsets[current]; i < offsets[current + 1]; i++) {
+				int e = edges[i];
+				int next = isForward ? edgeTargets[e] : edgeSources[e];
+				double distance = currentDistance + edgeWeights[e];
+				if(stats != null)
+					stats.relaxed++;
+				if(distance < context.getDistance(next)) {
+					context.reach(next, distance, e);
+					context.queue.push(next, distance);
+					if(stats != null)
+						stats.pushed(forwardQueue.size() + backwardQueue.size());
+
+					double through = distance + other.getDistance(next);
+					if(through < best) {
+						best = through;
+						meeting = next;
+					}
+				}
+			}
+		}
+
+		if(meeting < 0)
+			return null;
+		return unpack(forward, backward, start, meeting, goal);
+	}
+
+	/** Costs between many sources and many targets with bucket searches.
+	 * A full upward search backward from every target leaves a (target, cost)
+	 * entry in the bucket of every intersection it settles. A full upward
+	 * search forward from a source then adds its cost to each settled
+	 * intersection to the entries of its bucket; the smallest sum per target
+	 * is the cost from source to target. A target that the components rule out
+	 * for every source, or a source that can reach no target, is not searched.
+	 * @param components The components of the roads of the graph
+	 * @param sources Source intersection of each row, -1 for an unknown location
+	 * @param targets Target intersection of each column, -1 for an unknown location */
+	double[][] manyToMany(SearchContextPool contexts, StronglyConnectedComponents components, int[] sources,
+			int[] targets) {
+		int n = graph.getNumVertices();
+		boolean[] isRowSearched = new boolean[sources.length];
+		boolean[] isColumnSearched = new boolean[targets.length];
+		for(int row = 0; row < sources.length; row++) {
+			for(int column = 0; column < targets.length; column++) {
+				if(sources[row] >= 0 && targets[column] >= 0 && components.mayReach(sources[row], targets[column])) {
+					isRowSearched[row] = true;
+					isColumnSearched[column] = true;
+				}
+			}
+		}
+
+		SearchContext context = contexts.acquire(n);
+		try {
+			int[] settled = new int[n];
+			int count = 0;
+			int[] entryVertices = new int[Math.max(targets.length * 16, 16)];
+			int[] entryColumns = new int[entryVertices.length];
+			double[] entryDistances = new double[entryVertices.length];
+			for(int column = 0; column < targets.length; column++) {
+				if(!isColumnSearched[column])
+					continue;
+				context.reset(n);
+				int size = upwardSearch(context, targets[column], false, settled);
+				if(count + size > entryVertices.length) {
+					int capacity = Math.max(entryVertices.length * 2, count + size);
+					entryVertices = Arrays.copyOf(entryVertices, capacity);
+					entryColumns = Arrays.copyOf(entryColumns, capacity);
+					entryDistances = Arrays.copyOf(entryDistances, capacity);
+				}
+				for(int i = 0; i < size; i++) {
+					entryVertices[count] = settled[i];
+					entryColumns[count] = column;
+					entryDistances[count] = context.getDistance(settled[i]);
+					count++;
+				}
+			}
+
+			// sort the entries into one bucket per intersection
+			int[] bucketOffsets = new int[n + 1];
+			for(int i = 0; i < count; i++)
+				bucketOffsets[entryVertices[i] + 1]++;
+			for(int v = 0; v < n; v++)
+				bucketOffsets[v + 1] += bucketOffsets[v];
+			int[] bucketColumns = new int[count];
+			double[] bucketDistances = new double[count];
+			int[] next = Arrays.copyOf(bucketOffsets, n);
+			for(int i = 0; i < count; i++) {
+				int position = next[entryVertices[i]]++;
+				bucketColumns[position] = entryColumns[i];
+				bucketDistances[position] = entryDistances[i];
+			}
+
+			double[][] matrix = new double[sources.length][targets.length];
+			for(int row = 0; row < sources.length; row++) {
+				Arrays.fill(matrix[row], Double.POSITIVE_INFINITY);
+				if(!isRowSearched[row])
+					continue;
+				context.reset(n);
+				int size = upwardSearch(context, sources[row], true, settled);
+				for(int i = 0; i < size; i++) {
+					int v = settled[i];
+					double distance = context.getDistance(v);
+					for(int b = bucketOffsets[v]; b < bucketOffsets[v + 1]; b++) {
+						double through = distance + bucketDistances[b];
+						if(through < matrix[row][bucketColumns[b]])
+							matrix[row][bucketColumns[b]] = through;
+					}
+				}
+			}
+			return matrix;
+		}
+		finally {
+			contexts.release(context);
+		}
+	}
+
+	/** Search from source along all upward edges (isForward) or all downward edges backwards.
+	 * @param settled Receives the settled intersections
+	 * @return The number of settled intersections */
+	private int upwardSearch(SearchContext context, int source, boolean isForward, int[] settled) {
+		VertexQueue queue = context.queue;
+		int[] offsets = isForward ? upOffsets : downOffsets;
+		int[] edges = isForward ? upEdges : downEdges;
+		int count = 0;
+
+		context.reach(source, 0, -1);
+		queue.push(source, 0);
+		while(!queue.isEmpty()) {
+			int current = queue.poll();
+			if(context.isSettled(current))
+				continue;
+			context.settle(current);
+			settled[count++] = current;
+
+			double currentDistance = context.getDistance(current);
+			for(int i = offsets[current]; i < offsets[current + 1]; i++) {
+				int e = edges[i];
+				int next = isForward ? edgeTargets[e] : edgeSources[e];
+				double distance = currentDistance + edgeWeights[e];
+				if(distance < context.getDistance(next)) {
+					context.reach(next, distance, e);
+					queue.push(next, distance);
+				}
+			}
+		}
+		return count;
+	}
+
+	/** Turn the edges found by a search back into intersections. The parent
+	 * of a reached intersection is the id of the edge it was reached by. */
+	private List<GeographicPoint> unpack(SearchContext forward, SearchContext backward, int start, int meeting, int goal) {
+		ArrayList<Integer> path = new ArrayList<>();
+		for(int v = meeting; v != start; v = edgeSources[forward.getParent(v)])
+			path.add(forward.getParent(v));
+		Collections.reverse(path);
+		for(int v = meeting; v != goal; v = edgeTargets[backward.getParent(v)])
+			path.add(backward.getParent(v));
+
+		List<GeographicPoint> result = new ArrayList<>();
+		result.add(graph.points[start]);
+		int[] stack = new int[16];
+		for(int edge : path) {
+			int size = 0;
+			stack[size++] = edge;
+			while(size > 0) {
+				int e = stack[--size];
+				if(edgeFirst[e] < 0) {
+					result.add(graph.points[edgeTargets[e]]);
+				}
+				else {
+					if(size + 2 > stack.length)
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					stack[size++] = edgeSecond[e];
+					stack[size++] = edgeFirst[e];
+				}
+			}
+		}
+		return result;
+	}
+
+	/** Write the hierarchy to a file, to be read back with load for the same graph */
+	public void save(String filename) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+			int m = graph.getNumEdges();
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(graph.getFingerprint());
+			out.writeBoolean(isLengthCompare);
+			out.writeInt(ranks.length);
+			out.writeInt(edgeSources.length - m);
+			for(int rank : ranks)
+				out.writeInt(rank);
+			for(int e = m; e < edgeSources.length; e++) {
+				out.writeInt(edgeSources[e]);
+				out.writeInt(edgeTargets[e]);
+				out.writeDouble(edgeWeights[e]);
+				out.writeInt(edgeFirst[e]);
+				out.writeInt(edgeSecond[e]);
+			}
+		}
+	}
+
+	/** Read a hierarchy written by save.
+	 * @param graph The graph the hierarchy was built for
+	 * @throws IOException If the file can not be read or was built for a different graph */
+	public static ContractionHierarchy load(String filename, CompactRoadGraph graph) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(filename + " is not a contraction hierarchy file");
+			if(in.readLong() != graph.getFingerprint())
+				throw new IOException(filename + " was built for a different graph");
+
+			boolean isLengthCompare = in.readBoolean();
+			int n = in.readInt();
+			int shortcuts = in.readInt();
+			int m = graph.getNumEdges();
+			if(n != graph.getNumVertices() || shortcuts < 0)
+				throw new IOException(filename + " is damaged");
+
+			int[] ranks = new int[n];
+			for(int v = 0; v < n; v++)
+				ranks[v] = in.readInt();
+
+			int count = m + shortcuts;
+			int[] sources = Arrays.copyOf(graph.sources, count);
+			int[] targets = Arrays.copyOf(graph.targets, count);
+			double[] weights = Arrays.copyOf(isLengthCompare ? graph.lengths : graph.times, count);
+			int[] first = new int[count];
+			int[] second = new int[count];
+			Arrays.fill(first, 0, m, -1);
+			Arrays.fill(second, 0, m, -1);
+			for(int e = m; e < count; e++) {
+				sources[e] = in.readInt();
+				targets[e] = in.readInt();
+				weights[e] = in.readDouble();
+				first[e] = in.readInt();
+				second[e] = in.readInt();
+			}
+			return new ContractionHierarchy(graph, isLengthCompare, ranks, sources, targets, weights, first, second);
+		}
+	}
+
+	/** Contracts the intersections of a graph in order of their priority.
+	 * The priority of v is the number of shortcuts contracting it would add,
+	 * minus the roads it removes, plus the number of its already contracted
+	 * neighbours (to spread contraction evenly over the map). Priorities are
+	 * updated lazily: a popped intersection is re-evaluated and put back if
+	 * it is no longer the best choice. */
+	private static final class Builder {
+		private final CompactRoadGraph graph;
+		private final boolean isLengthCompare;
+		private final int n;
+
+		private int count;
+		private int[] sources;
+		private int[] targets;
+		private double[] weights;
+		private int[] first;
+		private int[] second;
+
+		/** edges of each intersection, including edges to contracted intersections */
+		private final int[][] outEdges;
+		private final int[] outCount;
+		private final int[][] inEdges;
+		private final int[] inCount;
+
+		private final boolean[] contracted;
+		private final int[] contractedNeighbours;
+		private final SearchContext witness;
+
+		Builder(CompactRoadGraph graph, boolean isLengthCompare) {
+			this.graph = graph;
+			this.isLengthCompare = isLengthCompare;
+			n = graph.getNumVertices();
+
+			int m = graph.getNumEdges();
+			count = m;
+			sources = Arrays.copyOf(graph.sources, Math.max(m * 2, 16));
+			targets = Arrays.copyOf(graph.targets, sources.length);
+			weights = Arrays.copyOf(isLengthCompare ? graph.lengths : graph.times, sources.length);
+			first = new int[sources.length];
+			second = new int[sources.length];
+			Arrays.fill(first, -1);
+			Arrays.fill(second, -1);
+
+			outEdges = new int[n][];
+			outCount = new int[n];
+			inEdges = new int[n][];
+			inCount = new int[n];
+			for(int v = 0; v < n; v++) {
+				outEdges[v] = new int[Math.max(graph.getEndEdge(v) - graph.getFirstEdge(v), 2)];
+				inEdges[v] = new int[Math.max(graph.getEndInEdge(v) - graph.getFirstInEdge(v), 2)];
+			}
+			for(int e = 0; e < m; e++) {
+				if(sources[e] != targets[e])
+					link(e);
+			}
+
+			contracted = new boolean[n];
+			contractedNeighbours = new int[n];
+			witness = new SearchContext();
+		}
+
+		ContractionHierarchy build() {
+			IndexedDaryHeap order = new IndexedDaryHeap();
+			order.reset(n);
+			for(int v = 0; v < n; v++)
+				order.push(v, priority(v));
+
+			int[] ranks = new int[n];
+			int rank = 0;
+			while(!order.isEmpty()) {
+				int v = order.poll();
+				double priority = priority(v);
+				if(!order.isEmpty() && priority > order.peekKey()) {
+					order.push(v, priority);
+					continue;
+				}
+
+				contract(v, false);
+				contracted[v] = true;
+				ranks[v] = rank++;
+				for(int i = 0; i < outCount[v]; i++)
+					contractedNeighbours[targets[outEdges[v][i]]]++;
+				for(int i = 0; i < inCount[v]; i++)
+					contractedNeighbours[sources[inEdges[v][i]]]++;
+			}
+
+			return new ContractionHierarchy(graph, isLengthCompare, ranks, Arrays.copyOf(sources, count),
+					Arrays.copyOf(targets, count), Arrays.copyOf(weights, count), Arrays.copyOf(first, count),
+					Arrays.copyOf(second, count));
+		}
+
+		/** edge difference of contracting v, plus its contracted neighbours */
+		private double priority(int v) {
+			int removed = 0;
+			for(int i = 0; i < outCount[v]; i++) {
+				if(!contracted[targets[outEdges[v][i]]])
+					removed++;
+			}
+			for(int i = 0; i < inCount[v]; i++) {
+				if(!contracted[sources[inEdges[v][i]]])
+					removed++;
+			}
+			return contract(v, true) - removed + contractedNeighbours[v];
+		}
+
+		/** Add the shortcuts needed to contract v, or only count them if simulate is true
+		 * @return The number of shortcuts */
+		private int contract(int v, boolean simulate) {
+			int shortcuts = 0;
+			for(int i = 0; i < inCount[v]; i++) {
+				int in = inEdges[v][i];
+				int u = sources[in];
+				if(contracted[u])
+					continue;
+
+				double limit = -1;
+				for(int j = 0; j < outCount[v]; j++) {
+					int w = targets[outEdges[v][j]];
+					if(!contracted[w] && w != u)
+						limit = Math.max(limit, weights[in] + weights[outEdges[v][j]]);
+				}
+				if(limit < 0)
+					continue;
+
+				findWitnesses(u, v, limit);
+				// out edges added below are shortcuts from u, never from v
+				int outs = outCount[v];
+				for(int j = 0; j < outs; j++) {
+					int out = outEdges[v][j];
+					int w = targets[out];
+					if(contracted[w] || w == u)
+						continue;
+
+					double through = weights[in] + weights[out];
+					if(witness.getDistance(w) <= through)
+						continue;
+
+					shortcuts++;
+					if(!simulate)
+						addShortcut(u, w, through, in, out);
+				}
+			}
+			return shortcuts;
+		}
+
+		/** Dijkstra search from u among the remaining intersections except v, up to distance limit */
+		private void findWitnesses(int u, int v, double limit) {
+			witness.reset(n);
+			VertexQueue queue = witness.queue;
+			witness.reach(u, 0, -1);
+			queue.push(u, 0);
+			int settled = 0;
+			while(!queue.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+				if(queue.peekKey() > limit)
+					break;
+				int current = queue.poll();
+				if(witness.isSettled(current))
+					continue;
+				witness.settle(current);
+				settled++;
+
+				double distance = witness.getDistance(current);
+				for(int i = 0; i < outCount[current]; i++) {
+					int e = outEdges[current][i];
+					int next = targets[e];
+					if(next == v || contracted[next])
+						continue;
+					double nextDistance = distance + weights[e];
+					if(nextDistance < witness.getDistance(next)) {
+						witness.reach(next, nextDistance, current);
+						queue.push(next, nextDistance);
+					}
+				}
+			}
+		}
+
+		private void addShortcut(int u, int w, double weight, int firstEdge, int secondEdge) {
+			if(count == sources.length) {
+				int size = count * 2;
+				sources = Arrays.copyOf(sources, size);
+				targets = Arrays.copyOf(targets, size);
+				weights = Arrays.copyOf(weights, size);
+				first = Arrays.copyOf(first, size);
+				second = Arrays.copyOf(second, size);
+			}
+			sources[count] = u;
+			targets[count] = w;
+			weights[count] = weight;
+			first[count] = firstEdge;
+			second[count] = secondEdge;
+			link(count);
+			count++;
+		}
+
+		/** add edge e to the out list of its source and the in list of its target */
+		private void link(int e) {
+			int u = sources[e];
+			int w = targets[e];
+			if(outCount[u] == outEdges[u].length)
+				outEdges[u] = Arrays.copyOf(outEdges[u], outCount[u] * 2);
+			outEdges[u][outCount[u]++] = e;
+			if(inCount[w] == inEdges[w].length)
+				inEdges[w] = Arrays.copyOf(inEdges[w], inCount[w] * 2);
+			inEdges[w][inCount[w]++] = e;
+		}
+	}
+
+	/** Build the hierarchies of the bundled maps, and save them next to the map files */
+	public static void main(String[] args) throws IOException {
+		String[] maps = args.length > 0 ? args : new String[] { "data/maps/ucsd.map", "data/maps/utc.map",
+				"data/maps/hollywood_small.map", "data/maps/new_york.map", "data/maps/san_diego.map" };
+		for(String map : maps) {
+			MapGraph graph = new MapGraph();
+			GraphLoader.loadRoadMap(map, graph);
+			long time = System.currentTimeMillis();
+			ContractionHierarchy hierarchy = graph.prepareContractionHierarchy();
+			hierarchy.save(map + ".ch");
+			System.out.println(String.format("%s: %d shortcuts in %d ms", map, hierarchy.getNumShortcuts(),
+					System.currentTimeMillis() - time));
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package roadgraph;
+
+import geography.GeographicPoint;
+
+/** Lower bounds of the cost between intersections for the A-Star searches.
+ * The straight line distance is a bound for length, and for time after
+ * dividing by the highest speed of the graph; both are scaled down when
+ * updated costs make a road cheaper than its straight line. The bounds also hold for the
+ * costs of a RoutingProfile, which never makes a road cheaper. If landmarks for the same
+ * metric are available, the larger of the two bounds is used. An infinite
+ * bound means that there is no path at all. */
+final class DistanceEstimate {
+	private final GeographicPoint[] points;
+	private final GeographicPoint startPoint;
+	private final GeographicPoint goalPoint;
+	private final double scale;
+	private final Landmarks landmarks;
+	private final int start;
+	private final int goal;
+
+	/** @param isLengthCompare true if the costs are lengths, false if they are times
+	 * @param landmarks Landmarks of the graph for the same metric, or null */
+	DistanceEstimate(CompactRoadGraph graph, boolean isLengthCompare, Landmarks landmarks, int start, int goal) {
+		points = graph.points;
+		startPoint = graph.points[start];
+		goalPoint = graph.points[goal];
+		scale = graph.straightLineScale(isLengthCompare);
+		this.landmarks = landmarks;
+		this.start = start;
+		this.goal = goal;
+	}
+
+	/** lower bound of the cost from v to goal */
+	double toGoal(int v) {
+		double estimate = points[v].distance(goalPoint) * scale;
+		if(landmarks != null)
+			estimate = Math.max(estimate, landmarks.lowerBound(v, goal));
+		return estimate;
+	}
+
+	/** lower bound of the cost from start to v */
+	double fromStart(int v) {
+		double estimate = startPoint.distance(points[v]) * scale;
+		if(landmarks != null)
+			estimate = Math.max(estimate, landmarks.lowerBound(start, v));
+		return estimate;
+	}
+}
@@ -0,0 +1,171 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/** Costs between many sources and many targets without building paths.
+ * Each row is a Dijkstra search from one source that stops as soon as all
+ * targets are settled. Rows are independent, so they run as separate tasks
+ * of an executor, each with a search context taken from the shared
+ * SearchContextPool of the graph for as long as the row runs. */
+final class DistanceMatrix {
+	private final CompactRoadGraph graph;
+	private final StronglyConnectedComponents components;
+	private final double[] weights;
+	private final int[] sources;
+	private final int numTargets;
+	/** first column of the targets at each intersection, or -1 */
+	private final int[] firstColumn;
+	/** next column with the same target intersection, or -1 */
+	private final int[] nextColumn;
+	/** every target intersection once */
+	private final int[] distinctTargets;
+
+	/** @param components The components of the roads of graph, which rule out targets a row can not reach
+	 * @param sources Source intersection of each row, -1 for an unknown location
+	 * @param targets Target intersection of each column, -1 for an unknown location */
+	DistanceMatrix(CompactRoadGraph graph, StronglyConnectedComponents components, double[] weights, int[] sources,
+			int[] targets) {
+		this.graph = graph;
+		this.components = components;
+		this.weights = weights;
+		this.sources = sources;
+		this.numTargets = targets.length;
+
+		firstColumn = new int[graph.getNumVertices()];
+		nextColumn = new int[targets.length];
+		Arrays.fill(firstColumn, -1);
+		int[] distinct = new int[targets.length];
+		int count = 0;
+		for(int column = targets.length - 1; column >= 0; column--) {
+			int target = targets[column];
+			if(target < 0)
+				continue;
+			if(firstColumn[target] < 0)
+				distinct[count++] = target;
+			nextColumn[column] = firstColumn[target];
+			firstColumn[target] = column;
+		}
+		distinctTargets = Arrays.copyOf(distinct, count);
+	}
+
+	/** Compute all rows.
+	 * @param contexts The search contexts of the graph
+	 * @param executor Runs the rows, or null to compute them on the calling thread
+	 * @param stats Receives the work of all rows, or null */
+	double[][] compute(final SearchContextPool contexts, ExecutorService executor, SearchStats stats) {
+		double[][] matrix = new double[sources.length][];
+		// a SearchStats must not be shared between threads, so every row counts into its own
+		final SearchStats[] rowStats = new SearchStats[sources.length];
+		if(stats != null) {
+			for(int row = 0; row < sources.length; row++)
+				rowStats[row] = new SearchStats();
+		}
+		if(executor == null) {
+			for(int row = 0; row < sources.length; row++)
+				matrix[row] = computeRow(contexts, sources[row], rowStats[row]);
+			addStats(stats, rowStats);
+			return matrix;
+		}
+
+		List<Future<double[]>> rows = new ArrayList<>(sources.length);
+		for(int row = 0; row < sources.length; row++) {
+			final int source = sources[row];
+			final SearchStats counted = rowStats[row];
+			rows.add(executor.submit(new Callable<double[]>() {
+				@Override
+				public double[] call() {
+					return computeRow(contexts, source, counted);
+				}
+			}));
+		}
+		try {
+			for(int row = 0; row < sources.length; row++)
+				matrix[row] = rows.get(row).get();
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("distance matrix: interrupted", e);
+		}
+		catch(ExecutionException e) {
+			throw new IllegalStateException("distance matrix: a row failed", e.getCause());
+		}
+		addStats(stats, rowStats);
+		return matrix;
+	}
+
+	/** add the work of every row to stats, if it is not null */
+	private static void addStats(SearchStats stats, SearchStats[] rowStats) {
+		if(stats == null)
+			return;
+		for(SearchStats counted : rowStats)
+			stats.add(counted);
+	}
+
+	/** Dijkstra search from source until all targets are settled, counting into stats if it is not null */
+	private double[] computeRow(SearchContextPool contexts, int source, SearchStats stats) {
+		double[] row = new double[numTargets];
+		Arrays.fill(row, Double.POSITIVE_INFINITY);
+		if(source < 0)
+			return row;
+		// targets the components rule out stay at infinity, so the search need not settle everything to find them
+		int remaining = 0;
+		for(int target : distinctTargets) {
+			if(components.mayReach(source, target))
+				remaining++;
+		}
+		if(remaining == 0)
+			return row;
+
+		SearchContext context = contexts.acquire(graph.getNumVertices());
+		try {
+			VertexQueue queue = context.queue;
+			context.reach(source, 0, -1);
+			queue.push(source, 0);
+			if(stats != null)
+				stats.pushed(queue.size());
+			while(!queue.isEmpty()) {
+				int current = queue.poll();
+				boolean isStale = context.isSettled(current);
+				if(stats != null)
+					stats.popped(isStale);
+				if(isStale)
+					continue;
+				context.settle(current);
+				if(stats != null)
+					stats.settled++;
+
+				double currentDistance = context.getDistance(current);
+				if(firstColumn[current] >= 0) {
+					for(int column = firstColumn[current]; column >= 0; column = nextColumn[column])
+						row[column] = currentDistance;
+					if(--remaining == 0)
+						break;
+				}
+
+				for(int e = graph.offsets[current]; e < graph.offsets[current + 1]; e++) {
+					int next = graph.targets[e];
+					if(stats != null)
+						stats.relaxed++;
+					double distance = currentDistance + weights[e];
+					if(distance < context.getDistance(next)) {
+						context.reach(next, distance, current);
+						queue.push(next, distance);
+						if(stats != null)
+							stats.pushed(queue.size());
+					}
+				}
+			}
+			return row;
+		}
+		finally {
+			contexts.release(context);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/** Grader for the distance matrices.
+ * Compares distanceMatrix, computed serially and on an executor, and
+ * bucketDistanceMatrix with the cost of dijkstra for every pair, including
+ * pairs without a path, a target given twice and a missing target. */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import util.GraphLoader;
+import geography.*;
+
+public class DistanceMatrixGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 9;
+    private static final int SIZE = 15;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        DistanceMatrixGrader grader = new DistanceMatrixGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Compute the three matrices on one map.
+     * @param i The number of the first of the three tests
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true to compare lengths, false to compare times */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+
+        GraderFixture fixture = new GraderFixture(graph, i, SIZE);
+        List<GeographicPoint> sources = new ArrayList<GeographicPoint>(Arrays.asList(fixture.starts));
+        List<GeographicPoint> targets = new ArrayList<GeographicPoint>(Arrays.asList(fixture.goals));
+        // a target given twice, one that is not on the map, and one the first source can not reach
+        targets.set(1, targets.get(0));
+        targets.set(2, null);
+        targets.set(3, GraderFixture.unreachableFrom(graph, sources.get(0)));
+
+        double[][] expected = new double[SIZE][SIZE];
+        for (int s = 0; s < SIZE; s++) {
+            for (int t = 0; t < SIZE; t++) {
+                // dijkstra complains about a missing goal, whose cost is infinite
+                List<GeographicPoint> path = (targets.get(t) == null) ? null : graph.dijkstra(sources.get(s), targets.get(t));
+                expected[s][t] = GraderFixture.pathCost(graph, path, isLengthCompare);
+            }
+        }
+
+        feedback += appendFeedback(i, "Computing a " + SIZE + "x" + SIZE + " distance matrix serially");
+        judge(countWrong(expected, graph.distanceMatrix(sources, targets, null)));
+
+        feedback += appendFeedback(i + 1, "Computing a " + SIZE + "x" + SIZE + " distance matrix on an executor");
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            judge(countWrong(expected, graph.distanceMatrix(sources, targets, pool)));
+        } finally {
+            pool.shutdown();
+        }
+
+        feedback += appendFeedback(i + 2, "Computing a " + SIZE + "x" + SIZE + " bucket distance matrix");
+        graph.prepareContractionHierarchy();
+        judge(countWrong(expected, graph.bucketDistanceMatrix(sources, targets)));
+    }
+
+    /** count the entries of matrix that differ from expected */
+    private static int countWrong(double[][] expected, double[][] matrix) {
+        int wrong = 0;
+        for (int s = 0; s < SIZE; s++) {
+            for (int t = 0; t < SIZE; t++) {
+                if (!GraderFixture.isSame(expected[s][t], matrix[s][t]))
+                    wrong++;
+            }
+        }
+        return wrong;
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " of " + (SIZE * SIZE) + " entries differ from dijkstra.";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD, shortest paths", true);
+
+            runTest(4, "new_york.map", "NEW YORK MAP: Manhattan grid, fastest paths", false);
+
+            runTest(7, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, shortest paths", true);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,134 @@
+/** Fixture shared by the graders of the searches: a time limit for running a grader,
+ * reproducible start and goal intersections of a map, and the cost of the paths
+ * found between them. */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import geography.*;
+
+public final class GraderFixture {
+    /** time a grader may run before it is taken to be in an infinite loop */
+    private static final long TIME_LIMIT = 60000;
+
+    final GeographicPoint[] starts;
+    final GeographicPoint[] goals;
+
+    /** Pick random start and goal intersections, the same ones for the same map and seed.
+     * @param graph The map to pick from
+     * @param seed The seed of the random picks, usually the test number
+     * @param queries The number of start and goal pairs */
+    GraderFixture(MapGraph graph, long seed, int queries) {
+        // sort the intersections so the picks do not depend on the order of the hash set
+        List<GeographicPoint> vertices = new ArrayList<GeographicPoint>(graph.getVertices());
+        Collections.sort(vertices, new Comparator<GeographicPoint>() {
+            public int compare(GeographicPoint a, GeographicPoint b) {
+                int c = Double.compare(a.getX(), b.getX());
+                return c != 0 ? c : Double.compare(a.getY(), b.getY());
+            }
+        });
+        Random random = new Random(seed);
+        starts = new GeographicPoint[queries];
+        goals = new GeographicPoint[queries];
+        for (int q = 0; q < queries; q++) {
+            starts[q] = vertices.get(random.nextInt(vertices.size()));
+            goals[q] = vertices.get(random.nextInt(vertices.size()));
+        }
+    }
+
+    /** Run a grader on a daemon thread, which does not keep the program alive once main returns.
+     * @return true if the grader finished within the time limit, false if it is taken to be in an infinite loop */
+    public static boolean runWithTimeLimit(Runnable grader) {
+        Thread thread = new Thread(grader);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            thread.join(TIME_LIMIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    /** Get the cost of the path of dijkstra for every start and goal pair */
+    double[] dijkstraCosts(MapGraph graph, boolean isLengthCompare) {
+        double[] costs = new double[starts.length];
+        for (int q = 0; q < starts.length; q++)
+            costs[q] = pathCost(graph, graph.dijkstra(starts[q], goals[q]), isLengthCompare);
+        return costs;
+    }
+
+    /** Get an intersection that can not be reached from start.
+     * @throws IllegalStateException If every intersection can be reached */
+    static GeographicPoint unreachableFrom(MapGraph graph, GeographicPoint start) {
+        CompactRoadGraph compact = graph.freeze();
+        StronglyConnectedComponents components = StronglyConnectedComponents.compute(compact);
+        int from = compact.getId(start);
+        for (int v = 0; v < compact.getNumVertices(); v++) {
+            if (!components.mayReach(from, v))
+                return compact.getLocation(v);
+        }
+        throw new IllegalStateException("every intersection can be reached from " + start);
+    }
+
+    /** Get the cost of the best path from start to goal by a plain Dijkstra search on the compact graph.
+     * @param weights The cost of every road, infinity for a closed one
+     * @return The cost, or infinity if there is no path */
+    static double dijkstraCost(CompactRoadGraph graph, double[] weights, int start, int goal) {
+        double[] costs = new double[graph.getNumVertices()];
+        Arrays.fill(costs, Double.POSITIVE_INFINITY);
+        costs[start] = 0;
+        PriorityQueue<double[]> queue = new PriorityQueue<double[]>((a, b) -> Double.compare(a[0], b[0]));
+        queue.add(new double[] { 0, start });
+        while (!queue.isEmpty()) {
+            double[] head = queue.poll();
+            int v = (int)head[1];
+            if (head[0] > costs[v])
+                continue;
+            if (v == goal)
+                return head[0];
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                double cost = head[0] + weights[e];
+                if (cost < costs[graph.targets[e]]) {
+                    costs[graph.targets[e]] = cost;
+                    queue.add(new double[] { cost, graph.targets[e] });
+                }
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /** Get the cost of a path along the cheapest road between each two of its intersections.
+     * @return The cost, or infinity if path is null or two of its intersections have no road between them */
+    static double pathCost(MapGraph graph, List<GeographicPoint> path, boolean isLengthCompare) {
+        if (path == null)
+            return Double.POSITIVE_INFINITY;
+        CompactRoadGraph compact = graph.freeze();
+        double[] weights = isLengthCompare ? compact.lengths : compact.times;
+        double cost = 0;
+        for (int p = 1; p < path.size(); p++) {
+            int from = compact.getId(path.get(p - 1));
+            int to = compact.getId(path.get(p));
+            double best = Double.POSITIVE_INFINITY;
+            for (int e = compact.offsets[from]; e < compact.offsets[from + 1]; e++) {
+                if (compact.targets[e] == to)
+                    best = Math.min(best, weights[e]);
+            }
+            cost += best;
+        }
+        return cost;
+    }
+
+    /** Check if two costs are the same up to rounding */
+    static boolean isSame(double a, double b) {
+        if (Double.isInfinite(a) || Double.isInfinite(b))
+            return a == b;
+        return Math.abs(a - b) <= 1e-9 * Math.max(1, Math.abs(b));
+    }
+}
@@ -0,0 +1,374 @@
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import geography.GeographicPoint;
+
+/** Breadth first, Dijkstra and A-Star searches over a CompactRoadGraph.
+ * All search state lives in the given SearchContext, so one graph can be
+ * searched from many threads at once. Each search returns true if the goal
+ * was reached; the parents are then read from the context. */
+final class GraphSearch {
+	private GraphSearch() {
+	}
+
+	/** Breadth first search from start to goal */
+	static boolean bfs(CompactRoadGraph graph, SearchContext context, int start, int goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		int[] queue = context.fifo;
+		SearchStats stats = context.stats;
+		int head = 0;
+		int tail = 0;
+
+		queue[tail++] = start;
+		context.reach(start, 0, -1);
+		if(stats != null)
+			stats.pushed(1);
+		while(head < tail) {
+			int current = queue[head++];
+			if(stats != null) {
+				stats.popped(false);
+				stats.settled++;
+			}
+			if(current == goal)
+				return true;
+
+			// hook for visualization
+			nodeSearched.accept(graph.points[current]);
+
+			for(int e = graph.offsets[current]; e < graph.offsets[current + 1]; e++) {
+				int next = graph.targets[e];
+				if(stats != null)
+					stats.relaxed++;
+				if(!context.isReached(next) && !graph.isClosed(e)) {
+					context.reach(next, 0, current);
+					queue[tail++] = next;
+					if(stats != null)
+						stats.pushed(tail - head);
+				}
+			}
+		}
+		return false;
+	}
+
+	/** Dijkstra search (estimate == null) or A-Star search from start to goal.
+	 * @param weights The cost of every edge, either graph.lengths or graph.times
+	 * @param estimate Lower bounds of the remaining cost for A-Star, or null */
+	static boolean search(CompactRoadGraph graph, SearchContext context, double[] weights, DistanceEstimate estimate,
+			int start, int goal, Consumer<GeographicPoint> nodeSearched) {
+		VertexQueue queue = context.queue;
+		SearchStats stats = context.stats;
+
+		context.reach(start, 0, -1);
+		queue.push(start, 0);
+		if(stats != null)
+			stats.pushed(queue.size());
+		while(!queue.isEmpty()) {
+			int current = queue.poll();
+			boolean isStale = context.isSettled(current);
+			if(stats != null)
+				stats.popped(isStale);
+			if(isStale)
+				continue;
+			context.settle(current);
+			if(stats != null)
+				stats.settled++;
+
+			// hook for visualization
+			nodeSearched.accept(graph.points[current]);
+			if(current == goal)
+				return true;
+
+			double currentDistance = context.getDistance(current);
+			for(int e = graph.offsets[current]; e < graph.offsets[current + 1]; e++) {
+				int next = graph.targets[e];
+				if(stats != null)
+					stats.relaxed++;
+				if(context.isSettled(next))
+					continue;
+
+				double distance = currentDistance + weights[e];
+				if(distance < context.getDistance(next)) {
+					double key = distance;
+					if(estimate != null) {
+						key += estimate.toGoal(next);
+						// goal can not be reached from next
+						if(key == Double.POSITIVE_INFINITY)
+							continue;
+					}
+					context.reach(next, distance, current);
+					queue.push(next, key);
+					if(stats != null)
+						stats.pushed(queue.size());
+				}
+			}
+		}
+		return false;
+	}
+
+	/** Dijkstra search from source to every intersection it can reach.
+	 * The parents of the search stay in the context.
+	 * @param weights The cost of every edge, either graph.lengths or graph.times
+	 * @param reverse true to follow the roads backwards, giving the distances to source
+	 * @param distances Receives the distance of every intersection, infinity if it was not reached
+	 * @param order Receives the intersections in the order they were settled, or null
+	 * @return The number of settled intersections */
+	static int allDistances(CompactRoadGraph graph, SearchContext context, double[] weights, int source,
+			boolean reverse, double[] distances, int[] order) {
+		VertexQueue queue = context.queue;
+		Arrays.fill(distances, Double.POSITIVE_INFINITY);
+		int settled = 0;
+
+		context.reach(source, 0, -1);
+		queue.push(source, 0);
+		while(!queue.isEmpty()) {
+			int current = queue.poll();
+			if(context.isSettled(current))
+				continue;
+			context.settle(current);
+			if(order != null)
+				order[settled] = current;
+			settled++;
+
+			double currentDistance = context.getDistance(current);
+			distances[current] = currentDistance;
+			int first = reverse ? graph.inOffsets[current] : graph.offsets[current];
+			int end = reverse ? graph.inOffsets[current + 1] : graph.offsets[current + 1];
+			for(int i = first; i < end; i++) {
+				int e = reverse ? graph.inEdges[i] : i;
+				int next = reverse ? graph.sources[e] : graph.targets[e];
+				double distance = currentDistance + weights[e];
+				if(distance < context.getDistance(next)) {
+					context.reach(next, distance, current);
+					queue.push(next, distance);
+				}
+			}
+		}
+		return settled;
+	}
+
+	/** Dijkstra search from source that stops at a budget.
+	 * The settled intersections are written to context.fifo in the order they
+	 * were settled, so their distances are ascending.
+	 * @param weights The cost of every edge, either graph.lengths or graph.times
+	 * @param budget The largest cost of an intersection to settle
+	 * @return The number of settled intersections */
+	static int bounded(CompactRoadGraph graph, SearchContext context, double[] weights, int source, double budget) {
+		VertexQueue queue = context.queue;
+		int[] order = context.fifo;
+		int settled = 0;
+
+		context.reach(source, 0, -1);
+		queue.push(source, 0);
+		while(!queue.isEmpty()) {
+			int current = queue.poll();
+			if(context.isSettled(current))
+				continue;
+			context.settle(current);
+			order[settled++] = current;
+
+			double currentDistance = context.getDistance(current);
+			for(int e = graph.offsets[current]; e < graph.offsets[current + 1]; e++) {
+				int next = graph.targets[e];
+				double distance = currentDistance + weights[e];
+				// beyond the budget next is never settled, so it is not queued at all
+				if(distance <= budget && distance < context.getDistance(next)) {
+					context.reach(next, distance, current);
+					queue.push(next, distance);
+				}
+			}
+		}
+		return settled;
+	}
+
+	/** Dijkstra search from several seeds to the cheapest of several goals.
+	 * Seeds and goals are intersections with an extra cost, as when a route
+	 * starts or ends part way along a road. Every seed is reached with parent -1.
+	 * @param weights The cost of every edge, either graph.lengths or graph.times
+	 * @param seedCosts The cost of reaching every seed
+	 * @param goalCosts The cost from every goal to the end of the route
+	 * @param bound The cost of a route found without the search, infinity if there is none
+	 * @return The index of the goal of the cheapest route, or -1 if no route is cheaper than bound */
+	static int seededSearch(CompactRoadGraph graph, SearchContext context, double[] weights, int[] seeds,
+			double[] seedCosts, int[] goals, double[] goalCosts, double bound) {
+		VertexQueue queue = context.queue;
+		SearchStats stats = context.stats;
+		double best = bound;
+		int bestGoal = -1;
+
+		for(int i = 0; i < seeds.length; i++) {
+			if(seedCosts[i] < context.getDistance(seeds[i])) {
+				context.reach(seeds[i], seedCosts[i], -1);
+				queue.push(seeds[i], seedCosts[i]);
+				if(stats != null)
+					stats.pushed(queue.size());
+			}
+		}
+		while(!queue.isEmpty() && queue.peekKey() < best) {
+			int current = queue.poll();
+			boolean isStale = context.isSettled(current);
+			if(stats != null)
+				stats.popped(isStale);
+			if(isStale)
+				continue;
+			context.settle(current);
+			if(stats != null)
+				stats.settled++;
+
+			double currentDistance = context.getDistance(current);
+			for(int j = 0; j < goals.length; j++) {
+				if(goals[j] == current && currentDistance + goalCosts[j] < best) {
+					best = currentDistance + goalCosts[j];
+					bestGoal = j;
+				}
+			}
+			for(int e = graph.offsets[current]; e < graph.offsets[current + 1]; e++) {
+				int next = graph.targets[e];
+				double distance = currentDistance + weights[e];
+				if(stats != null)
+					stats.relaxed++;
+				if(distance < best && distance < context.getDistance(next)) {
+					context.reach(next, distance, current);
+					queue.push(next, distance);
+					if(stats != null)
+						stats.pushed(queue.size());
+				}
+			}
+		}
+		return bestGoal;
+	}
+
+	/** Time dependent Dijkstra search (isAStar false) or A-Star search from start to goal.
+	 * A road costs its travel time at the moment it is entered, so the distance of
+	 * an intersection is the time (min) after departure at which it is reached. As
+	 * all profiles are FIFO, waiting never helps and the first time an intersection
+	 * is settled is its earliest arrival. A-Star estimates the remaining time by the
+	 * straight line at the highest speed any road reaches during the day.
+	 * @param departure The departure time from start, in minutes after midnight */
+	static boolean timeDependent(CompactRoadGraph graph, SearchContext context, TravelTimeProfiles profiles,
+			boolean isAStar, double departure, int start, int goal, Consumer<GeographicPoint> nodeSearched) {
+		VertexQueue queue = context.queue;
+		SearchStats stats = context.stats;
+		GeographicPoint goalPoint = graph.points[goal];
+		double scale = (isAStar && profiles.maxSpeed > 0) ? 60 / profiles.maxSpeed : 0;
+
+		context.reach(start, 0, -1);
+		queue.push(start, 0);
+		if(stats != null)
+			stats.pushed(queue.size());
+		while(!queue.isEmpty()) {
+			int current = queue.poll();
+			boolean isStale = context.isSettled(current);
+			if(stats != null)
+				stats.popped(isStale);
+			if(isStale)
+				continue;
+			context.settle(current);
+			if(stats != null)
+				stats.settled++;
+
+			// hook for visualization
+			nodeSearched.accept(graph.points[current]);
+			if(current == goal)
+				return true;
+
+			double currentDistance = context.getDistance(current);
+			double time = departure + currentDistance;
+			for(int e = graph.offsets[current]; e < graph.offsets[current + 1]; e++) {
+				int next = graph.targets[e];
+				if(stats != null)
+					stats.relaxed++;
+				if(context.isSettled(next))
+					continue;
+
+				double distance = currentDistance + profiles.travelTime(e, time);
+				if(distance < context.getDistance(next)) {
+					double key = distance;
+					if(scale > 0)
+						key += graph.points[next].distance(goalPoint) * scale;
+					context.reach(next, distance, current);
+					queue.push(next, key);
+					if(stats != null)
+						stats.pushed(queue.size());
+				}
+			}
+		}
+		return false;
+	}
+
+	/** Edge based Dijkstra search (estimate == null) or A-Star search from start to goal.
+	 * The search reaches roads rather than intersections, so the cost of turning
+	 * from one road onto the next can be added and forbidden turns left out,
+	 * without building the graph of turns: the turns of a road are the roads
+	 * leaving its end. The roads leaving start cost just themselves, and the
+	 * first settled road that ends at goal ends the search. Turn costs are
+	 * never negative, so the estimates of the intersection search stay valid.
+	 * @param context A context for graph.getNumEdges() roads
+	 * @param weights The cost of every edge, either graph.lengths or graph.times
+	 * @param isTurnCost true to add the costs of the turns, false to only keep to the restrictions
+	 * @param estimate Lower bounds of the remaining cost for A-Star, or null
+	 * @return The last road of the best path, or -1 if goal can not be reached */
+	static int edgeBased(CompactRoadGraph graph, SearchContext context, double[] weights, TurnCosts turns,
+			boolean isTurnCost, DistanceEstimate estimate, int start, int goal, Consumer<GeographicPoint> nodeSearched) {
+		VertexQueue queue = context.queue;
+		SearchStats stats = context.stats;
+
+		nodeSearched.accept(graph.points[start]);
+		for(int e = graph.offsets[start]; e < graph.offsets[start + 1]; e++) {
+			double key = weights[e];
+			if(estimate != null)
+				key += estimate.toGoal(graph.targets[e]);
+			if(key < Double.POSITIVE_INFINITY && weights[e] < context.getDistance(e)) {
+				context.reach(e, weights[e], -1);
+				queue.push(e, key);
+				if(stats != null)
+					stats.pushed(queue.size());
+			}
+		}
+		while(!queue.isEmpty()) {
+			int current = queue.poll();
+			boolean isStale = context.isSettled(current);
+			if(stats != null)
+				stats.popped(isStale);
+			if(isStale)
+				continue;
+			context.settle(current);
+			if(stats != null)
+				stats.settled++;
+
+			int end = graph.targets[current];
+			// hook for visualization
+			nodeSearched.accept(graph.points[end]);
+			if(end == goal)
+				return current;
+
+			double currentDistance = context.getDistance(current);
+			for(int e = graph.offsets[end]; e < graph.offsets[end + 1]; e++) {
+				if(stats != null)
+					stats.relaxed++;
+				if(context.isSettled(e))
+					continue;
+				double turn = turns.cost(current, e);
+				if(turn == Double.POSITIVE_INFINITY)
+					continue;
+
+				double distance = currentDistance + weights[e] + (isTurnCost ? turn : 0);
+				if(distance < context.getDistance(e)) {
+					double key = distance;
+					if(estimate != null) {
+						key += estimate.toGoal(graph.targets[e]);
+						// goal can not be reached from the end of e
+						if(key == Double.POSITIVE_INFINITY)
+							continue;
+					}
+					context.reach(e, distance, current);
+					queue.push(e, key);
+					if(stats != null)
+						stats.pushed(queue.size());
+				}
+			}
+		}
+		return -1;
+	}
+}
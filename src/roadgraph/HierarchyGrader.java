@@ -0,0 +1,127 @@
+/** Grader for the contraction hierarchy searches.
+ * Compares the costs of hierarchySearch and bucketDistanceMatrix, and of
+ * hierarchySearch on a hierarchy saved and read back, with dijkstra on
+ * random queries of the bundled maps. */
+package roadgraph;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import util.GraphLoader;
+import geography.*;
+
+public class HierarchyGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 9;
+    private static final int QUERIES = 100;
+    private static final int MATRIX_SIZE = 20;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        HierarchyGrader grader = new HierarchyGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Run the hierarchy search, the bucket matrix and a reloaded hierarchy on one map.
+     * @param i The number of the first of the three tests
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true to compare lengths, false to compare times */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        ContractionHierarchy hierarchy = graph.prepareContractionHierarchy();
+
+        GraderFixture fixture = new GraderFixture(graph, i, QUERIES);
+        List<GeographicPoint> starts = Arrays.asList(fixture.starts);
+        List<GeographicPoint> goals = Arrays.asList(fixture.goals);
+        double[] expected = fixture.dijkstraCosts(graph, isLengthCompare);
+
+        feedback += appendFeedback(i, "Running " + QUERIES + " hierarchy searches");
+        judge(countWrong(graph, starts, goals, expected, isLengthCompare), QUERIES, "queries");
+
+        feedback += appendFeedback(i + 1, "Computing a " + MATRIX_SIZE + "x" + MATRIX_SIZE + " bucket distance matrix");
+        List<GeographicPoint> sources = starts.subList(0, MATRIX_SIZE);
+        List<GeographicPoint> targets = goals.subList(0, MATRIX_SIZE);
+        double[][] matrix = graph.bucketDistanceMatrix(sources, targets);
+        int wrong = 0;
+        for (int s = 0; s < MATRIX_SIZE; s++) {
+            for (int t = 0; t < MATRIX_SIZE; t++) {
+                if (!GraderFixture.isSame(matrix[s][t], GraderFixture.pathCost(graph, graph.dijkstra(sources.get(s), targets.get(t)), isLengthCompare)))
+                    wrong++;
+            }
+        }
+        judge(wrong, MATRIX_SIZE * MATRIX_SIZE, "entries");
+
+        feedback += appendFeedback(i + 2, "Saving the hierarchy and searching it on a reloaded map");
+        File saved = File.createTempFile("hierarchy", ".ch");
+        try {
+            hierarchy.save(saved.getPath());
+            MapGraph reloaded = new MapGraph(isLengthCompare);
+            GraphLoader.loadRoadMap("data/maps/" + file, reloaded);
+            reloaded.loadContractionHierarchy(saved.getPath());
+            judge(countWrong(reloaded, starts, goals, expected, isLengthCompare), QUERIES, "queries");
+        } finally {
+            saved.delete();
+        }
+    }
+
+    /** count the hierarchy searches whose cost differs from expected */
+    private static int countWrong(MapGraph graph, List<GeographicPoint> starts, List<GeographicPoint> goals,
+            double[] expected, boolean isLengthCompare) {
+        int wrong = 0;
+        for (int q = 0; q < expected.length; q++) {
+            if (!GraderFixture.isSame(expected[q], GraderFixture.pathCost(graph, graph.hierarchySearch(starts.get(q), goals.get(q)), isLengthCompare)))
+                wrong++;
+        }
+        return wrong;
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, int total, String what) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " of " + total + " " + what + " differ from dijkstra.";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD, shortest paths", true);
+
+            runTest(4, "new_york.map", "NEW YORK MAP: Manhattan grid, shortest paths", true);
+
+            runTest(7, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, fastest paths", false);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,132 @@
+package roadgraph;
+
+import java.util.Arrays;
+
+/** An indexed 4-ary min-heap of intersection ids with double keys.
+ * The heap keeps the position of every queued intersection, so a better
+ * distance moves the existing entry up instead of adding a duplicate.
+ * Four children per node make the heap half as deep as a binary heap, and
+ * the children of a node share one or two cache lines. Keys are stored
+ * next to the ids by position, so comparisons never leave the arrays. */
+final class IndexedDaryHeap implements VertexQueue {
+	private static final int ARITY = 4;
+
+	/** intersection at each position */
+	private int[] heap;
+	/** key at each position */
+	private double[] keys;
+	/** position of each intersection, or -1 if it is not queued */
+	private int[] positions;
+	private int size;
+
+	IndexedDaryHeap() {
+		heap = new int[0];
+		keys = new double[0];
+		positions = new int[0];
+	}
+
+	@Override
+	public void reset(int n) {
+		if(positions.length < n) {
+			heap = new int[n];
+			keys = new double[n];
+			positions = new int[n];
+			Arrays.fill(positions, -1);
+			size = 0;
+			return;
+		}
+		// only the queued intersections have a position to clear
+		for(int i = 0; i < size; i++)
+			positions[heap[i]] = -1;
+		size = 0;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/** true if v is in the queue */
+	boolean contains(int v) {
+		return positions[v] >= 0;
+	}
+
+	@Override
+	public void push(int v, double key) {
+		int i = positions[v];
+		if(i < 0)
+			siftUp(size++, v, key);
+		else if(key < keys[i])
+			siftUp(i, v, key);
+		else
+			siftDown(i, v, key);
+	}
+
+	@Override
+	public int peek() {
+		return heap[0];
+	}
+
+	@Override
+	public double peekKey() {
+		return keys[0];
+	}
+
+	@Override
+	public int poll() {
+		int top = heap[0];
+		positions[top] = -1;
+		if(--size > 0)
+			siftDown(0, heap[size], keys[size]);
+		return top;
+	}
+
+	/** move v with key from position i towards the root until its parent is not larger */
+	private void siftUp(int i, int v, double key) {
+		while(i > 0) {
+			int parent = (i - 1) / ARITY;
+			if(keys[parent] <= key)
+				break;
+			move(parent, i);
+			i = parent;
+		}
+		place(i, v, key);
+	}
+
+	/** move v with key from position i towards the leaves until no child is smaller */
+	private void siftDown(int i, int v, double key) {
+		while(true) {
+			int first = i * ARITY + 1;
+			if(first >= size)
+				break;
+			int end = Math.min(first + ARITY, size);
+			int best = first;
+			for(int child = first + 1; child < end; child++) {
+				if(keys[child] < keys[best])
+					best = child;
+			}
+			if(keys[best] >= key)
+				break;
+			move(best, i);
+			i = best;
+		}
+		place(i, v, key);
+	}
+
+	private void move(int from, int to) {
+		heap[to] = heap[from];
+		keys[to] = keys[from];
+		positions[heap[to]] = to;
+	}
+
+	private void place(int i, int v, double key) {
+		heap[i] = v;
+		keys[i] = key;
+		positions[v] = i;
+	}
+}
@@ -0,0 +1,120 @@
+package roadgraph;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import geography.GeographicPoint;
+
+/** The intersections reachable from a start within a budget of length or time.
+ * The intersections are listed in order of their cost, starting with the
+ * start itself. Locations are shared with the graph, so building the result
+ * allocates only the id and cost arrays. */
+public final class Isochrone {
+	private final CompactRoadGraph graph;
+	private final double[] weights;
+	private final double budget;
+	private final int[] ids;
+	private final double[] costs;
+
+	Isochrone(CompactRoadGraph graph, double[] weights, double budget, int[] ids, double[] costs) {
+		this.graph = graph;
+		this.weights = weights;
+		this.budget = budget;
+		this.ids = ids;
+		this.costs = costs;
+	}
+
+	/** get the budget, in km or min */
+	public double getBudget() {
+		return budget;
+	}
+
+	/** get number of reachable intersections */
+	public int size() {
+		return ids.length;
+	}
+
+	/** get location of the i-th reachable intersection */
+	public GeographicPoint getLocation(int i) {
+		return graph.points[ids[i]];
+	}
+
+	/** get cost (km or min) of the i-th reachable intersection */
+	public double getCost(int i) {
+		return costs[i];
+	}
+
+	/** get locations of all reachable intersections, in order of their cost */
+	public List<GeographicPoint> getLocations() {
+		return new AbstractList<GeographicPoint>() {
+			@Override
+			public GeographicPoint get(int i) {
+				return graph.points[ids[i]];
+			}
+
+			@Override
+			public int size() {
+				return ids.length;
+			}
+		};
+	}
+
+	/** Get the outline of the reachable area as a convex polygon.
+	 * Besides the reachable intersections it includes, for every road that
+	 * leaves the area, the point where the budget runs out (on the straight
+	 * line between the ends of the road).
+	 * @return The corners of the polygon in counter-clockwise order */
+	public List<GeographicPoint> getBoundary() {
+		List<GeographicPoint> points = new ArrayList<>(getLocations());
+		for(int i = 0; i < ids.length; i++) {
+			int v = ids[i];
+			for(int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+				double left = budget - costs[i];
+				if(weights[e] > left) {
+					GeographicPoint from = graph.points[v];
+					GeographicPoint to = graph.points[graph.targets[e]];
+					double fraction = left / weights[e];
+					points.add(new GeographicPoint(from.getX() + (to.getX() - from.getX()) * fraction,
+							from.getY() + (to.getY() - from.getY()) * fraction));
+				}
+			}
+		}
+		return convexHull(points);
+	}
+
+	/** monotone chain convex hull, with longitude as x and latitude as y */
+	private static List<GeographicPoint> convexHull(List<GeographicPoint> points) {
+		GeographicPoint[] sorted = points.toArray(new GeographicPoint[points.size()]);
+		Arrays.sort(sorted, new Comparator<GeographicPoint>() {
+			@Override
+			public int compare(GeographicPoint a, GeographicPoint b) {
+				int c = Double.compare(a.getY(), b.getY());
+				return c != 0 ? c : Double.compare(a.getX(), b.getX());
+			}
+		});
+		if(sorted.length < 3)
+			return new ArrayList<>(Arrays.asList(sorted));
+
+		GeographicPoint[] hull = new GeographicPoint[sorted.length * 2];
+		int k = 0;
+		for(GeographicPoint p : sorted) {
+			while(k >= 2 && cross(hull[k - 2], hull[k - 1], p) <= 0)
+				k--;
+			hull[k++] = p;
+		}
+		for(int i = sorted.length - 2, lower = k + 1; i >= 0; i--) {
+			GeographicPoint p = sorted[i];
+			while(k >= lower && cross(hull[k - 2], hull[k - 1], p) <= 0)
+				k--;
+			hull[k++] = p;
+		}
+		return new ArrayList<>(Arrays.asList(hull).subList(0, k - 1));
+	}
+
+	private static double cross(GeographicPoint o, GeographicPoint a, GeographicPoint b) {
+		return (a.getY() - o.getY()) * (b.getX() - o.getX()) - (a.getX() - o.getX()) * (b.getY() - o.getY());
+	}
+}
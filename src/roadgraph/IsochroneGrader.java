@@ -0,0 +1,100 @@
+/** Grader for the isochrone queries.
+ * Compares reachableWithinDistance and reachableWithinTime with the cost
+ * of dijkstra to every intersection of the bundled maps. */
+package roadgraph;
+
+import java.util.HashMap;
+import java.util.List;
+
+import util.GraphLoader;
+import geography.*;
+
+public class IsochroneGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 4;
+    private static final int STARTS = 5;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        IsochroneGrader grader = new IsochroneGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Find the intersections within a budget of a few starts on one map.
+     * @param i The test number
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true for a budget of length, false for a budget of time
+     * @param budget The budget in km or min */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare, double budget) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        feedback += appendFeedback(i, "Finding the intersections within " + budget + (isLengthCompare ? " km" : " min")
+                + " of " + STARTS + " starts");
+
+        GraderFixture fixture = new GraderFixture(graph, i, STARTS);
+        int wrong = 0;
+        for (GeographicPoint start : fixture.starts) {
+            Isochrone reachable = isLengthCompare ? graph.reachableWithinDistance(start, budget)
+                    : graph.reachableWithinTime(start, budget);
+            HashMap<GeographicPoint, Double> costs = new HashMap<GeographicPoint, Double>();
+            for (int r = 0; r < reachable.size(); r++)
+                costs.put(reachable.getLocation(r), reachable.getCost(r));
+
+            for (GeographicPoint v : graph.getVertices()) {
+                List<GeographicPoint> path = graph.dijkstra(start, v);
+                double expected = GraderFixture.pathCost(graph, path, isLengthCompare);
+                Double cost = costs.get(v);
+                // every intersection within the budget is reached, at the cost of dijkstra, and no other one
+                if (expected <= budget ? cost == null || !GraderFixture.isSame(expected, cost) : cost != null)
+                    wrong++;
+            }
+        }
+
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " intersections were missed, reached beyond the budget or at another cost than dijkstra.";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD, within a length", true, 0.3);
+
+            runTest(2, "new_york.map", "NEW YORK MAP: Manhattan grid, within a time", false, 2);
+
+            runTest(3, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, within a length", true, 1);
+
+            runTest(4, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, within a time", false, 2);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
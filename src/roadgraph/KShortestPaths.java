@@ -0,0 +1,296 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/** The k shortest simple paths between two intersections, by Yen's algorithm.
+ * Each path after the first leaves an accepted path at a spur intersection:
+ * it follows the accepted path (the root) up to there, then the cheapest way
+ * to goal that avoids the root and the roads the accepted paths with the same
+ * root take next. The cheapest of all such candidates is accepted next.
+ *
+ * All spur searches share one backward shortest path tree to goal over the
+ * whole graph, computed first. Blocking intersections and roads only makes
+ * paths dearer, so its costs are exact lower bounds for every spur search:
+ * if the tree path from the spur intersection avoids everything blocked it is
+ * the spur path without any search, and otherwise an A-Star search guided by
+ * the tree costs settles few intersections beyond the spur path. As in
+ * Lawler's variant, an accepted path only spurs from where it left its own
+ * root, as the earlier spur intersections were tried for its parent. The
+ * spur searches of one path are independent and can run on an executor. */
+final class KShortestPaths {
+	private final CompactRoadGraph graph;
+	private final double[] weights;
+	private final int start;
+	private final int goal;
+	/** the cost from every intersection to goal, infinity if goal can not be reached */
+	private final double[] toGoal;
+	/** the next intersection on the tree path to goal, -1 at goal and where there is none */
+	private final int[] next;
+	/** the answer of spur when the tree path is blocked and it may not search */
+	private static final Path SEARCH = new Path(new int[0], new double[0], 0);
+
+	/** a path as its intersections, with the cost from start to each */
+	private static final class Path implements Comparable<Path> {
+		final int[] vertices;
+		final double[] costs;
+		/** index of the spur intersection where it left its root */
+		final int deviation;
+
+		Path(int[] vertices, double[] costs, int deviation) {
+			this.vertices = vertices;
+			this.costs = costs;
+			this.deviation = deviation;
+		}
+
+		double cost() {
+			return costs[costs.length - 1];
+		}
+
+		@Override
+		public int compareTo(Path other) {
+			int order = Double.compare(cost(), other.cost());
+			return order != 0 ? order : Integer.compare(vertices.length, other.vertices.length);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Path && Arrays.equals(vertices, ((Path)other).vertices);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(vertices);
+		}
+	}
+
+	/** Compute the tree of the costs to goal
+	 * @param weights The cost of every edge, either graph.lengths or graph.times */
+	KShortestPaths(CompactRoadGraph graph, double[] weights, int start, int goal, SearchContextPool contexts) {
+		this.graph = graph;
+		this.weights = weights;
+		this.start = start;
+		this.goal = goal;
+		int n = graph.getNumVertices();
+		toGoal = new double[n];
+		next = new int[n];
+		SearchContext context = contexts.acquire(n);
+		try {
+			GraphSearch.allDistances(graph, context, weights, goal, true, toGoal, null);
+			for(int v = 0; v < n; v++)
+				next[v] = context.getParent(v);
+		}
+		finally {
+			contexts.release(context);
+		}
+	}
+
+	/** Find up to k paths, cheapest first
+	 * @param contexts The search contexts of the graph
+	 * @param executor Runs the spur searches of a path, or null to run them on the calling thread */
+	List<RankedPath> find(int k, final SearchContextPool contexts, ExecutorService executor) {
+		List<RankedPath> result = new ArrayList<RankedPath>();
+		if(toGoal[start] == Double.POSITIVE_INFINITY || k <= 0)
+			return result;
+
+		final List<Path> accepted = new ArrayList<Path>();
+		PriorityQueue<Path> candidates = new PriorityQueue<Path>();
+		HashSet<Path> known = new HashSet<Path>();
+		Path path = treePath(new int[0], new double[] { 0 }, start, 0);
+		while(true) {
+			accepted.add(path);
+			known.add(path);
+			result.add(toRanked(path));
+			if(accepted.size() >= k)
+				break;
+
+			final Path last = path;
+			List<Path> spurPaths = new ArrayList<Path>();
+			List<Integer> searches = new ArrayList<Integer>();
+			for(int i = last.deviation; i < last.vertices.length - 1; i++) {
+				// most spurs follow the tree, which is too little work for a task
+				Path spurPath = spur(contexts, accepted, last, i, executor == null);
+				if(spurPath == SEARCH)
+					searches.add(i);
+				else
+					spurPaths.add(spurPath);
+			}
+			if(searches.size() == 1) {
+				spurPaths.add(spur(contexts, accepted, last, searches.get(0), true));
+			}
+			else if(!searches.isEmpty()) {
+				List<Future<Path>> tasks = new ArrayList<Future<Path>>(searches.size());
+				for(final int index : searches) {
+					tasks.add(executor.submit(new Callable<Path>() {
+						@Override
+						public Path call() {
+							return spur(contexts, accepted, last, index, true);
+						}
+					}));
+				}
+				try {
+					for(Future<Path> task : tasks)
+						spurPaths.add(task.get());
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("k shortest paths: interrupted", e);
+				}
+				catch(ExecutionException e) {
+					throw new IllegalStateException("k shortest paths: a spur search failed", e.getCause());
+				}
+			}
+
+			for(Path candidate : spurPaths) {
+				if(candidate != null && known.add(candidate))
+					candidates.add(candidate);
+			}
+			path = candidates.poll();
+			if(path == null)
+				break;
+		}
+		return result;
+	}
+
+	/** The cheapest path that follows last up to index, then leaves it and every accepted path with the same root
+	 * @param isSearching false to return SEARCH instead of searching when the tree path is blocked
+	 * @return The path, or null if there is none */
+	private Path spur(SearchContextPool contexts, List<Path> accepted, Path last, int index, boolean isSearching) {
+		int spur = last.vertices[index];
+		// the intersections that the accepted paths with this root take after the spur
+		int[] removed = new int[accepted.size()];
+		int count = 0;
+		for(Path path : accepted) {
+			if(path.vertices.length > index + 1 && isSameRoot(path, last, index))
+				removed[count++] = path.vertices[index + 1];
+		}
+
+		SearchContext context = contexts.acquire(graph.getNumVertices());
+		try {
+			// the root is blocked: settled intersections are never reached again
+			for(int i = 0; i < index; i++)
+				context.settle(last.vertices[i]);
+
+			if(isTreeOpen(context, spur, removed, count))
+				return treePath(last.vertices, last.costs, spur, index);
+			if(!isSearching)
+				return SEARCH;
+			return searchSpur(context, last, index, removed, count);
+		}
+		finally {
+			contexts.release(context);
+		}
+	}
+
+	private static boolean isSameRoot(Path path, Path last, int index) {
+		for(int i = index; i >= 0; i--) {
+			if(path.vertices[i] != last.vertices[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean contains(int[] values, int count, int value) {
+		for(int i = 0; i < count; i++) {
+			if(values[i] == value)
+				return true;
+		}
+		return false;
+	}
+
+	/** check if the tree path from spur to goal avoids the removed roads and the blocked intersections */
+	private boolean isTreeOpen(SearchContext context, int spur, int[] removed, int count) {
+		if(toGoal[spur] == Double.POSITIVE_INFINITY || contains(removed, count, next[spur]))
+			return false;
+		for(int v = next[spur]; v >= 0; v = next[v]) {
+			if(context.isSettled(v))
+				return false;
+		}
+		return true;
+	}
+
+	/** the root of last up to index, then the tree path to goal */
+	private Path treePath(int[] root, double[] rootCosts, int spur, int index) {
+		int length = index + 1;
+		for(int v = spur; v != goal; v = next[v])
+			length++;
+
+		int[] vertices = Arrays.copyOf(root, length);
+		double[] costs = Arrays.copyOf(rootCosts, length);
+		vertices[index] = spur;
+		double spurCost = costs[index] + toGoal[spur];
+		for(int i = index + 1; i < length; i++) {
+			vertices[i] = next[vertices[i - 1]];
+			costs[i] = spurCost - toGoal[vertices[i]];
+		}
+		return new Path(vertices, costs, index);
+	}
+
+	/** A-Star search from the spur intersection of last to goal with the tree costs as estimate */
+	private Path searchSpur(SearchContext context, Path last, int index, int[] removed, int count) {
+		VertexQueue queue = context.queue;
+		int spur = last.vertices[index];
+		context.reach(spur, 0, -1);
+		queue.push(spur, toGoal[spur]);
+		while(!queue.isEmpty()) {
+			int current = queue.poll();
+			if(context.isSettled(current))
+				continue;
+			context.settle(current);
+			if(current == goal)
+				break;
+
+			double currentDistance = context.getDistance(current);
+			for(int e = graph.offsets[current]; e < graph.offsets[current + 1]; e++) {
+				int target = graph.targets[e];
+				if(context.isSettled(target) || toGoal[target] == Double.POSITIVE_INFINITY)
+					continue;
+				if(current == spur && contains(removed, count, target))
+					continue;
+				double distance = currentDistance + weights[e];
+				if(distance < context.getDistance(target)) {
+					context.reach(target, distance, current);
+					queue.push(target, distance + toGoal[target]);
+				}
+			}
+		}
+		if(!context.isSettled(goal) || !context.isReached(goal))
+			return null;
+
+		int length = index + 1;
+		for(int v = goal; v != spur; v = context.getParent(v))
+			length++;
+		int[] vertices = Arrays.copyOf(last.vertices, length);
+		double[] costs = Arrays.copyOf(last.costs, length);
+		double spurCost = costs[index];
+		for(int i = length - 1, v = goal; i > index; i--, v = context.getParent(v)) {
+			vertices[i] = v;
+			costs[i] = spurCost + context.getDistance(v);
+		}
+		return new Path(vertices, costs, index);
+	}
+
+	/** the length and time of path along the cheapest road between each two of its intersections */
+	private RankedPath toRanked(Path path) {
+		double length = 0;
+		double time = 0;
+		int[] vertices = path.vertices;
+		for(int i = 0; i + 1 < vertices.length; i++) {
+			int best = -1;
+			for(int e = graph.offsets[vertices[i]]; e < graph.offsets[vertices[i] + 1]; e++) {
+				if(graph.targets[e] == vertices[i + 1] && (best < 0 || weights[e] < weights[best]))
+					best = e;
+			}
+			length += graph.lengths[best];
+			time += graph.times[best];
+		}
+		return new RankedPath(graph, vertices, length, time);
+	}
+}
@@ -0,0 +1,199 @@
+/** Grader for the k shortest paths.
+ * On the small grader maps every simple path is enumerated, so the costs of
+ * kShortestPaths are compared with the k cheapest of them. On the bundled
+ * maps the paths are checked on random queries: the first one costs as much
+ * as the path of dijkstra, the costs do not decrease, the paths are simple
+ * and distinct, and searching the spurs in parallel gives the same costs. */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import util.GraphLoader;
+import geography.*;
+
+public class KShortestPathsGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 6;
+    private static final int QUERIES = 30;
+    private static final int K = 10;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        KShortestPathsGrader grader = new KShortestPathsGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Compare the k shortest paths between every two intersections of a small map with all its simple paths.
+     * @param i The test number
+     * @param file The map file to read from
+     * @param desc A description of the map */
+    public void runExhaustiveTest(int i, String file, String desc) throws Exception {
+        MapGraph graph = new MapGraph();
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/graders/mod3/" + file, graph);
+        feedback += appendFeedback(i, "Comparing the " + K + " shortest paths between all intersections with every simple path");
+
+        List<GeographicPoint> vertices = new ArrayList<GeographicPoint>(graph.getVertices());
+        int wrong = 0;
+        int total = 0;
+        for (GeographicPoint start : vertices) {
+            for (GeographicPoint goal : vertices) {
+                List<Double> expected = new ArrayList<Double>();
+                List<GeographicPoint> path = new ArrayList<GeographicPoint>();
+                path.add(start);
+                enumerate(graph, path, goal, expected);
+                Collections.sort(expected);
+
+                List<RankedPath> paths = graph.kShortestPaths(start, goal, K);
+                boolean isRight = paths.size() == Math.min(K, expected.size());
+                for (int p = 0; isRight && p < paths.size(); p++)
+                    isRight = GraderFixture.isSame(expected.get(p), paths.get(p).getLength());
+                if (!isRight)
+                    wrong++;
+                total++;
+            }
+        }
+        judge(wrong, total);
+    }
+
+    /** add the cost of every simple path from the end of path to goal to costs */
+    private static void enumerate(MapGraph graph, List<GeographicPoint> path, GeographicPoint goal, List<Double> costs) {
+        GeographicPoint last = path.get(path.size() - 1);
+        if (last.equals(goal)) {
+            costs.add(GraderFixture.pathCost(graph, path, true));
+            return;
+        }
+        CompactRoadGraph compact = graph.freeze();
+        int from = compact.getId(last);
+        // parallel roads give the same path of intersections
+        Set<GeographicPoint> next = new HashSet<GeographicPoint>();
+        for (int e = compact.offsets[from]; e < compact.offsets[from + 1]; e++)
+            next.add(compact.getLocation(compact.targets[e]));
+        for (GeographicPoint point : next) {
+            if (path.contains(point))
+                continue;
+            path.add(point);
+            enumerate(graph, path, goal, costs);
+            path.remove(path.size() - 1);
+        }
+    }
+
+    /** Check the k shortest paths of random queries on a bundled map.
+     * @param i The test number
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true to rank by length, false to rank by time */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        feedback += appendFeedback(i, "Finding the " + K + " shortest paths for " + QUERIES + " queries");
+
+        GraderFixture fixture = new GraderFixture(graph, i, QUERIES);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        int wrong = 0;
+        try {
+            for (int q = 0; q < QUERIES; q++) {
+                GeographicPoint start = fixture.starts[q];
+                GeographicPoint goal = fixture.goals[q];
+                List<RankedPath> paths = graph.kShortestPaths(start, goal, K);
+                List<RankedPath> parallel = graph.kShortestPaths(start, goal, K, pool);
+                if (!isValid(graph, start, goal, paths, parallel, isLengthCompare))
+                    wrong++;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        judge(wrong, QUERIES);
+    }
+
+    /** check the paths of one query against dijkstra and against the paths found in parallel */
+    private static boolean isValid(MapGraph graph, GeographicPoint start, GeographicPoint goal,
+            List<RankedPath> paths, List<RankedPath> parallel, boolean isLengthCompare) {
+        double best = GraderFixture.pathCost(graph, graph.dijkstra(start, goal), isLengthCompare);
+        if (paths.isEmpty())
+            return best == Double.POSITIVE_INFINITY && parallel.isEmpty();
+        if (paths.size() != parallel.size() || !GraderFixture.isSame(best, cost(paths.get(0), isLengthCompare)))
+            return false;
+
+        Set<List<GeographicPoint>> distinct = new HashSet<List<GeographicPoint>>();
+        double previous = 0;
+        for (int p = 0; p < paths.size(); p++) {
+            List<GeographicPoint> points = paths.get(p).getPoints();
+            double cost = cost(paths.get(p), isLengthCompare);
+            boolean isRight = points.get(0).equals(start) && points.get(points.size() - 1).equals(goal)
+                    && new HashSet<GeographicPoint>(points).size() == points.size()
+                    && distinct.add(points)
+                    && GraderFixture.isSame(cost, GraderFixture.pathCost(graph, points, isLengthCompare))
+                    && cost >= previous - 1e-9
+                    && GraderFixture.isSame(cost, cost(parallel.get(p), isLengthCompare));
+            if (!isRight)
+                return false;
+            previous = cost;
+        }
+        return true;
+    }
+
+    /** get the cost of path in the metric it was ranked by */
+    private static double cost(RankedPath path, boolean isLengthCompare) {
+        return isLengthCompare ? path.getLength() : path.getTime();
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, int total) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " of " + total + " queries gave wrong paths.";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runExhaustiveTest(1, "map1.txt", "MAP: Straight line (-3 <- -2 <- -1 <- 0 -> 1 -> 2-> 3 ->...)");
+
+            runExhaustiveTest(2, "map2.txt", "MAP: Example map from the writeup");
+
+            runExhaustiveTest(3, "map3.txt", "MAP: Right triangle (with a little detour)");
+
+            runTest(4, "ucsd.map", "UCSD MAP: Intersections around UCSD, shortest paths", true);
+
+            runTest(5, "new_york.map", "NEW YORK MAP: Manhattan grid, fastest paths", false);
+
+            runTest(6, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, shortest paths", true);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,116 @@
+/** Grader for the A-Star searches with landmarks.
+ * For every way of choosing the landmarks, and for landmarks saved and read
+ * back, compares the costs of aStarSearch and bidirectionalAStar with
+ * dijkstra on random queries of the bundled maps. */
+package roadgraph;
+
+import java.io.File;
+
+import util.GraphLoader;
+import geography.*;
+
+public class LandmarkGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 12;
+    private static final int QUERIES = 100;
+    private static final int LANDMARKS = 8;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        LandmarkGrader grader = new LandmarkGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Run the A-Star searches with each kind of landmarks, and with reloaded landmarks, on one map.
+     * @param i The number of the first of the four tests
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true to compare lengths, false to compare times */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+
+        GraderFixture fixture = new GraderFixture(graph, i, QUERIES);
+        GeographicPoint[] starts = fixture.starts;
+        GeographicPoint[] goals = fixture.goals;
+        double[] expected = fixture.dijkstraCosts(graph, isLengthCompare);
+
+        Landmarks landmarks = null;
+        for (Landmarks.Selection selection : Landmarks.Selection.values()) {
+            feedback += appendFeedback(i++, "Running " + QUERIES + " A-Star searches with " + LANDMARKS + " " + selection + " landmarks");
+            landmarks = graph.prepareLandmarks(LANDMARKS, selection);
+            judge(countWrong(graph, starts, goals, expected, isLengthCompare));
+        }
+
+        feedback += appendFeedback(i, "Saving the landmarks and searching with them on a reloaded map");
+        File saved = File.createTempFile("landmarks", ".landmarks");
+        try {
+            landmarks.save(saved.getPath());
+            MapGraph reloaded = new MapGraph(isLengthCompare);
+            GraphLoader.loadRoadMap("data/maps/" + file, reloaded);
+            reloaded.loadLandmarks(saved.getPath());
+            judge(countWrong(reloaded, starts, goals, expected, isLengthCompare));
+        } finally {
+            saved.delete();
+        }
+    }
+
+    /** count the queries where aStarSearch or bidirectionalAStar finds a path with another cost than expected */
+    private static int countWrong(MapGraph graph, GeographicPoint[] starts, GeographicPoint[] goals,
+            double[] expected, boolean isLengthCompare) {
+        int wrong = 0;
+        for (int q = 0; q < expected.length; q++) {
+            if (!GraderFixture.isSame(expected[q], GraderFixture.pathCost(graph, graph.aStarSearch(starts[q], goals[q]), isLengthCompare))
+                    || !GraderFixture.isSame(expected[q], GraderFixture.pathCost(graph, graph.bidirectionalAStar(starts[q], goals[q]), isLengthCompare)))
+                wrong++;
+        }
+        return wrong;
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " of " + QUERIES + " queries differ from dijkstra.";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD, shortest paths", true);
+
+            runTest(5, "new_york.map", "NEW YORK MAP: Manhattan grid, shortest paths", true);
+
+            runTest(9, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, fastest paths", false);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
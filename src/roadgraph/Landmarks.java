@@ -0,0 +1,372 @@
+package roadgraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** Landmarks for the ALT (A-Star, landmarks, triangle inequality) bound.
+ * For every landmark L the distances d(L, v) from L and d(v, L) to L are
+ * stored for all intersections. By the triangle inequality
+ * d(v, w) >= d(L, w) - d(L, v) and d(v, w) >= d(v, L) - d(w, L), and the
+ * largest of these bounds over all landmarks is used by the A-Star searches.
+ * The bound is exact on the road network, not on the straight line, so it
+ * is much tighter than the straight line distance and holds for any speed. */
+public final class Landmarks {
+	/** How landmarks are chosen */
+	public enum Selection {
+		/** each landmark is the intersection farthest from the landmarks chosen before */
+		FARTHEST,
+		/** each landmark is the leaf of the shortest path tree branch with the weakest bounds */
+		AVOID,
+		/** the map is cut into equal sectors around its center and each sector gets the intersection farthest out */
+		PLANAR
+	}
+
+	private static final int MAGIC = 0x55434c4d;
+	private static final int VERSION = 1;
+
+	private final CompactRoadGraph graph;
+	private final boolean isLengthCompare;
+	private final int[] landmarks;
+	/** fromLandmark[i][v] is the cost from landmark i to v */
+	private final double[][] fromLandmark;
+	/** toLandmark[i][v] is the cost from v to landmark i */
+	private final double[][] toLandmark;
+
+	private Landmarks(CompactRoadGraph graph, boolean isLengthCompare, int[] landmarks, double[][] fromLandmark,
+			double[][] toLandmark) {
+		this.graph = graph;
+		this.isLengthCompare = isLengthCompare;
+		this.landmarks = landmarks;
+		this.fromLandmark = fromLandmark;
+		this.toLandmark = toLandmark;
+	}
+
+	/** Choose landmarks and compute their distance tables.
+	 * @param isLengthCompare true to bound lengths, false to bound times
+	 * @param count The number of landmarks, at most the number of intersections */
+	public static Landmarks build(CompactRoadGraph graph, boolean isLengthCompare, int count, Selection selection) {
+		int n = graph.getNumVertices();
+		count = Math.min(count, n);
+		if(count < 0)
+			throw new IllegalArgumentException("Landmarks: count must not be negative");
+
+		double[] weights = isLengthCompare ? graph.lengths : graph.times;
+		int[] landmarks = new int[count];
+		double[][] fromLandmark = new double[count][n];
+		double[][] toLandmark = new double[count][n];
+		Landmarks result = new Landmarks(graph, isLengthCompare, landmarks, fromLandmark, toLandmark);
+
+		SearchContext context = new SearchContext();
+		int[] planar = (selection == Selection.PLANAR && count > 0) ? choosePlanar(graph, count) : null;
+		for(int i = 0; i < count; i++) {
+			int landmark;
+			if(selection == Selection.PLANAR)
+				landmark = planar[i];
+			else if(selection == Selection.AVOID)
+				landmark = result.chooseAvoid(i, weights, context);
+			else
+				landmark = result.chooseFarthest(i);
+
+			landmarks[i] = landmark;
+			context.reset(n);
+			GraphSearch.allDistances(graph, context, weights, landmark, false, fromLandmark[i], null);
+			context.reset(n);
+			GraphSearch.allDistances(graph, context, weights, landmark, true, toLandmark[i], null);
+		}
+		return result;
+	}
+
+	/** Use these landmarks for a graph with the same roads at equal or higher costs.
+	 * A cost can only grow, so the distances to and from the landmarks stay lower bounds. */
+	Landmarks withGraph(CompactRoadGraph graph) {
+		return new Landmarks(graph, isLengthCompare, landmarks, fromLandmark, toLandmark);
+	}
+
+	/** Use these landmarks for a graph with the same roads at any costs.
+	 * A table stays a lower bound as long as no road is cheaper than the difference
+	 * of the table at its ends, so only the tables that some road undercuts are
+	 * computed again, from the same landmarks. */
+	Landmarks repair(CompactRoadGraph graph) {
+		int n = graph.getNumVertices();
+		double[] weights = isLengthCompare ? graph.lengths : graph.times;
+		double[][] newFrom = fromLandmark.clone();
+		double[][] newTo = toLandmark.clone();
+		SearchContext context = new SearchContext();
+		for(int i = 0; i < landmarks.length; i++) {
+			if(!isFeasible(graph, weights, fromLandmark[i], false)) {
+				newFrom[i] = new double[n];
+				context.reset(n);
+				GraphSearch.allDistances(graph, context, weights, landmarks[i], false, newFrom[i], null);
+			}
+			if(!isFeasible(graph, weights, toLandmark[i], true)) {
+				newTo[i] = new double[n];
+				context.reset(n);
+				GraphSearch.allDistances(graph, context, weights, landmarks[i], true, newTo[i], null);
+			}
+		}
+		return new Landmarks(graph, isLengthCompare, landmarks, newFrom, newTo);
+	}
+
+	/** check that no road leads around table: for every road u->v the table grows by at most
+	 * its cost from u to v, or from v to u for a table of costs to the landmark */
+	private static boolean isFeasible(CompactRoadGraph graph, double[] weights, double[] table, boolean reverse) {
+		for(int e = 0; e < weights.length; e++) {
+			int u = graph.sources[e];
+			int v = graph.targets[e];
+			if(reverse ? table[u] > weights[e] + table[v] : table[v] > table[u] + weights[e])
+				return false;
+		}
+		return true;
+	}
+
+	/** get the graph these landmarks were computed for */
+	public CompactRoadGraph getGraph() {
+		return graph;
+	}
+
+	/** true if the tables hold lengths, false if they hold times */
+	public boolean isLengthCompare() {
+		return isLengthCompare;
+	}
+
+	/** get number of landmarks */
+	public int getNumLandmarks() {
+		return landmarks.length;
+	}
+
+	/** get location of landmark i */
+	public GeographicPoint getLandmark(int i) {
+		return graph.points[landmarks[i]];
+	}
+
+	/** Lower bound of the cost from v to w; infinity if w can not be reached from v */
+	double lowerBound(int v, int w) {
+		double bound = 0;
+		for(int i = 0; i < landmarks.length; i++) {
+			// differences of two infinities are NaN and never pass the comparisons
+			double ahead = fromLandmark[i][w] - fromLandmark[i][v];
+			if(ahead > bound)
+				bound = ahead;
+			double behind = toLandmark[i][v] - toLandmark[i][w];
+			if(behind > bound)
+				bound = behind;
+		}
+		return bound;
+	}
+
+	/** The intersection with the largest round trip to its closest landmark.
+	 * The first landmark is the intersection farthest from the center of the map. */
+	private int chooseFarthest(int chosen) {
+		if(chosen == 0)
+			return farthestFromCenter(graph, null);
+
+		int best = -1;
+		double bestDistance = -1;
+		for(int v = 0; v < graph.getNumVertices(); v++) {
+			double distance = Double.POSITIVE_INFINITY;
+			for(int i = 0; i < chosen; i++)
+				distance = Math.min(distance, finite(fromLandmark[i][v]) + finite(toLandmark[i][v]));
+			if(distance > bestDistance) {
+				best = v;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+
+	/** The leaf of the shortest path tree from a random root that collects the
+	 * largest total bound error d(root, v) - lowerBound(root, v) in its
+	 * branch, counting only branches that contain no landmark yet. */
+	private int chooseAvoid(int chosen, double[] weights, SearchContext context) {
+		int n = graph.getNumVertices();
+		int root = new Random(chosen).nextInt(n);
+		double[] distances = new double[n];
+		int[] order = new int[n];
+		context.reset(n);
+		int settled = GraphSearch.allDistances(graph, context, weights, root, false, distances, order);
+
+		boolean[] isLandmark = new boolean[n];
+		for(int i = 0; i < chosen; i++)
+			isLandmark[landmarks[i]] = true;
+
+		Landmarks current = new Landmarks(graph, isLengthCompare, Arrays.copyOf(landmarks, chosen),
+				fromLandmark, toLandmark);
+		double[] size = new double[n];
+		boolean[] hasLandmark = new boolean[n];
+		for(int i = settled - 1; i >= 0; i--) {
+			int v = order[i];
+			size[v] += distances[v] - current.lowerBound(root, v);
+			hasLandmark[v] |= isLandmark[v];
+			int parent = context.getParent(v);
+			if(parent >= 0) {
+				size[parent] += size[v];
+				hasLandmark[parent] |= hasLandmark[v];
+			}
+		}
+
+		// walk down along the heaviest branch without a landmark
+		int v = root;
+		while(true) {
+			int next = -1;
+			for(int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+				int child = graph.targets[e];
+				if(context.getParent(child) == v && !hasLandmark[child] && (next < 0 || size[child] > size[next]))
+					next = child;
+			}
+			if(next < 0)
+				break;
+			v = next;
+		}
+		return isLandmark[v] ? chooseFarthest(chosen) : v;
+	}
+
+	/** one intersection per sector around the center of the map, the farthest out in its sector */
+	private static int[] choosePlanar(CompactRoadGraph graph, int count) {
+		int n = graph.getNumVertices();
+		double centerX = 0;
+		double centerY = 0;
+		for(GeographicPoint point : graph.points) {
+			centerX += point.getX() / n;
+			centerY += point.getY() / n;
+		}
+		GeographicPoint center = new GeographicPoint(centerX, centerY);
+
+		int[] result = new int[count];
+		double[] best = new double[count];
+		Arrays.fill(result, -1);
+		for(int v = 0; v < n; v++) {
+			GeographicPoint point = graph.points[v];
+			double angle = Math.atan2(point.getY() - centerY, point.getX() - centerX) + Math.PI;
+			int sector = Math.min((int)(angle / (2 * Math.PI) * count), count - 1);
+			double distance = point.distance(center);
+			if(result[sector] < 0 || distance > best[sector]) {
+				result[sector] = v;
+				best[sector] = distance;
+			}
+		}
+
+		// sectors without intersections take the farthest unused intersections
+		boolean[] used = new boolean[n];
+		for(int v : result) {
+			if(v >= 0)
+				used[v] = true;
+		}
+		for(int i = 0; i < count; i++) {
+			if(result[i] < 0) {
+				result[i] = farthestFromCenter(graph, used);
+				used[result[i]] = true;
+			}
+		}
+		return result;
+	}
+
+	/** the unused intersection farthest from the center of the map */
+	private static int farthestFromCenter(CompactRoadGraph graph, boolean[] used) {
+		double minX = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for(GeographicPoint point : graph.points) {
+			minX = Math.min(minX, point.getX());
+			maxX = Math.max(maxX, point.getX());
+			minY = Math.min(minY, point.getY());
+			maxY = Math.max(maxY, point.getY());
+		}
+		GeographicPoint center = new GeographicPoint((minX + maxX) / 2, (minY + maxY) / 2);
+
+		int best = -1;
+		double bestDistance = -1;
+		for(int v = 0; v < graph.getNumVertices(); v++) {
+			if(used != null && used[v])
+				continue;
+			double distance = graph.points[v].distance(center);
+			if(distance > bestDistance) {
+				best = v;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+
+	private static double finite(double distance) {
+		return distance == Double.POSITIVE_INFINITY ? 0 : distance;
+	}
+
+	/** get the name of the landmarks file kept next to a map file for one metric */
+	public static String getFile(String mapFile, boolean isLengthCompare) {
+		return mapFile + (isLengthCompare ? ".length" : ".time") + ".landmarks";
+	}
+
+	/** Write the landmarks to a file, to be read back with load for the same graph */
+	public void save(String filename) throws IOException {
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(graph.getFingerprint());
+			out.writeBoolean(isLengthCompare);
+			out.writeInt(graph.getNumVertices());
+			out.writeInt(landmarks.length);
+			for(int i = 0; i < landmarks.length; i++) {
+				out.writeInt(landmarks[i]);
+				for(double distance : fromLandmark[i])
+					out.writeDouble(distance);
+				for(double distance : toLandmark[i])
+					out.writeDouble(distance);
+			}
+		}
+	}
+
+	/** Read landmarks written by save.
+	 * @param graph The graph the landmarks were computed for
+	 * @throws IOException If the file can not be read or was computed for a different graph */
+	public static Landmarks load(String filename, CompactRoadGraph graph) throws IOException {
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(filename + " is not a landmarks file");
+			if(in.readLong() != graph.getFingerprint())
+				throw new IOException(filename + " was computed for a different graph");
+
+			boolean isLengthCompare = in.readBoolean();
+			int n = in.readInt();
+			int count = in.readInt();
+			if(n != graph.getNumVertices() || count < 0 || count > n)
+				throw new IOException(filename + " is damaged");
+
+			int[] landmarks = new int[count];
+			double[][] fromLandmark = new double[count][n];
+			double[][] toLandmark = new double[count][n];
+			for(int i = 0; i < count; i++) {
+				landmarks[i] = in.readInt();
+				for(int v = 0; v < n; v++)
+					fromLandmark[i][v] = in.readDouble();
+				for(int v = 0; v < n; v++)
+					toLandmark[i][v] = in.readDouble();
+			}
+			return new Landmarks(graph, isLengthCompare, landmarks, fromLandmark, toLandmark);
+		}
+	}
+
+	/** Compute landmarks for the bundled maps in both metrics, and save them next to the map files */
+	public static void main(String[] args) throws IOException {
+		String[] maps = args.length > 0 ? args : new String[] { "data/maps/ucsd.map", "data/maps/utc.map",
+				"data/maps/hollywood_small.map", "data/maps/new_york.map", "data/maps/san_diego.map" };
+		for(String map : maps) {
+			for(boolean isLengthCompare : new boolean[] { true, false }) {
+				MapGraph graph = new MapGraph(isLengthCompare);
+				GraphLoader.loadRoadMap(map, graph);
+				Landmarks landmarks = graph.prepareLandmarks(16, Selection.AVOID);
+				landmarks.save(getFile(map, isLengthCompare));
+			}
+		}
+	}
+}
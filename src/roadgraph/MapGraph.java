@@ -2,47 +2,114 @@
  * date: 04/06/2019 */
 package roadgraph;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 
 import geography.GeographicPoint;
+import geography.RoadSegment;
 import util.GraphLoader;
 
  /** A class which represents a graph of geographic locations
- * Nodes in the graph are intersections between */
+ * Nodes in the graph are intersections between roads.
+ * The graph is built through addVertex and addEdge, and is frozen into a
+ * CompactRoadGraph before the first search. Adding vertices or edges after
+ * that unfreezes it again.
+ * Searches keep their state in pooled search contexts, so one MapGraph
+ * can answer queries from many threads at once. Adding vertices or edges
+ * must not run concurrently with other calls.
+ * The costs of existing roads can change at any time through updateWeights,
+ * which publishes new costs without blocking the searches.
+ * The routing methods accept any location: one that is not an intersection
+ * is snapped to the closest intersection through a spatial index, while
+ * routeOnRoads snaps to the closest point on any road. */
 public class MapGraph {
+	/** the number of cost changes kept for repairing the data of older versions */
+	private static final int MAX_WEIGHT_CHANGES = 16;
+	
 	private HashMap<GeographicPoint, IntersectionNode> intersections;
+	private volatile CompactRoadGraph compactGraph;
+	private final SearchContextPool searchContexts;
+	private volatile ContractionHierarchy hierarchy;
+	private volatile Landmarks landmarks;
+	private volatile SpatialIndex spatialIndex;
+	private HashMap<GeographicPoint, HashSet<RoadSegment>> roadGeometry;
+	private volatile RoadSnapper roadSnapper;
+	private volatile SearchMetrics searchMetrics;
+	private volatile long version;
+	private volatile TravelTimeProfiles travelTimeProfiles;
+	private volatile TravelTimeProfiles fixedTravelTimes;
+	private volatile TurnCosts turnCosts;
+	private volatile ProfileCosts profileCosts;
+	private volatile StronglyConnectedComponents components;
+	private final ArrayDeque<WeightChange> weightChanges = new ArrayDeque<WeightChange>();
 	private int countEdges;
 	private boolean isLengthCompare;
 	
+	/** the costs of the routing profiles used on one compact graph */
+	private static final class ProfileCosts {
+		final CompactRoadGraph graph;
+		final ConcurrentHashMap<RoutingProfile, double[]> costs = new ConcurrentHashMap<RoutingProfile, double[]>();
+		
+		ProfileCosts(CompactRoadGraph graph) {
+			this.graph = graph;
+		}
+	}
+	
 	/** Create a new empty MapGraph */
 	public MapGraph() {
+		this(true);
+	}
+	
+	/** Create a new empty MapGraph
+	 * @param isLengthCompare true to find the shortest paths, false to find the fastest paths */
+	public MapGraph(boolean isLengthCompare) {
 		countEdges = 0;
-		isLengthCompare = true;
+		this.isLengthCompare = isLengthCompare;
 		intersections = new HashMap<GeographicPoint, IntersectionNode>();
+		searchContexts = new SearchContextPool();
+	}
+	
+	/** Create a frozen MapGraph over a compact graph, for example one read from a snapshot file
+	 * @param graph The intersections and roads of the map
+	 * @param isLengthCompare true to find the shortest paths, false to find the fastest paths */
+	public MapGraph(CompactRoadGraph graph, boolean isLengthCompare) {
+		countEdges = graph.getNumEdges();
+		this.isLengthCompare = isLengthCompare;
+		intersections = null;
+		compactGraph = graph;
+		searchContexts = new SearchContextPool();
 	}
 	
 	/**Get the number of vertices (road intersections) in the graph
 	 * @return The number of vertices in the graph. */
-	public int getNumVertices() {
+	public synchronized int getNumVertices() {
+		if(intersections == null)
+			return compactGraph.getNumVertices();
 		return intersections.size();
 	}
 	
 	/**Return the intersections, which are the vertices in this graph.
 	 * @return The vertices in this graph as GeographicPoints */
-	public Set<GeographicPoint> getVertices() {
+	public synchronized Set<GeographicPoint> getVertices() {
+		if(intersections == null)
+			return compactGraph.getVertices();
 		return intersections.keySet();
 	}
 	
 	/**Get the number of road segments in the graph
 	 * @return The number of edges in the graph. */
-	public int getNumEdges() {
+	public synchronized int getNumEdges() {
 		return countEdges;
 	}
 	
@@ -50,11 +117,14 @@ public class MapGraph {
 	 * If the location is already in the graph or null, this method does not change the graph.
 	 * @param location  The location of the intersection
 	 * @return true if a node was added, false if it was not (the node was already in the graph, or the parameter is null). */
-	public boolean addVertex(GeographicPoint location) {
-		if(intersections.containsKey(location) || location == null)
+	public synchronized boolean addVertex(GeographicPoint location) {
+		// only unfreeze, and drop the data prepared for the frozen graph, if the graph changes
+		if(location == null || isVertex(location))
 			return false;
 		
-		this.intersections.put(location, new IntersectionNode(location, isLengthCompare));
+		unfreeze();
+		this.intersections.put(location, new IntersectionNode(location));
+		version++;
 		return true;
 	}
 	
@@ -67,36 +137,454 @@ public class MapGraph {
 	 * @param length The length of the road, in km
 	 * @throws IllegalArgumentException If the points have not already been added as nodes to the graph, 
 	 * 	if any of the arguments is null, or if the length is less than 0. */
-	public void addEdge(GeographicPoint from, GeographicPoint to, String roadName, String roadType, double length) throws IllegalArgumentException {
-		// get intersection node in location 'from'
+	public synchronized void addEdge(GeographicPoint from, GeographicPoint to, String roadName, String roadType, double length) throws IllegalArgumentException {
+		if(roadName == null || roadType == null || length < 0)
+			throw new IllegalArgumentException("addEdge: road name and type must be set and length must not be negative");
+		if(!isVertex(to))
+			throw new IllegalArgumentException("addEdge: end point " + to + " is not in the graph");
+		if(!isVertex(from))
+			throw new IllegalArgumentException("addEdge: start point " + from + " is not in the graph");
+		
+		// the arguments are valid, so the road is added: every road counts, even a parallel one
+		unfreeze();
 		IntersectionNode node = intersections.get(from);
-		if(node.addRoad(to, roadName, roadType, length))
+		if(node.addRoad(to, roadName, roadType, length)) {
 			countEdges++;
+			version++;
+		}
 	}
 	
-	/** Find the path */
-	private List<GeographicPoint> findGPPath(GeographicPoint start, GeographicPoint goal, HashMap<GeographicPoint, GeographicPoint> parentMap) {
-		if(parentMap.size() == 0)
-			return null;
+	/** check if location is an intersection, without unfreezing the graph */
+	private boolean isVertex(GeographicPoint location) {
+		if(intersections != null)
+			return intersections.containsKey(location);
+		return compactGraph.getId(location) >= 0;
+	}
+	
+	/** Get the version of the graph, which changes whenever addVertex, addEdge or
+	 * updateWeights changes the graph or new road geometry or turns are set, so results of earlier
+	 * searches can be told apart from current ones.
+	 * @return A number that is the same for as long as the search results stay the same */
+	public long getVersion() {
+		return version;
+	}
+	
+	/** true if the searches find the shortest paths, false if they find the fastest paths */
+	public boolean isLengthCompare() {
+		return isLengthCompare;
+	}
+	
+	/** Freeze the graph into its compact form.
+	 * Call this once loading is finished; the searches do it on demand otherwise.
+	 * The intersection nodes are released until the next addVertex or addEdge.
+	 * @return The compact graph that the searches run against */
+	public synchronized CompactRoadGraph freeze() {
+		if(intersections != null) {
+			compactGraph = CompactRoadGraph.build(intersections);
+			intersections = null;
+			// cheap next to building the graph, and it lets the first queries fail fast
+			components = StronglyConnectedComponents.compute(compactGraph);
+		}
+		return compactGraph;
+	}
+	
+	/** rebuild the intersection nodes of a frozen graph */
+	private void unfreeze() {
+		if(intersections == null) {
+			intersections = compactGraph.toIntersections();
+			compactGraph = null;
+			hierarchy = null;
+			landmarks = null;
+			spatialIndex = null;
+			roadSnapper = null;
+			travelTimeProfiles = null;
+			fixedTravelTimes = null;
+			turnCosts = null;
+			profileCosts = null;
+			components = null;
+			weightChanges.clear();
+		}
+	}
+	
+	/** Remove the strongly connected components with fewer than minSize intersections,
+	 * such as the stubs of one-way roads cut at the border of a map, from which
+	 * most of the map can not be reached or which can not be reached from it.
+	 * The largest component is always kept. Like addEdge this changes the graph,
+	 * so the data prepared for it is dropped.
+	 * @param minSize The fewest intersections of a component that is kept
+	 * @return The number of intersections removed
+	 * @throws IllegalArgumentException If minSize is less than 1 */
+	public synchronized int pruneComponents(int minSize) throws IllegalArgumentException {
+		if(minSize < 1)
+			throw new IllegalArgumentException("pruneComponents: minSize must be at least 1");
+		CompactRoadGraph graph = freeze();
+		StronglyConnectedComponents current = getComponents(graph);
+		int largest = -1;
+		for(int c = 0; c < current.getNumComponents(); c++) {
+			if(largest < 0 || current.getSize(c) > current.getSize(largest))
+				largest = c;
+		}
 		
-		//int count = 1; // for test
-		LinkedList<GeographicPoint> result = new LinkedList<>();
-		GeographicPoint nextPoint = goal;
-		result.add(nextPoint);
-		while(nextPoint != null) {
-			//System.out.println(String.format("findGPPath %d: %s", count, nextPoint.toString()));  // for test
-			
-			if (nextPoint.equals(start)) {
-				//System.out.println(String.format("findGPPath %d points", count)); // for test
-				return result;
+		int n = graph.getNumVertices();
+		boolean[] isKept = new boolean[n];
+		int removed = 0;
+		for(int v = 0; v < n; v++) {
+			int c = current.getComponent(v);
+			isKept[v] = c == largest || current.getSize(c) >= minSize;
+			if(!isKept[v])
+				removed++;
+		}
+		if(removed == 0)
+			return 0;
+		
+		CompactRoadGraph pruned = graph.subgraph(isKept);
+		hierarchy = null;
+		landmarks = null;
+		spatialIndex = null;
+		roadSnapper = null;
+		travelTimeProfiles = null;
+		fixedTravelTimes = null;
+		turnCosts = null;
+		profileCosts = null;
+		weightChanges.clear();
+		components = StronglyConnectedComponents.compute(pruned);
+		compactGraph = pruned;
+		countEdges = pruned.getNumEdges();
+		version++;
+		return removed;
+	}
+	
+	/** get the number of strongly connected components of the roads, in which every
+	 * intersection can be reached from every other */
+	public int getNumComponents() {
+		return getComponents(getCompactGraph()).getNumComponents();
+	}
+	
+	/** get the components of graph, finding them if needed */
+	private StronglyConnectedComponents getComponents(CompactRoadGraph graph) {
+		StronglyConnectedComponents current = components;
+		// the components depend on the roads only, not on their costs
+		if(current == null || !current.getGraph().hasSameRoads(graph)) {
+			current = StronglyConnectedComponents.compute(graph);
+			components = current;
+		}
+		return current;
+	}
+	
+	/** check in constant time if the components of the roads rule out any path from start to goal */
+	private boolean isUnreachable(CompactRoadGraph graph, int start, int goal) {
+		return !getComponents(graph).mayReach(start, goal);
+	}
+	
+	/** Change the costs of roads at once, for example from incident and closure feeds.
+	 * The new costs are written to copies of the cost arrays of the compact graph,
+	 * which is then replaced: searches that already run finish on the costs they
+	 * started with, and no search waits for the update. Data that depends on the
+	 * costs is repaired rather than computed again where this is possible: the
+	 * landmarks stay valid unless a cost went down, in which case the tables that
+	 * a cheaper road undercuts are computed again in the background, the spatial
+	 * and road indexes do not depend on costs, the travel time profiles of the
+	 * changed roads give way to their new fixed times, and RouteCache checks its
+	 * paths one by one. The contraction hierarchy is built again in the background.
+	 * Until the new data is swapped in, the A-Star searches estimate by the straight
+	 * line and hierarchySearch runs a bidirectional Dijkstra search.
+	 * @param update The changes to apply
+	 * @return The number of roads whose costs changed
+	 * @throws IllegalArgumentException If the update names a road that is not in the graph;
+	 * 	the graph is not changed then */
+	public synchronized int updateWeights(WeightUpdate update) throws IllegalArgumentException {
+		CompactRoadGraph before = freeze();
+		double[] lengths = before.lengths.clone();
+		double[] times = before.times.clone();
+		for(WeightUpdate.Change change : update.getChanges()) {
+			int from = before.getId(change.from);
+			int to = before.getId(change.to);
+			boolean isFound = false;
+			for(int e = (from < 0) ? 0 : before.offsets[from]; from >= 0 && e < before.offsets[from + 1]; e++) {
+				if(before.targets[e] != to)
+					continue;
+				if(!Double.isNaN(change.length))
+					lengths[e] = change.length;
+				if(!Double.isNaN(change.time))
+					times[e] = change.time;
+				// a road closed in one cost is closed in the other as well, so no search uses it
+				if(lengths[e] == Double.POSITIVE_INFINITY || times[e] == Double.POSITIVE_INFINITY) {
+					lengths[e] = Double.POSITIVE_INFINITY;
+					times[e] = Double.POSITIVE_INFINITY;
+				}
+				isFound = true;
+			}
+			if(!isFound)
+				throw new IllegalArgumentException("updateWeights: no road from " + change.from + " to " + change.to);
+		}
+		
+		int count = 0;
+		int[] edges = new int[update.size()];
+		for(int e = 0; e < lengths.length; e++) {
+			if(lengths[e] != before.lengths[e] || times[e] != before.times[e]) {
+				if(count == edges.length)
+					edges = Arrays.copyOf(edges, 2 * count + 1);
+				edges[count++] = e;
 			}
-			//count++; // for test
-			
-			nextPoint = parentMap.get(nextPoint);
-			result.addFirst(nextPoint);
 		}
+		if(count == 0)
+			return 0;
+		edges = Arrays.copyOf(edges, count);
 		
-		return null;
+		CompactRoadGraph after = before.withWeights(lengths, times);
+		WeightChange change = new WeightChange(version, version + 1, before, after, edges);
+		// landmarks or a hierarchy of an older graph are being repaired, which catches up with this change
+		Landmarks currentLandmarks = landmarks;
+		if(currentLandmarks != null && currentLandmarks.getGraph() == before) {
+			if(change.isDecreased(isLengthCompare))
+				repairLandmarks(currentLandmarks, after);
+			else
+				landmarks = currentLandmarks.withGraph(after);
+		}
+		ContractionHierarchy currentHierarchy = hierarchy;
+		if(currentHierarchy != null && currentHierarchy.getGraph() == before)
+			rebuildContractionHierarchy(currentHierarchy, after);
+		TravelTimeProfiles profiles = travelTimeProfiles;
+		if(profiles != null)
+			travelTimeProfiles = profiles.withGraph(after, edges);
+		// publish the graph before the version, so a result tagged with the new version
+		// never comes from the old costs
+		compactGraph = after;
+		version++;
+		weightChanges.addLast(change);
+		if(weightChanges.size() > MAX_WEIGHT_CHANGES)
+			weightChanges.removeFirst();
+		return count;
+	}
+	
+	/** Repair stale landmarks for graph on the common pool and swap them in, unless they
+	 * were replaced in the meantime. If the costs changed again while the tables were
+	 * repaired, they are repaired again for the newest graph. */
+	private void repairLandmarks(Landmarks stale, CompactRoadGraph graph) {
+		ForkJoinPool.commonPool().execute(() -> {
+			Landmarks repaired = stale;
+			CompactRoadGraph target = graph;
+			while(true) {
+				repaired = repaired.repair(target);
+				synchronized(this) {
+					if(landmarks != stale)
+						return;
+					if(compactGraph == target) {
+						landmarks = repaired;
+						return;
+					}
+					target = compactGraph;
+				}
+			}
+		});
+	}
+	
+	/** Build the contraction hierarchy again for graph on the common pool and swap it in,
+	 * unless stale was replaced in the meantime. If the costs changed again while it was
+	 * built, it is built again for the newest graph. */
+	private void rebuildContractionHierarchy(ContractionHierarchy stale, CompactRoadGraph graph) {
+		ForkJoinPool.commonPool().execute(() -> {
+			CompactRoadGraph target = graph;
+			while(true) {
+				ContractionHierarchy rebuilt = ContractionHierarchy.build(target, isLengthCompare);
+				synchronized(this) {
+					if(hierarchy != stale)
+						return;
+					if(compactGraph == target) {
+						hierarchy = rebuilt;
+						return;
+					}
+					target = compactGraph;
+				}
+			}
+		});
+	}
+	
+	/** Get the cost changes that led from one version of the graph to another
+	 * @return The changes in order, or null if anything else changed the graph in between
+	 * 	or the changes are no longer kept */
+	synchronized List<WeightChange> getWeightChanges(long fromVersion, long toVersion) {
+		List<WeightChange> result = new ArrayList<WeightChange>();
+		long current = fromVersion;
+		for(WeightChange change : weightChanges) {
+			if(change.fromVersion == current) {
+				result.add(change);
+				current = change.toVersion;
+			}
+		}
+		return (current == toVersion) ? result : null;
+	}
+	
+	/** get the compact graph, freezing this graph if needed */
+	private CompactRoadGraph getCompactGraph() {
+		CompactRoadGraph graph = compactGraph;
+		return (graph != null) ? graph : freeze();
+	}
+	
+	/** Get the spatial index over the intersections, building it on the first call
+	 * @return The index for nearest intersection and box queries */
+	public SpatialIndex getSpatialIndex() {
+		return getSpatialIndex(getCompactGraph());
+	}
+	
+	/** get the spatial index over graph, building it if needed */
+	private SpatialIndex getSpatialIndex(CompactRoadGraph graph) {
+		SpatialIndex index = spatialIndex;
+		if(index == null || !index.getGraph().hasSameRoads(graph)) {
+			index = new SpatialIndex(graph);
+			spatialIndex = index;
+		}
+		return index;
+	}
+	
+	/** Find the intersection closest to a location
+	 * @param location Any location
+	 * @return location itself if it is an intersection, else the closest intersection, or null if the graph is empty */
+	public GeographicPoint snapToIntersection(GeographicPoint location) {
+		CompactRoadGraph graph = getCompactGraph();
+		int id = locate(graph, location);
+		return id < 0 ? null : graph.getLocation(id);
+	}
+	
+	/** id of location in graph, or of the intersection closest to it; -1 if location is null or the graph is empty */
+	private int locate(CompactRoadGraph graph, GeographicPoint location) {
+		if(location == null)
+			return -1;
+		int id = graph.getId(location);
+		return (id >= 0) ? id : getSpatialIndex(graph).nearestId(location.getX(), location.getY());
+	}
+
+	/** Set the geometry of the roads, used to snap locations onto the roads.
+	 * Without it every road is taken as the straight line between its intersections.
+	 * @param segments The road segments at every intersection, as filled in by GraphLoader.loadRoadMap */
+	public synchronized void setRoadGeometry(HashMap<GeographicPoint, HashSet<RoadSegment>> segments) {
+		roadGeometry = segments;
+		roadSnapper = null;
+		version++;
+	}
+	
+	/** Get the index over the roads, building it on the first call
+	 * @return The index for closest point on road queries */
+	public RoadSnapper getRoadSnapper() {
+		return getRoadSnapper(getCompactGraph());
+	}
+	
+	/** get the road index over graph, building it if needed */
+	private RoadSnapper getRoadSnapper(CompactRoadGraph graph) {
+		RoadSnapper snapper = roadSnapper;
+		if(snapper == null || !snapper.getGraph().hasSameRoads(graph)) {
+			HashMap<GeographicPoint, HashSet<RoadSegment>> segments;
+			synchronized(this) {
+				segments = roadGeometry;
+			}
+			snapper = new RoadSnapper(graph, segments);
+			roadSnapper = snapper;
+		}
+		return snapper;
+	}
+	
+	/** Find the best path with the current metric between the points on the roads closest to start and goal.
+	 * The route may begin and end part way along a road, so it is found between
+	 * the roads themselves rather than between their closest intersections.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The closest point on a road to start, the intersections passed and the
+	 * 	closest point on a road to goal, or null if there is no path */
+	public List<GeographicPoint> routeOnRoads(GeographicPoint start, GeographicPoint goal) {
+		return routeOnRoads(start, goal, null);
+	}
+	
+	/** Find the best path with the current metric between the points on the roads closest to start and goal.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param stats Receives the work of the search, or null
+	 * @return The closest point on a road to start, the intersections passed and the
+	 * 	closest point on a road to goal, or null if there is no path */
+	public List<GeographicPoint> routeOnRoads(GeographicPoint start, GeographicPoint goal, SearchStats stats) {
+		if (start == null || goal == null)
+			return null;
+		
+		CompactRoadGraph graph = getCompactGraph();
+		RoadSnapper snapper = getRoadSnapper(graph);
+		RoadSnapper.Snap startSnap = snapper.snap(start);
+		RoadSnapper.Snap goalSnap = snapper.snap(goal);
+		if(startSnap == null || goalSnap == null)
+			return null;
+		
+		double[] weights = isLengthCompare ? graph.lengths : graph.times;
+		SearchStats collected = startStats(stats);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		SearchContext context = searchContexts.acquire(graph.getNumVertices());
+		try {
+			context.stats = collected;
+			return snapper.route(context, weights, startSnap, goalSnap);
+		}
+		finally {
+			searchContexts.release(context);
+			finishStats(collected, started);
+		}
+	}
+
+	/** Find the path from start to goal with the given algorithm
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param algorithm The search to run
+	 * @param stats Receives the work of the search, or null
+	 * @return The path that the method of MapGraph for algorithm returns */
+	public List<GeographicPoint> route(GeographicPoint start, GeographicPoint goal, SearchAlgorithm algorithm,
+			SearchStats stats) {
+		return route(start, goal, algorithm, null, stats);
+	}
+
+	/** Find the path from start to goal with the given algorithm and the costs of a routing profile
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param algorithm The search to run; BFS, HIERARCHY and ROADS do not take a profile
+	 * @param profile The costs of the roads, or null for the costs of the graph
+	 * @param stats Receives the work of the search, or null
+	 * @return The path that the method of MapGraph for algorithm returns
+	 * @throws IllegalArgumentException If the algorithm does not take a profile */
+	public List<GeographicPoint> route(GeographicPoint start, GeographicPoint goal, SearchAlgorithm algorithm,
+			RoutingProfile profile, SearchStats stats) throws IllegalArgumentException {
+		Consumer<GeographicPoint> ignore = (x) -> {};
+		if(profile != null) {
+			if(start == null || goal == null)
+				return null;
+			switch(algorithm) {
+			case DIJKSTRA:
+				return search(start, goal, false, profile, ignore, stats);
+			case A_STAR:
+				return search(start, goal, true, profile, ignore, stats);
+			case BIDIRECTIONAL_DIJKSTRA:
+				return bidirectionalSearch(start, goal, false, profile, ignore, stats);
+			case BIDIRECTIONAL_A_STAR:
+				return bidirectionalSearch(start, goal, true, profile, ignore, stats);
+			case TURNS:
+				return turnAwareSearch(start, goal, true, profile, ignore, stats);
+			default:
+				throw new IllegalArgumentException("MapGraph: " + algorithm + " does not take a routing profile");
+			}
+		}
+		switch(algorithm) {
+		case BFS:
+			return bfs(start, goal, ignore, stats);
+		case DIJKSTRA:
+			return dijkstra(start, goal, ignore, stats);
+		case A_STAR:
+			return aStarSearch(start, goal, ignore, stats);
+		case BIDIRECTIONAL_DIJKSTRA:
+			return bidirectionalDijkstra(start, goal, ignore, stats);
+		case BIDIRECTIONAL_A_STAR:
+			return bidirectionalAStar(start, goal, ignore, stats);
+		case HIERARCHY:
+			return hierarchySearch(start, goal, ignore, stats);
+		case ROADS:
+			return routeOnRoads(start, goal, stats);
+		case TURNS:
+			return turnAwareSearch(start, goal, true, null, ignore, stats);
+		default:
+			throw new IllegalArgumentException("MapGraph: unknown algorithm " + algorithm);
+		}
 	}
 
 	/** Find the path from start to goal using breadth first search
@@ -115,51 +603,49 @@ public class MapGraph {
 	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
 	 * @return The list of intersections that form the shortest (unweighted) path from start to goal (including both start and goal). */
 	public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
+		return bfs(start, goal, nodeSearched, null);
+	}
+	
+	/** Find the path from start to goal using breadth first search
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
+	 * @param stats Receives the work of the search, or null
+	 * @return The list of intersections that form the shortest (unweighted) path from start to goal (including both start and goal). */
+	public List<GeographicPoint> bfs(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched,
+			SearchStats stats) {
 		// check variables
 		if (start == null || goal == null) {
 			System.out.println("bfs: Start or goal node is null!  No path exists.");
 			return null;
 		}
 		
-		// initialization
-		HashMap<GeographicPoint, GeographicPoint> parentMap = new HashMap<GeographicPoint, GeographicPoint>();
-        Queue<GeographicPoint> queue = new LinkedList<>();
-		HashSet<GeographicPoint> visited = new HashSet<GeographicPoint>();
-		
-		// breadth first search
-		boolean isFound = false;
-        queue.add(start);
-        visited.add(start);
-        while (!queue.isEmpty()) {
-        		GeographicPoint currentIntersection = queue.remove();
-        		if(currentIntersection.equals(goal)) {
-        			isFound = true;
-        			break;
-        		}
-        		
-        		IntersectionNode currentNode = intersections.get(currentIntersection);
-            if(currentNode != null) {
-            		// hook for visualization
-            		nodeSearched.accept(currentIntersection);
-                
-            		for(RoadNode r : currentNode.getNextRoads()) {
-                		if (!visited.contains(r.getEndLocation())) {
-                			visited.add(r.getEndLocation());
-	                		queue.add(r.getEndLocation());
-	                		parentMap.put(r.getEndLocation(), currentIntersection);
-                		}
-                }
-            }
-        }
-
-        // route not found
-		if (!isFound) {
+		CompactRoadGraph graph = getCompactGraph();
+		int startId = locate(graph, start);
+		int goalId = locate(graph, goal);
+		if(startId < 0 || goalId < 0 || isUnreachable(graph, startId, goalId)) {
 			System.out.println("bfs: No path exists");
 			return null;
 		}
+		
+		SearchStats collected = startStats(stats);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		SearchContext context = searchContexts.acquire(graph.getNumVertices());
+		try {
+			context.stats = collected;
+			// route not found
+			if (!GraphSearch.bfs(graph, context, startId, goalId, nodeSearched)) {
+				System.out.println("bfs: No path exists");
+				return null;
+			}
 
-		// if route found, reconstruct the path
-		return findGPPath(start, goal, parentMap);
+			// if route found, reconstruct the path
+			return graph.buildPath(startId, goalId, context);
+		}
+		finally {
+			searchContexts.release(context);
+			finishStats(collected, started);
+		}
 	}
 
 	/** Find the path from start to goal using Dijkstra's algorithm
@@ -178,82 +664,33 @@ public class MapGraph {
 	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
 	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
 	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
+		return dijkstra(start, goal, nodeSearched, null);
+	}
+	
+	/** Find the path from start to goal using Dijkstra's algorithm
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
+	 * @param stats Receives the work of the search, or null
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched,
+			SearchStats stats) {
 		// check variables
 		if (start == null || goal == null) {
 			System.out.println("dijkstra: Start or goal node is null!  No path exists.");
 			return null;
 		}
 		
-		// initialization 
-		HashMap<GeographicPoint, GeographicPoint> parentMap = new HashMap<>();
-		HashSet<IntersectionNode> visited = new HashSet<>();
-		PriorityQueue<IntersectionNode> queue = new PriorityQueue<>();
-		
-		// dijkstra search
-		boolean isFound = false;
-		IntersectionNode startNode = intersections.get(start);
-		startNode.setDistanceToStart(new Double(0));
-		startNode.setTimeToStart(new Double(0));
-		queue.add(startNode);
-        
-        while (!queue.isEmpty()) {
-        		IntersectionNode currentNode = queue.remove();
-    			if(!visited.contains(currentNode)) {
-    				visited.add(currentNode); 
-        			GeographicPoint currentPoint = currentNode.getLocation();
-        			
-    				//System.out.println(String.format("dijkstra visited: %s", currentNode.toString())); //for test
-        			// Hook for visualization
-    				nodeSearched.accept(currentPoint); 
-    				if(currentPoint.equals(goal)) {
-    					isFound = true;
-    					break;
-    				}
-
-            		for(RoadNode road : currentNode.getNextRoads()) {
-            			GeographicPoint endPoint = road.getEndLocation();
-            			IntersectionNode nextNode = intersections.get(endPoint);
-                		if (!visited.contains(nextNode)) {
-                			if(isLengthCompare) {
-                				// Length Compare
-	                			double actualDistance = nextNode.getDistanceToStart();
-	                			double predictedDistance = currentNode.getDistanceToStart() + road.getLength();
-	                			if(predictedDistance < actualDistance) {
-		                			nextNode.setDistanceToStart(predictedDistance);
-		
-			                		parentMap.put(endPoint, currentPoint);
-			                		queue.add(nextNode);
-	                			}
-                			}
-                			else {
-                				// Time Compare
-	                			double actualTime = nextNode.getTimeToStart();
-	                			double predictedTime = currentNode.getTimeToStart() + road.getRoadTime();
-	                			if(predictedTime < actualTime) {
-		                			nextNode.setTimeToStart(predictedTime);
-		
-			                		parentMap.put(endPoint, currentPoint);
-			                		queue.add(nextNode);
-	                			}
-                			}
-                		}
-                }
-    			}
-        }
-        
-        // clear distance
-        for(IntersectionNode v : visited)
-        		v.setDefaultDistance();
-
-        // route not found
-		//System.out.println(String.format("dijkstra visited %d points", visited.size())); // for test
-		if (!isFound) {
-			//System.out.println("dijkstra: No path exists"); // for test
-			return null;
-		}
+		return search(start, goal, false, null, nodeSearched, stats);
+	}
 
-		// if route found, reconstruct the path
-		return findGPPath(start, goal, parentMap);
+	/** Find the path from start to goal using Dijkstra's algorithm with the costs of a routing profile
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param profile The costs of the roads, for example RoutingProfile.BICYCLE
+	 * @return The list of intersections that form the best path for profile from start to goal (including both start and goal). */
+	public List<GeographicPoint> dijkstra(GeographicPoint start, GeographicPoint goal, RoutingProfile profile) {
+		return route(start, goal, SearchAlgorithm.DIJKSTRA, profile, null);
 	}
 
 	/** Find the path from start to goal using A-Star search
@@ -272,103 +709,857 @@ public class MapGraph {
 	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
 	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
 	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
+		return aStarSearch(start, goal, nodeSearched, null);
+	}
+	
+	/** Find the path from start to goal using A-Star search
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
+	 * @param stats Receives the work of the search, or null
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched,
+			SearchStats stats) {
 		// check variables
 		if (start == null || goal == null) {
 			//System.out.println("aStarSearch: Start or goal node is null!  No path exists."); // for test
 			return null;
 		}
 		
-		// initialization 
-		IntersectionNode startNode = intersections.get(start);
-		IntersectionNode endNode = intersections.get(goal);
-        HashMap<GeographicPoint,GeographicPoint> parentMap = new HashMap<>();
-        HashSet<IntersectionNode> visited = new HashSet<>();
-        HashMap<IntersectionNode, Double> distances = new HashMap<>();
-        Queue<IntersectionNode> priorityQueue = new PriorityQueue<>();
- 
-        //  A Star Search
-        startNode.setDistanceToStart(new Double(0));
-        startNode.setTimeToStart(new Double(0));
-        distances.put(startNode, new Double(0));
-        priorityQueue.add(startNode);
-        IntersectionNode currentNode = null;
- 
-        boolean isFound = false;
-        while (!priorityQueue.isEmpty()) {
-        		currentNode = priorityQueue.remove();
- 
-            if (!visited.contains(currentNode) ){
-                visited.add(currentNode);
-    				GeographicPoint currentPoint = currentNode.getLocation();
-    				
-    				//System.out.println(String.format("aStarSearch visited: %s", currentNode.toString())); // for test
-    				// Hook for visualization
-				nodeSearched.accept(currentPoint);
-				if(currentPoint.equals(goal)) {
-					isFound = true;
-					break;
-				}
- 
-                List<RoadNode> roads = currentNode.getNextRoads();
-                for (RoadNode road : roads) {
-	        			GeographicPoint endPoint = road.getEndLocation();
-	        			IntersectionNode nextNode = intersections.get(endPoint);
-	        			
-                    if (!visited.contains(nextNode) ){ 
-            				if(isLengthCompare) {
-	                        double predictedDistance = nextNode.getLocation().distance(endNode.getLocation());
-	                        double totalDistance = currentNode.getDistanceToStart() + road.getLength() + predictedDistance;
-	 
-	                        // check if distance smaller
-	                        Double currentTotalDistance = distances.get(nextNode);
-	                        if(currentTotalDistance == null)
-	                        		currentTotalDistance = Double.MAX_VALUE;
-	                        
-	                        if(totalDistance < currentTotalDistance ){
-	                            // update n's distance
-	                            distances.put(nextNode, totalDistance);
-	
-	                            nextNode.setDistanceToStart(totalDistance);
-	                            parentMap.put(endPoint, currentPoint);
-	                            priorityQueue.add(nextNode);
-	                        }
-            				}
-            				else {
-    	                        double predictedTime = nextNode.getLocation().distance(endNode.getLocation()) / 40 * 60;
-    	                        double totalTime = currentNode.getTimeToStart() + road.getRoadTime() + predictedTime;
-    	 
-    	                        // check if distance smaller
-    	                        Double currentTotalTime = distances.get(nextNode);
-    	                        if(currentTotalTime == null)
-    	                        		currentTotalTime = Double.MAX_VALUE;
-    	                        
-    	                        if(totalTime < currentTotalTime ){
-    	                            // update n's distance
-    	                            distances.put(nextNode, totalTime);
-    	
-    	                            nextNode.setTimeToStart(totalTime);
-    	                            parentMap.put(endPoint, currentPoint);
-    	                            priorityQueue.add(nextNode);
-    	                        }
-            				}
-                    }
-                }
-            }
-        }
-        
-        // clear distance
-        for(IntersectionNode v : visited)
-        		v.setDefaultDistance();
+		return search(start, goal, true, null, nodeSearched, stats);
+	}
+	
+	/** Find the path from start to goal using A-Star search with the costs of a routing profile
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param profile The costs of the roads, for example RoutingProfile.BICYCLE
+	 * @return The list of intersections that form the best path for profile from start to goal (including both start and goal). */
+	public List<GeographicPoint> aStarSearch(GeographicPoint start, GeographicPoint goal, RoutingProfile profile) {
+		return route(start, goal, SearchAlgorithm.A_STAR, profile, null);
+	}
+	
+	/** Find the path from start to goal using Dijkstra's algorithm from both ends at once
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> bidirectionalDijkstra(GeographicPoint start, GeographicPoint goal) {
+		// Dummy variable for calling the search algorithms
+        Consumer<GeographicPoint> temp = (x) -> {};
+        return bidirectionalDijkstra(start, goal, temp);
+	}
+	
+	/** Find the path from start to goal using Dijkstra's algorithm from both ends at once
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization, called for the intersections settled by either search.
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> bidirectionalDijkstra(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
+		return bidirectionalDijkstra(start, goal, nodeSearched, null);
+	}
+	
+	/** Find the path from start to goal using Dijkstra's algorithm from both ends at once
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization, called for the intersections settled by either search.
+	 * @param stats Receives the work of both searches, or null
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> bidirectionalDijkstra(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched,
+			SearchStats stats) {
+		if (start == null || goal == null)
+			return null;
+		
+		return bidirectionalSearch(start, goal, false, null, nodeSearched, stats);
+	}
+	
+	/** Find the path from start to goal using A-Star search from both ends at once
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> bidirectionalAStar(GeographicPoint start, GeographicPoint goal) {
+		// Dummy variable for calling the search algorithms
+        Consumer<GeographicPoint> temp = (x) -> {};
+        return bidirectionalAStar(start, goal, temp);
+	}
+	
+	/** Find the path from start to goal using A-Star search from both ends at once
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization, called for the intersections settled by either search.
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> bidirectionalAStar(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
+		return bidirectionalAStar(start, goal, nodeSearched, null);
+	}
+	
+	/** Find the path from start to goal using A-Star search from both ends at once
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization, called for the intersections settled by either search.
+	 * @param stats Receives the work of both searches, or null
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> bidirectionalAStar(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched,
+			SearchStats stats) {
+		if (start == null || goal == null)
+			return null;
+		
+		return bidirectionalSearch(start, goal, true, null, nodeSearched, stats);
+	}
+	
+	/** Choose landmarks for the A-Star searches of the current metric.
+	 * Without landmarks A-Star estimates the remaining cost by the straight line.
+	 * @param count The number of landmarks; 8 to 16 work well for city maps
+	 * @param selection How the landmarks are chosen
+	 * @return The new landmarks */
+	public synchronized Landmarks prepareLandmarks(int count, Landmarks.Selection selection) {
+		landmarks = Landmarks.build(freeze(), isLengthCompare, count, selection);
+		return landmarks;
+	}
+	
+	/** Read the landmarks for the A-Star searches from a file written by Landmarks.save
+	 * @param filename The file to read
+	 * @throws IOException If the file can not be read, or belongs to another graph or metric */
+	public synchronized void loadLandmarks(String filename) throws IOException {
+		Landmarks loaded = Landmarks.load(filename, freeze());
+		if(loaded.isLengthCompare() != isLengthCompare)
+			throw new IOException(filename + " was computed for a different metric");
+		landmarks = loaded;
+	}
+	
+	/** Check if the A-Star searches use landmarks */
+	public boolean hasLandmarks() {
+		return landmarks != null;
+	}
+
+	/** check if the landmarks and the contraction hierarchy, where there are any, belong to
+	 * the current costs, so that no repair or rebuild of updateWeights is still to be swapped in */
+	boolean isRepaired() {
+		CompactRoadGraph graph = compactGraph;
+		Landmarks currentLandmarks = landmarks;
+		ContractionHierarchy currentHierarchy = hierarchy;
+		return (currentLandmarks == null || currentLandmarks.getGraph() == graph)
+				&& (currentHierarchy == null || currentHierarchy.getGraph() == graph);
+	}
+	
+	/** get the distance estimate for an A-Star search on graph */
+	private DistanceEstimate getEstimate(CompactRoadGraph graph, int start, int goal) {
+		Landmarks current = landmarks;
+		if(current != null && current.getGraph() != graph)
+			current = null;
+		return new DistanceEstimate(graph, isLengthCompare, current, start, goal);
+	}
+	
+	/** get the cost of every road of graph for profile, or for the current metric if profile is null */
+	private double[] getWeights(CompactRoadGraph graph, RoutingProfile profile) {
+		if(profile == null)
+			return isLengthCompare ? graph.lengths : graph.times;
+		ProfileCosts compiled = profileCosts;
+		// the costs of a profile change with the costs of the roads
+		if(compiled == null || compiled.graph != graph) {
+			compiled = new ProfileCosts(graph);
+			profileCosts = compiled;
+		}
+		return compiled.costs.computeIfAbsent(profile, (p) -> p.compile(graph, isLengthCompare));
+	}
+	
+	/** Build the contraction hierarchy used by hierarchySearch for the current metric.
+	 * This takes much longer than a single search; save the result with
+	 * ContractionHierarchy.save and read it with loadContractionHierarchy next time.
+	 * @return The new hierarchy */
+	public synchronized ContractionHierarchy prepareContractionHierarchy() {
+		hierarchy = ContractionHierarchy.build(freeze(), isLengthCompare);
+		return hierarchy;
+	}
+	
+	/** Read the contraction hierarchy used by hierarchySearch from a file written by ContractionHierarchy.save
+	 * @param filename The file to read
+	 * @throws IOException If the file can not be read, or belongs to another graph or metric */
+	public synchronized void loadContractionHierarchy(String filename) throws IOException {
+		ContractionHierarchy loaded = ContractionHierarchy.load(filename, freeze());
+		if(loaded.isLengthCompare() != isLengthCompare)
+			throw new IOException(filename + " was built for a different metric");
+		hierarchy = loaded;
+	}
+	
+	/** get the contraction hierarchy of the current graph, preparing it on first use;
+	 * null while it is built again in the background for new costs */
+	private ContractionHierarchy getContractionHierarchy() {
+		ContractionHierarchy current = hierarchy;
+		if(current != null)
+			return (current.getGraph() == compactGraph) ? current : null;
+		return prepareMissingContractionHierarchy();
+	}
+
+	/** build the contraction hierarchy unless a thread that held the lock before built it */
+	private synchronized ContractionHierarchy prepareMissingContractionHierarchy() {
+		CompactRoadGraph graph = freeze();
+		ContractionHierarchy current = hierarchy;
+		if(current == null) {
+			current = ContractionHierarchy.build(graph, isLengthCompare);
+			hierarchy = current;
+		}
+		return (current.getGraph() == graph) ? current : null;
+	}
+	
+	/** Read the travel time profiles of the roads, used by the time dependent searches.
+	 * @param filename A profile file in the format described in TravelTimeProfiles */
+	public synchronized void loadTravelTimeProfiles(String filename) throws IOException {
+		travelTimeProfiles = TravelTimeProfiles.load(filename, freeze());
+	}
+	
+	/** Get the travel time profiles of the roads
+	 * @return The profiles, without any profile if none were loaded */
+	public TravelTimeProfiles getTravelTimeProfiles() {
+		return getTravelTimeProfiles(getCompactGraph());
+	}
+	
+	/** get the profiles of graph, fixed travel times if none were loaded */
+	private TravelTimeProfiles getTravelTimeProfiles(CompactRoadGraph graph) {
+		TravelTimeProfiles profiles = travelTimeProfiles;
+		if(profiles != null && profiles.getGraph() == graph)
+			return profiles;
+		// updateWeights moved the profiles to other costs while this search held the graph
+		// before them; move them for this search only, so the loaded profiles are kept
+		if(profiles != null && profiles.getGraph().hasSameRoads(graph))
+			return profiles.withGraph(graph);
+		TravelTimeProfiles fixed = fixedTravelTimes;
+		if(fixed == null || fixed.getGraph() != graph) {
+			fixed = TravelTimeProfiles.none(graph);
+			fixedTravelTimes = fixed;
+		}
+		return fixed;
+	}
+	
+	/** Find the fastest path from start to goal when leaving at a time of the day, using Dijkstra's algorithm
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param departure The departure time in minutes after midnight
+	 * @return The list of intersections that form the fastest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> timeDependentDijkstra(GeographicPoint start, GeographicPoint goal, double departure) {
+		Consumer<GeographicPoint> temp = (x) -> {};
+		return timeDependentSearch(start, goal, departure, false, temp);
+	}
+	
+	/** Find the fastest path from start to goal when leaving at a time of the day, using Dijkstra's algorithm
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param departure The departure time in minutes after midnight
+	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
+	 * @return The list of intersections that form the fastest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> timeDependentDijkstra(GeographicPoint start, GeographicPoint goal, double departure,
+			Consumer<GeographicPoint> nodeSearched) {
+		return timeDependentSearch(start, goal, departure, false, nodeSearched);
+	}
+	
+	/** Find the fastest path from start to goal when leaving at a time of the day, using A-Star search
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param departure The departure time in minutes after midnight
+	 * @return The list of intersections that form the fastest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> timeDependentAStar(GeographicPoint start, GeographicPoint goal, double departure) {
+		Consumer<GeographicPoint> temp = (x) -> {};
+		return timeDependentSearch(start, goal, departure, true, temp);
+	}
+	
+	/** Find the fastest path from start to goal when leaving at a time of the day, using A-Star search
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param departure The departure time in minutes after midnight
+	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
+	 * @return The list of intersections that form the fastest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> timeDependentAStar(GeographicPoint start, GeographicPoint goal, double departure,
+			Consumer<GeographicPoint> nodeSearched) {
+		return timeDependentSearch(start, goal, departure, true, nodeSearched);
+	}
+	
+	/** run a time dependent Dijkstra or A-Star search on the compact graph */
+	private List<GeographicPoint> timeDependentSearch(GeographicPoint start, GeographicPoint goal, double departure,
+			boolean isAStar, Consumer<GeographicPoint> nodeSearched) {
+		if(Double.isNaN(departure) || Double.isInfinite(departure))
+			throw new IllegalArgumentException("MapGraph: departure must be a finite time");
+		if (start == null || goal == null)
+			return null;
+		
+		CompactRoadGraph graph = getCompactGraph();
+		int startId = locate(graph, start);
+		int goalId = locate(graph, goal);
+		if(startId < 0 || goalId < 0 || isUnreachable(graph, startId, goalId))
+			return null;
+		
+		TravelTimeProfiles profiles = getTravelTimeProfiles(graph);
+		SearchStats collected = startStats(null);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		SearchContext context = searchContexts.acquire(graph.getNumVertices());
+		try {
+			context.stats = collected;
+			if (!GraphSearch.timeDependent(graph, context, profiles, isAStar, departure, startId, goalId, nodeSearched))
+				return null;
+			return graph.buildPath(startId, goalId, context);
+		}
+		finally {
+			searchContexts.release(context);
+			finishStats(collected, started);
+		}
+	}
+	
+	/** Read the turn restrictions and turn costs used by the turn aware searches.
+	 * @param filename A turn file in the format described in TurnCosts */
+	public synchronized void loadTurnCosts(String filename) throws IOException {
+		turnCosts = TurnCosts.load(filename, freeze());
+		// routes found before may cross a turn that is now restricted or costs more
+		version++;
+	}
+	
+	/** Get the turn restrictions and turn costs of the roads
+	 * @return The turns, without any rule if none were loaded */
+	public TurnCosts getTurnCosts() {
+		return getTurnCosts(getCompactGraph());
+	}
+	
+	/** get the turns of graph, free turns if none were loaded */
+	private TurnCosts getTurnCosts(CompactRoadGraph graph) {
+		TurnCosts turns = turnCosts;
+		// turns depend on the roads only, not on their costs
+		if(turns == null || !turns.getGraph().hasSameRoads(graph)) {
+			turns = TurnCosts.none(graph);
+			turnCosts = turns;
+		}
+		return turns;
+	}
+	
+	/** Find the best path from start to goal with Dijkstra's algorithm, keeping to the turn
+	 * restrictions and, when finding the fastest path, adding the turn costs
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The list of intersections that form the best path from start to goal (including
+	 * 	both start and goal); an intersection may appear twice where a turn was not allowed. */
+	public List<GeographicPoint> turnAwareDijkstra(GeographicPoint start, GeographicPoint goal) {
+		Consumer<GeographicPoint> temp = (x) -> {};
+		return turnAwareSearch(start, goal, false, null, temp, null);
+	}
+	
+	/** Find the best path from start to goal with Dijkstra's algorithm, keeping to the turn
+	 * restrictions and, when finding the fastest path, adding the turn costs
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
+	 * @return The list of intersections that form the best path from start to goal (including
+	 * 	both start and goal); an intersection may appear twice where a turn was not allowed. */
+	public List<GeographicPoint> turnAwareDijkstra(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return turnAwareSearch(start, goal, false, null, nodeSearched, null);
+	}
+	
+	/** Find the best path from start to goal with A-Star search, keeping to the turn
+	 * restrictions and, when finding the fastest path, adding the turn costs
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The list of intersections that form the best path from start to goal (including
+	 * 	both start and goal); an intersection may appear twice where a turn was not allowed. */
+	public List<GeographicPoint> turnAwareAStar(GeographicPoint start, GeographicPoint goal) {
+		Consumer<GeographicPoint> temp = (x) -> {};
+		return turnAwareSearch(start, goal, true, null, temp, null);
+	}
+	
+	/** Find the best path from start to goal with A-Star search, keeping to the turn
+	 * restrictions and, when finding the fastest path, adding the turn costs
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization.  See assignment instructions for how to use it.
+	 * @return The list of intersections that form the best path from start to goal (including
+	 * 	both start and goal); an intersection may appear twice where a turn was not allowed. */
+	public List<GeographicPoint> turnAwareAStar(GeographicPoint start, GeographicPoint goal,
+			Consumer<GeographicPoint> nodeSearched) {
+		return turnAwareSearch(start, goal, true, null, nodeSearched, null);
+	}
+	
+	/** run an edge based Dijkstra or A-Star search on the compact graph */
+	private List<GeographicPoint> turnAwareSearch(GeographicPoint start, GeographicPoint goal, boolean isAStar,
+			RoutingProfile profile, Consumer<GeographicPoint> nodeSearched, SearchStats stats) {
+		if (start == null || goal == null)
+			return null;
+		
+		CompactRoadGraph graph = getCompactGraph();
+		int startId = locate(graph, start);
+		int goalId = locate(graph, goal);
+		if(startId < 0 || goalId < 0 || isUnreachable(graph, startId, goalId))
+			return null;
+		if(startId == goalId)
+			return new ArrayList<GeographicPoint>(Collections.singletonList(graph.points[startId]));
+		
+		double[] weights = getWeights(graph, profile);
+		TurnCosts turns = getTurnCosts(graph);
+		SearchStats collected = startStats(stats);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		// the search reaches roads, so its context holds one entry per road
+		SearchContext context = searchContexts.acquire(graph.getNumEdges());
+		try {
+			context.stats = collected;
+			DistanceEstimate estimate = isAStar ? getEstimate(graph, startId, goalId) : null;
+			int last = GraphSearch.edgeBased(graph, context, weights, turns, !isLengthCompare, estimate, startId, goalId,
+					nodeSearched);
+			if(last < 0)
+				return null;
+			return graph.buildEdgePath(last, context);
+		}
+		finally {
+			searchContexts.release(context);
+			finishStats(collected, started);
+		}
+	}
+	
+	/** Check if hierarchySearch can run without preparing a contraction hierarchy first */
+	public boolean hasContractionHierarchy() {
+		return hierarchy != null;
+	}
+	
+	/** Find the path from start to goal using the contraction hierarchy
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> hierarchySearch(GeographicPoint start, GeographicPoint goal) {
+		// Dummy variable for calling the search algorithms
+        Consumer<GeographicPoint> temp = (x) -> {};
+        return hierarchySearch(start, goal, temp);
+	}
+	
+	/** Find the path from start to goal using the contraction hierarchy.
+	 * The hierarchy is prepared on the first call if it was not prepared or loaded before.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization, called for the intersections settled by either search.
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> hierarchySearch(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched) {
+		return hierarchySearch(start, goal, nodeSearched, null);
+	}
+	
+	/** Find the path from start to goal using the contraction hierarchy, preparing it first if needed.
+	 * While the hierarchy is built again after updateWeights, a bidirectional Dijkstra search runs instead.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param nodeSearched A hook for visualization, called for the intersections settled by either search.
+	 * @param stats Receives the work of both searches, or null
+	 * @return The list of intersections that form the shortest path from start to goal (including both start and goal). */
+	public List<GeographicPoint> hierarchySearch(GeographicPoint start, GeographicPoint goal, Consumer<GeographicPoint> nodeSearched,
+			SearchStats stats) {
+		if (start == null || goal == null)
+			return null;
+		
+		ContractionHierarchy current = getContractionHierarchy();
+		if(current == null)
+			return bidirectionalSearch(start, goal, false, null, nodeSearched, stats);
+		CompactRoadGraph graph = current.getGraph();
+		int startId = locate(graph, start);
+		int goalId = locate(graph, goal);
+		if(startId < 0 || goalId < 0 || isUnreachable(graph, startId, goalId))
+			return null;
+		
+		SearchStats collected = startStats(stats);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		SearchContext forward = searchContexts.acquire(graph.getNumVertices());
+		SearchContext backward = searchContexts.acquire(graph.getNumVertices());
+		try {
+			forward.stats = collected;
+			return current.search(forward, backward, startId, goalId, nodeSearched);
+		}
+		finally {
+			searchContexts.release(backward);
+			searchContexts.release(forward);
+			finishStats(collected, started);
+		}
+	}
+	
+	/** Find the cost from every source to every target with the current metric.
+	 * The rows are computed in parallel on the common fork/join pool.
+	 * @param sources The starting locations, each taken at its closest intersection
+	 * @param targets The goal locations, each taken at its closest intersection
+	 * @return matrix[i][j] is the length (km) or time (min) of the best path from
+	 * 	sources[i] to targets[j], or infinity if there is none or a location is null */
+	public double[][] distanceMatrix(List<GeographicPoint> sources, List<GeographicPoint> targets) {
+		return distanceMatrix(sources, targets, ForkJoinPool.commonPool());
+	}
+	
+	/** Find the cost from every source to every target with the current metric.
+	 * Each row is one search that stops when all targets are settled.
+	 * @param sources The starting locations, each taken at its closest intersection
+	 * @param targets The goal locations, each taken at its closest intersection
+	 * @param executor Computes the rows in parallel, or null to compute them on the calling thread
+	 * @return matrix[i][j] is the length (km) or time (min) of the best path from
+	 * 	sources[i] to targets[j], or infinity if there is none or a location is null */
+	public double[][] distanceMatrix(List<GeographicPoint> sources, List<GeographicPoint> targets, ExecutorService executor) {
+		return distanceMatrix(sources, targets, executor, null);
+	}
+	
+	/** Find the cost from every source to every target with the current metric.
+	 * Each row is one search that stops when all targets are settled.
+	 * @param sources The starting locations, each taken at its closest intersection
+	 * @param targets The goal locations, each taken at its closest intersection
+	 * @param executor Computes the rows in parallel, or null to compute them on the calling thread
+	 * @param stats Receives the work of all rows, or null
+	 * @return matrix[i][j] is the length (km) or time (min) of the best path from
+	 * 	sources[i] to targets[j], or infinity if there is none or a location is null */
+	public double[][] distanceMatrix(List<GeographicPoint> sources, List<GeographicPoint> targets, ExecutorService executor,
+			SearchStats stats) {
+		CompactRoadGraph graph = getCompactGraph();
+		double[] weights = isLengthCompare ? graph.lengths : graph.times;
+		DistanceMatrix matrix = new DistanceMatrix(graph, getComponents(graph), weights, getIds(graph, sources),
+				getIds(graph, targets));
+		SearchStats collected = startStats(stats);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		try {
+			return matrix.compute(searchContexts, executor, collected);
+		}
+		finally {
+			finishStats(collected, started);
+		}
+	}
+	
+	/** Find the cost from every source to every target with the bucket searches of the
+	 * contraction hierarchy, which is prepared first if needed. For large matrices
+	 * this is much faster than distanceMatrix, as every source and every target
+	 * is searched only once in the small upward part of the hierarchy. While the
+	 * hierarchy is built again after updateWeights, distanceMatrix runs instead.
+	 * @param sources The starting locations, each taken at its closest intersection
+	 * @param targets The goal locations, each taken at its closest intersection
+	 * @return matrix[i][j] is the length (km) or time (min) of the best path from
+	 * 	sources[i] to targets[j], or infinity if there is none or a location is null */
+	public double[][] bucketDistanceMatrix(List<GeographicPoint> sources, List<GeographicPoint> targets) {
+		ContractionHierarchy current = getContractionHierarchy();
+		if(current == null)
+			return distanceMatrix(sources, targets);
+		CompactRoadGraph graph = current.getGraph();
+		return current.manyToMany(searchContexts, getComponents(graph), getIds(graph, sources), getIds(graph, targets));
+	}
+	
+	/** Find every intersection that can be reached from start within a length.
+	 * @param start The starting location, taken at its closest intersection
+	 * @param length The budget in km
+	 * @return The reachable intersections with their lengths, or null if start is null or the graph is empty */
+	public Isochrone reachableWithinDistance(GeographicPoint start, double length) {
+		CompactRoadGraph graph = getCompactGraph();
+		return reachable(graph, graph.lengths, start, length);
+	}
+
+	/** Find every intersection that can be reached from start within a time.
+	 * @param start The starting location, taken at its closest intersection
+	 * @param time The budget in min
+	 * @return The reachable intersections with their times, or null if start is null or the graph is empty */
+	public Isochrone reachableWithinTime(GeographicPoint start, double time) {
+		CompactRoadGraph graph = getCompactGraph();
+		return reachable(graph, graph.times, start, time);
+	}
+
+	/** run a Dijkstra search bounded by budget on the compact graph */
+	private Isochrone reachable(CompactRoadGraph graph, double[] weights, GeographicPoint start, double budget) {
+		if(budget < 0 || Double.isNaN(budget))
+			throw new IllegalArgumentException("MapGraph: budget must not be negative");
+		int startId = locate(graph, start);
+		if(startId < 0)
+			return null;
+
+		SearchContext context = searchContexts.acquire(graph.getNumVertices());
+		try {
+			int settled = GraphSearch.bounded(graph, context, weights, startId, budget);
+			int[] ids = Arrays.copyOf(context.fifo, settled);
+			double[] costs = new double[settled];
+			for(int i = 0; i < settled; i++)
+				costs[i] = context.getDistance(ids[i]);
+			return new Isochrone(graph, weights, budget, ids, costs);
+		}
+		finally {
+			searchContexts.release(context);
+		}
+	}
 
-        // route not found
-		//System.out.println(String.format("aStarSearch visited %d points", visited.size())); // for test
-		if (!isFound) {
-			//System.out.println("aStarSearch: No path exists"); // for test
+	/** get ids of the intersections closest to locations, -1 for null locations */
+	private int[] getIds(CompactRoadGraph graph, List<GeographicPoint> locations) {
+		int[] ids = new int[locations.size()];
+		int i = 0;
+		for(GeographicPoint location : locations)
+			ids[i++] = locate(graph, location);
+		return ids;
+	}
+	
+	/** Add the SearchStats of every following search to metrics, also of searches called without stats
+	 * @param metrics The totals to add to, or null to stop collecting */
+	public void setSearchMetrics(SearchMetrics metrics) {
+		searchMetrics = metrics;
+	}
+	
+	/** get the totals the searches add to, or null if they are not collected */
+	public SearchMetrics getSearchMetrics() {
+		return searchMetrics;
+	}
+	
+	/** the stats to count a search in: stats reset, new stats if only the metrics want them, else null */
+	private SearchStats startStats(SearchStats stats) {
+		if(stats == null && searchMetrics != null)
+			return new SearchStats();
+		if(stats != null)
+			stats.reset();
+		return stats;
+	}
+	
+	/** set the time of a finished search and add it to the metrics */
+	private void finishStats(SearchStats stats, long started) {
+		if(stats == null)
+			return;
+		stats.nanos = System.nanoTime() - started;
+		SearchMetrics metrics = searchMetrics;
+		if(metrics != null)
+			metrics.record(stats);
+	}
+	
+	/** run Dijkstra or A-Star search on the compact graph with the current metric */
+	private List<GeographicPoint> search(GeographicPoint start, GeographicPoint goal, boolean isAStar, RoutingProfile profile,
+			Consumer<GeographicPoint> nodeSearched, SearchStats stats) {
+		CompactRoadGraph graph = getCompactGraph();
+		int startId = locate(graph, start);
+		int goalId = locate(graph, goal);
+		if(startId < 0 || goalId < 0 || isUnreachable(graph, startId, goalId))
 			return null;
+		
+		double[] weights = getWeights(graph, profile);
+		SearchStats collected = startStats(stats);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		SearchContext context = searchContexts.acquire(graph.getNumVertices());
+		try {
+			context.stats = collected;
+			// route not found
+			DistanceEstimate estimate = isAStar ? getEstimate(graph, startId, goalId) : null;
+			if (!GraphSearch.search(graph, context, weights, estimate, startId, goalId, nodeSearched))
+				return null;
+
+			// if route found, reconstruct the path
+			return graph.buildPath(startId, goalId, context);
 		}
+		finally {
+			searchContexts.release(context);
+			finishStats(collected, started);
+		}
+	}
+	
+	/** run bidirectional Dijkstra or A-Star search on the compact graph with the current metric */
+	private List<GeographicPoint> bidirectionalSearch(GeographicPoint start, GeographicPoint goal, boolean isAStar,
+			RoutingProfile profile, Consumer<GeographicPoint> nodeSearched, SearchStats stats) {
+		CompactRoadGraph graph = getCompactGraph();
+		int startId = locate(graph, start);
+		int goalId = locate(graph, goal);
+		if(startId < 0 || goalId < 0 || isUnreachable(graph, startId, goalId))
+			return null;
+		
+		double[] weights = getWeights(graph, profile);
+		SearchStats collected = startStats(stats);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		SearchContext forward = searchContexts.acquire(graph.getNumVertices());
+		SearchContext backward = searchContexts.acquire(graph.getNumVertices());
+		try {
+			forward.stats = collected;
+			DistanceEstimate estimate = isAStar ? getEstimate(graph, startId, goalId) : null;
+			int meeting = BidirectionalSearch.search(graph, forward, backward, weights, estimate, startId, goalId, nodeSearched);
+			
+			// route not found
+			if (meeting < 0)
+				return null;
 
-		// if route found, reconstruct the path
-		return findGPPath(start, goal, parentMap);
+			// if route found, join the two halves of the path
+			return graph.buildPath(startId, meeting, goalId, forward, backward);
+		}
+		finally {
+			searchContexts.release(backward);
+			searchContexts.release(forward);
+			finishStats(collected, started);
+		}
+	}
+	
+	/** Find the best path from start to goal and up to count - 1 meaningfully different alternatives.
+	 * The alternatives cost little more than the best path, share few of its roads and
+	 * make no needless detours; see AlternativeRoutes. Finding them takes a little more
+	 * work than one bidirectional search.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param count The most paths to return
+	 * @return The paths, each from start to goal, best first; null if there is no path
+	 * @throws IllegalArgumentException If count is less than 1 */
+	public List<List<GeographicPoint>> alternativeRoutes(GeographicPoint start, GeographicPoint goal, int count)
+			throws IllegalArgumentException {
+		return alternativeRoutes(start, goal, count, null);
+	}
+	
+	/** Find the best path from start to goal and up to count - 1 meaningfully different alternatives.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param count The most paths to return
+	 * @param stats Receives the work of the searches, or null
+	 * @return The paths, each from start to goal, best first; null if there is no path
+	 * @throws IllegalArgumentException If count is less than 1 */
+	public List<List<GeographicPoint>> alternativeRoutes(GeographicPoint start, GeographicPoint goal, int count,
+			SearchStats stats) throws IllegalArgumentException {
+		if(count < 1)
+			throw new IllegalArgumentException("alternativeRoutes: count must be at least 1");
+		if (start == null || goal == null)
+			return null;
+		
+		CompactRoadGraph graph = getCompactGraph();
+		int startId = locate(graph, start);
+		int goalId = locate(graph, goal);
+		if(startId < 0 || goalId < 0 || isUnreachable(graph, startId, goalId))
+			return null;
+		
+		double[] weights = isLengthCompare ? graph.lengths : graph.times;
+		SearchStats collected = startStats(stats);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		SearchContext forward = searchContexts.acquire(graph.getNumVertices());
+		SearchContext backward = searchContexts.acquire(graph.getNumVertices());
+		SearchContext local = searchContexts.acquire(graph.getNumVertices());
+		try {
+			forward.stats = collected;
+			List<int[]> routes = AlternativeRoutes.find(graph, forward, backward, local, weights, startId, goalId, count);
+			if(routes.isEmpty())
+				return null;
+			
+			List<List<GeographicPoint>> result = new ArrayList<List<GeographicPoint>>(routes.size());
+			for(int[] route : routes) {
+				List<GeographicPoint> path = new ArrayList<GeographicPoint>(route.length);
+				for(int v : route)
+					path.add(graph.points[v]);
+				result.add(path);
+			}
+			return result;
+		}
+		finally {
+			searchContexts.release(local);
+			searchContexts.release(backward);
+			searchContexts.release(forward);
+			finishStats(collected, started);
+		}
+	}
+	
+	/** Find the k shortest simple paths from start to goal with the current metric.
+	 * See KShortestPaths; the spur searches run on the calling thread.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param k The most paths to return
+	 * @return The paths with their lengths and times, best first; empty if there is no path
+	 * @throws IllegalArgumentException If k is less than 1 */
+	public List<RankedPath> kShortestPaths(GeographicPoint start, GeographicPoint goal, int k)
+			throws IllegalArgumentException {
+		return kShortestPaths(start, goal, k, null);
+	}
+	
+	/** Find the k shortest simple paths from start to goal with the current metric.
+	 * The paths leave each other at spur intersections; the spur searches of a path
+	 * are independent, so they can run in parallel.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param k The most paths to return
+	 * @param executor Runs the spur searches in parallel, or null to run them on the calling thread
+	 * @return The paths with their lengths and times, best first; empty if there is no path
+	 * @throws IllegalArgumentException If k is less than 1 */
+	public List<RankedPath> kShortestPaths(GeographicPoint start, GeographicPoint goal, int k, ExecutorService executor)
+			throws IllegalArgumentException {
+		if(k < 1)
+			throw new IllegalArgumentException("kShortestPaths: k must be at least 1");
+		CompactRoadGraph graph = getCompactGraph();
+		int startId = locate(graph, start);
+		int goalId = locate(graph, goal);
+		if(startId < 0 || goalId < 0 || isUnreachable(graph, startId, goalId))
+			return new ArrayList<RankedPath>();
+		
+		double[] weights = isLengthCompare ? graph.lengths : graph.times;
+		KShortestPaths paths = new KShortestPaths(graph, weights, startId, goalId, searchContexts);
+		return paths.find(k, searchContexts, executor);
+	}
+	
+	/** the labels kept per intersection by paretoRoutes(start, goal) */
+	private static final int PARETO_LABELS = 32;
+	
+	/** Find the routes from start to goal that trade length against time: no other
+	 * route is both shorter and faster than any of them. Either metric is used,
+	 * whatever the metric of the graph.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The routes with their lengths and times, shortest first; empty if there is no path */
+	public List<RankedPath> paretoRoutes(GeographicPoint start, GeographicPoint goal) {
+		return paretoRoutes(start, goal, PARETO_LABELS, null);
+	}
+	
+	/** Find the routes from start to goal that trade length against time: no other
+	 * route is both shorter and faster than any of them. Either metric is used,
+	 * whatever the metric of the graph.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param maxLabels The most partial routes kept per intersection; where there are
+	 * 	more trade-offs some routes may be missing
+	 * @param stats Receives the work of the search, counting partial routes as intersections, or null
+	 * @return The routes with their lengths and times, shortest first; empty if there is no path
+	 * @throws IllegalArgumentException If maxLabels is less than 1 */
+	public List<RankedPath> paretoRoutes(GeographicPoint start, GeographicPoint goal, int maxLabels, SearchStats stats)
+			throws IllegalArgumentException {
+		if(maxLabels < 1)
+			throw new IllegalArgumentException("paretoRoutes: maxLabels must be at least 1");
+		CompactRoadGraph graph = getCompactGraph();
+		int startId = locate(graph, start);
+		int goalId = locate(graph, goal);
+		if(startId < 0 || goalId < 0 || isUnreachable(graph, startId, goalId))
+			return new ArrayList<RankedPath>();
+		
+		SearchStats collected = startStats(stats);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		try {
+			ParetoRoutes routes = new ParetoRoutes(graph, startId, goalId, maxLabels, searchContexts);
+			return routes.find(collected);
+		}
+		finally {
+			finishStats(collected, started);
+		}
+	}
+	
+	/** Find the best route from start to goal for a blend of length and time:
+	 * every road costs lengthWeight * length (km) + timeWeight * time (min).
+	 * The route is one of paretoRoutes, found by a single A-Star search.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @return The list of intersections that form the best path from start to goal (including both start and goal).
+	 * @throws IllegalArgumentException If a weight is negative or both are 0 */
+	public List<GeographicPoint> weightedRoute(GeographicPoint start, GeographicPoint goal, double lengthWeight,
+			double timeWeight) throws IllegalArgumentException {
+		return weightedRoute(start, goal, lengthWeight, timeWeight, null);
+	}
+	
+	/** Find the best route from start to goal for a blend of length and time:
+	 * every road costs lengthWeight * length (km) + timeWeight * time (min).
+	 * The route is one of paretoRoutes, found by a single A-Star search.
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param stats Receives the work of the search, or null
+	 * @return The list of intersections that form the best path from start to goal (including both start and goal).
+	 * @throws IllegalArgumentException If a weight is negative or both are 0 */
+	public List<GeographicPoint> weightedRoute(GeographicPoint start, GeographicPoint goal, double lengthWeight,
+			double timeWeight, SearchStats stats) throws IllegalArgumentException {
+		if(!(lengthWeight >= 0) || !(timeWeight >= 0) || Double.isInfinite(lengthWeight) || Double.isInfinite(timeWeight)
+				|| lengthWeight + timeWeight == 0)
+			throw new IllegalArgumentException("weightedRoute: weights must not be negative, and not both 0");
+		if (start == null || goal == null)
+			return null;
+		
+		CompactRoadGraph graph = getCompactGraph();
+		int startId = locate(graph, start);
+		int goalId = locate(graph, goal);
+		if(startId < 0 || goalId < 0 || isUnreachable(graph, startId, goalId))
+			return null;
+		
+		SearchStats collected = startStats(stats);
+		long started = (collected != null) ? System.nanoTime() : 0;
+		SearchContext context = searchContexts.acquire(graph.getNumVertices());
+		try {
+			context.stats = collected;
+			if(!ParetoRoutes.weightedSum(graph, context, lengthWeight, timeWeight, true, startId, goalId))
+				return null;
+			return graph.buildPath(startId, goalId, context);
+		}
+		finally {
+			searchContexts.release(context);
+			finishStats(collected, started);
+		}
 	}
 /*	
 	public static void main(String[] args)
@@ -433,4 +1624,4 @@ public class MapGraph {
 		List<GeographicPoint> route2 = theMap.aStarSearch(start,end);
 	}
 */
-}
\ No newline at end of file
+}
@@ -0,0 +1,273 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** The routes between two intersections that are best in length or time or a
+ * trade-off of both: no other route is both shorter and faster. Every label
+ * is a partial route from start, with its length and time; an intersection
+ * keeps the labels that no other label at it dominates, at most maxLabels of
+ * them, so the search stays bounded on large maps at the price of possibly
+ * missing some trade-offs.
+ *
+ * The labels are settled in the order of a weighted sum of their length and
+ * time plus the exact remaining length and time to goal, which come from a
+ * backward search per metric. A label that dominates another has a smaller
+ * key, so a settled label is never dominated later, and a label is dropped
+ * as soon as it can not end better than a route already found to goal.
+ * The weighted sum search is the fast path for a single blended route. */
+final class ParetoRoutes {
+	private final CompactRoadGraph graph;
+	private final int start;
+	private final int goal;
+	private final int maxLabels;
+	/** km per min at the highest speed, so both parts of a key have the same weight */
+	private final double timeScale;
+	private final double[] lengthToGoal;
+	private final double[] timeToGoal;
+
+	/** the labels, by id */
+	private double[] lengths = new double[1024];
+	private double[] times = new double[1024];
+	private int[] vertices = new int[1024];
+	private int[] parents = new int[1024];
+	private boolean[] isDominated = new boolean[1024];
+	private int labelCount;
+	/** ids of the labels at each intersection, null where there are none */
+	private final int[][] bags;
+	private final int[] bagSizes;
+	/** queued label ids as a binary heap on keys */
+	private int[] heap = new int[1024];
+	private double[] keys = new double[1024];
+	private int heapSize;
+
+	/** Compute the remaining length and time to goal from every intersection */
+	ParetoRoutes(CompactRoadGraph graph, int start, int goal, int maxLabels, SearchContextPool contexts) {
+		this.graph = graph;
+		this.start = start;
+		this.goal = goal;
+		this.maxLabels = maxLabels;
+		this.timeScale = (graph.maxSpeed > 0 && graph.maxSpeed < Double.POSITIVE_INFINITY) ? graph.maxSpeed / 60 : 1;
+		int n = graph.getNumVertices();
+		lengthToGoal = new double[n];
+		timeToGoal = new double[n];
+		bags = new int[n][];
+		bagSizes = new int[n];
+		SearchContext context = contexts.acquire(n);
+		try {
+			GraphSearch.allDistances(graph, context, graph.lengths, goal, true, lengthToGoal, null);
+			context.reset(n);
+			GraphSearch.allDistances(graph, context, graph.times, goal, true, timeToGoal, null);
+		}
+		finally {
+			contexts.release(context);
+		}
+	}
+
+	/** Find the routes that no other route dominates
+	 * @param stats Receives the labels settled, relaxed and queued, or null
+	 * @return The routes, shortest first and so fastest last; empty if goal can not be reached */
+	List<RankedPath> find(SearchStats stats) {
+		List<RankedPath> routes = new ArrayList<RankedPath>();
+		if(lengthToGoal[start] == Double.POSITIVE_INFINITY)
+			return routes;
+
+		// the labels settled at goal, in the order of their keys
+		List<Integer> front = new ArrayList<Integer>();
+		add(start, 0, 0, -1, front, stats);
+		while(heapSize > 0) {
+			int label = poll();
+			if(stats != null)
+				stats.popped(isDominated[label]);
+			if(isDominated[label])
+				continue;
+			if(stats != null)
+				stats.settled++;
+
+			int current = vertices[label];
+			if(current == goal) {
+				front.add(label);
+				continue;
+			}
+			for(int e = graph.offsets[current]; e < graph.offsets[current + 1]; e++) {
+				if(stats != null)
+					stats.relaxed++;
+				add(graph.targets[e], lengths[label] + graph.lengths[e], times[label] + graph.times[e], label, front, stats);
+			}
+		}
+
+		for(int label : front)
+			routes.add(toRanked(label));
+		routes.sort((a, b) -> Double.compare(a.getLength(), b.getLength()));
+		return routes;
+	}
+
+	/** queue a label at v unless a label at v or a route to goal dominates it */
+	private void add(int v, double length, double time, int parent, List<Integer> front, SearchStats stats) {
+		double lengthBound = length + lengthToGoal[v];
+		double timeBound = time + timeToGoal[v];
+		// goal can not be reached from v, or a road on the way is closed
+		if(lengthBound == Double.POSITIVE_INFINITY || timeBound == Double.POSITIVE_INFINITY)
+			return;
+		for(int label : front) {
+			if(lengths[label] <= lengthBound && times[label] <= timeBound)
+				return;
+		}
+
+		int[] bag = bags[v];
+		int size = bagSizes[v];
+		for(int i = 0; i < size; i++) {
+			if(lengths[bag[i]] <= length && times[bag[i]] <= time)
+				return;
+		}
+		// drop the labels the new one dominates; those are not settled yet
+		int kept = 0;
+		for(int i = 0; i < size; i++) {
+			if(length <= lengths[bag[i]] && time <= times[bag[i]])
+				isDominated[bag[i]] = true;
+			else
+				bag[kept++] = bag[i];
+		}
+		size = kept;
+		if(size >= maxLabels) {
+			bagSizes[v] = size;
+			return;
+		}
+		if(bag == null) {
+			bag = new int[Math.min(maxLabels, 4)];
+			bags[v] = bag;
+		}
+		else if(size == bag.length) {
+			bag = Arrays.copyOf(bag, Math.min(maxLabels, 2 * size));
+			bags[v] = bag;
+		}
+
+		int label = newLabel(v, length, time, parent);
+		bag[size] = label;
+		bagSizes[v] = size + 1;
+		push(label, lengthBound + timeScale * timeBound);
+		if(stats != null)
+			stats.pushed(heapSize);
+	}
+
+	private int newLabel(int v, double length, double time, int parent) {
+		if(labelCount == vertices.length) {
+			int capacity = 2 * labelCount;
+			lengths = Arrays.copyOf(lengths, capacity);
+			times = Arrays.copyOf(times, capacity);
+			vertices = Arrays.copyOf(vertices, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			isDominated = Arrays.copyOf(isDominated, capacity);
+		}
+		int label = labelCount++;
+		lengths[label] = length;
+		times[label] = time;
+		vertices[label] = v;
+		parents[label] = parent;
+		return label;
+	}
+
+	private void push(int label, double key) {
+		if(heapSize == heap.length) {
+			heap = Arrays.copyOf(heap, 2 * heapSize);
+			keys = Arrays.copyOf(keys, 2 * heapSize);
+		}
+		int i = heapSize++;
+		while(i > 0) {
+			int parent = (i - 1) / 2;
+			if(keys[parent] <= key)
+				break;
+			heap[i] = heap[parent];
+			keys[i] = keys[parent];
+			i = parent;
+		}
+		heap[i] = label;
+		keys[i] = key;
+	}
+
+	private int poll() {
+		int top = heap[0];
+		int last = heap[--heapSize];
+		double key = keys[heapSize];
+		int i = 0;
+		while(true) {
+			int child = 2 * i + 1;
+			if(child >= heapSize)
+				break;
+			if(child + 1 < heapSize && keys[child + 1] < keys[child])
+				child++;
+			if(key <= keys[child])
+				break;
+			heap[i] = heap[child];
+			keys[i] = keys[child];
+			i = child;
+		}
+		heap[i] = last;
+		keys[i] = key;
+		return top;
+	}
+
+	private RankedPath toRanked(int label) {
+		int count = 0;
+		for(int l = label; l >= 0; l = parents[l])
+			count++;
+		int[] path = new int[count];
+		for(int l = label; l >= 0; l = parents[l])
+			path[--count] = vertices[l];
+		return new RankedPath(graph, path, lengths[label], times[label]);
+	}
+
+	/** Dijkstra's algorithm (isAStar == false) or A-Star search on a weighted sum of length and time.
+	 * The costs of the roads are blended while relaxing them, so no cost array is built.
+	 * @param isAStar true to estimate the remaining cost by the straight line to goal
+	 * @return true if goal was reached */
+	static boolean weightedSum(CompactRoadGraph graph, SearchContext context, double lengthWeight, double timeWeight,
+			boolean isAStar, int start, int goal) {
+		VertexQueue queue = context.queue;
+		SearchStats stats = context.stats;
+		// km are bounded by the straight line, min by the straight line at the highest speed
+		double scale = 0;
+		if(isAStar)
+			scale = lengthWeight * graph.straightLineScale(true) + timeWeight * graph.straightLineScale(false);
+
+		context.reach(start, 0, -1);
+		queue.push(start, 0);
+		if(stats != null)
+			stats.pushed(1);
+		while(!queue.isEmpty()) {
+			int current = queue.poll();
+			boolean isStale = context.isSettled(current);
+			if(stats != null)
+				stats.popped(isStale);
+			if(isStale)
+				continue;
+			context.settle(current);
+			if(stats != null)
+				stats.settled++;
+			if(current == goal)
+				return true;
+
+			double currentDistance = context.getDistance(current);
+			for(int e = graph.offsets[current]; e < graph.offsets[current + 1]; e++) {
+				int next = graph.targets[e];
+				if(stats != null)
+					stats.relaxed++;
+				if(context.isSettled(next))
+					continue;
+				double cost = lengthWeight * graph.lengths[e] + timeWeight * graph.times[e];
+				// a closed road, even with a weight of 0 for one of its costs
+				if(graph.isClosed(e))
+					continue;
+				double distance = currentDistance + cost;
+				if(distance < context.getDistance(next)) {
+					context.reach(next, distance, current);
+					queue.push(next, distance + scale * graph.points[next].distance(graph.points[goal]));
+					if(stats != null)
+						stats.pushed(queue.size());
+				}
+			}
+		}
+		return false;
+	}
+}
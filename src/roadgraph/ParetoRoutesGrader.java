@@ -0,0 +1,126 @@
+/** Grader for the routes that trade length against time.
+ * Checks that paretoRoutes starts with the shortest and ends with the fastest
+ * path of dijkstra, that none of its routes dominates another, and that
+ * weightedRoute with all weight on one metric finds the best path in it. */
+package roadgraph;
+
+import java.util.List;
+
+import util.GraphLoader;
+import geography.*;
+
+public class ParetoRoutesGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 6;
+    private static final int QUERIES = 20;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        ParetoRoutesGrader grader = new ParetoRoutesGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Find the trade-offs and the routes of one metric on one map.
+     * @param i The number of the first of the two tests
+     * @param file The map file to read from
+     * @param desc A description of the map */
+    public void runTest(int i, String file, String desc) throws Exception {
+        // the same map with either metric, for the best path of dijkstra in each
+        MapGraph lengthGraph = new MapGraph(true);
+        MapGraph timeGraph = new MapGraph(false);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, lengthGraph);
+        GraphLoader.loadRoadMap("data/maps/" + file, timeGraph);
+        GraderFixture fixture = new GraderFixture(lengthGraph, i, QUERIES);
+        double[] shortest = fixture.dijkstraCosts(lengthGraph, true);
+        double[] fastest = fixture.dijkstraCosts(timeGraph, false);
+
+        feedback += appendFeedback(i, "Finding the routes that trade length against time for " + QUERIES + " queries");
+        int wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            List<RankedPath> routes = lengthGraph.paretoRoutes(fixture.starts[q], fixture.goals[q]);
+            if (routes.isEmpty()) {
+                if (shortest[q] != Double.POSITIVE_INFINITY)
+                    wrong++;
+                continue;
+            }
+            RankedPath first = routes.get(0);
+            RankedPath last = routes.get(routes.size() - 1);
+            boolean isWrong = !GraderFixture.isSame(shortest[q], first.getLength())
+                    || !GraderFixture.isSame(fastest[q], last.getTime());
+            for (RankedPath route : routes) {
+                List<GeographicPoint> points = route.getPoints();
+                isWrong |= !points.get(0).equals(fixture.starts[q]) || !points.get(points.size() - 1).equals(fixture.goals[q])
+                        || GraderFixture.pathCost(lengthGraph, points, true) == Double.POSITIVE_INFINITY;
+                for (RankedPath other : routes)
+                    isWrong |= dominates(route, other);
+            }
+            if (isWrong)
+                wrong++;
+        }
+        judge(wrong, "queries did not go from the shortest to the fastest path, or had a route dominated by another");
+
+        feedback += appendFeedback(i + 1, "Finding the routes with all weight on length, then on time, for " + QUERIES + " queries");
+        wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            List<GeographicPoint> byLength = lengthGraph.weightedRoute(fixture.starts[q], fixture.goals[q], 1, 0);
+            List<GeographicPoint> byTime = lengthGraph.weightedRoute(fixture.starts[q], fixture.goals[q], 0, 1);
+            if (!GraderFixture.isSame(shortest[q], GraderFixture.pathCost(lengthGraph, byLength, true))
+                    || !GraderFixture.isSame(fastest[q], GraderFixture.pathCost(timeGraph, byTime, false)))
+                wrong++;
+        }
+        judge(wrong, "queries did not find the shortest or the fastest path of dijkstra");
+    }
+
+    /** check if a is no longer and no slower than b, and shorter or faster */
+    private static boolean dominates(RankedPath a, RankedPath b) {
+        return a.getLength() <= b.getLength() && a.getTime() <= b.getTime()
+                && (a.getLength() < b.getLength() || a.getTime() < b.getTime());
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, String problem) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " " + problem + ".";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD");
+
+            runTest(3, "new_york.map", "NEW YORK MAP: Manhattan grid");
+
+            runTest(5, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego");
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,125 @@
+/** Compares the priority queues of the Dijkstra search on the bundled maps.
+ * The lazy PriorityQueue that the searches used before, the indexed 4-ary
+ * heap and the radix heap each run a Dijkstra search from every intersection,
+ * first for warm-up and then measured. The distances of every queue are
+ * checked against those of the 4-ary heap. */
+package roadgraph;
+
+import java.util.PriorityQueue;
+
+import util.GraphLoader;
+
+public class QueueBenchmark {
+	private static final int WARMUP = 5;
+	private static final int ROUNDS = 10;
+
+	/** The queue used before: duplicates on every improvement, compared through objects */
+	private static final class LazyQueue implements VertexQueue {
+		private static final class Entry implements Comparable<Entry> {
+			final int vertex;
+			final double key;
+
+			Entry(int vertex, double key) {
+				this.vertex = vertex;
+				this.key = key;
+			}
+
+			@Override
+			public int compareTo(Entry o) {
+				return Double.compare(key, o.key);
+			}
+		}
+
+		private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+
+		@Override
+		public void reset(int n) {
+			queue.clear();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return queue.isEmpty();
+		}
+
+		@Override
+		public int size() {
+			return queue.size();
+		}
+
+		@Override
+		public void push(int v, double key) {
+			queue.add(new Entry(v, key));
+		}
+
+		@Override
+		public int peek() {
+			return queue.peek().vertex;
+		}
+
+		@Override
+		public double peekKey() {
+			return queue.peek().key;
+		}
+
+		@Override
+		public int poll() {
+			return queue.remove().vertex;
+		}
+	}
+
+	public static void main(String[] args) {
+		String[] maps = args.length > 0 ? args : new String[] { "data/maps/ucsd.map", "data/maps/hollywood_large.map",
+				"data/maps/new_york.map", "data/maps/san_diego.map" };
+		for(String map : maps) {
+			for(boolean isLengthCompare : new boolean[] { true, false }) {
+				MapGraph graph = new MapGraph(isLengthCompare);
+				GraphLoader.loadRoadMap(map, graph);
+				CompactRoadGraph compact = graph.freeze();
+				double[] weights = isLengthCompare ? compact.lengths : compact.times;
+				System.out.println(map + (isLengthCompare ? " (length)" : " (time)") + ": "
+						+ compact.getNumVertices() + " intersections, " + compact.getNumEdges() + " roads");
+
+				double[][] expected = sweep(compact, weights, new SearchContext(new IndexedDaryHeap()));
+				run("PriorityQueue ", compact, weights, new SearchContext(new LazyQueue()), expected);
+				run("4-ary heap    ", compact, weights, new SearchContext(new IndexedDaryHeap()), expected);
+				run("radix heap    ", compact, weights, new SearchContext(new RadixHeap()), expected);
+			}
+		}
+	}
+
+	/** measure sweeps with one queue and print the time per search */
+	private static void run(String name, CompactRoadGraph graph, double[] weights, SearchContext context,
+			double[][] expected) {
+		for(int i = 0; i < WARMUP; i++)
+			sweep(graph, weights, context);
+
+		long start = System.nanoTime();
+		double[][] distances = null;
+		for(int i = 0; i < ROUNDS; i++)
+			distances = sweep(graph, weights, context);
+		long elapsed = System.nanoTime() - start;
+
+		double difference = 0;
+		for(int s = 0; s < distances.length; s++) {
+			for(int v = 0; v < distances[s].length; v++) {
+				if(distances[s][v] != expected[s][v])
+					difference = Math.max(difference, Math.abs(distances[s][v] - expected[s][v]));
+			}
+		}
+		int searches = ROUNDS * graph.getNumVertices();
+		System.out.printf("  %s %8.1f us/search   largest difference %.2e%n", name, elapsed / 1000.0 / searches,
+				difference);
+	}
+
+	/** Dijkstra search from every intersection */
+	private static double[][] sweep(CompactRoadGraph graph, double[] weights, SearchContext context) {
+		int n = graph.getNumVertices();
+		double[][] distances = new double[n][n];
+		for(int source = 0; source < n; source++) {
+			context.reset(n);
+			GraphSearch.allDistances(graph, context, weights, source, false, distances[source], null);
+		}
+		return distances;
+	}
+}
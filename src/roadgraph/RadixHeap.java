@@ -0,0 +1,154 @@
+package roadgraph;
+
+import java.util.Arrays;
+
+/** A radix heap of intersection ids for monotone searches.
+ * Keys are rounded to integers of RESOLUTION units per km or min. Bucket b
+ * holds the keys that first differ from the last removed key in bit b-1,
+ * and bucket 0 the keys equal to it. Removing the minimum empties bucket 0
+ * and, when it is empty, redistributes the lowest non-empty bucket into
+ * lower buckets; every key moves down at most 64 times over the whole search.
+ *
+ * This only works while no key is pushed below the last removed key, which
+ * holds for Dijkstra and for A-Star with a consistent estimate. Keys a few
+ * units below it due to rounding are treated as equal to it. */
+final class RadixHeap implements VertexQueue {
+	/** integer key units per km or min */
+	static final double RESOLUTION = 1e6;
+	private static final int BUCKETS = 65;
+
+	private final int[][] buckets;
+	private final int[] bucketSizes;
+	/** last removed key, with the sign bit flipped so unsigned order is key order */
+	private long last;
+	private int size;
+
+	/** bucket of each intersection, or -1 if it is not queued */
+	private int[] bucketOf;
+	/** index of each intersection within its bucket */
+	private int[] slotOf;
+	private double[] keys;
+	private long[] radixKeys;
+
+	RadixHeap() {
+		buckets = new int[BUCKETS][];
+		bucketSizes = new int[BUCKETS];
+		for(int b = 0; b < BUCKETS; b++)
+			buckets[b] = new int[4];
+		bucketOf = new int[0];
+		slotOf = new int[0];
+		keys = new double[0];
+		radixKeys = new long[0];
+	}
+
+	@Override
+	public void reset(int n) {
+		if(bucketOf.length < n) {
+			bucketOf = new int[n];
+			slotOf = new int[n];
+			keys = new double[n];
+			radixKeys = new long[n];
+			Arrays.fill(bucketOf, -1);
+		}
+		else {
+			for(int b = 0; b < BUCKETS; b++) {
+				for(int i = 0; i < bucketSizes[b]; i++)
+					bucketOf[buckets[b][i]] = -1;
+			}
+		}
+		Arrays.fill(bucketSizes, 0);
+		last = 0;
+		size = 0;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void push(int v, double key) {
+		long radixKey = Math.round(key * RESOLUTION) ^ Long.MIN_VALUE;
+		if(Long.compareUnsigned(radixKey, last) < 0)
+			radixKey = last;
+
+		if(bucketOf[v] >= 0)
+			remove(v);
+		else
+			size++;
+		keys[v] = key;
+		radixKeys[v] = radixKey;
+		add(v, bucket(radixKey));
+	}
+
+	@Override
+	public int peek() {
+		fillFirstBucket();
+		return buckets[0][bucketSizes[0] - 1];
+	}
+
+	@Override
+	public double peekKey() {
+		return keys[peek()];
+	}
+
+	@Override
+	public int poll() {
+		fillFirstBucket();
+		int v = buckets[0][--bucketSizes[0]];
+		bucketOf[v] = -1;
+		size--;
+		return v;
+	}
+
+	private int bucket(long radixKey) {
+		return BUCKETS - 1 - Long.numberOfLeadingZeros(radixKey ^ last);
+	}
+
+	/** if bucket 0 is empty, advance last to the smallest key and redistribute its bucket */
+	private void fillFirstBucket() {
+		if(bucketSizes[0] > 0)
+			return;
+		int b = 1;
+		while(bucketSizes[b] == 0)
+			b++;
+
+		int[] bucket = buckets[b];
+		int count = bucketSizes[b];
+		long min = radixKeys[bucket[0]];
+		for(int i = 1; i < count; i++) {
+			if(Long.compareUnsigned(radixKeys[bucket[i]], min) < 0)
+				min = radixKeys[bucket[i]];
+		}
+		last = min;
+
+		// every key of bucket b now lands in a lower bucket, so b is not written while it is read
+		bucketSizes[b] = 0;
+		for(int i = 0; i < count; i++) {
+			int v = bucket[i];
+			add(v, bucket(radixKeys[v]));
+		}
+	}
+
+	private void add(int v, int b) {
+		if(bucketSizes[b] == buckets[b].length)
+			buckets[b] = Arrays.copyOf(buckets[b], buckets[b].length * 2);
+		bucketOf[v] = b;
+		slotOf[v] = bucketSizes[b];
+		buckets[b][bucketSizes[b]++] = v;
+	}
+
+	/** remove v from its bucket by moving the last entry of the bucket into its slot */
+	private void remove(int v) {
+		int b = bucketOf[v];
+		int moved = buckets[b][--bucketSizes[b]];
+		buckets[b][slotOf[v]] = moved;
+		slotOf[moved] = slotOf[v];
+		bucketOf[v] = -1;
+	}
+}
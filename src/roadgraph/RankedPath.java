@@ -0,0 +1,45 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import geography.GeographicPoint;
+
+/** One of the paths found by MapGraph.kShortestPaths or MapGraph.paretoRoutes, with its length and time.
+ * The k shortest paths come ranked by the metric of the graph, so the length
+ * of the paths of a fastest path search need not be in order, nor the reverse. */
+public final class RankedPath {
+	private final List<GeographicPoint> points;
+	private final double length;
+	private final double time;
+
+	RankedPath(CompactRoadGraph graph, int[] vertices, double length, double time) {
+		List<GeographicPoint> list = new ArrayList<GeographicPoint>(vertices.length);
+		for(int v : vertices)
+			list.add(graph.points[v]);
+		this.points = Collections.unmodifiableList(list);
+		this.length = length;
+		this.time = time;
+	}
+
+	/** get the intersections of the path, from start to goal */
+	public List<GeographicPoint> getPoints() {
+		return points;
+	}
+
+	/** get length of the path (km) */
+	public double getLength() {
+		return length;
+	}
+
+	/** get time of the path (min) */
+	public double getTime() {
+		return time;
+	}
+
+	@Override
+	public String toString() {
+		return points.size() + " intersections, " + length + " km, " + time + " min";
+	}
+}
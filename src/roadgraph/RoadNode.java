@@ -26,6 +26,12 @@ public class RoadNode {
 		this.calcTime();
 	}
 	
+	/** create a new road whose time (min) differs from the speed of its type, for example after an incident */
+	public RoadNode(GeographicPoint startLocation, GeographicPoint endLocation, String roadName, String roadType, double length, double time) {
+		this(startLocation, endLocation, roadName, roadType, length);
+		this.time = time;
+	}
+	
 	/** get road start point */
 	public GeographicPoint getStartLocation() {
 		return startLocation;
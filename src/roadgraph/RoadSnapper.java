@@ -0,0 +1,359 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import geography.GeographicPoint;
+import geography.RoadSegment;
+
+/** Finds the closest point on any road and routes from and to such points.
+ * Every road is a polyline: its RoadSegment geometry if there is one, else
+ * the straight line between its intersections. The pieces of all polylines
+ * are projected onto a plane around the center of the map (equirectangular,
+ * in km) and put into a uniform grid, each piece in every cell its bounding
+ * box touches. A lookup scans rings of cells around the query until no
+ * unseen cell can hold a closer piece.
+ *
+ * A route between two road positions adds a virtual start and goal on the
+ * roads: the start reaches the end of its road with the rest of the road's
+ * cost, and the goal is reached from the start of its road with the part
+ * of the cost up to it. One search then finds the best route. */
+public final class RoadSnapper {
+	private static final double KM_PER_DEGREE = 111.2;
+
+	private final CompactRoadGraph graph;
+	private final double originLat;
+	private final double originLon;
+	private final double lonScale;
+
+	/** projected ends of every piece, in km */
+	private final double[] x1;
+	private final double[] y1;
+	private final double[] x2;
+	private final double[] y2;
+	/** road of every piece */
+	private final int[] pieceEdge;
+	/** part of its road before the piece, and part of the piece, as fractions of the road */
+	private final double[] pieceStart;
+	private final double[] pieceShare;
+
+	private final double minX;
+	private final double minY;
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	private final int[] cellStart;
+	private final int[] cellPieces;
+
+	/** The roads that pass closest to a location, with the position on each */
+	public static final class Snap {
+		private final GeographicPoint location;
+		private final double distance;
+		final int[] edges;
+		final double[] fractions;
+
+		Snap(GeographicPoint location, double distance, int[] edges, double[] fractions) {
+			this.location = location;
+			this.distance = distance;
+			this.edges = edges;
+			this.fractions = fractions;
+		}
+
+		/** get the closest point on the roads */
+		public GeographicPoint getLocation() {
+			return location;
+		}
+
+		/** get the distance (km) from the query to the closest point */
+		public double getDistance() {
+			return distance;
+		}
+
+		/** get the number of roads through the closest point, two for a two-way road */
+		public int getNumRoads() {
+			return edges.length;
+		}
+	}
+
+	/** Index the roads of a graph.
+	 * @param segments The geometry of the roads by intersection, as filled in by
+	 * 	GraphLoader.loadRoadMap, or null to use straight lines */
+	public RoadSnapper(CompactRoadGraph graph, HashMap<GeographicPoint, HashSet<RoadSegment>> segments) {
+		this.graph = graph;
+		int n = graph.getNumVertices();
+		int m = graph.getNumEdges();
+
+		double latSum = 0;
+		double lonSum = 0;
+		for(GeographicPoint point : graph.points) {
+			latSum += point.getX();
+			lonSum += point.getY();
+		}
+		originLat = n > 0 ? latSum / n : 0;
+		originLon = n > 0 ? lonSum / n : 0;
+		lonScale = Math.cos(Math.toRadians(originLat)) * KM_PER_DEGREE;
+
+		// polylines of all roads
+		List<List<GeographicPoint>> polylines = new ArrayList<>(m);
+		int pieces = 0;
+		for(int e = 0; e < m; e++) {
+			List<GeographicPoint> polyline = getPolyline(e, segments);
+			polylines.add(polyline);
+			pieces += polyline.size() - 1;
+		}
+
+		x1 = new double[pieces];
+		y1 = new double[pieces];
+		x2 = new double[pieces];
+		y2 = new double[pieces];
+		pieceEdge = new int[pieces];
+		pieceStart = new double[pieces];
+		pieceShare = new double[pieces];
+		int piece = 0;
+		for(int e = 0; e < m; e++) {
+			List<GeographicPoint> polyline = polylines.get(e);
+			int first = piece;
+			double total = 0;
+			for(int i = 0; i + 1 < polyline.size(); i++) {
+				x1[piece] = projectX(polyline.get(i).getY());
+				y1[piece] = projectY(polyline.get(i).getX());
+				x2[piece] = projectX(polyline.get(i + 1).getY());
+				y2[piece] = projectY(polyline.get(i + 1).getX());
+				pieceEdge[piece] = e;
+				pieceStart[piece] = total;
+				pieceShare[piece] = Math.hypot(x2[piece] - x1[piece], y2[piece] - y1[piece]);
+				total += pieceShare[piece];
+				piece++;
+			}
+			for(int i = first; i < piece; i++) {
+				// a road of zero length is all start
+				pieceStart[i] = total > 0 ? pieceStart[i] / total : 0;
+				pieceShare[i] = total > 0 ? pieceShare[i] / total : 0;
+			}
+		}
+
+		// grid with about one piece per cell
+		double lowX = Double.POSITIVE_INFINITY;
+		double lowY = Double.POSITIVE_INFINITY;
+		double highX = Double.NEGATIVE_INFINITY;
+		double highY = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < pieces; i++) {
+			lowX = Math.min(lowX, Math.min(x1[i], x2[i]));
+			lowY = Math.min(lowY, Math.min(y1[i], y2[i]));
+			highX = Math.max(highX, Math.max(x1[i], x2[i]));
+			highY = Math.max(highY, Math.max(y1[i], y2[i]));
+		}
+		if(pieces == 0) {
+			lowX = lowY = highX = highY = 0;
+		}
+		minX = lowX;
+		minY = lowY;
+		double area = Math.max((highX - lowX) * (highY - lowY), 1e-12);
+		cellSize = Math.max(Math.sqrt(area / Math.max(pieces, 1)), 1e-6);
+		columns = (int)Math.min((highX - lowX) / cellSize, 1 << 12) + 1;
+		rows = (int)Math.min((highY - lowY) / cellSize, 1 << 12) + 1;
+
+		// cells in CSR form: count the pieces of every cell, then fill them in
+		cellStart = new int[columns * rows + 1];
+		for(int i = 0; i < pieces; i++) {
+			for(int c = column(Math.min(x1[i], x2[i])); c <= column(Math.max(x1[i], x2[i])); c++) {
+				for(int r = row(Math.min(y1[i], y2[i])); r <= row(Math.max(y1[i], y2[i])); r++)
+					cellStart[r * columns + c + 1]++;
+			}
+		}
+		for(int cell = 0; cell < columns * rows; cell++)
+			cellStart[cell + 1] += cellStart[cell];
+		cellPieces = new int[cellStart[columns * rows]];
+		int[] next = Arrays.copyOf(cellStart, columns * rows);
+		for(int i = 0; i < pieces; i++) {
+			for(int c = column(Math.min(x1[i], x2[i])); c <= column(Math.max(x1[i], x2[i])); c++) {
+				for(int r = row(Math.min(y1[i], y2[i])); r <= row(Math.max(y1[i], y2[i])); r++)
+					cellPieces[next[r * columns + c]++] = i;
+			}
+		}
+	}
+
+	/** get the graph these roads belong to */
+	public CompactRoadGraph getGraph() {
+		return graph;
+	}
+
+	/** Find the closest point on any road.
+	 * @return The closest point with the roads through it, or null if the graph has no roads */
+	public Snap snap(GeographicPoint location) {
+		if(x1.length == 0)
+			return null;
+		double x = projectX(location.getY());
+		double y = projectY(location.getX());
+		int column = column(x);
+		int row = row(y);
+
+		// the query projected onto the grid is at least as close to every cell as the query itself
+		double best = Double.POSITIVE_INFINITY;
+		int rings = Math.max(columns, rows);
+		double[] distances = new double[8];
+		int[] candidates = new int[8];
+		int count = 0;
+		for(int ring = 0; ring <= rings; ring++) {
+			for(int c = column - ring; c <= column + ring; c++) {
+				if(c < 0 || c >= columns)
+					continue;
+				boolean isEdgeColumn = (c == column - ring || c == column + ring);
+				for(int r = row - ring; r <= row + ring; r += isEdgeColumn ? 1 : 2 * ring) {
+					if(r >= 0 && r < rows) {
+						int cell = r * columns + c;
+						for(int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+							int piece = cellPieces[i];
+							double distance = distanceSquared(piece, x, y);
+							if(distance <= best * (1 + 1e-9) + 1e-18) {
+								if(distance < best)
+									best = distance;
+								if(count == candidates.length) {
+									candidates = Arrays.copyOf(candidates, count * 2);
+									distances = Arrays.copyOf(distances, count * 2);
+								}
+								candidates[count] = piece;
+								distances[count++] = distance;
+							}
+						}
+					}
+					if(ring == 0)
+						break;
+				}
+			}
+			double reach = ring * cellSize;
+			if(best <= reach * reach)
+				break;
+		}
+
+		// every road with a piece as close as the best one, once
+		int[] edges = new int[count];
+		double[] fractions = new double[count];
+		int roads = 0;
+		double limit = best * (1 + 1e-9) + 1e-18;
+		int bestPiece = -1;
+		for(int i = 0; i < count; i++) {
+			int piece = candidates[i];
+			if(distances[i] > limit)
+				continue;
+			if(bestPiece < 0 || distances[i] < distanceSquared(bestPiece, x, y))
+				bestPiece = piece;
+			int edge = pieceEdge[piece];
+			boolean isKnown = false;
+			for(int j = 0; j < roads; j++)
+				isKnown |= edges[j] == edge;
+			if(!isKnown) {
+				edges[roads] = edge;
+				fractions[roads++] = pieceStart[piece] + pieceShare[piece] * projection(piece, x, y);
+			}
+		}
+
+		double t = projection(bestPiece, x, y);
+		double snappedX = x1[bestPiece] + (x2[bestPiece] - x1[bestPiece]) * t;
+		double snappedY = y1[bestPiece] + (y2[bestPiece] - y1[bestPiece]) * t;
+		GeographicPoint snapped = new GeographicPoint(snappedY / KM_PER_DEGREE + originLat, snappedX / lonScale + originLon);
+		return new Snap(snapped, Math.sqrt(best), Arrays.copyOf(edges, roads), Arrays.copyOf(fractions, roads));
+	}
+
+	/** Find the best route between two road positions with a Dijkstra search.
+	 * @param weights The cost of every edge, either graph.lengths or graph.times
+	 * @return The snapped start, the intersections passed and the snapped goal,
+	 * 	or null if the goal can not be reached */
+	List<GeographicPoint> route(SearchContext context, double[] weights, Snap start, Snap goal) {
+		// the start reaches the end of each of its roads, the goal is reached from their starts
+		int[] seeds = new int[start.edges.length];
+		double[] seedCosts = new double[seeds.length];
+		for(int i = 0; i < seeds.length; i++) {
+			int e = start.edges[i];
+			seeds[i] = graph.targets[e];
+			seedCosts[i] = (1 - start.fractions[i]) * weights[e];
+		}
+		int[] goalVertices = new int[goal.edges.length];
+		double[] goalCosts = new double[goalVertices.length];
+		for(int j = 0; j < goalVertices.length; j++) {
+			int e = goal.edges[j];
+			goalVertices[j] = graph.sources[e];
+			goalCosts[j] = goal.fractions[j] * weights[e];
+		}
+
+		// both on the same road with the goal ahead: no intersection in between
+		double direct = Double.POSITIVE_INFINITY;
+		for(int i = 0; i < start.edges.length; i++) {
+			for(int j = 0; j < goal.edges.length; j++) {
+				if(start.edges[i] == goal.edges[j] && start.fractions[i] <= goal.fractions[j])
+					direct = Math.min(direct, (goal.fractions[j] - start.fractions[i]) * weights[start.edges[i]]);
+			}
+		}
+
+		int best = GraphSearch.seededSearch(graph, context, weights, seeds, seedCosts, goalVertices, goalCosts, direct);
+		List<GeographicPoint> path;
+		if(best >= 0) {
+			int last = goalVertices[best];
+			int first = last;
+			while(context.getParent(first) >= 0)
+				first = context.getParent(first);
+			path = graph.buildPath(first, last, context);
+		}
+		else if(direct < Double.POSITIVE_INFINITY) {
+			path = new ArrayList<>();
+		}
+		else {
+			return null;
+		}
+		path.add(0, start.getLocation());
+		path.add(goal.getLocation());
+		return path;
+	}
+
+	/** the polyline of road e from its start to its end */
+	private List<GeographicPoint> getPolyline(int e, HashMap<GeographicPoint, HashSet<RoadSegment>> segments) {
+		GeographicPoint from = graph.points[graph.sources[e]];
+		GeographicPoint to = graph.points[graph.targets[e]];
+		HashSet<RoadSegment> candidates = (segments == null) ? null : segments.get(from);
+		if(candidates != null) {
+			for(RoadSegment segment : candidates) {
+				if(segment.connects(from, to) && segment.getRoadName().equals(graph.roadNames[e])
+						&& segment.getLength() == graph.lengths[e])
+					return segment.getPoints(from, to);
+			}
+		}
+		return Arrays.asList(from, to);
+	}
+
+	/** position of the point closest to x, y along a piece, from 0 at its start to 1 at its end */
+	private double projection(int piece, double x, double y) {
+		double dx = x2[piece] - x1[piece];
+		double dy = y2[piece] - y1[piece];
+		double length = dx * dx + dy * dy;
+		if(length == 0)
+			return 0;
+		double t = ((x - x1[piece]) * dx + (y - y1[piece]) * dy) / length;
+		return Math.max(0, Math.min(1, t));
+	}
+
+	private double distanceSquared(int piece, double x, double y) {
+		double t = projection(piece, x, y);
+		double dx = x1[piece] + (x2[piece] - x1[piece]) * t - x;
+		double dy = y1[piece] + (y2[piece] - y1[piece]) * t - y;
+		return dx * dx + dy * dy;
+	}
+
+	private double projectX(double lon) {
+		return (lon - originLon) * lonScale;
+	}
+
+	private double projectY(double lat) {
+		return (lat - originLat) * KM_PER_DEGREE;
+	}
+
+	private int column(double x) {
+		return Math.max(0, Math.min(columns - 1, (int)((x - minX) / cellSize)));
+	}
+
+	private int row(double y) {
+		return Math.max(0, Math.min(rows - 1, (int)((y - minY) / cellSize)));
+	}
+}
@@ -0,0 +1,169 @@
+/** Grader for snapping locations onto the roads.
+ * Checks that an intersection snaps onto itself, that a point in the middle
+ * of a road snaps onto that road, and that routeOnRoads between two
+ * intersections costs the same as dijkstra. */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import util.GraphLoader;
+import geography.*;
+
+public class RoadSnapperGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 9;
+    private static final int QUERIES = 30;
+    /** how far (in degrees and km) a snapped point may be from the road, for rounding */
+    private static final double TOLERANCE = 1e-9;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        RoadSnapperGrader grader = new RoadSnapperGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Snap intersections and points on the roads of one map, and route between intersections.
+     * @param i The number of the first of the three tests
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true to compare lengths, false to compare times */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        HashMap<GeographicPoint, HashSet<RoadSegment>> segments = new HashMap<GeographicPoint, HashSet<RoadSegment>>();
+        GraphLoader.loadRoadMap("data/maps/" + file, graph, segments, null);
+        graph.setRoadGeometry(segments);
+        RoadSnapper snapper = graph.getRoadSnapper();
+        CompactRoadGraph compact = snapper.getGraph();
+
+        feedback += appendFeedback(i, "Snapping every intersection");
+        int wrong = 0;
+        for (int v = 0; v < compact.getNumVertices(); v++) {
+            GeographicPoint location = compact.getLocation(v);
+            if (compact.getFirstEdge(v) == compact.getEndEdge(v))
+                continue;
+            RoadSnapper.Snap snap = snapper.snap(location);
+            if (snap.getDistance() > TOLERANCE || !isClose(snap.getLocation(), location))
+                wrong++;
+        }
+        judge(wrong, "intersections did not snap onto themselves at distance 0");
+
+        feedback += appendFeedback(i + 1, "Snapping the middle of every road");
+        wrong = 0;
+        for (int e = 0; e < compact.targets.length; e++) {
+            // the middle of the first piece of the road's geometry
+            List<GeographicPoint> polyline = getPolyline(compact, e, segments);
+            GeographicPoint first = polyline.get(0);
+            GeographicPoint second = polyline.get(1);
+            GeographicPoint middle = new GeographicPoint((first.getX() + second.getX()) / 2, (first.getY() + second.getY()) / 2);
+            RoadSnapper.Snap snap = snapper.snap(middle);
+            boolean isOnRoad = false;
+            for (int edge : snap.edges)
+                isOnRoad |= edge == e;
+            if (!isOnRoad || snap.getDistance() > TOLERANCE)
+                wrong++;
+        }
+        judge(wrong, "points in the middle of a road did not snap onto that road");
+
+        feedback += appendFeedback(i + 2, "Routing on the roads between " + QUERIES + " pairs of intersections");
+        GraderFixture fixture = new GraderFixture(graph, i, QUERIES);
+        double[] expected = fixture.dijkstraCosts(graph, isLengthCompare);
+        wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            GeographicPoint start = fixture.starts[q];
+            GeographicPoint goal = fixture.goals[q];
+            List<GeographicPoint> path = graph.routeOnRoads(start, goal);
+            if (!GraderFixture.isSame(expected[q], GraderFixture.pathCost(graph, betweenIntersections(start, path, goal), isLengthCompare)))
+                wrong++;
+        }
+        judge(wrong, "routes on the roads cost other than dijkstra");
+    }
+
+    /** the intersections of a path on the roads from start to goal, or null if there is none */
+    private static List<GeographicPoint> betweenIntersections(GeographicPoint start, List<GeographicPoint> path, GeographicPoint goal) {
+        if (path == null)
+            return null;
+        // the snapped ends are start and goal, which the search may or may not list again
+        List<GeographicPoint> intersections = new ArrayList<GeographicPoint>();
+        intersections.add(start);
+        for (GeographicPoint point : path.subList(1, path.size() - 1)) {
+            if (!point.equals(intersections.get(intersections.size() - 1)))
+                intersections.add(point);
+        }
+        if (!goal.equals(intersections.get(intersections.size() - 1)))
+            intersections.add(goal);
+        return intersections;
+    }
+
+    /** the geometry of road e from its start to its end, as the snapper takes it */
+    private static List<GeographicPoint> getPolyline(CompactRoadGraph graph, int e, HashMap<GeographicPoint, HashSet<RoadSegment>> segments) {
+        GeographicPoint from = graph.points[graph.sources[e]];
+        GeographicPoint to = graph.points[graph.targets[e]];
+        HashSet<RoadSegment> candidates = segments.get(from);
+        if (candidates != null) {
+            for (RoadSegment segment : candidates) {
+                if (segment.connects(from, to) && segment.getRoadName().equals(graph.roadNames[e])
+                        && segment.getLength() == graph.lengths[e])
+                    return segment.getPoints(from, to);
+            }
+        }
+        List<GeographicPoint> straight = new ArrayList<GeographicPoint>();
+        straight.add(from);
+        straight.add(to);
+        return straight;
+    }
+
+    /** Check if two locations are the same up to rounding */
+    private static boolean isClose(GeographicPoint a, GeographicPoint b) {
+        return Math.abs(a.getX() - b.getX()) <= TOLERANCE && Math.abs(a.getY() - b.getY()) <= TOLERANCE;
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, String problem) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " " + problem + ".";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD, shortest paths", true);
+
+            runTest(4, "new_york.map", "NEW YORK MAP: Manhattan grid, fastest paths", false);
+
+            runTest(7, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, shortest paths", true);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
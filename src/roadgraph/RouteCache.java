@@ -0,0 +1,361 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import geography.GeographicPoint;
+
+/** A bounded cache of the paths found on one MapGraph.
+ * Paths are kept by start, goal, algorithm, routing profile and metric, including the answer
+ * that there is no path. The cache is split into segments by the hash of the
+ * key, each a LinkedHashMap in access order behind its own lock, and each
+ * segment evicts its least recently used paths when it grows beyond its
+ * share of the memory budget.
+ *
+ * Every path is stored with the version of the graph it was found on. When
+ * addVertex or addEdge changes the graph its version changes, and the next
+ * lookup drops all paths; a path found while the graph changed is never
+ * returned, as its version does not match.
+ *
+ * When only the costs of some roads changed through MapGraph.updateWeights,
+ * each path is checked instead: a path stays the best one if none of its roads
+ * got more expensive and no road that got cheaper can lead to a better path,
+ * which is decided with the straight line bound of the A-Star searches. */
+public final class RouteCache {
+	private static final int SEGMENTS = 16;
+	/** estimated size of an entry without its points: key, map entry and array header */
+	private static final long ENTRY_BYTES = 160;
+	/** estimated size of a point of a path; the points themselves are shared with the graph */
+	private static final long POINT_BYTES = 8;
+	private static final GeographicPoint[] NO_PATH = new GeographicPoint[0];
+
+	private final MapGraph graph;
+	private final long segmentBudget;
+	private final Segment[] segments;
+	private volatile long version;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LongAdder repairs = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+
+	private static final class Key {
+		final double startLat;
+		final double startLon;
+		final double goalLat;
+		final double goalLon;
+		final SearchAlgorithm algorithm;
+		/** the profile, null for the costs of the graph */
+		final RoutingProfile profile;
+		final boolean isLengthCompare;
+
+		Key(GeographicPoint start, GeographicPoint goal, SearchAlgorithm algorithm, RoutingProfile profile,
+				boolean isLengthCompare) {
+			startLat = start.getX();
+			startLon = start.getY();
+			goalLat = goal.getX();
+			goalLon = goal.getY();
+			this.algorithm = algorithm;
+			this.profile = profile;
+			this.isLengthCompare = isLengthCompare;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key))
+				return false;
+			Key key = (Key)other;
+			return startLat == key.startLat && startLon == key.startLon && goalLat == key.goalLat
+					&& goalLon == key.goalLon && algorithm == key.algorithm && profile == key.profile
+					&& isLengthCompare == key.isLengthCompare;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = Double.hashCode(startLat);
+			hash = 31 * hash + Double.hashCode(startLon);
+			hash = 31 * hash + Double.hashCode(goalLat);
+			hash = 31 * hash + Double.hashCode(goalLon);
+			hash = 31 * hash + algorithm.hashCode();
+			hash = 31 * hash + (profile == null ? 0 : profile.hashCode());
+			return 2 * hash + (isLengthCompare ? 1 : 0);
+		}
+	}
+
+	private static final class Entry {
+		/** the path, NO_PATH if there is none */
+		final GeographicPoint[] path;
+		final long version;
+		final long bytes;
+
+		Entry(GeographicPoint[] path, long version) {
+			this.path = path;
+			this.version = version;
+			this.bytes = ENTRY_BYTES + POINT_BYTES * path.length;
+		}
+	}
+
+	/** one lock's share of the cache, least recently used first */
+	private static final class Segment extends LinkedHashMap<Key, Entry> {
+		private static final long serialVersionUID = 1L;
+		long bytes;
+
+		Segment() {
+			super(16, 0.75f, true);
+		}
+	}
+
+	/** @param graph The graph to cache the paths of
+	 * @param maxBytes The memory the cached paths may take, as estimated */
+	public RouteCache(MapGraph graph, long maxBytes) {
+		if(maxBytes < 0)
+			throw new IllegalArgumentException("RouteCache: maxBytes must not be negative");
+		this.graph = graph;
+		this.segmentBudget = maxBytes / SEGMENTS;
+		this.segments = new Segment[SEGMENTS];
+		for(int i = 0; i < SEGMENTS; i++)
+			segments[i] = new Segment();
+		this.version = graph.getVersion();
+	}
+
+	/** Find the path from start to goal, from the cache if it was found before on the current graph
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param algorithm The search to run on a miss
+	 * @param stats Receives the work of the search, or null; all counters are zero on a hit
+	 * @return A new list with the path that MapGraph.route returns */
+	public List<GeographicPoint> route(GeographicPoint start, GeographicPoint goal, SearchAlgorithm algorithm,
+			SearchStats stats) {
+		return route(start, goal, algorithm, null, stats);
+	}
+
+	/** Find the path from start to goal for a routing profile, from the cache if it was found before on the current graph
+	 * @param start The starting location
+	 * @param goal The goal location
+	 * @param algorithm The search to run on a miss
+	 * @param profile The costs of the roads, or null for the costs of the graph
+	 * @param stats Receives the work of the search, or null; all counters are zero on a hit
+	 * @return A new list with the path that MapGraph.route returns */
+	public List<GeographicPoint> route(GeographicPoint start, GeographicPoint goal, SearchAlgorithm algorithm,
+			RoutingProfile profile, SearchStats stats) {
+		if(start == null || goal == null)
+			return graph.route(start, goal, algorithm, profile, stats);
+
+		long current = graph.getVersion();
+		if(current != version)
+			invalidate(current);
+
+		Key key = new Key(start, goal, algorithm, profile, graph.isLengthCompare());
+		Segment segment = segments[mix(key.hashCode()) & (SEGMENTS - 1)];
+		Entry entry;
+		synchronized(segment) {
+			entry = segment.get(key);
+		}
+		if(entry != null && entry.version == current) {
+			hits.increment();
+			if(stats != null)
+				stats.reset();
+			return toList(entry.path);
+		}
+
+		misses.increment();
+		List<GeographicPoint> path = graph.route(start, goal, algorithm, profile, stats);
+		// a path found while the graph changed may be out of date
+		if(graph.getVersion() == current && segmentBudget > 0) {
+			entry = new Entry(path == null ? NO_PATH : path.toArray(new GeographicPoint[path.size()]), current);
+			put(segment, key, entry);
+		}
+		return path;
+	}
+
+	private void put(Segment segment, Key key, Entry entry) {
+		synchronized(segment) {
+			Entry old = segment.put(key, entry);
+			if(old != null)
+				segment.bytes -= old.bytes;
+			segment.bytes += entry.bytes;
+			Iterator<Map.Entry<Key, Entry>> eldest = segment.entrySet().iterator();
+			while(segment.bytes > segmentBudget && eldest.hasNext()) {
+				segment.bytes -= eldest.next().getValue().bytes;
+				eldest.remove();
+				evictions.increment();
+			}
+		}
+	}
+
+	/** drop or repair every path found on an older version of the graph */
+	private synchronized void invalidate(long current) {
+		if(version == current)
+			return;
+		List<WeightChange> changes = graph.getWeightChanges(version, current);
+		if(changes == null) {
+			clear();
+			invalidations.increment();
+		}
+		else {
+			for(WeightChange change : changes) {
+				repair(change);
+				repairs.increment();
+			}
+		}
+		version = current;
+	}
+
+	/** keep the paths that are still the best after a change of costs, with the new version */
+	private void repair(WeightChange change) {
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				Iterator<Map.Entry<Key, Entry>> entries = segment.entrySet().iterator();
+				while(entries.hasNext()) {
+					Map.Entry<Key, Entry> entry = entries.next();
+					Entry old = entry.getValue();
+					if(old.version == change.fromVersion && isStillBest(entry.getKey(), old.path, change)) {
+						entry.setValue(new Entry(old.path, change.toVersion));
+					}
+					else {
+						segment.bytes -= old.bytes;
+						entries.remove();
+						dropped.increment();
+					}
+				}
+			}
+		}
+	}
+
+	/** check if path, the best one before change, is still the best one after it */
+	private static boolean isStillBest(Key key, GeographicPoint[] path, WeightChange change) {
+		// breadth first search ignores costs, routes on roads may start on a changed road,
+		// the cost of a path with turns is not the sum of its roads, and a profile has costs of its own
+		if(key.algorithm == SearchAlgorithm.BFS || key.algorithm == SearchAlgorithm.ROADS
+				|| key.algorithm == SearchAlgorithm.TURNS || key.profile != null)
+			return false;
+		// roads that got cheaper may connect what was not connected before
+		if(path == NO_PATH)
+			return !change.isDecreased(key.isLengthCompare);
+
+		CompactRoadGraph after = change.after;
+		double[] before = key.isLengthCompare ? change.before.lengths : change.before.times;
+		double[] weights = key.isLengthCompare ? after.lengths : after.times;
+		double cost = 0;
+		for(int i = 0; i + 1 < path.length; i++) {
+			int from = after.getId(path[i]);
+			int to = after.getId(path[i + 1]);
+			if(from < 0 || to < 0)
+				return false;
+			// the searches take the cheapest of several roads between two intersections
+			double oldCost = Double.POSITIVE_INFINITY;
+			double newCost = Double.POSITIVE_INFINITY;
+			for(int e = after.offsets[from]; e < after.offsets[from + 1]; e++) {
+				if(after.targets[e] == to) {
+					oldCost = Math.min(oldCost, before[e]);
+					newCost = Math.min(newCost, weights[e]);
+				}
+			}
+			if(newCost > oldCost)
+				return false;
+			cost += newCost;
+		}
+		if(!change.isDecreased(key.isLengthCompare))
+			return true;
+
+		// a path over a cheaper road costs at least the straight lines to and from it
+		GeographicPoint start = path[0];
+		GeographicPoint goal = path[path.length - 1];
+		double scale = after.straightLineScale(key.isLengthCompare);
+		for(int e : change.edges) {
+			if(weights[e] >= before[e])
+				continue;
+			double bound = start.distance(after.points[after.sources[e]]) * scale + weights[e]
+					+ after.points[after.targets[e]].distance(goal) * scale;
+			if(bound < cost)
+				return false;
+		}
+		return true;
+	}
+
+	/** Drop all cached paths */
+	public void clear() {
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				segment.clear();
+				segment.bytes = 0;
+			}
+		}
+	}
+
+	/** get the number of lookups answered from the cache */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/** get the number of lookups that ran a search */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/** get the share of lookups answered from the cache, 0 before the first lookup */
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0 : (double)hitCount / total;
+	}
+
+	/** get the number of paths dropped to stay within the memory budget */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/** get the number of times all paths were dropped because the graph changed */
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	/** get the number of cost changes after which the paths were checked one by one */
+	public long getRepairs() {
+		return repairs.sum();
+	}
+
+	/** get the number of paths dropped by these checks */
+	public long getDroppedRoutes() {
+		return dropped.sum();
+	}
+
+	/** get the number of cached paths */
+	public int size() {
+		int size = 0;
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/** get the estimated memory of the cached paths in bytes */
+	public long getBytes() {
+		long bytes = 0;
+		for(Segment segment : segments) {
+			synchronized(segment) {
+				bytes += segment.bytes;
+			}
+		}
+		return bytes;
+	}
+
+	private static List<GeographicPoint> toList(GeographicPoint[] path) {
+		if(path == NO_PATH)
+			return null;
+		return new ArrayList<>(Arrays.asList(path));
+	}
+
+	private static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
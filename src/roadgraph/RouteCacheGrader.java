@@ -0,0 +1,161 @@
+/** Grader for the route cache.
+ * Checks that a repeated lookup is answered from the cache without a search,
+ * that the answer that there is no path is cached too, that a small memory
+ * budget evicts paths and is kept, and that a new road makes the cache
+ * search again. */
+package roadgraph;
+
+import java.util.List;
+
+import util.GraphLoader;
+import geography.*;
+
+public class RouteCacheGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 4;
+    private static final int QUERIES = 30;
+    private static final SearchAlgorithm[] ALGORITHMS = { SearchAlgorithm.DIJKSTRA, SearchAlgorithm.A_STAR,
+            SearchAlgorithm.BIDIRECTIONAL_A_STAR };
+    /** room for a few short paths in each of the cache's segments */
+    private static final long SMALL_BUDGET = 16 * 500;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        RouteCacheGrader grader = new RouteCacheGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Run all tests on one map.
+     * @param file The map file to read from
+     * @param desc A description of the map */
+    public void runTest(String file, String desc) throws Exception {
+        MapGraph graph = new MapGraph();
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        GraderFixture fixture = new GraderFixture(graph, 1, QUERIES);
+        double[] expected = fixture.dijkstraCosts(graph, true);
+
+        feedback += appendFeedback(1, "Looking up " + QUERIES + " paths twice with " + ALGORITHMS.length + " algorithms");
+        RouteCache cache = new RouteCache(graph, Long.MAX_VALUE);
+        SearchStats stats = new SearchStats();
+        int wrong = 0;
+        for (SearchAlgorithm algorithm : ALGORITHMS) {
+            for (int q = 0; q < QUERIES; q++) {
+                long hits = cache.getHits();
+                long misses = cache.getMisses();
+                List<GeographicPoint> searched = cache.route(fixture.starts[q], fixture.goals[q], algorithm, stats);
+                // a goal in another component is ruled out without settling anything
+                boolean isMiss = cache.getMisses() == misses + 1 && cache.getHits() == hits
+                        && (stats.getSettled() > 0 || expected[q] == Double.POSITIVE_INFINITY);
+                List<GeographicPoint> cached = cache.route(fixture.starts[q], fixture.goals[q], algorithm, stats);
+                boolean isHit = cache.getHits() == hits + 1 && cache.getMisses() == misses + 1;
+                // the stats of the first search are still there unless the hit cleared them
+                boolean isZero = stats.getSettled() == 0 && stats.getRelaxed() == 0 && stats.getPushes() == 0
+                        && stats.getPops() == 0 && stats.getStalePops() == 0 && stats.getPeakQueueSize() == 0
+                        && stats.getNanos() == 0;
+                if (!isMiss || !isHit || !isZero || !GraderFixture.isSame(expected[q], GraderFixture.pathCost(graph, searched, true))
+                        || (searched == null ? cached != null : !searched.equals(cached)))
+                    wrong++;
+            }
+        }
+        judge(wrong, "repeated lookups were not hits with zero stats and the same path");
+
+        feedback += appendFeedback(2, "Looking up a path that does not exist twice");
+        cache = new RouteCache(graph, Long.MAX_VALUE);
+        GeographicPoint start = fixture.starts[0];
+        GeographicPoint unreachable = GraderFixture.unreachableFrom(graph, start);
+        List<GeographicPoint> none = cache.route(start, unreachable, SearchAlgorithm.DIJKSTRA, null);
+        List<GeographicPoint> cachedNone = cache.route(start, unreachable, SearchAlgorithm.DIJKSTRA, null);
+        if (none != null || cachedNone != null)
+            feedback += "FAILED. A path was found to an intersection that can not be reached.";
+        else if (cache.getMisses() != 1 || cache.getHits() != 1 || cache.size() != 1)
+            feedback += "FAILED. The answer that there is no path was not cached.";
+        else {
+            feedback += "PASSED.";
+            correct++;
+        }
+
+        feedback += appendFeedback(3, "Looking up " + QUERIES + " paths with a budget of " + SMALL_BUDGET + " bytes");
+        cache = new RouteCache(graph, SMALL_BUDGET);
+        wrong = 0;
+        for (SearchAlgorithm algorithm : ALGORITHMS) {
+            for (int q = 0; q < QUERIES; q++) {
+                List<GeographicPoint> path = cache.route(fixture.starts[q], fixture.goals[q], algorithm, null);
+                if (cache.getBytes() > SMALL_BUDGET || !GraderFixture.isSame(expected[q], GraderFixture.pathCost(graph, path, true)))
+                    wrong++;
+            }
+        }
+        if (wrong > 0)
+            feedback += "FAILED. " + wrong + " lookups went over the budget or returned a path other than dijkstra.";
+        else if (cache.getEvictions() == 0)
+            feedback += "FAILED. No path was evicted although they do not fit the budget.";
+        else {
+            feedback += "PASSED.";
+            correct++;
+        }
+
+        feedback += appendFeedback(4, "Adding a road after a path was cached");
+        cache = new RouteCache(graph, Long.MAX_VALUE);
+        int q = 0;
+        while (q < QUERIES && (expected[q] == Double.POSITIVE_INFINITY || graph.dijkstra(fixture.starts[q], fixture.goals[q]).size() < 3))
+            q++;
+        start = fixture.starts[q];
+        GeographicPoint goal = fixture.goals[q];
+        cache.route(start, goal, SearchAlgorithm.DIJKSTRA, null);
+        cache.route(start, goal, SearchAlgorithm.DIJKSTRA, null);
+        long misses = cache.getMisses();
+        // a direct road cheaper than the cached path
+        graph.addEdge(start, goal, "shortcut", "residential", expected[q] / 2);
+        List<GeographicPoint> path = cache.route(start, goal, SearchAlgorithm.DIJKSTRA, null);
+        if (cache.getMisses() != misses + 1)
+            feedback += "FAILED. The path from before the new road was answered from the cache.";
+        else if (path == null || path.size() != 2)
+            feedback += "FAILED. The new road was not taken.";
+        else {
+            feedback += "PASSED.";
+            correct++;
+        }
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, String problem) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " " + problem + ".";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest("san_diego.map", "SAN DIEGO MAP: Downtown San Diego, shortest paths");
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,140 @@
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A named way of weighing the roads for a kind of traveller, chosen per query.
+ * A profile multiplies the cost of the roads of some types by a penalty of at
+ * least 1, or forbids them, and may limit the speed on every road. Before its
+ * first search on a graph the profile is compiled into one cost per road,
+ * which the searches read like the lengths or times of the graph; all
+ * profiles share the intersections and roads of the graph, so a profile
+ * takes one double per road.
+ *
+ * A profile never makes a road cheaper than it is without a profile, so the
+ * straight line and landmark estimates of the A-Star searches stay lower
+ * bounds. Profiles are immutable: penalize, forbid and limitSpeed return a
+ * new profile. */
+public final class RoutingProfile {
+	/** the roads as they are */
+	public static final RoutingProfile CAR = new RoutingProfile("car", Double.POSITIVE_INFINITY,
+			Collections.<String, Double>emptyMap());
+	/** a truck that keeps out of residential streets where it can */
+	public static final RoutingProfile TRUCK = CAR.named("truck-avoid-residential").limitSpeed(90)
+			.penalize("residential", 3).penalize("living_street", 5);
+	/** a car that does not take motorways */
+	public static final RoutingProfile NO_MOTORWAY = CAR.named("no-motorway").forbid("motorway").forbid("motorway_link");
+	/** a bicycle, off motorways and trunk roads and rather not on primary roads */
+	public static final RoutingProfile BICYCLE = CAR.named("bicycle").limitSpeed(15).forbid("motorway")
+			.forbid("motorway_link").forbid("trunk").forbid("trunk_link").penalize("primary", 1.5);
+
+	private final String name;
+	/** highest speed on any road (kph) */
+	private final double speed;
+	/** penalty by road type, infinity if it is forbidden */
+	private final Map<String, Double> penalties;
+
+	private RoutingProfile(String name, double speed, Map<String, Double> penalties) {
+		this.name = name;
+		this.speed = speed;
+		this.penalties = penalties;
+	}
+
+	/** Get one of the predefined profiles by name
+	 * @return The profile, or null if there is none with this name */
+	public static RoutingProfile forName(String name) {
+		for(RoutingProfile profile : Arrays.asList(CAR, TRUCK, NO_MOTORWAY, BICYCLE)) {
+			if(profile.name.equals(name))
+				return profile;
+		}
+		return null;
+	}
+
+	/** get the name of the profile */
+	public String getName() {
+		return name;
+	}
+
+	/** get the highest speed on any road (kph), infinity if there is no limit */
+	public double getSpeedLimit() {
+		return speed;
+	}
+
+	/** get the penalty of a road type, 1 if it has none and infinity if it is forbidden */
+	public double getPenalty(String roadType) {
+		Double penalty = penalties.get(roadType);
+		return penalty == null ? 1 : penalty;
+	}
+
+	/** Create the same profile with another name */
+	public RoutingProfile named(String name) throws IllegalArgumentException {
+		if(name == null || name.isEmpty())
+			throw new IllegalArgumentException("RoutingProfile: name must not be empty");
+		return new RoutingProfile(name, speed, penalties);
+	}
+
+	/** Create a profile that multiplies the cost of the roads of a type
+	 * @param roadType The type of road as in the map files, for example residential
+	 * @param penalty The factor, at least 1
+	 * @return The new profile */
+	public RoutingProfile penalize(String roadType, double penalty) throws IllegalArgumentException {
+		if(!(penalty >= 1))
+			throw new IllegalArgumentException("RoutingProfile: penalty must be at least 1");
+		return with(roadType, penalty);
+	}
+
+	/** Create a profile that does not use the roads of a type
+	 * @param roadType The type of road as in the map files, for example motorway
+	 * @return The new profile */
+	public RoutingProfile forbid(String roadType) throws IllegalArgumentException {
+		return with(roadType, Double.POSITIVE_INFINITY);
+	}
+
+	/** Create a profile that travels at most at a speed, which makes slow roads relatively cheaper
+	 * @param speed The highest speed in kph
+	 * @return The new profile */
+	public RoutingProfile limitSpeed(double speed) throws IllegalArgumentException {
+		if(!(speed > 0))
+			throw new IllegalArgumentException("RoutingProfile: speed must be positive");
+		return new RoutingProfile(name, speed, penalties);
+	}
+
+	private RoutingProfile with(String roadType, double penalty) throws IllegalArgumentException {
+		if(roadType == null)
+			throw new IllegalArgumentException("RoutingProfile: road type must not be null");
+		Map<String, Double> changed = new HashMap<String, Double>(penalties);
+		changed.put(roadType.toLowerCase(), penalty);
+		return new RoutingProfile(name, speed, Collections.unmodifiableMap(changed));
+	}
+
+	/** Compute the cost of every road of graph under this profile
+	 * @param isLengthCompare true for the cost in km, false for the cost in min
+	 * @return The costs, indexed like graph.lengths; infinity for a forbidden road */
+	double[] compile(CompactRoadGraph graph, boolean isLengthCompare) {
+		int m = graph.getNumEdges();
+		double[] costs = new double[m];
+		// the road types are shared strings, so look each one up once
+		Map<String, Double> byType = new HashMap<String, Double>();
+		for(int e = 0; e < m; e++) {
+			String type = graph.roadTypes[e];
+			Double penalty = byType.get(type);
+			if(penalty == null) {
+				penalty = getPenalty(type == null ? null : type.toLowerCase());
+				byType.put(type, penalty);
+			}
+			double cost = graph.lengths[e];
+			if(!isLengthCompare)
+				cost = Math.max(graph.times[e], cost / speed * 60);
+			// a forbidden road of no length is still forbidden
+			costs[e] = (penalty == Double.POSITIVE_INFINITY) ? penalty : cost * penalty;
+		}
+		return costs;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,135 @@
+/** Grader for the routing profiles.
+ * Checks that every search with the CAR profile costs the same as dijkstra,
+ * and that with NO_MOTORWAY and BICYCLE no search takes a forbidden road,
+ * none is cheaper than dijkstra without a profile, and all cost the same as
+ * a plain Dijkstra search on the costs of the profile. */
+package roadgraph;
+
+import java.util.List;
+
+import util.GraphLoader;
+import geography.*;
+
+public class RoutingProfileGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 9;
+    private static final int QUERIES = 30;
+    private static final SearchAlgorithm[] ALGORITHMS = { SearchAlgorithm.DIJKSTRA, SearchAlgorithm.A_STAR,
+            SearchAlgorithm.BIDIRECTIONAL_DIJKSTRA, SearchAlgorithm.BIDIRECTIONAL_A_STAR, SearchAlgorithm.TURNS };
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        RoutingProfileGrader grader = new RoutingProfileGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Search with the three profiles on one map.
+     * @param i The number of the first of the three tests
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true to compare lengths, false to compare times */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        CompactRoadGraph compact = graph.freeze();
+        GraderFixture fixture = new GraderFixture(graph, i, QUERIES);
+        double[] plain = fixture.dijkstraCosts(graph, isLengthCompare);
+
+        feedback += appendFeedback(i, "Searching with the car profile with " + ALGORITHMS.length + " algorithms");
+        int wrong = 0;
+        for (SearchAlgorithm algorithm : ALGORITHMS) {
+            for (int q = 0; q < QUERIES; q++) {
+                List<GeographicPoint> path = graph.route(fixture.starts[q], fixture.goals[q], algorithm, RoutingProfile.CAR, null);
+                if (!GraderFixture.isSame(plain[q], GraderFixture.pathCost(graph, path, isLengthCompare)))
+                    wrong++;
+            }
+        }
+        judge(wrong, "paths cost other than dijkstra without a profile");
+
+        RoutingProfile[] profiles = { RoutingProfile.NO_MOTORWAY, RoutingProfile.BICYCLE };
+        for (int p = 0; p < profiles.length; p++) {
+            RoutingProfile profile = profiles[p];
+            feedback += appendFeedback(i + 1 + p, "Searching with the " + profile + " profile with " + ALGORITHMS.length + " algorithms");
+            double[] weights = profile.compile(compact, isLengthCompare);
+            wrong = 0;
+            for (SearchAlgorithm algorithm : ALGORITHMS) {
+                for (int q = 0; q < QUERIES; q++) {
+                    int start = compact.getId(fixture.starts[q]);
+                    int goal = compact.getId(fixture.goals[q]);
+                    double expected = GraderFixture.dijkstraCost(compact, weights, start, goal);
+                    List<GeographicPoint> path = graph.route(fixture.starts[q], fixture.goals[q], algorithm, profile, null);
+                    // a forbidden road costs infinity, and a path that takes one can not cost the same as one that does not
+                    double cost = profileCost(compact, weights, path);
+                    if (!GraderFixture.isSame(expected, cost) || cost < plain[q] * (1 - 1e-9))
+                        wrong++;
+                }
+            }
+            judge(wrong, "paths took a forbidden road, cost less than without the profile, or more than the best path with it");
+        }
+    }
+
+    /** cost of a path along its cheapest road of the profile between each two intersections, infinity for no path */
+    private static double profileCost(CompactRoadGraph graph, double[] weights, List<GeographicPoint> path) {
+        if (path == null)
+            return Double.POSITIVE_INFINITY;
+        double cost = 0;
+        for (int p = 1; p < path.size(); p++) {
+            int from = graph.getId(path.get(p - 1));
+            int to = graph.getId(path.get(p));
+            double best = Double.POSITIVE_INFINITY;
+            for (int e = graph.offsets[from]; e < graph.offsets[from + 1]; e++) {
+                if (graph.targets[e] == to)
+                    best = Math.min(best, weights[e]);
+            }
+            cost += best;
+        }
+        return cost;
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, String problem) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " " + problem + ".";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "new_york.map", "NEW YORK MAP: Manhattan grid, fastest paths", false);
+
+            runTest(4, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, shortest paths", true);
+
+            runTest(7, "hollywood_large.map", "HOLLYWOOD MAP: Hollywood and around, fastest paths", false);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,21 @@
+package roadgraph;
+
+/** The path searches of MapGraph, for choosing one at run time with MapGraph.route */
+public enum SearchAlgorithm {
+	/** breadth first search, fewest roads */
+	BFS,
+	/** Dijkstra's algorithm */
+	DIJKSTRA,
+	/** A-Star search, with landmarks if the graph has them */
+	A_STAR,
+	/** Dijkstra's algorithm from both ends */
+	BIDIRECTIONAL_DIJKSTRA,
+	/** A-Star search from both ends */
+	BIDIRECTIONAL_A_STAR,
+	/** upward searches in the contraction hierarchy */
+	HIERARCHY,
+	/** route between the closest points on the roads, see MapGraph.routeOnRoads */
+	ROADS,
+	/** edge based A-Star search with the turn costs of the graph, see MapGraph.turnAwareAStar */
+	TURNS
+}
@@ -0,0 +1,88 @@
+package roadgraph;
+
+import java.util.Arrays;
+
+/** The state of one search: distances, parents and the queue.
+ * A context belongs to one query at a time. Instead of clearing its arrays
+ * between queries it stamps every entry with the generation of the query
+ * that wrote it, so reset() is O(1) and entries of older queries read as
+ * "not reached". */
+final class SearchContext {
+	private int generation;
+	private int[] reachedIn;
+	private int[] settledIn;
+	private double[] distances;
+	private int[] parents;
+
+	/** queue of the breadth first search */
+	int[] fifo;
+	/** queue of the Dijkstra and A-Star searches */
+	final VertexQueue queue;
+	/** counters of the current search, or null to count nothing */
+	SearchStats stats;
+
+	SearchContext() {
+		this(new IndexedDaryHeap());
+	}
+
+	/** @param queue The queue of the Dijkstra and A-Star searches */
+	SearchContext(VertexQueue queue) {
+		reachedIn = new int[0];
+		settledIn = new int[0];
+		distances = new double[0];
+		parents = new int[0];
+		fifo = new int[0];
+		this.queue = queue;
+	}
+
+	/** prepare the context for a new query on a graph with n intersections */
+	void reset(int n) {
+		if(reachedIn.length < n) {
+			reachedIn = new int[n];
+			settledIn = new int[n];
+			distances = new double[n];
+			parents = new int[n];
+			fifo = new int[n];
+			generation = 0;
+		}
+		if(generation == Integer.MAX_VALUE) {
+			Arrays.fill(reachedIn, 0);
+			Arrays.fill(settledIn, 0);
+			generation = 0;
+		}
+		generation++;
+		queue.reset(n);
+		stats = null;
+	}
+
+	/** true if v has been reached in this query */
+	boolean isReached(int v) {
+		return reachedIn[v] == generation;
+	}
+
+	/** true if v has been settled in this query */
+	boolean isSettled(int v) {
+		return settledIn[v] == generation;
+	}
+
+	void settle(int v) {
+		settledIn[v] = generation;
+	}
+
+	/** distance of v, or infinity if v has not been reached in this query */
+	double getDistance(int v) {
+		return reachedIn[v] == generation ? distances[v] : Double.POSITIVE_INFINITY;
+	}
+
+	/** parent of v, or -1 for the start and intersections which have not been reached */
+	int getParent(int v) {
+		return reachedIn[v] == generation ? parents[v] : -1;
+	}
+
+	/** set distance and parent of v */
+	void reach(int v, double distance, int parent) {
+		reachedIn[v] = generation;
+		distances[v] = distance;
+		parents[v] = parent;
+	}
+}
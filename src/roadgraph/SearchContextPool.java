@@ -0,0 +1,48 @@
+package roadgraph;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Search contexts shared by all threads, so that queries reuse the arrays
+ * of earlier queries whichever thread they run on, including a new virtual
+ * thread per request, and a context belongs to one query at a time.
+ * A search that starts another search (for example from the visualization
+ * hook) simply takes a second context. At most maxIdle contexts are kept
+ * between queries; more queries than that at once allocate contexts that
+ * are dropped afterwards. */
+final class SearchContextPool {
+	private final ConcurrentLinkedQueue<SearchContext> contexts = new ConcurrentLinkedQueue<SearchContext>();
+	private final AtomicInteger idle = new AtomicInteger();
+	private final int maxIdle;
+
+	/** Keep up to two contexts per processor */
+	SearchContextPool() {
+		this(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+	}
+
+	/** @param maxIdle The most contexts kept between queries */
+	SearchContextPool(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	/** take a free context, reset for a graph with n intersections */
+	SearchContext acquire(int n) {
+		SearchContext context = contexts.poll();
+		if(context == null)
+			context = new SearchContext();
+		else
+			idle.decrementAndGet();
+		context.reset(n);
+		return context;
+	}
+
+	/** give a context back for the next query */
+	void release(SearchContext context) {
+		if(idle.incrementAndGet() <= maxIdle) {
+			context.stats = null;
+			contexts.offer(context);
+		}
+		else
+			idle.decrementAndGet();
+	}
+}
@@ -0,0 +1,117 @@
+package roadgraph;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** Totals of the SearchStats of all searches on a MapGraph.
+ * Searches on many threads record into the same instance, so the totals are
+ * LongAdders. Register the metrics with the platform MBean server to watch
+ * them with JConsole or any other JMX client. */
+public final class SearchMetrics implements SearchMetricsMXBean {
+	private final LongAdder searches = new LongAdder();
+	private final LongAdder settled = new LongAdder();
+	private final LongAdder relaxed = new LongAdder();
+	private final LongAdder pushes = new LongAdder();
+	private final LongAdder pops = new LongAdder();
+	private final LongAdder stalePops = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+	private volatile int peakQueueSize;
+
+	/** add the counters of one search */
+	public void record(SearchStats stats) {
+		searches.increment();
+		settled.add(stats.settled);
+		relaxed.add(stats.relaxed);
+		pushes.add(stats.pushes);
+		pops.add(stats.pops);
+		stalePops.add(stats.stalePops);
+		nanos.add(stats.nanos);
+		if(stats.peakQueueSize > peakQueueSize)
+			updatePeak(stats.peakQueueSize);
+	}
+
+	private synchronized void updatePeak(int size) {
+		if(size > peakQueueSize)
+			peakQueueSize = size;
+	}
+
+	/** Register these metrics with the platform MBean server
+	 * @param name The name of the graph, used in the object name roadgraph:type=SearchMetrics,name=...
+	 * @return The object name the metrics were registered under */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("roadgraph:type=SearchMetrics,name=" + ObjectName.quote(name));
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		if(server.isRegistered(objectName))
+			server.unregisterMBean(objectName);
+		server.registerMBean(this, objectName);
+		return objectName;
+	}
+
+	@Override
+	public long getSearches() {
+		return searches.sum();
+	}
+
+	@Override
+	public long getSettled() {
+		return settled.sum();
+	}
+
+	@Override
+	public long getRelaxed() {
+		return relaxed.sum();
+	}
+
+	@Override
+	public long getPushes() {
+		return pushes.sum();
+	}
+
+	@Override
+	public long getPops() {
+		return pops.sum();
+	}
+
+	@Override
+	public long getStalePops() {
+		return stalePops.sum();
+	}
+
+	@Override
+	public int getPeakQueueSize() {
+		return peakQueueSize;
+	}
+
+	@Override
+	public long getTotalNanos() {
+		return nanos.sum();
+	}
+
+	@Override
+	public double getMeanSettled() {
+		long count = searches.sum();
+		return count == 0 ? 0 : (double)settled.sum() / count;
+	}
+
+	@Override
+	public double getMeanMicros() {
+		long count = searches.sum();
+		return count == 0 ? 0 : nanos.sum() / 1e3 / count;
+	}
+
+	@Override
+	public synchronized void reset() {
+		searches.reset();
+		settled.reset();
+		relaxed.reset();
+		pushes.reset();
+		pops.reset();
+		stalePops.reset();
+		nanos.reset();
+		peakQueueSize = 0;
+	}
+}
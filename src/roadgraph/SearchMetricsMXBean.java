@@ -0,0 +1,28 @@
+package roadgraph;
+
+/** Management interface of SearchMetrics: totals over all searches since the last reset */
+public interface SearchMetricsMXBean {
+	long getSearches();
+
+	long getSettled();
+
+	long getRelaxed();
+
+	long getPushes();
+
+	long getPops();
+
+	long getStalePops();
+
+	/** get the largest queue of any search */
+	int getPeakQueueSize();
+
+	long getTotalNanos();
+
+	double getMeanSettled();
+
+	double getMeanMicros();
+
+	/** clear all totals */
+	void reset();
+}
@@ -0,0 +1,94 @@
+package roadgraph;
+
+/** The work done by one search.
+ * Pass an instance to one of the MapGraph searches that take a SearchStats
+ * to have it filled in; the searches count nothing when they get none, so
+ * collecting costs only a predictable null check when it is not wanted.
+ * A SearchStats is reset by every search it is passed to and must not be
+ * shared between threads. */
+public final class SearchStats {
+	long settled;
+	long relaxed;
+	long pushes;
+	long pops;
+	long stalePops;
+	int peakQueueSize;
+	long nanos;
+
+	/** clear all counters */
+	public void reset() {
+		settled = 0;
+		relaxed = 0;
+		pushes = 0;
+		pops = 0;
+		stalePops = 0;
+		peakQueueSize = 0;
+		nanos = 0;
+	}
+
+	/** get the number of intersections settled */
+	public long getSettled() {
+		return settled;
+	}
+
+	/** get the number of roads looked at from settled intersections */
+	public long getRelaxed() {
+		return relaxed;
+	}
+
+	/** get the number of queue insertions and key decreases */
+	public long getPushes() {
+		return pushes;
+	}
+
+	/** get the number of intersections taken from the queue */
+	public long getPops() {
+		return pops;
+	}
+
+	/** get the number of pops that were skipped because the intersection was already settled */
+	public long getStalePops() {
+		return stalePops;
+	}
+
+	/** get the largest number of intersections in the queue at once */
+	public int getPeakQueueSize() {
+		return peakQueueSize;
+	}
+
+	/** get the wall time of the search, including building the path, in ns */
+	public long getNanos() {
+		return nanos;
+	}
+
+	/** add the work of another search, as when one query runs several searches */
+	void add(SearchStats other) {
+		settled += other.settled;
+		relaxed += other.relaxed;
+		pushes += other.pushes;
+		pops += other.pops;
+		stalePops += other.stalePops;
+		if(other.peakQueueSize > peakQueueSize)
+			peakQueueSize = other.peakQueueSize;
+	}
+
+	/** count a push after which the queue holds size intersections */
+	void pushed(int size) {
+		pushes++;
+		if(size > peakQueueSize)
+			peakQueueSize = size;
+	}
+
+	/** count a pop, stale if the intersection was settled before */
+	void popped(boolean isStale) {
+		pops++;
+		if(isStale)
+			stalePops++;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("settled %d, relaxed %d, pushes %d, pops %d (%d stale), peak queue %d, %.1f us",
+				settled, relaxed, pushes, pops, stalePops, peakQueueSize, nanos / 1e3);
+	}
+}
@@ -0,0 +1,304 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** A k-d tree over the intersections of a CompactRoadGraph.
+ * The tree is implicit: the intersections are permuted so that the middle
+ * of every range is the median of its range, split alternately by latitude
+ * and longitude. Coordinates are copied in tree order, so a lookup only
+ * walks three flat arrays.
+ *
+ * Distances are compared on the equirectangular projection around the
+ * query point (longitude differences scaled by the cosine of its latitude),
+ * which orders intersections within a city the same way as the great circle
+ * distance. */
+public final class SpatialIndex {
+	private final CompactRoadGraph graph;
+	/** intersection id at each tree position */
+	private final int[] ids;
+	private final double[] lats;
+	private final double[] lons;
+
+	/** state of one nearest neighbour query */
+	private static final class Query {
+		final double lat;
+		final double lon;
+		final double scale;
+		double best = Double.POSITIVE_INFINITY;
+		int bestPosition = -1;
+
+		Query(double lat, double lon) {
+			this.lat = lat;
+			this.lon = lon;
+			this.scale = Math.cos(Math.toRadians(lat));
+		}
+
+		double distance(double otherLat, double otherLon) {
+			double dLat = lat - otherLat;
+			double dLon = (lon - otherLon) * scale;
+			return dLat * dLat + dLon * dLon;
+		}
+	}
+
+	/** Build the index over all intersections of graph */
+	public SpatialIndex(CompactRoadGraph graph) {
+		this.graph = graph;
+		int n = graph.getNumVertices();
+		ids = new int[n];
+		for(int v = 0; v < n; v++)
+			ids[v] = v;
+		build(0, n, 0);
+
+		lats = new double[n];
+		lons = new double[n];
+		for(int i = 0; i < n; i++) {
+			lats[i] = graph.points[ids[i]].getX();
+			lons[i] = graph.points[ids[i]].getY();
+		}
+	}
+
+	/** get the graph this index was built for */
+	public CompactRoadGraph getGraph() {
+		return graph;
+	}
+
+	/** Find the intersection closest to a location.
+	 * @return The closest intersection, or null if the graph is empty */
+	public GeographicPoint nearest(GeographicPoint location) {
+		int id = nearestId(location.getX(), location.getY());
+		return id < 0 ? null : graph.points[id];
+	}
+
+	/** Find the k intersections closest to a location.
+	 * @return At most k intersections, closest first */
+	public List<GeographicPoint> nearest(GeographicPoint location, int k) {
+		if(k < 0)
+			throw new IllegalArgumentException("SpatialIndex: k must not be negative");
+		k = Math.min(k, ids.length);
+		Query query = new Query(location.getX(), location.getY());
+		// max-heap of the k best positions found so far, by distance
+		int[] heap = new int[k];
+		double[] distances = new double[k];
+		int size = nearest(0, ids.length, 0, query, heap, distances, 0);
+
+		// removing the farthest one by one gives the order from the back
+		GeographicPoint[] sorted = new GeographicPoint[size];
+		for(int i = size - 1; i >= 0; i--) {
+			sorted[i] = graph.points[ids[heap[0]]];
+			siftDown(heap, distances, i, heap[i], distances[i]);
+		}
+		List<GeographicPoint> result = new ArrayList<>(size);
+		for(GeographicPoint point : sorted)
+			result.add(point);
+		return result;
+	}
+
+	/** Find the intersections inside a box.
+	 * @param corner1 One corner of the box
+	 * @param corner2 The opposite corner of the box
+	 * @return The intersections in the box, including its border */
+	public List<GeographicPoint> within(GeographicPoint corner1, GeographicPoint corner2) {
+		double minLat = Math.min(corner1.getX(), corner2.getX());
+		double maxLat = Math.max(corner1.getX(), corner2.getX());
+		double minLon = Math.min(corner1.getY(), corner2.getY());
+		double maxLon = Math.max(corner1.getY(), corner2.getY());
+		List<GeographicPoint> result = new ArrayList<>();
+		within(0, ids.length, 0, minLat, minLon, maxLat, maxLon, result);
+		return result;
+	}
+
+	/** id of the intersection closest to lat, lon, or -1 if the graph is empty */
+	int nearestId(double lat, double lon) {
+		Query query = new Query(lat, lon);
+		nearest(0, ids.length, 0, query);
+		return query.bestPosition < 0 ? -1 : ids[query.bestPosition];
+	}
+
+	private void nearest(int low, int high, int axis, Query query) {
+		if(low >= high)
+			return;
+		int middle = (low + high) >>> 1;
+		double distance = query.distance(lats[middle], lons[middle]);
+		if(distance < query.best) {
+			query.best = distance;
+			query.bestPosition = middle;
+		}
+
+		double difference = (axis == 0) ? query.lat - lats[middle] : (query.lon - lons[middle]) * query.scale;
+		if(difference < 0) {
+			nearest(low, middle, 1 - axis, query);
+			if(difference * difference < query.best)
+				nearest(middle + 1, high, 1 - axis, query);
+		}
+		else {
+			nearest(middle + 1, high, 1 - axis, query);
+			if(difference * difference < query.best)
+				nearest(low, middle, 1 - axis, query);
+		}
+	}
+
+	/** k nearest search that keeps the best positions in a max-heap
+	 * @return The new size of the heap */
+	private int nearest(int low, int high, int axis, Query query, int[] heap, double[] distances, int size) {
+		if(low >= high || heap.length == 0)
+			return size;
+		int middle = (low + high) >>> 1;
+		double distance = query.distance(lats[middle], lons[middle]);
+		if(size < heap.length) {
+			siftUp(heap, distances, size++, middle, distance);
+		}
+		else if(distance < distances[0]) {
+			siftDown(heap, distances, size, middle, distance);
+		}
+
+		double difference = (axis == 0) ? query.lat - lats[middle] : (query.lon - lons[middle]) * query.scale;
+		int nearLow = (difference < 0) ? low : middle + 1;
+		int nearHigh = (difference < 0) ? middle : high;
+		int farLow = (difference < 0) ? middle + 1 : low;
+		int farHigh = (difference < 0) ? high : middle;
+		size = nearest(nearLow, nearHigh, 1 - axis, query, heap, distances, size);
+		if(size < heap.length || difference * difference < distances[0])
+			size = nearest(farLow, farHigh, 1 - axis, query, heap, distances, size);
+		return size;
+	}
+
+	private static void siftUp(int[] heap, double[] distances, int i, int position, double distance) {
+		while(i > 0) {
+			int parent = (i - 1) / 2;
+			if(distances[parent] >= distance)
+				break;
+			heap[i] = heap[parent];
+			distances[i] = distances[parent];
+			i = parent;
+		}
+		heap[i] = position;
+		distances[i] = distance;
+	}
+
+	/** replace the root of a heap of size entries and restore the heap */
+	private static void siftDown(int[] heap, double[] distances, int size, int position, double distance) {
+		int i = 0;
+		while(true) {
+			int child = 2 * i + 1;
+			if(child >= size)
+				break;
+			if(child + 1 < size && distances[child + 1] > distances[child])
+				child++;
+			if(distances[child] <= distance)
+				break;
+			heap[i] = heap[child];
+			distances[i] = distances[child];
+			i = child;
+		}
+		if(size > 0) {
+			heap[i] = position;
+			distances[i] = distance;
+		}
+	}
+
+	private void within(int low, int high, int axis, double minLat, double minLon, double maxLat, double maxLon,
+			List<GeographicPoint> result) {
+		if(low >= high)
+			return;
+		int middle = (low + high) >>> 1;
+		double lat = lats[middle];
+		double lon = lons[middle];
+		if(lat >= minLat && lat <= maxLat && lon >= minLon && lon <= maxLon)
+			result.add(graph.points[ids[middle]]);
+
+		double split = (axis == 0) ? lat : lon;
+		double min = (axis == 0) ? minLat : minLon;
+		double max = (axis == 0) ? maxLat : maxLon;
+		if(min <= split)
+			within(low, middle, 1 - axis, minLat, minLon, maxLat, maxLon, result);
+		if(max >= split)
+			within(middle + 1, high, 1 - axis, minLat, minLon, maxLat, maxLon, result);
+	}
+
+	/** arrange ids[low..high) so that every range is split at its median */
+	private void build(int low, int high, int axis) {
+		if(high - low <= 1)
+			return;
+		int middle = (low + high) >>> 1;
+		select(low, high - 1, middle, axis);
+		build(low, middle, 1 - axis);
+		build(middle + 1, high, 1 - axis);
+	}
+
+	/** quickselect: put the k-th smallest coordinate of ids[low..high] at position k */
+	private void select(int low, int high, int k, int axis) {
+		Random random = new Random(k);
+		while(low < high) {
+			swap(low + random.nextInt(high - low + 1), high);
+			double pivot = coordinate(ids[high], axis);
+			int store = low;
+			for(int i = low; i < high; i++) {
+				if(coordinate(ids[i], axis) < pivot)
+					swap(i, store++);
+			}
+			swap(store, high);
+			if(store == k)
+				return;
+			if(store < k)
+				low = store + 1;
+			else
+				high = store - 1;
+		}
+	}
+
+	private double coordinate(int v, int axis) {
+		return (axis == 0) ? graph.points[v].getX() : graph.points[v].getY();
+	}
+
+	private void swap(int i, int j) {
+		int id = ids[i];
+		ids[i] = ids[j];
+		ids[j] = id;
+	}
+
+	/** Time nearest intersection lookups of random locations on the bundled maps */
+	public static void main(String[] args) {
+		String[] maps = args.length > 0 ? args : new String[] { "data/maps/ucsd.map", "data/maps/new_york.map",
+				"data/maps/san_diego.map", "data/maps/hollywood_large.map" };
+		int lookups = 1000000;
+		for(String map : maps) {
+			MapGraph graph = new MapGraph();
+			GraphLoader.loadRoadMap(map, graph);
+			CompactRoadGraph compact = graph.freeze();
+			SpatialIndex index = new SpatialIndex(compact);
+
+			double minLat = Double.POSITIVE_INFINITY;
+			double maxLat = Double.NEGATIVE_INFINITY;
+			double minLon = Double.POSITIVE_INFINITY;
+			double maxLon = Double.NEGATIVE_INFINITY;
+			for(GeographicPoint point : compact.points) {
+				minLat = Math.min(minLat, point.getX());
+				maxLat = Math.max(maxLat, point.getX());
+				minLon = Math.min(minLon, point.getY());
+				maxLon = Math.max(maxLon, point.getY());
+			}
+			Random random = new Random(42);
+			double[] lats = new double[1024];
+			double[] lons = new double[1024];
+			for(int i = 0; i < lats.length; i++) {
+				lats[i] = minLat + random.nextDouble() * (maxLat - minLat);
+				lons[i] = minLon + random.nextDouble() * (maxLon - minLon);
+			}
+
+			long sum = 0;
+			for(int i = 0; i < lookups; i++)
+				sum += index.nearestId(lats[i & 1023], lons[i & 1023]);
+			long start = System.nanoTime();
+			for(int i = 0; i < lookups; i++)
+				sum += index.nearestId(lats[i & 1023], lons[i & 1023]);
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("%s: %d intersections, %.0f ns per nearest lookup (%d)%n", map,
+					compact.getNumVertices(), (double)elapsed / lookups, sum % 10);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/** Grader for the spatial index.
+ * Compares nearest, nearest(k) and within with a scan over all intersections
+ * for random locations inside and around the bounds of the bundled maps. */
+package roadgraph;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import util.GraphLoader;
+import geography.*;
+
+public class SpatialIndexGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 12;
+    private static final int QUERIES = 500;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        SpatialIndexGrader grader = new SpatialIndexGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Run the three kinds of query on one map.
+     * @param i The number of the first of the three tests
+     * @param file The map file to read from
+     * @param desc A description of the map */
+    public void runTest(int i, String file, String desc) throws Exception {
+        MapGraph graph = new MapGraph();
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        SpatialIndex index = graph.getSpatialIndex();
+        GeographicPoint[] points = index.getGraph().points;
+
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        for (GeographicPoint point : points) {
+            minLat = Math.min(minLat, point.getX());
+            maxLat = Math.max(maxLat, point.getX());
+            minLon = Math.min(minLon, point.getY());
+            maxLon = Math.max(maxLon, point.getY());
+        }
+        // a margin of half the map on every side puts over half of the locations outside the map
+        Random random = new Random(i);
+        GeographicPoint[] locations = new GeographicPoint[QUERIES];
+        for (int q = 0; q < QUERIES; q++)
+            locations[q] = new GeographicPoint(minLat + (random.nextDouble() * 2 - 0.5) * (maxLat - minLat),
+                    minLon + (random.nextDouble() * 2 - 0.5) * (maxLon - minLon));
+
+        feedback += appendFeedback(i, "Finding the intersection nearest to " + QUERIES + " locations");
+        int wrong = 0;
+        for (GeographicPoint location : locations) {
+            double[] expected = sortedDistances(points, location);
+            GeographicPoint nearest = index.nearest(location);
+            if (nearest == null || distance(location, nearest) != expected[0])
+                wrong++;
+        }
+        judge(wrong, "of the nearest intersections are not the closest one");
+
+        feedback += appendFeedback(i + 1, "Finding the k nearest intersections, closest first, to " + QUERIES + " locations");
+        // including no intersection and more than there are
+        int[] ks = { 0, 1, 2, 7, 30, points.length + 1 };
+        wrong = 0;
+        for (GeographicPoint location : locations) {
+            double[] expected = sortedDistances(points, location);
+            for (int k : ks) {
+                List<GeographicPoint> nearest = index.nearest(location, k);
+                // distances rather than points, so that intersections at the same distance may come in any order
+                double[] distances = new double[nearest.size()];
+                for (int r = 0; r < distances.length; r++)
+                    distances[r] = distance(location, nearest.get(r));
+                if (new HashSet<GeographicPoint>(nearest).size() != nearest.size()
+                        || !Arrays.equals(distances, Arrays.copyOf(expected, Math.min(k, expected.length))))
+                    wrong++;
+            }
+        }
+        judge(wrong, "of the k nearest lists are not the k closest intersections in order");
+
+        feedback += appendFeedback(i + 2, "Finding the intersections inside " + QUERIES + " boxes");
+        wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            GeographicPoint corner1 = locations[q];
+            GeographicPoint corner2 = locations[(q + 1) % QUERIES];
+            HashSet<GeographicPoint> expected = new HashSet<GeographicPoint>();
+            for (GeographicPoint point : points) {
+                if (point.getX() >= Math.min(corner1.getX(), corner2.getX()) && point.getX() <= Math.max(corner1.getX(), corner2.getX())
+                        && point.getY() >= Math.min(corner1.getY(), corner2.getY()) && point.getY() <= Math.max(corner1.getY(), corner2.getY()))
+                    expected.add(point);
+            }
+            List<GeographicPoint> within = index.within(corner1, corner2);
+            if (within.size() != expected.size() || !expected.equals(new HashSet<GeographicPoint>(within)))
+                wrong++;
+        }
+        judge(wrong, "of the boxes do not hold exactly the intersections inside them");
+    }
+
+    /** the distances of all points to location, closest first */
+    private static double[] sortedDistances(GeographicPoint[] points, GeographicPoint location) {
+        double[] distances = new double[points.length];
+        for (int p = 0; p < points.length; p++)
+            distances[p] = distance(location, points[p]);
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    /** squared distance on the equirectangular projection around location, as the index compares them */
+    private static double distance(GeographicPoint location, GeographicPoint other) {
+        double dLat = location.getX() - other.getX();
+        double dLon = (location.getY() - other.getY()) * Math.cos(Math.toRadians(location.getX()));
+        return dLat * dLat + dLon * dLon;
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, String problem) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " " + problem + ".";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD");
+
+            runTest(4, "new_york.map", "NEW YORK MAP: Manhattan grid");
+
+            runTest(7, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego");
+
+            runTest(10, "hollywood_large.map", "HOLLYWOOD MAP: Hollywood and around");
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,153 @@
+package roadgraph;
+
+import java.util.Arrays;
+
+/** The strongly connected components of the roads of a CompactRoadGraph:
+ * two intersections are in the same component if each can be reached from
+ * the other. Maps cut out of a larger area have many small components, for
+ * example the one-way roads that end at the border, and a search towards an
+ * intersection that can not be reached settles everything reachable first.
+ *
+ * The components are found by Tarjan's algorithm, with an explicit stack so
+ * that long roads do not overflow the call stack. Tarjan numbers every
+ * component after all components reachable from it, so a road between two
+ * components always leads to a lower number, and a path can only go from a
+ * component to one with the same or a lower number. Together with the
+ * weakly connected components, the parts of the map that are connected when
+ * roads are taken both ways, this rules out many queries without a path in
+ * constant time. The components depend on the roads only, not on their costs;
+ * a closed road can only cut paths, so the test stays valid after updates. */
+final class StronglyConnectedComponents {
+	private final CompactRoadGraph graph;
+	/** the component of every intersection */
+	private final int[] components;
+	/** the number of intersections of every component */
+	private final int[] sizes;
+	/** the weakly connected part of every intersection, as the smallest id in it */
+	private final int[] parts;
+
+	private StronglyConnectedComponents(CompactRoadGraph graph, int[] components, int[] sizes, int[] parts) {
+		this.graph = graph;
+		this.components = components;
+		this.sizes = sizes;
+		this.parts = parts;
+	}
+
+	/** Find the components of the roads of graph */
+	static StronglyConnectedComponents compute(CompactRoadGraph graph) {
+		int n = graph.getNumVertices();
+		int[] index = new int[n];
+		int[] low = new int[n];
+		int[] components = new int[n];
+		int[] sizes = new int[n];
+		// the next road to follow from every intersection on the call stack
+		int[] cursor = new int[n];
+		int[] calls = new int[n];
+		int[] stack = new int[n];
+		int counter = 0;
+		int count = 0;
+		int top = 0;
+		Arrays.fill(index, -1);
+		Arrays.fill(components, -1);
+
+		for(int root = 0; root < n; root++) {
+			if(index[root] >= 0)
+				continue;
+			int depth = 0;
+			index[root] = low[root] = counter++;
+			cursor[root] = graph.offsets[root];
+			stack[top++] = root;
+			calls[depth++] = root;
+			while(depth > 0) {
+				int v = calls[depth - 1];
+				if(cursor[v] < graph.offsets[v + 1]) {
+					int w = graph.targets[cursor[v]++];
+					if(index[w] < 0) {
+						index[w] = low[w] = counter++;
+						cursor[w] = graph.offsets[w];
+						stack[top++] = w;
+						calls[depth++] = w;
+					}
+					// w is on the stack, in the component being built
+					else if(components[w] < 0)
+						low[v] = Math.min(low[v], index[w]);
+					continue;
+				}
+
+				depth--;
+				if(low[v] == index[v]) {
+					int w;
+					do {
+						w = stack[--top];
+						components[w] = count;
+						sizes[count]++;
+					} while(w != v);
+					count++;
+				}
+				if(depth > 0) {
+					int caller = calls[depth - 1];
+					low[caller] = Math.min(low[caller], low[v]);
+				}
+			}
+		}
+		return new StronglyConnectedComponents(graph, components, Arrays.copyOf(sizes, count),
+				weakParts(graph));
+	}
+
+	/** union-find over the roads taken both ways */
+	private static int[] weakParts(CompactRoadGraph graph) {
+		int n = graph.getNumVertices();
+		int[] parents = new int[n];
+		for(int v = 0; v < n; v++)
+			parents[v] = v;
+		for(int v = 0; v < n; v++) {
+			for(int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+				int a = find(parents, v);
+				int b = find(parents, graph.targets[e]);
+				// the smaller id becomes the root
+				if(a < b)
+					parents[b] = a;
+				else if(b < a)
+					parents[a] = b;
+			}
+		}
+		for(int v = 0; v < n; v++)
+			parents[v] = find(parents, v);
+		return parents;
+	}
+
+	private static int find(int[] parents, int v) {
+		while(parents[v] != v) {
+			parents[v] = parents[parents[v]];
+			v = parents[v];
+		}
+		return v;
+	}
+
+	/** get the graph these components belong to */
+	CompactRoadGraph getGraph() {
+		return graph;
+	}
+
+	/** get the number of strongly connected components */
+	int getNumComponents() {
+		return sizes.length;
+	}
+
+	/** get the component of intersection v */
+	int getComponent(int v) {
+		return components[v];
+	}
+
+	/** get the number of intersections in component c */
+	int getSize(int c) {
+		return sizes[c];
+	}
+
+	/** Check in constant time if a path from start to goal is possible
+	 * @return false if there is certainly no path, true if there may be one;
+	 * 	always true if start and goal are in the same component */
+	boolean mayReach(int start, int goal) {
+		return parts[start] == parts[goal] && components[goal] <= components[start];
+	}
+}
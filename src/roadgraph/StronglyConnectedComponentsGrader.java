@@ -0,0 +1,174 @@
+/** Grader for the strongly connected components.
+ * Checks the components and mayReach against a breadth first search from a
+ * few starts, that pruneComponents removes exactly the intersections of the
+ * components below the size given but never the largest one, and that the
+ * searches find the best paths on the pruned map. */
+package roadgraph;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import util.GraphLoader;
+import geography.*;
+
+public class StronglyConnectedComponentsGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 9;
+    private static final int STARTS = 40;
+    private static final int QUERIES = 30;
+    private static final int[] MIN_SIZES = { 1, 2, 3, 10, 100, Integer.MAX_VALUE };
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        StronglyConnectedComponentsGrader grader = new StronglyConnectedComponentsGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Find the components of one map, prune them and search on what is left.
+     * @param i The number of the first of the three tests
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true to compare lengths, false to compare times */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        CompactRoadGraph compact = graph.freeze();
+        StronglyConnectedComponents components = StronglyConnectedComponents.compute(compact);
+
+        feedback += appendFeedback(i, "Finding the " + components.getNumComponents() + " components and what "
+                + STARTS + " starts may reach");
+        GraderFixture fixture = new GraderFixture(graph, i, STARTS);
+        int wrong = 0;
+        for (GeographicPoint point : fixture.starts) {
+            int start = compact.getId(point);
+            boolean[] forward = reached(compact, start, true);
+            boolean[] backward = reached(compact, start, false);
+            for (int v = 0; v < compact.getNumVertices(); v++) {
+                boolean isSameComponent = components.getComponent(v) == components.getComponent(start);
+                if ((forward[v] && !components.mayReach(start, v)) || isSameComponent != (forward[v] && backward[v]))
+                    wrong++;
+            }
+        }
+        judge(wrong, "pairs were ruled out although there is a path, or put in the wrong component");
+
+        feedback += appendFeedback(i + 1, "Pruning the components smaller than " + Arrays.toString(MIN_SIZES));
+        int largest = 0;
+        for (int c = 1; c < components.getNumComponents(); c++) {
+            if (components.getSize(c) > components.getSize(largest))
+                largest = c;
+        }
+        wrong = 0;
+        for (int minSize : MIN_SIZES) {
+            HashSet<GeographicPoint> kept = new HashSet<GeographicPoint>();
+            int keptRoads = 0;
+            for (int v = 0; v < compact.getNumVertices(); v++) {
+                int c = components.getComponent(v);
+                if (c == largest || components.getSize(c) >= minSize)
+                    kept.add(compact.getLocation(v));
+            }
+            for (int e = 0; e < compact.getNumEdges(); e++) {
+                if (kept.contains(compact.points[compact.sources[e]]) && kept.contains(compact.points[compact.targets[e]]))
+                    keptRoads++;
+            }
+            MapGraph pruned = new MapGraph(isLengthCompare);
+            int removed = GraphLoader.loadRoadMap("data/maps/" + file, pruned, minSize);
+            if (removed != compact.getNumVertices() - kept.size() || !pruned.getVertices().equals(kept)
+                    || pruned.getNumEdges() != keptRoads)
+                wrong++;
+        }
+        judge(wrong, "sizes did not remove exactly the intersections and roads of the smaller components");
+
+        feedback += appendFeedback(i + 2, "Searching " + QUERIES + " queries on the map pruned to its largest component");
+        MapGraph pruned = new MapGraph(isLengthCompare);
+        GraphLoader.loadRoadMap("data/maps/" + file, pruned, Integer.MAX_VALUE);
+        pruned.prepareContractionHierarchy();
+        CompactRoadGraph prunedCompact = pruned.freeze();
+        double[] weights = isLengthCompare ? prunedCompact.lengths : prunedCompact.times;
+        fixture = new GraderFixture(pruned, i + 2, QUERIES);
+        wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            GeographicPoint start = fixture.starts[q];
+            GeographicPoint goal = fixture.goals[q];
+            double expected = GraderFixture.dijkstraCost(prunedCompact, weights, prunedCompact.getId(start), prunedCompact.getId(goal));
+            List<List<GeographicPoint>> paths = Arrays.asList(pruned.dijkstra(start, goal), pruned.aStarSearch(start, goal),
+                    pruned.bidirectionalAStar(start, goal), pruned.hierarchySearch(start, goal));
+            // every intersection of one component can be reached from every other
+            boolean isWrong = expected == Double.POSITIVE_INFINITY;
+            for (List<GeographicPoint> path : paths)
+                isWrong |= !GraderFixture.isSame(expected, GraderFixture.pathCost(pruned, path, isLengthCompare));
+            if (isWrong)
+                wrong++;
+        }
+        judge(wrong, "queries had no path or a path other than the best one");
+    }
+
+    /** the intersections reached from start along the roads, or against them */
+    private static boolean[] reached(CompactRoadGraph graph, int start, boolean isForward) {
+        boolean[] reached = new boolean[graph.getNumVertices()];
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        reached[start] = true;
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int v = queue.poll();
+            int first = isForward ? graph.offsets[v] : graph.inOffsets[v];
+            int end = isForward ? graph.offsets[v + 1] : graph.inOffsets[v + 1];
+            for (int i = first; i < end; i++) {
+                int next = isForward ? graph.targets[i] : graph.sources[graph.inEdges[i]];
+                if (!reached[next]) {
+                    reached[next] = true;
+                    queue.add(next);
+                }
+            }
+        }
+        return reached;
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, String problem) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " " + problem + ".";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "new_york.map", "NEW YORK MAP: Manhattan grid, fastest paths", false);
+
+            runTest(4, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, shortest paths", true);
+
+            runTest(7, "hollywood_large.map", "HOLLYWOOD MAP: Hollywood and around, fastest paths", false);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,196 @@
+/** Grader for the time dependent searches.
+ * Writes a profile file whose breakpoints let a road be left later and
+ * arrived at earlier, checks that the profiles read from it never do, and
+ * compares the arrival of timeDependentDijkstra and timeDependentAStar with
+ * a plain time dependent Dijkstra search. */
+package roadgraph;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import util.GraphLoader;
+import geography.*;
+
+public class TimeDependentGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 9;
+    private static final int QUERIES = 10;
+    private static final double[] DEPARTURES = { 0, 420.3, 479.9, 1080, 1439.7, 2000 };
+    /** departures a FIFO check steps through, in min */
+    private static final double STEP = 0.05;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        TimeDependentGrader grader = new TimeDependentGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Read random profiles for one map and search with them.
+     * @param i The number of the first of the three tests
+     * @param file The map file to read from
+     * @param desc A description of the map */
+    public void runTest(int i, String file, String desc) throws Exception {
+        MapGraph graph = new MapGraph(false);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        CompactRoadGraph compact = graph.freeze();
+
+        File profileFile = File.createTempFile("map", ".profiles");
+        try {
+            try (PrintWriter out = new PrintWriter(profileFile)) {
+                out.println("# random profiles for " + file);
+                Random random = new Random(i);
+                for (int e = 0; e < compact.getNumEdges(); e++) {
+                    if (random.nextInt(3) != 0)
+                        continue;
+                    GeographicPoint from = compact.points[compact.sources[e]];
+                    GeographicPoint to = compact.points[compact.targets[e]];
+                    String line = from.getX() + " " + from.getY() + " " + to.getX() + " " + to.getY();
+                    for (int b = random.nextInt(4); b >= 0; b--)
+                        line += " " + Math.floor(random.nextDouble() * 1440) + ":" + (0.3 + random.nextDouble() * 3);
+                    // a jam that clears at once: leaving half a minute later arrives much earlier
+                    double jam = (random.nextInt(4) == 0) ? 1439.5 : Math.floor(random.nextDouble() * 1439) + 0.25;
+                    line += " " + jam + ":30 " + (jam + 0.4) + ":0.2";
+                    out.println(line);
+                }
+            }
+            graph.loadTravelTimeProfiles(profileFile.getPath());
+        } finally {
+            profileFile.delete();
+        }
+        TravelTimeProfiles profiles = graph.getTravelTimeProfiles();
+
+        feedback += appendFeedback(i, "Leaving " + profiles.getNumProfiles() + " roads with a profile later and later");
+        int wrong = 0;
+        for (int e = 0; e < compact.getNumEdges(); e++) {
+            double arrival = -STEP + profiles.getTravelTime(e, -STEP);
+            for (double t = 0; t <= TravelTimeProfiles.PERIOD + 1; t += STEP) {
+                double next = t + profiles.getTravelTime(e, t);
+                if (next < arrival - 1e-9) {
+                    wrong++;
+                    break;
+                }
+                arrival = next;
+            }
+        }
+        judge(wrong, "roads can be arrived at earlier by leaving later");
+
+        GraderFixture fixture = new GraderFixture(graph, i, QUERIES);
+        feedback += appendFeedback(i + 1, "Running timeDependentDijkstra for " + QUERIES + " queries at " + DEPARTURES.length + " departures");
+        wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            for (double departure : DEPARTURES) {
+                double expected = arrival(compact, profiles, compact.getId(fixture.starts[q]), compact.getId(fixture.goals[q]), departure);
+                List<GeographicPoint> path = graph.timeDependentDijkstra(fixture.starts[q], fixture.goals[q], departure);
+                if (!GraderFixture.isSame(expected, pathArrival(compact, profiles, path, departure)))
+                    wrong++;
+            }
+        }
+        judge(wrong, "paths arrive other than the plain time dependent search");
+
+        feedback += appendFeedback(i + 2, "Running timeDependentAStar for " + QUERIES + " queries at " + DEPARTURES.length + " departures");
+        wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            for (double departure : DEPARTURES) {
+                double expected = arrival(compact, profiles, compact.getId(fixture.starts[q]), compact.getId(fixture.goals[q]), departure);
+                List<GeographicPoint> path = graph.timeDependentAStar(fixture.starts[q], fixture.goals[q], departure);
+                if (!GraderFixture.isSame(expected, pathArrival(compact, profiles, path, departure)))
+                    wrong++;
+            }
+        }
+        judge(wrong, "paths arrive other than the plain time dependent search");
+    }
+
+    /** earliest arrival at goal leaving start at departure, by Dijkstra on arrival times */
+    private static double arrival(CompactRoadGraph graph, TravelTimeProfiles profiles, int start, int goal, double departure) {
+        double[] arrivals = new double[graph.getNumVertices()];
+        Arrays.fill(arrivals, Double.POSITIVE_INFINITY);
+        arrivals[start] = departure;
+        PriorityQueue<double[]> queue = new PriorityQueue<double[]>((a, b) -> Double.compare(a[0], b[0]));
+        queue.add(new double[] { departure, start });
+        while (!queue.isEmpty()) {
+            double[] head = queue.poll();
+            int v = (int)head[1];
+            if (head[0] > arrivals[v])
+                continue;
+            if (v == goal)
+                return head[0];
+            for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+                double next = head[0] + profiles.getTravelTime(e, head[0]);
+                if (next < arrivals[graph.targets[e]]) {
+                    arrivals[graph.targets[e]] = next;
+                    queue.add(new double[] { next, graph.targets[e] });
+                }
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /** arrival at the end of a path leaving at departure over the fastest road of each step, infinity for no path */
+    private static double pathArrival(CompactRoadGraph graph, TravelTimeProfiles profiles, List<GeographicPoint> path, double departure) {
+        if (path == null)
+            return Double.POSITIVE_INFINITY;
+        double time = departure;
+        for (int p = 1; p < path.size(); p++) {
+            int from = graph.getId(path.get(p - 1));
+            int to = graph.getId(path.get(p));
+            double next = Double.POSITIVE_INFINITY;
+            for (int e = graph.offsets[from]; e < graph.offsets[from + 1]; e++) {
+                if (graph.targets[e] == to)
+                    next = Math.min(next, time + profiles.getTravelTime(e, time));
+            }
+            time = next;
+        }
+        return time;
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, String problem) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " " + problem + ".";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD");
+
+            runTest(4, "new_york.map", "NEW YORK MAP: Manhattan grid");
+
+            runTest(7, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego");
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,337 @@
+package roadgraph;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** Travel times of the roads of a CompactRoadGraph that change over the day.
+ * The travel time of a road with a profile is a piecewise linear function of
+ * the departure time, given by breakpoints (minute of the day, travel time)
+ * and repeated every day; between the last breakpoint of a day and the first
+ * of the next it is interpolated as well. Roads without a profile keep their
+ * fixed time. All breakpoints are kept in two flat arrays, with the profile
+ * of road e at positions offsets[e] .. offsets[e+1]-1, so evaluating a
+ * profile is a binary search over a few doubles.
+ *
+ * Every profile is FIFO: leaving later never means arriving earlier, which is
+ * the case if the travel time never falls faster than the clock advances.
+ * Profiles that break this are raised where needed when they are created.
+ * With FIFO roads the time dependent Dijkstra search stays exact.
+ *
+ * The profile file is text with one road per line:
+ * lat1 lon1 lat2 lon2 minute:factor minute:factor ...
+ * where the points are the intersections at the ends of the road, as in the
+ * graph built by GraphLoader.loadRoadMap, and factor multiplies the fixed time
+ * of the road at that minute of the day. A line applies to every road from the
+ * first intersection to the second. Empty lines and lines starting with # are
+ * skipped. */
+public final class TravelTimeProfiles {
+	/** length of a day in minutes */
+	public static final double PERIOD = 1440;
+
+	private final CompactRoadGraph graph;
+	private final int[] offsets;
+	/** minute of the day of every breakpoint, increasing within a road */
+	private final double[] departures;
+	/** travel time (min) at every breakpoint */
+	private final double[] durations;
+	/** the shortest travel time of every road at any time of the day */
+	private final double[] minTimes;
+	/** the highest speed (kph) of any road at any time of the day */
+	final double maxSpeed;
+
+	private TravelTimeProfiles(CompactRoadGraph graph, int[] offsets, double[] departures, double[] durations) {
+		this.graph = graph;
+		this.offsets = offsets;
+		this.departures = departures;
+		this.durations = durations;
+
+		int m = graph.getNumEdges();
+		minTimes = new double[m];
+		double speed = 0;
+		for(int e = 0; e < m; e++) {
+			double min = graph.times[e];
+			if(offsets[e] < offsets[e + 1]) {
+				min = Double.POSITIVE_INFINITY;
+				// the minimum of a piecewise linear function is at a breakpoint
+				for(int i = offsets[e]; i < offsets[e + 1]; i++)
+					min = Math.min(min, durations[i]);
+			}
+			minTimes[e] = min;
+			speed = Math.max(speed, graph.straightLineSpeed(e, min));
+		}
+		maxSpeed = speed;
+	}
+
+	/** Create profiles from breakpoints
+	 * @param graph The graph the roads belong to
+	 * @param profiles For every road its breakpoints as pairs of minute of the day and
+	 * 	travel time (min), or null to keep the fixed time of the road
+	 * @throws IllegalArgumentException If there is not one entry for every road, or a
+	 * 	breakpoint is outside the day or has a negative or undefined travel time */
+	public static TravelTimeProfiles create(CompactRoadGraph graph, List<double[]> profiles)
+			throws IllegalArgumentException {
+		int m = graph.getNumEdges();
+		if(profiles.size() != m)
+			throw new IllegalArgumentException("TravelTimeProfiles: need one profile for each of the " + m + " roads");
+		// sort every profile by minute, a later breakpoint at the same minute replaces an earlier one
+		List<TreeMap<Double, Double>> sorted = new ArrayList<TreeMap<Double, Double>>(m);
+		int[] offsets = new int[m + 1];
+		for(int e = 0; e < m; e++) {
+			double[] profile = profiles.get(e);
+			TreeMap<Double, Double> breakpoints = new TreeMap<Double, Double>();
+			if(profile != null) {
+				if(profile.length % 2 != 0)
+					throw new IllegalArgumentException("TravelTimeProfiles: profile of road " + e + " is not in pairs");
+				for(int i = 0; i < profile.length; i += 2) {
+					if(!(profile[i] >= 0 && profile[i] < PERIOD) || !(profile[i + 1] >= 0)
+							|| Double.isInfinite(profile[i + 1]))
+						throw new IllegalArgumentException("TravelTimeProfiles: bad breakpoint of road " + e);
+					breakpoints.put(profile[i], profile[i + 1]);
+				}
+			}
+			sorted.add(breakpoints);
+			offsets[e + 1] = offsets[e] + breakpoints.size();
+		}
+
+		double[] departures = new double[offsets[m]];
+		double[] durations = new double[offsets[m]];
+		for(int e = 0; e < m; e++) {
+			int i = offsets[e];
+			for(Map.Entry<Double, Double> breakpoint : sorted.get(e).entrySet()) {
+				departures[i] = breakpoint.getKey();
+				durations[i] = breakpoint.getValue();
+				i++;
+			}
+			makeFifo(departures, durations, offsets[e], offsets[e + 1]);
+		}
+		return new TravelTimeProfiles(graph, offsets, departures, durations);
+	}
+
+	/** Create profiles without any profile: every road keeps its fixed time */
+	public static TravelTimeProfiles none(CompactRoadGraph graph) {
+		return new TravelTimeProfiles(graph, new int[graph.getNumEdges() + 1], new double[0], new double[0]);
+	}
+
+	/** raise travel times until no breakpoint arrives before the one before it, also across midnight */
+	private static void makeFifo(double[] departures, double[] durations, int first, int end) {
+		int count = end - first;
+		boolean isChanged = true;
+		for(int pass = 0; pass <= count && isChanged; pass++) {
+			isChanged = false;
+			for(int k = 1; k <= count; k++) {
+				int previous = first + k - 1;
+				int current = first + k % count;
+				double gap = departures[current] - departures[previous] + (k == count ? PERIOD : 0);
+				double lowest = durations[previous] - gap;
+				if(durations[current] < lowest) {
+					durations[current] = lowest;
+					isChanged = true;
+				}
+			}
+		}
+	}
+
+	/** Move the profiles to a graph with the same roads but other fixed times.
+	 * The changed roads lose their profile and keep the new fixed time. */
+	TravelTimeProfiles withGraph(CompactRoadGraph graph, int[] changed) {
+		int m = graph.getNumEdges();
+		boolean[] isChanged = new boolean[m];
+		for(int e : changed)
+			isChanged[e] = true;
+		int[] newOffsets = new int[m + 1];
+		for(int e = 0; e < m; e++)
+			newOffsets[e + 1] = newOffsets[e] + (isChanged[e] ? 0 : offsets[e + 1] - offsets[e]);
+		double[] newDepartures = new double[newOffsets[m]];
+		double[] newDurations = new double[newOffsets[m]];
+		for(int e = 0; e < m; e++) {
+			int count = newOffsets[e + 1] - newOffsets[e];
+			System.arraycopy(departures, offsets[e], newDepartures, newOffsets[e], count);
+			System.arraycopy(durations, offsets[e], newDurations, newOffsets[e], count);
+		}
+		return new TravelTimeProfiles(graph, newOffsets, newDepartures, newDurations);
+	}
+
+	/** Move the profiles to a graph with the same roads but other fixed times,
+	 * dropping the profiles of the roads whose fixed time differs. */
+	TravelTimeProfiles withGraph(CompactRoadGraph graph) {
+		int m = graph.getNumEdges();
+		int[] changed = new int[m];
+		int count = 0;
+		for(int e = 0; e < m; e++) {
+			if(graph.times[e] != this.graph.times[e])
+				changed[count++] = e;
+		}
+		return withGraph(graph, Arrays.copyOf(changed, count));
+	}
+
+	/** get the graph these profiles belong to */
+	public CompactRoadGraph getGraph() {
+		return graph;
+	}
+
+	/** get the number of roads with a profile */
+	public int getNumProfiles() {
+		int count = 0;
+		for(int e = 0; e + 1 < offsets.length; e++) {
+			if(offsets[e] < offsets[e + 1])
+				count++;
+		}
+		return count;
+	}
+
+	/** Get the travel time of a road
+	 * @param e The road
+	 * @param time The departure time in minutes, any number of days after midnight of the first day
+	 * @return The travel time in min */
+	public double getTravelTime(int e, double time) {
+		return travelTime(e, time);
+	}
+
+	/** get the shortest travel time of road e at any time of the day */
+	public double getMinTravelTime(int e) {
+		return minTimes[e];
+	}
+
+	/** travel time of road e leaving at time (min) */
+	double travelTime(int e, double time) {
+		int first = offsets[e];
+		int end = offsets[e + 1];
+		if(first == end)
+			return graph.times[e];
+		if(end - first == 1)
+			return durations[first];
+
+		double t = time % PERIOD;
+		if(t < 0)
+			t += PERIOD;
+		// last breakpoint at or before t
+		int low = first;
+		int high = end - 1;
+		if(t < departures[first]) {
+			// between the last breakpoint of the previous day and the first of this day
+			return interpolate(departures[end - 1] - PERIOD, durations[end - 1], departures[first], durations[first], t);
+		}
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(departures[middle] <= t)
+				low = middle;
+			else
+				high = middle - 1;
+		}
+		if(low == end - 1)
+			return interpolate(departures[low], durations[low], departures[first] + PERIOD, durations[first], t);
+		return interpolate(departures[low], durations[low], departures[low + 1], durations[low + 1], t);
+	}
+
+	private static double interpolate(double t0, double value0, double t1, double value1, double t) {
+		return value0 + (value1 - value0) * (t - t0) / (t1 - t0);
+	}
+
+	/** get the name of the profile file kept next to a map file */
+	public static String getFile(String mapFile) {
+		return mapFile + ".profiles";
+	}
+
+	/** Read the profiles of the roads of a graph from a profile file
+	 * @throws IOException If the file can not be read, or a line is not in the format
+	 * 	above or names a road that is not in the graph */
+	public static TravelTimeProfiles load(String filename, CompactRoadGraph graph) throws IOException {
+		int m = graph.getNumEdges();
+		List<double[]> profiles = new ArrayList<double[]>(m);
+		for(int e = 0; e < m; e++)
+			profiles.add(null);
+
+		try(BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+			String line;
+			int number = 0;
+			while((line = reader.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] tokens = line.split("\\s+");
+				if(tokens.length < 5)
+					throw new IOException(filename + ":" + number + ": a road needs two points and a breakpoint");
+				double[] factors = new double[2 * (tokens.length - 4)];
+				int from;
+				int to;
+				try {
+					from = graph.getId(new GeographicPoint(Double.parseDouble(tokens[0]), Double.parseDouble(tokens[1])));
+					to = graph.getId(new GeographicPoint(Double.parseDouble(tokens[2]), Double.parseDouble(tokens[3])));
+					for(int i = 4; i < tokens.length; i++) {
+						int colon = tokens[i].indexOf(':');
+						if(colon < 0)
+							throw new NumberFormatException();
+						factors[2 * (i - 4)] = Double.parseDouble(tokens[i].substring(0, colon));
+						factors[2 * (i - 4) + 1] = Double.parseDouble(tokens[i].substring(colon + 1));
+					}
+				}
+				catch(NumberFormatException e) {
+					throw new IOException(filename + ":" + number + ": expected lat1 lon1 lat2 lon2 minute:factor ...");
+				}
+
+				boolean isFound = false;
+				for(int e = (from < 0) ? 0 : graph.offsets[from]; from >= 0 && e < graph.offsets[from + 1]; e++) {
+					if(graph.targets[e] != to)
+						continue;
+					double[] profile = new double[factors.length];
+					for(int i = 0; i < factors.length; i += 2) {
+						profile[i] = factors[i];
+						profile[i + 1] = factors[i + 1] * graph.times[e];
+					}
+					profiles.set(e, profile);
+					isFound = true;
+				}
+				if(!isFound)
+					throw new IOException(filename + ":" + number + ": no road between these points");
+			}
+		}
+
+		try {
+			return create(graph, profiles);
+		}
+		catch(IllegalArgumentException e) {
+			throw new IOException(filename + ": " + e.getMessage(), e);
+		}
+	}
+
+	/** factors of the rush hour profile written by main: free flow at night, peaks at 8:00 and 18:00 */
+	private static final String RUSH_HOUR = "0:1 360:1 480:1.8 600:1.15 960:1.15 1080:1.9 1200:1.05";
+
+	/** Write a rush hour profile for the main roads of every map given, or of all bundled maps,
+	 * to show and measure the time dependent searches */
+	public static void main(String[] args) throws IOException {
+		String[] maps = args.length > 0 ? args : new String[] { "data/maps/ucsd.map", "data/maps/new_york.map",
+				"data/maps/san_diego.map", "data/maps/hollywood_large.map" };
+		List<String> busy = Arrays.asList("motorway", "trunk", "primary", "secondary", "motorway_link", "trunk_link",
+				"primary_link", "secondary_link");
+		for(String map : maps) {
+			MapGraph mapGraph = new MapGraph(false);
+			GraphLoader.loadRoadMap(map, mapGraph);
+			CompactRoadGraph graph = mapGraph.freeze();
+			int count = 0;
+			try(PrintWriter out = new PrintWriter(getFile(map))) {
+				out.println("# rush hour profiles for " + map + ": lat1 lon1 lat2 lon2 minute:factor ...");
+				for(int e = 0; e < graph.getNumEdges(); e++) {
+					if(!busy.contains(graph.roadTypes[e]))
+						continue;
+					GeographicPoint from = graph.points[graph.sources[e]];
+					GeographicPoint to = graph.points[graph.targets[e]];
+					out.println(from.getX() + " " + from.getY() + " " + to.getX() + " " + to.getY() + " " + RUSH_HOUR);
+					count++;
+				}
+			}
+			System.out.println(getFile(map) + ": " + count + " of " + graph.getNumEdges() + " roads");
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package roadgraph;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import geography.GeographicPoint;
+import util.GraphLoader;
+
+/** Turn restrictions and turn costs of the roads of a CompactRoadGraph, for
+ * the edge based searches of MapGraph. A turn goes from a road into an
+ * intersection onto a road out of it; it is either forbidden or costs extra
+ * minutes in the fastest path searches. The shortest path searches only keep
+ * to the restrictions. Turns of a road are kept at positions
+ * offsets[e] .. offsets[e+1]-1 of the turn arrays, so looking one up scans
+ * the few turns listed for the road coming in. A U-turn, onto the road back
+ * to where the road coming in started, has its own default cost.
+ *
+ * The turn file is text with one rule per line, the points being intersections:
+ * no lat1 lon1 lat2 lon2 lat3 lon3        no turn from 1 over 2 onto 3
+ * only lat1 lon1 lat2 lon2 lat3 lon3      from 1 over 2 only onto 3
+ * cost lat1 lon1 lat2 lon2 lat3 lon3 min  the turn from 1 over 2 onto 3 costs min
+ * uturn no | uturn min                    forbid U-turns, or let them cost min
+ * Empty lines and lines starting with # are skipped. A later rule for the
+ * same turn replaces an earlier one. */
+public final class TurnCosts {
+	private final CompactRoadGraph graph;
+	private final int[] offsets;
+	/** road turned onto */
+	private final int[] turnEdges;
+	/** cost of every turn in min, infinity if it is forbidden */
+	private final double[] turnCosts;
+	private final double uTurnCost;
+
+	private TurnCosts(CompactRoadGraph graph, int[] offsets, int[] turnEdges, double[] turnCosts, double uTurnCost) {
+		this.graph = graph;
+		this.offsets = offsets;
+		this.turnEdges = turnEdges;
+		this.turnCosts = turnCosts;
+		this.uTurnCost = uTurnCost;
+	}
+
+	/** Create turn costs without any rule: every turn is free */
+	public static TurnCosts none(CompactRoadGraph graph) {
+		return new TurnCosts(graph, new int[graph.getNumEdges() + 1], new int[0], new double[0], 0);
+	}
+
+	/** get the graph these turns belong to */
+	public CompactRoadGraph getGraph() {
+		return graph;
+	}
+
+	/** get the number of turns with a rule */
+	public int getNumTurns() {
+		return turnEdges.length;
+	}
+
+	/** get the cost of a U-turn without a rule of its own (min), infinity if they are forbidden */
+	public double getUTurnCost() {
+		return uTurnCost;
+	}
+
+	/** Get the cost of a turn
+	 * @param from The road coming into the intersection
+	 * @param to The road going out of it
+	 * @return The cost in min, infinity if the turn is forbidden */
+	public double getCost(int from, int to) {
+		return cost(from, to);
+	}
+
+	/** cost of the turn from road from onto road to */
+	double cost(int from, int to) {
+		for(int i = offsets[from]; i < offsets[from + 1]; i++) {
+			if(turnEdges[i] == to)
+				return turnCosts[i];
+		}
+		return (graph.targets[to] == graph.sources[from]) ? uTurnCost : 0;
+	}
+
+	/** get the name of the turn file kept next to a map file */
+	public static String getFile(String mapFile) {
+		return mapFile + ".turns";
+	}
+
+	/** Read the turns of the roads of a graph from a turn file
+	 * @throws IOException If the file can not be read, or a line is not in the format
+	 * 	above or names a turn that is not in the graph */
+	public static TurnCosts load(String filename, CompactRoadGraph graph) throws IOException {
+		// the cost of every turn by from * m + to, a later rule replaces an earlier one
+		HashMap<Long, Double> turns = new HashMap<Long, Double>();
+		long m = graph.getNumEdges();
+		double uTurnCost = 0;
+		try(BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+			String line;
+			int number = 0;
+			while((line = reader.readLine()) != null) {
+				number++;
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] tokens = line.split("\\s+");
+				String where = filename + ":" + number + ": ";
+				try {
+					if(tokens[0].equals("uturn") && tokens.length == 2) {
+						uTurnCost = tokens[1].equals("no") ? Double.POSITIVE_INFINITY : parseCost(tokens[1]);
+						continue;
+					}
+					boolean isCost = tokens[0].equals("cost");
+					if(!(isCost || tokens[0].equals("no") || tokens[0].equals("only")) || tokens.length != (isCost ? 8 : 7))
+						throw new IOException(where + "expected no, only or cost with three points, or uturn");
+					int first = id(graph, tokens, 1, where);
+					int via = id(graph, tokens, 3, where);
+					int last = id(graph, tokens, 5, where);
+					double cost = isCost ? parseCost(tokens[7]) : Double.POSITIVE_INFINITY;
+					boolean isFound = false;
+					for(int i = graph.inOffsets[via]; i < graph.inOffsets[via + 1]; i++) {
+						int from = graph.inEdges[i];
+						if(graph.sources[from] != first)
+							continue;
+						for(int to = graph.offsets[via]; to < graph.offsets[via + 1]; to++) {
+							boolean isTurn = graph.targets[to] == last;
+							isFound |= isTurn;
+							if(tokens[0].equals("only")) {
+								if(!isTurn)
+									turns.put(from * m + to, Double.POSITIVE_INFINITY);
+							}
+							else if(isTurn)
+								turns.put(from * m + to, cost);
+						}
+					}
+					if(!isFound)
+						throw new IOException(where + "no turn between these points");
+				}
+				catch(NumberFormatException e) {
+					throw new IOException(where + "bad number in " + line);
+				}
+			}
+		}
+
+		// group the turns by the road coming in
+		int[] offsets = new int[(int)m + 1];
+		for(long turn : turns.keySet())
+			offsets[(int)(turn / m) + 1]++;
+		for(int e = 0; e < m; e++)
+			offsets[e + 1] += offsets[e];
+		int[] turnEdges = new int[turns.size()];
+		double[] turnCosts = new double[turns.size()];
+		int[] next = Arrays.copyOf(offsets, (int)m);
+		for(Map.Entry<Long, Double> turn : turns.entrySet()) {
+			int position = next[(int)(turn.getKey() / m)]++;
+			turnEdges[position] = (int)(turn.getKey() % m);
+			turnCosts[position] = turn.getValue();
+		}
+		return new TurnCosts(graph, offsets, turnEdges, turnCosts, uTurnCost);
+	}
+
+	private static double parseCost(String token) throws NumberFormatException {
+		double cost = Double.parseDouble(token);
+		if(!(cost >= 0) || Double.isInfinite(cost))
+			throw new NumberFormatException();
+		return cost;
+	}
+
+	/** id of the intersection at tokens[i], tokens[i+1] */
+	private static int id(CompactRoadGraph graph, String[] tokens, int i, String where) throws IOException {
+		int id = graph.getId(new GeographicPoint(Double.parseDouble(tokens[i]), Double.parseDouble(tokens[i + 1])));
+		if(id < 0)
+			throw new IOException(where + tokens[i] + " " + tokens[i + 1] + " is not an intersection");
+		return id;
+	}
+
+	/** cost of a left turn in the file written by main (min) */
+	private static final double LEFT_TURN = 0.5;
+
+	/** Write a turn file for every map given, or for the bundled maps, that forbids
+	 * U-turns and lets every left turn at a crossing of three or more roads cost
+	 * half a minute, to show and measure the edge based searches */
+	public static void main(String[] args) throws IOException {
+		String[] maps = args.length > 0 ? args : new String[] { "data/maps/ucsd.map", "data/maps/new_york.map",
+				"data/maps/san_diego.map", "data/maps/hollywood_large.map" };
+		for(String map : maps) {
+			MapGraph mapGraph = new MapGraph(false);
+			GraphLoader.loadRoadMap(map, mapGraph);
+			CompactRoadGraph graph = mapGraph.freeze();
+			int count = 0;
+			try(PrintWriter out = new PrintWriter(getFile(map))) {
+				out.println("# turns for " + map + ": no U-turns, left turns cost " + LEFT_TURN + " min");
+				out.println("uturn no");
+				for(int via = 0; via < graph.getNumVertices(); via++) {
+					if(graph.offsets[via + 1] - graph.offsets[via] < 3)
+						continue;
+					GeographicPoint center = graph.points[via];
+					for(int i = graph.inOffsets[via]; i < graph.inOffsets[via + 1]; i++) {
+						GeographicPoint from = graph.points[graph.sources[graph.inEdges[i]]];
+						for(int to = graph.offsets[via]; to < graph.offsets[via + 1]; to++) {
+							GeographicPoint next = graph.points[graph.targets[to]];
+							double turn = turnAngle(from, center, next);
+							// 45 to 135 degrees to the left
+							if(turn > 45 && turn < 135) {
+								out.println("cost " + from.getX() + " " + from.getY() + " " + center.getX() + " "
+										+ center.getY() + " " + next.getX() + " " + next.getY() + " " + LEFT_TURN);
+								count++;
+							}
+						}
+					}
+				}
+			}
+			System.out.println(getFile(map) + ": " + count + " left turns");
+		}
+	}
+
+	/** angle (degrees) of the turn from the way from a to b onto the way from b to c, positive to the left */
+	private static double turnAngle(GeographicPoint a, GeographicPoint b, GeographicPoint c) {
+		double scale = Math.cos(Math.toRadians(b.getX()));
+		double inX = (b.getY() - a.getY()) * scale;
+		double inY = b.getX() - a.getX();
+		double outX = (c.getY() - b.getY()) * scale;
+		double outY = c.getX() - b.getX();
+		return Math.toDegrees(Math.atan2(inX * outY - inY * outX, inX * outX + inY * outY));
+	}
+}
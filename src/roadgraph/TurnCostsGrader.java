@@ -0,0 +1,310 @@
+/** Grader for the turn restrictions and turn costs.
+ * Writes a turn file with random rules, checks the turns read from it, and
+ * compares the cost of turnAwareDijkstra and turnAwareAStar with a plain
+ * Dijkstra search over the roads, one node per road, that adds the turns.
+ * Also checks that lines not in the format of a turn file are rejected. */
+package roadgraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import util.GraphLoader;
+import geography.*;
+
+public class TurnCostsGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 7;
+    private static final int QUERIES = 30;
+    private static final int RULES = 400;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        TurnCostsGrader grader = new TurnCostsGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Read random rules for one map and search with them in both metrics.
+     * @param i The number of the first of the three tests
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param uTurn The uturn rule, "no" or a cost in min */
+    public void runTest(int i, String file, String desc, String uTurn) throws Exception {
+        MapGraph graph = new MapGraph(false);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        CompactRoadGraph compact = graph.freeze();
+        long m = compact.getNumEdges();
+        MapGraph lengthGraph = new MapGraph(true);
+        GraphLoader.loadRoadMap("data/maps/" + file, lengthGraph);
+
+        // the cost of every turn with a rule by from * m + to, kept as the turn file describes it
+        HashMap<Long, Double> rules = new HashMap<Long, Double>();
+        double uTurnCost = uTurn.equals("no") ? Double.POSITIVE_INFINITY : Double.parseDouble(uTurn);
+        File turnFile = File.createTempFile("map", ".turns");
+        try {
+            try (PrintWriter out = new PrintWriter(turnFile)) {
+                out.println("# random turns for " + file);
+                out.println();
+                out.println("uturn " + uTurn);
+                Random random = new Random(i);
+                for (int r = 0; r < RULES; r++) {
+                    int via = random.nextInt(compact.getNumVertices());
+                    if (compact.inOffsets[via] == compact.inOffsets[via + 1] || compact.offsets[via] == compact.offsets[via + 1])
+                        continue;
+                    int first = compact.sources[compact.inEdges[compact.inOffsets[via]
+                            + random.nextInt(compact.inOffsets[via + 1] - compact.inOffsets[via])]];
+                    int last = compact.targets[compact.offsets[via] + random.nextInt(compact.offsets[via + 1] - compact.offsets[via])];
+                    String kind = (r % 3 == 0) ? "no" : (r % 3 == 1) ? "only" : "cost";
+                    double cost = Math.round(random.nextDouble() * 30) / 10.0;
+                    out.println(kind + " " + point(compact, first) + " " + point(compact, via) + " " + point(compact, last)
+                            + (kind.equals("cost") ? " " + cost : ""));
+
+                    for (int in = compact.inOffsets[via]; in < compact.inOffsets[via + 1]; in++) {
+                        int from = compact.inEdges[in];
+                        if (compact.sources[from] != first)
+                            continue;
+                        for (int to = compact.offsets[via]; to < compact.offsets[via + 1]; to++) {
+                            boolean isTurn = compact.targets[to] == last;
+                            if (kind.equals("only")) {
+                                if (!isTurn)
+                                    rules.put(from * m + to, Double.POSITIVE_INFINITY);
+                            }
+                            else if (isTurn)
+                                rules.put(from * m + to, kind.equals("no") ? Double.POSITIVE_INFINITY : cost);
+                        }
+                    }
+                }
+            }
+            graph.loadTurnCosts(turnFile.getPath());
+            lengthGraph.loadTurnCosts(turnFile.getPath());
+        } finally {
+            turnFile.delete();
+        }
+
+        // every turn, with a rule or not
+        double[][] turns = new double[compact.getNumEdges()][];
+        for (int from = 0; from < turns.length; from++) {
+            int via = compact.targets[from];
+            turns[from] = new double[compact.offsets[via + 1] - compact.offsets[via]];
+            for (int to = compact.offsets[via]; to < compact.offsets[via + 1]; to++) {
+                Double rule = rules.get(from * m + to);
+                turns[from][to - compact.offsets[via]] = (rule != null) ? rule
+                        : (compact.targets[to] == compact.sources[from]) ? uTurnCost : 0;
+            }
+        }
+
+        feedback += appendFeedback(i, "Reading " + RULES + " random rules with uturn " + uTurn);
+        TurnCosts loaded = graph.getTurnCosts();
+        int wrong = 0;
+        for (int from = 0; from < turns.length; from++) {
+            int via = compact.targets[from];
+            for (int to = compact.offsets[via]; to < compact.offsets[via + 1]; to++) {
+                if (loaded.getCost(from, to) != turns[from][to - compact.offsets[via]])
+                    wrong++;
+            }
+        }
+        judge(wrong, "turns differ from the rules of the file");
+
+        feedback += appendFeedback(i + 1, "Finding the fastest paths of " + QUERIES + " queries");
+        judge(countWrong(graph, compact, turns, i, false), "paths cost other than the search over the roads");
+
+        feedback += appendFeedback(i + 2, "Finding the shortest paths of " + QUERIES + " queries");
+        // only the forbidden turns count for the shortest paths
+        for (double[] costs : turns) {
+            for (int t = 0; t < costs.length; t++)
+                costs[t] = (costs[t] == Double.POSITIVE_INFINITY) ? costs[t] : 0;
+        }
+        judge(countWrong(lengthGraph, compact, turns, i + 2, true), "paths cost other than the search over the roads");
+    }
+
+    /** count the queries where turnAwareDijkstra or turnAwareAStar cost other than the search over the roads */
+    private static int countWrong(MapGraph graph, CompactRoadGraph compact, double[][] turns, long seed, boolean isLengthCompare) {
+        double[] weights = isLengthCompare ? compact.lengths : compact.times;
+        GraderFixture fixture = new GraderFixture(graph, seed, QUERIES);
+        int wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            int start = compact.getId(fixture.starts[q]);
+            int goal = compact.getId(fixture.goals[q]);
+            double expected = roadSearch(compact, weights, turns, start, goal);
+            if (!GraderFixture.isSame(expected, walkCost(compact, weights, turns, graph.turnAwareDijkstra(fixture.starts[q], fixture.goals[q])))
+                    || !GraderFixture.isSame(expected, walkCost(compact, weights, turns, graph.turnAwareAStar(fixture.starts[q], fixture.goals[q]))))
+                wrong++;
+        }
+        return wrong;
+    }
+
+    /** cost of the best path from start to goal by Dijkstra over the roads, each turn adding its cost */
+    private static double roadSearch(CompactRoadGraph graph, double[] weights, double[][] turns, int start, int goal) {
+        if (start == goal)
+            return 0;
+        double[] costs = new double[graph.getNumEdges()];
+        Arrays.fill(costs, Double.POSITIVE_INFINITY);
+        PriorityQueue<double[]> queue = new PriorityQueue<double[]>((a, b) -> Double.compare(a[0], b[0]));
+        for (int e = graph.offsets[start]; e < graph.offsets[start + 1]; e++) {
+            costs[e] = weights[e];
+            queue.add(new double[] { costs[e], e });
+        }
+        while (!queue.isEmpty()) {
+            double[] head = queue.poll();
+            int from = (int)head[1];
+            if (head[0] > costs[from])
+                continue;
+            int via = graph.targets[from];
+            if (via == goal)
+                return head[0];
+            for (int to = graph.offsets[via]; to < graph.offsets[via + 1]; to++) {
+                double cost = head[0] + turns[from][to - graph.offsets[via]] + weights[to];
+                if (cost < costs[to]) {
+                    costs[to] = cost;
+                    queue.add(new double[] { cost, to });
+                }
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /** cost of a path of intersections over its cheapest roads and turns, infinity if it is null or not allowed */
+    private static double walkCost(CompactRoadGraph graph, double[] weights, double[][] turns, List<GeographicPoint> path) {
+        if (path == null)
+            return Double.POSITIVE_INFINITY;
+        if (path.size() == 1)
+            return 0;
+        // the cheapest way to arrive over each road, as the path may go on over any of the parallel ones
+        double[] arrivals = new double[graph.getNumEdges()];
+        Arrays.fill(arrivals, Double.POSITIVE_INFINITY);
+        int from = graph.getId(path.get(0));
+        int to = graph.getId(path.get(1));
+        for (int e = graph.offsets[from]; e < graph.offsets[from + 1]; e++) {
+            if (graph.targets[e] == to)
+                arrivals[e] = weights[e];
+        }
+        for (int p = 2; p < path.size(); p++) {
+            int via = to;
+            to = graph.getId(path.get(p));
+            double[] next = new double[arrivals.length];
+            Arrays.fill(next, Double.POSITIVE_INFINITY);
+            for (int in = graph.inOffsets[via]; in < graph.inOffsets[via + 1]; in++) {
+                int e = graph.inEdges[in];
+                if (arrivals[e] == Double.POSITIVE_INFINITY)
+                    continue;
+                for (int f = graph.offsets[via]; f < graph.offsets[via + 1]; f++) {
+                    if (graph.targets[f] == to)
+                        next[f] = Math.min(next[f], arrivals[e] + turns[e][f - graph.offsets[via]] + weights[f]);
+                }
+            }
+            arrivals = next;
+        }
+        double cost = Double.POSITIVE_INFINITY;
+        for (double arrival : arrivals)
+            cost = Math.min(cost, arrival);
+        return cost;
+    }
+
+    /** an intersection as the turn file gives it */
+    private static String point(CompactRoadGraph graph, int v) {
+        return graph.points[v].getX() + " " + graph.points[v].getY();
+    }
+
+    /** Check that TurnCosts.load rejects lines that are not in the format of a turn file.
+     * @param i The test number */
+    public void runMalformedTest(int i) throws Exception {
+        feedback += appendFeedback(i, "Reading turn files with a malformed line");
+        MapGraph graph = new MapGraph(false);
+        GraphLoader.loadRoadMap("data/maps/ucsd.map", graph);
+        CompactRoadGraph compact = graph.freeze();
+        // a turn from a over b onto c, and an intersection d without a road from b to it
+        int b = 0;
+        while (compact.inOffsets[b] == compact.inOffsets[b + 1] || compact.offsets[b] == compact.offsets[b + 1])
+            b++;
+        String turn = point(compact, compact.sources[compact.inEdges[compact.inOffsets[b]]]) + " " + point(compact, b) + " "
+                + point(compact, compact.targets[compact.offsets[b]]);
+        int d = 0;
+        while (d == b || isRoad(compact, b, d))
+            d++;
+        String noTurn = point(compact, compact.sources[compact.inEdges[compact.inOffsets[b]]]) + " " + point(compact, b) + " "
+                + point(compact, d);
+
+        String[] lines = { "no " + point(compact, b) + " " + point(compact, d), "only " + turn + " 1", "cost " + turn,
+                "cost " + turn + " -1", "cost " + turn + " NaN", "cost " + turn + " Infinity", "cost " + turn + " soon",
+                "no " + noTurn, "no 0.0 0.0 " + point(compact, b) + " " + point(compact, d), "left " + turn, "uturn",
+                "uturn -2", "uturn maybe", "uturn no 1" };
+        int wrong = 0;
+        for (String line : lines) {
+            File turnFile = File.createTempFile("map", ".turns");
+            try {
+                try (PrintWriter out = new PrintWriter(turnFile)) {
+                    out.println("uturn 1");
+                    out.println(line);
+                }
+                TurnCosts.load(turnFile.getPath(), compact);
+                wrong++;
+            } catch (IOException e) {
+                // rejected, as it should be
+            } finally {
+                turnFile.delete();
+            }
+        }
+        judge(wrong, "malformed lines were accepted");
+    }
+
+    /** check if there is a road from v to w */
+    private static boolean isRoad(CompactRoadGraph graph, int v, int w) {
+        for (int e = graph.offsets[v]; e < graph.offsets[v + 1]; e++) {
+            if (graph.targets[e] == w)
+                return true;
+        }
+        return false;
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, String problem) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " " + problem + ".";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "ucsd.map", "UCSD MAP: Intersections around UCSD", "no");
+
+            runTest(4, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego", "1.5");
+
+            runMalformedTest(7);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
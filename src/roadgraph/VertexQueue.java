@@ -0,0 +1,25 @@
+package roadgraph;
+
+/** A priority queue of intersection ids with double keys.
+ * Every intersection is queued at most once: pushing a queued intersection
+ * again changes its key, so the searches never see stale entries. */
+interface VertexQueue {
+	/** empty the queue and make room for intersections 0..n-1 */
+	void reset(int n);
+
+	boolean isEmpty();
+
+	int size();
+
+	/** queue v with key, or change the key of v if it is already queued */
+	void push(int v, double key);
+
+	/** the intersection with the smallest key, without removing it */
+	int peek();
+
+	/** the smallest key */
+	double peekKey();
+
+	/** remove and return the intersection with the smallest key */
+	int poll();
+}
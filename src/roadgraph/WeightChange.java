@@ -0,0 +1,38 @@
+package roadgraph;
+
+/** A batch of cost changes as MapGraph applied it: the graph before and after,
+ * and the roads whose costs differ, so that data computed on the graph before
+ * can be repaired instead of computed again. */
+final class WeightChange {
+	/** version of the MapGraph before the change */
+	final long fromVersion;
+	/** version of the MapGraph after the change */
+	final long toVersion;
+	final CompactRoadGraph before;
+	final CompactRoadGraph after;
+	/** the roads with a new length or time */
+	final int[] edges;
+	private final boolean isLengthDecreased;
+	private final boolean isTimeDecreased;
+
+	WeightChange(long fromVersion, long toVersion, CompactRoadGraph before, CompactRoadGraph after, int[] edges) {
+		this.fromVersion = fromVersion;
+		this.toVersion = toVersion;
+		this.before = before;
+		this.after = after;
+		this.edges = edges;
+		boolean isLength = false;
+		boolean isTime = false;
+		for(int e : edges) {
+			isLength |= after.lengths[e] < before.lengths[e];
+			isTime |= after.times[e] < before.times[e];
+		}
+		isLengthDecreased = isLength;
+		isTimeDecreased = isTime;
+	}
+
+	/** check if any road got cheaper in the metric */
+	boolean isDecreased(boolean isLengthCompare) {
+		return isLengthCompare ? isLengthDecreased : isTimeDecreased;
+	}
+}
@@ -0,0 +1,77 @@
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import geography.GeographicPoint;
+
+/** A batch of changes to the costs of roads, applied all at once by MapGraph.updateWeights.
+ * A road is named by the intersections at its ends, as in MapGraph.addEdge, and
+ * a change applies to every road from the first intersection to the second.
+ * A closed road gets an infinite length and time so that no search uses it;
+ * a road whose length or time is set to infinity is closed in the same way.
+ * To open it again set its length and time back. A length shorter than the
+ * straight line between the ends of a road, or a time of 0, is allowed, but
+ * weakens the straight line estimates of the A-Star searches for the whole graph. */
+public final class WeightUpdate {
+	/** one change, NaN for a cost that stays as it is */
+	static final class Change {
+		final GeographicPoint from;
+		final GeographicPoint to;
+		final double length;
+		final double time;
+
+		Change(GeographicPoint from, GeographicPoint to, double length, double time) {
+			this.from = from;
+			this.to = to;
+			this.length = length;
+			this.time = time;
+		}
+	}
+
+	private final List<Change> changes = new ArrayList<Change>();
+
+	/** Set the length of the roads from one intersection to another
+	 * @param length The new length in km
+	 * @return This batch
+	 * @throws IllegalArgumentException If a point is null or the length is negative or undefined */
+	public WeightUpdate setLength(GeographicPoint from, GeographicPoint to, double length) throws IllegalArgumentException {
+		if(!(length >= 0))
+			throw new IllegalArgumentException("WeightUpdate: length must not be negative");
+		return add(from, to, length, Double.NaN);
+	}
+
+	/** Set the travel time of the roads from one intersection to another
+	 * @param time The new travel time in min
+	 * @return This batch
+	 * @throws IllegalArgumentException If a point is null or the time is negative or undefined */
+	public WeightUpdate setTime(GeographicPoint from, GeographicPoint to, double time) throws IllegalArgumentException {
+		if(!(time >= 0))
+			throw new IllegalArgumentException("WeightUpdate: time must not be negative");
+		return add(from, to, Double.NaN, time);
+	}
+
+	/** Close the roads from one intersection to another
+	 * @return This batch
+	 * @throws IllegalArgumentException If a point is null */
+	public WeightUpdate close(GeographicPoint from, GeographicPoint to) throws IllegalArgumentException {
+		return add(from, to, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+	private WeightUpdate add(GeographicPoint from, GeographicPoint to, double length, double time) {
+		if(from == null || to == null)
+			throw new IllegalArgumentException("WeightUpdate: both ends of the road must be set");
+		changes.add(new Change(from, to, length, time));
+		return this;
+	}
+
+	/** get the number of changes in this batch */
+	public int size() {
+		return changes.size();
+	}
+
+	/** get the changes in the order they were made; a later change of a road wins */
+	List<Change> getChanges() {
+		return changes;
+	}
+}
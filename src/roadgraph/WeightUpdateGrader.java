@@ -0,0 +1,177 @@
+/** Grader for changing the costs of roads.
+ * Applies random batches of cheaper and dearer roads, closures, roads of no
+ * time and roads shorter than the straight line, and after each batch
+ * compares the searches, on their own and through a RouteCache, with a plain
+ * Dijkstra search on the new costs: once right away, while the landmarks and
+ * the contraction hierarchy are repaired in the background, and once more
+ * after the repaired ones were swapped in. */
+package roadgraph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import util.GraphLoader;
+import geography.*;
+
+public class WeightUpdateGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final int TESTS = 4;
+    private static final int QUERIES = 20;
+    private static final int BATCHES = 5;
+    private static final int CHANGES = 40;
+    private static final SearchAlgorithm[] CACHED = { SearchAlgorithm.DIJKSTRA, SearchAlgorithm.A_STAR,
+            SearchAlgorithm.BIDIRECTIONAL_A_STAR, SearchAlgorithm.HIERARCHY };
+    /** time the background repair may take after a batch, in ms */
+    private static final long REPAIR_LIMIT = 20000;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        WeightUpdateGrader grader = new WeightUpdateGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Apply random batches to one map and search after each.
+     * @param i The number of the first of the two tests
+     * @param file The map file to read from
+     * @param desc A description of the map
+     * @param isLengthCompare true to compare lengths, false to compare times */
+    public void runTest(int i, String file, String desc, boolean isLengthCompare) throws Exception {
+        MapGraph graph = new MapGraph(isLengthCompare);
+        feedback += "\n\n" + desc;
+        GraphLoader.loadRoadMap("data/maps/" + file, graph);
+        graph.prepareLandmarks(16, Landmarks.Selection.AVOID);
+        graph.prepareContractionHierarchy();
+        CompactRoadGraph original = graph.freeze();
+        GraderFixture fixture = new GraderFixture(graph, i, QUERIES);
+        RouteCache cache = new RouteCache(graph, Long.MAX_VALUE);
+
+        Random random = new Random(i);
+        List<Integer> closed = new ArrayList<Integer>();
+        int wrongBefore = 0;
+        int wrongAfter = 0;
+        boolean isRepaired = true;
+        for (int b = 0; b < BATCHES; b++) {
+            WeightUpdate update = new WeightUpdate();
+            // roads closed by the batch before open again at their old costs
+            for (int e : closed) {
+                GeographicPoint from = original.points[original.sources[e]];
+                GeographicPoint to = original.points[original.targets[e]];
+                update.setLength(from, to, original.lengths[e]).setTime(from, to, original.times[e]);
+            }
+            closed.clear();
+            for (int c = 0; c < CHANGES; c++) {
+                int e = random.nextInt(original.getNumEdges());
+                GeographicPoint from = original.points[original.sources[e]];
+                GeographicPoint to = original.points[original.targets[e]];
+                switch (c % 5) {
+                case 0:
+                    update.setLength(from, to, original.lengths[e] / 2).setTime(from, to, original.times[e] / 2);
+                    break;
+                case 1:
+                    update.setLength(from, to, original.lengths[e] * 3).setTime(from, to, original.times[e] * 3);
+                    break;
+                case 2:
+                    update.close(from, to);
+                    closed.add(e);
+                    break;
+                case 3:
+                    update.setTime(from, to, 0);
+                    break;
+                default:
+                    update.setLength(from, to, from.distance(to) / 3);
+                    break;
+                }
+            }
+            graph.updateWeights(update);
+
+            // right away, most likely before the repair is done
+            wrongBefore += countWrong(graph, cache, fixture, isLengthCompare);
+
+            long deadline = System.currentTimeMillis() + REPAIR_LIMIT;
+            while (!graph.isRepaired() && System.currentTimeMillis() < deadline)
+                ForkJoinPool.commonPool().awaitQuiescence(100, TimeUnit.MILLISECONDS);
+            isRepaired &= graph.isRepaired();
+            wrongAfter += countWrong(graph, cache, fixture, isLengthCompare);
+        }
+
+        feedback += appendFeedback(i, "Searching right after each of " + BATCHES + " batches of " + CHANGES + " changes");
+        judge(wrongBefore, "paths cost other than dijkstra on the new costs");
+
+        feedback += appendFeedback(i + 1, "Searching after the repaired landmarks and hierarchy were swapped in");
+        if (!isRepaired)
+            feedback += "FAILED. The landmarks or the hierarchy were not repaired within " + REPAIR_LIMIT + " ms.";
+        else
+            judge(wrongAfter, "paths cost other than dijkstra on the new costs");
+    }
+
+    /** count the paths of the searches and of the cache that cost other than dijkstra on the current costs */
+    private static int countWrong(MapGraph graph, RouteCache cache, GraderFixture fixture, boolean isLengthCompare) {
+        CompactRoadGraph compact = graph.freeze();
+        double[] weights = isLengthCompare ? compact.lengths : compact.times;
+        int wrong = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            GeographicPoint start = fixture.starts[q];
+            GeographicPoint goal = fixture.goals[q];
+            double expected = GraderFixture.dijkstraCost(compact, weights, compact.getId(start), compact.getId(goal));
+            List<List<GeographicPoint>> paths = new ArrayList<List<GeographicPoint>>();
+            paths.add(graph.dijkstra(start, goal));
+            paths.add(graph.aStarSearch(start, goal));
+            paths.add(graph.bidirectionalAStar(start, goal));
+            paths.add(graph.hierarchySearch(start, goal));
+            for (SearchAlgorithm algorithm : CACHED)
+                paths.add(cache.route(start, goal, algorithm, null));
+            for (List<GeographicPoint> path : paths) {
+                if (!GraderFixture.isSame(expected, GraderFixture.pathCost(graph, path, isLengthCompare)))
+                    wrong++;
+            }
+        }
+        return wrong;
+    }
+
+    /** Record the result of a test */
+    private void judge(int wrong, String problem) {
+        if (wrong == 0) {
+            feedback += "PASSED.";
+            correct++;
+        } else {
+            feedback += "FAILED. " + wrong + " " + problem + ".";
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            runTest(1, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, shortest paths", true);
+
+            runTest(3, "san_diego.map", "SAN DIEGO MAP: Downtown San Diego, fastest paths", false);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
@@ -0,0 +1,163 @@
+/** Measures the throughput of a running RoutingServer.
+ * A number of client threads send route requests between random locations
+ * inside the bounds of a map for a fixed time; the client then reports the
+ * requests per second and the percentiles of the latency seen by the
+ * clients, next to the mean latency and settled intersections the server
+ * reported itself. */
+package server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+public class LoadTestClient {
+	private final String baseUrl;
+
+	/** the requests of one client thread */
+	private static final class Result {
+		long[] latencies = new long[1024];
+		int count;
+		int failures;
+		double serverMillis;
+		long settled;
+
+		void add(long latency) {
+			if(count == latencies.length)
+				latencies = Arrays.copyOf(latencies, count * 2);
+			latencies[count++] = latency;
+		}
+	}
+
+	/** @param baseUrl The address of the server, for example http://localhost:8080 */
+	public LoadTestClient(String baseUrl) {
+		this.baseUrl = baseUrl;
+	}
+
+	/** Send route requests from threads clients for a number of seconds and print the results
+	 * @param map The name of the map to route on
+	 * @param algorithm The algorithm parameter of the route requests */
+	public void run(String map, String algorithm, int clients, int seconds) throws Exception {
+		JsonObject bounds = findMap(map);
+		JsonArray min = bounds.getJsonArray("min");
+		JsonArray max = bounds.getJsonArray("max");
+		double minLat = min.getJsonNumber(0).doubleValue();
+		double minLon = min.getJsonNumber(1).doubleValue();
+		double maxLat = max.getJsonNumber(0).doubleValue();
+		double maxLon = max.getJsonNumber(1).doubleValue();
+
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		long end = System.nanoTime() + seconds * 1000000000L;
+		List<Future<Result>> futures = new ArrayList<Future<Result>>();
+		for(int c = 0; c < clients; c++) {
+			Random random = new Random(c);
+			futures.add(pool.submit(() -> {
+				Result result = new Result();
+				while(System.nanoTime() < end) {
+					String query = String.format("/route?map=%s&algorithm=%s&from=%f,%f&to=%f,%f", map, algorithm,
+							minLat + random.nextDouble() * (maxLat - minLat), minLon + random.nextDouble() * (maxLon - minLon),
+							minLat + random.nextDouble() * (maxLat - minLat), minLon + random.nextDouble() * (maxLon - minLon));
+					long start = System.nanoTime();
+					try {
+						JsonObject response = get(query);
+						result.add(System.nanoTime() - start);
+						result.serverMillis += response.getJsonNumber("latencyMs").doubleValue();
+						result.settled += response.getInt("settled");
+					}
+					catch(IOException e) {
+						result.failures++;
+					}
+				}
+				return result;
+			}));
+		}
+
+		Result total = new Result();
+		for(Future<Result> future : futures) {
+			Result result = future.get();
+			for(int i = 0; i < result.count; i++)
+				total.add(result.latencies[i]);
+			total.failures += result.failures;
+			total.serverMillis += result.serverMillis;
+			total.settled += result.settled;
+		}
+		pool.shutdown();
+
+		long[] latencies = Arrays.copyOf(total.latencies, total.count);
+		Arrays.sort(latencies);
+		System.out.printf("%s %s, %d clients, %d s: %d requests, %d failed, %.1f requests/s%n", map, algorithm, clients,
+				seconds, total.count, total.failures, (double)total.count / seconds);
+		if(total.count > 0) {
+			System.out.printf("  client latency ms: p50 %.2f  p90 %.2f  p99 %.2f  max %.2f%n", percentile(latencies, 50),
+					percentile(latencies, 90), percentile(latencies, 99), latencies[latencies.length - 1] / 1e6);
+			System.out.printf("  server latency ms: mean %.2f, settled intersections: mean %.0f%n",
+					total.serverMillis / total.count, (double)total.settled / total.count);
+		}
+	}
+
+	/** the entry of map in the /maps response */
+	private JsonObject findMap(String map) throws IOException {
+		for(JsonObject entry : get("/maps").getJsonArray("maps").getValuesAs(JsonObject.class)) {
+			if(entry.getString("name").equals(map))
+				return entry;
+		}
+		throw new IllegalArgumentException("LoadTestClient: the server has no map " + map);
+	}
+
+	private JsonObject get(String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)new URL(baseUrl + path).openConnection();
+		try {
+			if(connection.getResponseCode() != 200)
+				throw new IOException(path + ": status " + connection.getResponseCode());
+			try(InputStream in = connection.getInputStream(); JsonReader reader = Json.createReader(in)) {
+				return reader.readObject();
+			}
+		}
+		finally {
+			connection.disconnect();
+		}
+	}
+
+	private static double percentile(long[] sorted, int percent) {
+		int index = (int)Math.ceil(percent / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, index)] / 1e6;
+	}
+
+	/** LoadTestClient [url] [map] [algorithm] [clients] [seconds]
+	 * Without a url, or with an empty one, a server is started in this JVM on the bundled san_diego map. */
+	public static void main(String[] args) throws Exception {
+		String map = args.length > 1 ? args[1] : "san_diego";
+		String algorithm = args.length > 2 ? args[2] : "astar";
+		int clients = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+		int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+		RoutingServer local = null;
+		String url;
+		if(args.length > 0 && !args[0].isEmpty()) {
+			url = args[0];
+		}
+		else {
+			local = new RoutingServer(Arrays.asList("data/maps/" + map + ".map"));
+			url = "http://localhost:" + local.start(0);
+		}
+		try {
+			new LoadTestClient(url).run(map, algorithm, clients, seconds);
+		}
+		finally {
+			if(local != null)
+				local.stop(0);
+		}
+	}
+}
@@ -0,0 +1,477 @@
+/** A headless routing service over the bundled road maps.
+ * Every map given on the command line is loaded once at startup and shared
+ * read-only by all requests; MapGraph keeps the state of every search in
+ * pooled search contexts, so requests run in parallel without locking.
+ * Requests are handled on virtual threads when the JVM has them (Java 21
+ * and later), otherwise on a cached thread pool.
+ *
+ * Endpoints (GET, JSON responses, locations as lat,lon):
+ *   /maps                                       the loaded maps and their bounds
+ *   /route?map=M&from=P&to=P&algorithm=A        A is bfs, dijkstra, astar, bidirectional,
+ *                                               hierarchy, roads or turns (default astar)
+ *                      &profile=R               R is car, truck-avoid-residential, no-motorway or bicycle
+ *                                               (default none: the costs of the map)
+ *   /alternatives?map=M&from=P&to=P&count=K     the best route and up to K-1 alternatives (default 3)
+ *   /matrix?map=M&sources=P;P..&targets=P;P..   the cost between every pair
+ *   /nearest?map=M&at=P&k=K                     the K closest intersections (default 1)
+ *   /stats                                      request counts, latencies, settled intersections
+ *                                               and route cache hits per map
+ * Every response carries the time the request took and, for searches, the
+ * number of intersections the search settled and roads it relaxed, which are
+ * zero when the route came from the route cache of the map. The
+ * totals of all searches on a map are also published over JMX as
+ * roadgraph:type=SearchMetrics,name="map". */
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.management.JMException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import application.DataSet;
+import geography.GeographicPoint;
+import roadgraph.MapGraph;
+import roadgraph.RouteCache;
+import roadgraph.RoutingProfile;
+import roadgraph.SearchAlgorithm;
+import roadgraph.SearchMetrics;
+import roadgraph.SearchStats;
+
+public class RoutingServer {
+	/** memory budget of the route cache of every map */
+	private static final long CACHE_BYTES = 32L << 20;
+	/** the algorithm parameter of /route */
+	private static final Map<String, SearchAlgorithm> ALGORITHMS = new HashMap<String, SearchAlgorithm>();
+	static {
+		ALGORITHMS.put("bfs", SearchAlgorithm.BFS);
+		ALGORITHMS.put("dijkstra", SearchAlgorithm.DIJKSTRA);
+		ALGORITHMS.put("astar", SearchAlgorithm.A_STAR);
+		ALGORITHMS.put("bidirectional", SearchAlgorithm.BIDIRECTIONAL_A_STAR);
+		ALGORITHMS.put("hierarchy", SearchAlgorithm.HIERARCHY);
+		ALGORITHMS.put("roads", SearchAlgorithm.ROADS);
+		ALGORITHMS.put("turns", SearchAlgorithm.TURNS);
+	}
+
+	private final Map<String, MapGraph> maps = new LinkedHashMap<String, MapGraph>();
+	private final Map<String, GeographicPoint[]> bounds = new HashMap<String, GeographicPoint[]>();
+	private final Map<MapGraph, RouteCache> caches = new HashMap<MapGraph, RouteCache>();
+	private final Map<String, EndpointStats> stats = new LinkedHashMap<String, EndpointStats>();
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/** counters of one endpoint, updated by many threads at once */
+	private static final class EndpointStats {
+		final LongAdder requests = new LongAdder();
+		final LongAdder failures = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final LongAdder settled = new LongAdder();
+		volatile long maxNanos;
+
+		synchronized void updateMax(long elapsed) {
+			if(elapsed > maxNanos)
+				maxNanos = elapsed;
+		}
+	}
+
+	/** a bad request, answered with status 400 or 404 */
+	private static final class RequestException extends Exception {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		RequestException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	/** the answer of one endpoint */
+	private interface Endpoint {
+		/** @param stats Receives the work of the search of the request */
+		JsonObjectBuilder handle(Map<String, String> query, SearchStats stats) throws RequestException;
+	}
+
+	/** Load the maps; the name of a map is its file name without the extension
+	 * @param mapFiles .map files in the format read by GraphLoader.loadRoadMap */
+	public RoutingServer(List<String> mapFiles) {
+		for(String file : mapFiles) {
+			String name = new File(file).getName();
+			if(name.contains("."))
+				name = name.substring(0, name.lastIndexOf('.'));
+			long start = System.nanoTime();
+			DataSet dataSet = new DataSet(file);
+			dataSet.initializeGraph();
+			MapGraph graph = dataSet.getGraph();
+			graph.freeze();
+			SearchMetrics metrics = new SearchMetrics();
+			graph.setSearchMetrics(metrics);
+			try {
+				metrics.register(name);
+			}
+			catch(JMException e) {
+				System.err.println("Problem registering the search metrics of " + name + ": " + e);
+			}
+			maps.put(name, graph);
+			caches.put(graph, new RouteCache(graph, CACHE_BYTES));
+			bounds.put(name, getBounds(graph));
+			System.out.printf("Loaded %s: %d intersections, %d roads in %d ms%n", name, graph.getNumVertices(),
+					graph.getNumEdges(), (System.nanoTime() - start) / 1000000);
+		}
+	}
+
+	/** Start serving on a port of the local host
+	 * @param port The port, or 0 for any free port
+	 * @return The port the server listens on */
+	public int start(int port) throws IOException {
+		// headers and body go out in separate writes; without TCP_NODELAY the body
+		// waits for the delayed acknowledgement of the headers, about 40 ms
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		addEndpoint("/maps", this::listMaps);
+		addEndpoint("/route", this::route);
+		addEndpoint("/alternatives", this::alternatives);
+		addEndpoint("/matrix", this::matrix);
+		addEndpoint("/nearest", this::nearest);
+		server.createContext("/stats", exchange -> send(exchange, 200, statistics().build()));
+		executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.start();
+		return server.getAddress().getPort();
+	}
+
+	/** Stop serving, waiting at most delay seconds for running requests */
+	public void stop(int delay) {
+		server.stop(delay);
+		executor.shutdown();
+	}
+
+	/** virtual threads if the JVM has them, else a cached thread pool */
+	static ExecutorService newRequestExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factory.invoke(null);
+		}
+		catch(ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	private void addEndpoint(String path, Endpoint endpoint) {
+		EndpointStats endpointStats = new EndpointStats();
+		stats.put(path, endpointStats);
+		server.createContext(path, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				long start = System.nanoTime();
+				SearchStats stats = new SearchStats();
+				int status = 200;
+				JsonObjectBuilder response;
+				try {
+					if(!"GET".equals(exchange.getRequestMethod()))
+						throw new RequestException(405, "only GET is supported");
+					response = endpoint.handle(parseQuery(exchange.getRequestURI().getRawQuery()), stats);
+				}
+				catch(RequestException e) {
+					status = e.status;
+					response = Json.createObjectBuilder().add("error", e.getMessage());
+				}
+				catch(RuntimeException e) {
+					status = 500;
+					response = Json.createObjectBuilder().add("error", String.valueOf(e));
+				}
+				long elapsed = System.nanoTime() - start;
+				response.add("latencyMs", elapsed / 1e6);
+				response.add("settled", stats.getSettled());
+				response.add("relaxed", stats.getRelaxed());
+				send(exchange, status, response.build());
+
+				endpointStats.requests.increment();
+				if(status != 200)
+					endpointStats.failures.increment();
+				endpointStats.nanos.add(elapsed);
+				endpointStats.settled.add(stats.getSettled());
+				endpointStats.updateMax(elapsed);
+			}
+		});
+	}
+
+	private static void send(HttpExchange exchange, int status, JsonObject body) throws IOException {
+		byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	private JsonObjectBuilder listMaps(Map<String, String> query, SearchStats stats) {
+		JsonArrayBuilder list = Json.createArrayBuilder();
+		for(Map.Entry<String, MapGraph> entry : maps.entrySet()) {
+			GeographicPoint[] box = bounds.get(entry.getKey());
+			list.add(Json.createObjectBuilder().add("name", entry.getKey())
+					.add("intersections", entry.getValue().getNumVertices())
+					.add("roads", entry.getValue().getNumEdges())
+					.add("min", toJson(box[0]))
+					.add("max", toJson(box[1])));
+		}
+		return Json.createObjectBuilder().add("maps", list);
+	}
+
+	private JsonObjectBuilder route(Map<String, String> query, SearchStats stats) throws RequestException {
+		MapGraph graph = getMap(query);
+		GeographicPoint from = parsePoint(query, "from");
+		GeographicPoint to = parsePoint(query, "to");
+		String algorithm = query.containsKey("algorithm") ? query.get("algorithm") : "astar";
+
+		SearchAlgorithm search = ALGORITHMS.get(algorithm);
+		if(search == null)
+			throw new RequestException(400, "unknown algorithm " + algorithm);
+		RoutingProfile profile = null;
+		if(query.containsKey("profile")) {
+			profile = RoutingProfile.forName(query.get("profile"));
+			if(profile == null)
+				throw new RequestException(400, "unknown profile " + query.get("profile"));
+			if(search == SearchAlgorithm.BFS || search == SearchAlgorithm.HIERARCHY || search == SearchAlgorithm.ROADS)
+				throw new RequestException(400, "algorithm " + algorithm + " does not take a profile");
+		}
+		List<GeographicPoint> path = caches.get(graph).route(from, to, search, profile, stats);
+
+		JsonObjectBuilder response = Json.createObjectBuilder().add("algorithm", algorithm).add("found", path != null);
+		if(profile != null)
+			response.add("profile", profile.getName());
+		if(path != null)
+			addPath(response, path);
+		return response;
+	}
+
+	private JsonObjectBuilder alternatives(Map<String, String> query, SearchStats stats) throws RequestException {
+		MapGraph graph = getMap(query);
+		GeographicPoint from = parsePoint(query, "from");
+		GeographicPoint to = parsePoint(query, "to");
+		int count = 3;
+		if(query.containsKey("count")) {
+			try {
+				count = Integer.parseInt(query.get("count"));
+			}
+			catch(NumberFormatException e) {
+				throw new RequestException(400, "count is not a number");
+			}
+			if(count < 1 || count > 10)
+				throw new RequestException(400, "count must be between 1 and 10");
+		}
+		List<List<GeographicPoint>> paths = graph.alternativeRoutes(from, to, count, stats);
+
+		JsonObjectBuilder response = Json.createObjectBuilder().add("found", paths != null);
+		if(paths != null) {
+			JsonArrayBuilder routes = Json.createArrayBuilder();
+			for(List<GeographicPoint> path : paths)
+				routes.add(addPath(Json.createObjectBuilder(), path));
+			response.add("routes", routes);
+		}
+		return response;
+	}
+
+	/** add the points of path and its length along the straight lines between them */
+	private static JsonObjectBuilder addPath(JsonObjectBuilder builder, List<GeographicPoint> path) {
+		JsonArrayBuilder points = Json.createArrayBuilder();
+		double length = 0;
+		for(int i = 0; i < path.size(); i++) {
+			points.add(toJson(path.get(i)));
+			if(i > 0)
+				length += path.get(i - 1).distance(path.get(i));
+		}
+		return builder.add("path", points).add("straightLengthKm", length);
+	}
+
+	private JsonObjectBuilder matrix(Map<String, String> query, SearchStats stats) throws RequestException {
+		MapGraph graph = getMap(query);
+		List<GeographicPoint> sources = parsePoints(query, "sources");
+		List<GeographicPoint> targets = parsePoints(query, "targets");
+		double[][] matrix = graph.distanceMatrix(sources, targets, null, stats);
+
+		JsonArrayBuilder rows = Json.createArrayBuilder();
+		for(double[] row : matrix) {
+			JsonArrayBuilder values = Json.createArrayBuilder();
+			for(double value : row) {
+				// JSON has no infinity
+				if(Double.isInfinite(value))
+					values.addNull();
+				else
+					values.add(value);
+			}
+			rows.add(values);
+		}
+		return Json.createObjectBuilder().add("matrix", rows);
+	}
+
+	private JsonObjectBuilder nearest(Map<String, String> query, SearchStats stats) throws RequestException {
+		MapGraph graph = getMap(query);
+		GeographicPoint at = parsePoint(query, "at");
+		int k = 1;
+		if(query.containsKey("k")) {
+			try {
+				k = Integer.parseInt(query.get("k"));
+			}
+			catch(NumberFormatException e) {
+				throw new RequestException(400, "k is not a number");
+			}
+			if(k < 0 || k > 1000)
+				throw new RequestException(400, "k must be between 0 and 1000");
+		}
+		JsonArrayBuilder points = Json.createArrayBuilder();
+		for(GeographicPoint point : graph.getSpatialIndex().nearest(at, k))
+			points.add(toJson(point));
+		return Json.createObjectBuilder().add("nearest", points);
+	}
+
+	/** the counters of every endpoint since the start */
+	private JsonObjectBuilder statistics() {
+		JsonObjectBuilder result = Json.createObjectBuilder();
+		for(Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+			EndpointStats endpoint = entry.getValue();
+			long requests = endpoint.requests.sum();
+			result.add(entry.getKey(), Json.createObjectBuilder()
+					.add("requests", requests)
+					.add("failures", endpoint.failures.sum())
+					.add("meanLatencyMs", requests == 0 ? 0 : endpoint.nanos.sum() / 1e6 / requests)
+					.add("maxLatencyMs", endpoint.maxNanos / 1e6)
+					.add("meanSettled", requests == 0 ? 0 : (double)endpoint.settled.sum() / requests));
+		}
+		JsonObjectBuilder cacheStats = Json.createObjectBuilder();
+		for(Map.Entry<String, MapGraph> entry : maps.entrySet()) {
+			RouteCache cache = caches.get(entry.getValue());
+			cacheStats.add(entry.getKey(), Json.createObjectBuilder()
+					.add("hits", cache.getHits())
+					.add("misses", cache.getMisses())
+					.add("hitRate", cache.getHitRate())
+					.add("evictions", cache.getEvictions())
+					.add("invalidations", cache.getInvalidations())
+					.add("repairs", cache.getRepairs())
+					.add("droppedRoutes", cache.getDroppedRoutes())
+					.add("routes", cache.size())
+					.add("bytes", cache.getBytes()));
+		}
+		return result.add("routeCache", cacheStats);
+	}
+
+	private MapGraph getMap(Map<String, String> query) throws RequestException {
+		String name = query.get("map");
+		if(name == null && maps.size() == 1)
+			return maps.values().iterator().next();
+		if(name == null)
+			throw new RequestException(400, "map is missing");
+		MapGraph graph = maps.get(name);
+		if(graph == null)
+			throw new RequestException(404, "unknown map " + name);
+		return graph;
+	}
+
+	private static GeographicPoint parsePoint(Map<String, String> query, String name) throws RequestException {
+		String value = query.get(name);
+		if(value == null)
+			throw new RequestException(400, name + " is missing");
+		return parsePoint(value, name);
+	}
+
+	private static GeographicPoint parsePoint(String value, String name) throws RequestException {
+		String[] parts = value.split(",");
+		try {
+			if(parts.length == 2)
+				return new GeographicPoint(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()));
+		}
+		catch(NumberFormatException e) {
+			// reported below
+		}
+		throw new RequestException(400, name + " must be lat,lon");
+	}
+
+	/** a list of locations separated by semicolons */
+	private static List<GeographicPoint> parsePoints(Map<String, String> query, String name) throws RequestException {
+		String value = query.get(name);
+		if(value == null)
+			throw new RequestException(400, name + " is missing");
+		List<GeographicPoint> points = new ArrayList<GeographicPoint>();
+		for(String part : value.split(";")) {
+			if(!part.trim().isEmpty())
+				points.add(parsePoint(part, name));
+		}
+		if(points.size() > 1000)
+			throw new RequestException(400, name + " has more than 1000 locations");
+		return points;
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) throws RequestException {
+		Map<String, String> query = new HashMap<String, String>();
+		if(rawQuery == null)
+			return query;
+		try {
+			for(String pair : rawQuery.split("&")) {
+				int equals = pair.indexOf('=');
+				if(equals > 0)
+					query.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+							URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			}
+		}
+		catch(UnsupportedEncodingException | IllegalArgumentException e) {
+			throw new RequestException(400, "bad query string");
+		}
+		return query;
+	}
+
+	private static JsonArrayBuilder toJson(GeographicPoint point) {
+		return Json.createArrayBuilder().add(point.getX()).add(point.getY());
+	}
+
+	/** the corners of the box around all intersections */
+	private static GeographicPoint[] getBounds(MapGraph graph) {
+		double minLat = Double.POSITIVE_INFINITY;
+		double minLon = Double.POSITIVE_INFINITY;
+		double maxLat = Double.NEGATIVE_INFINITY;
+		double maxLon = Double.NEGATIVE_INFINITY;
+		for(GeographicPoint point : graph.getVertices()) {
+			minLat = Math.min(minLat, point.getX());
+			minLon = Math.min(minLon, point.getY());
+			maxLat = Math.max(maxLat, point.getX());
+			maxLon = Math.max(maxLon, point.getY());
+		}
+		return new GeographicPoint[] { new GeographicPoint(minLat, minLon), new GeographicPoint(maxLat, maxLon) };
+	}
+
+	/** Serve maps: RoutingServer [port] [map files...]
+	 * Without map files the bundled ucsd, san_diego and new_york maps are served. */
+	public static void main(String[] args) throws IOException {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+		List<String> files = new ArrayList<String>();
+		for(int i = 1; i < args.length; i++)
+			files.add(args[i]);
+		if(files.isEmpty()) {
+			files.add("data/maps/ucsd.map");
+			files.add("data/maps/san_diego.map");
+			files.add("data/maps/new_york.map");
+		}
+		RoutingServer routingServer = new RoutingServer(files);
+		port = routingServer.start(port);
+		System.out.println("Routing server listening on http://localhost:" + port + "/");
+	}
+}
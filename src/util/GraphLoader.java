@@ -6,15 +6,23 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 
 import basicgraph.Graph;
 import geography.GeographicPoint;
@@ -22,6 +30,8 @@ import geography.RoadSegment;
 import roadgraph.MapGraph;
 
 public class GraphLoader {
+	// smallest part of a file parsed by one task
+	private static final int MIN_CHUNK_SIZE = 64 * 1024;
 	
 	/** The file contains data lines as follows:
 	 * lat1 lon1 lat2 lon2 roadName roadType
@@ -32,10 +42,10 @@ public class GraphLoader {
 	 * @param intersectionsFile The output file containing the intersections.*/
 	public static void createIntersectionsFile(String roadDataFile, String intersectionsFile) {
 		Collection<GeographicPoint> nodes = new HashSet<GeographicPoint>();
-        HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = buildPointMapOneWay(roadDataFile);
+        HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = buildPointMapOneWay(roadDataFile, null);
 		
         // Print the intersections to the file
-		List<GeographicPoint> intersections = findIntersections(pointMap);
+		List<GeographicPoint> intersections = findIntersections(pointMap, null);
 		for (GeographicPoint pt : intersections)
 			nodes.add(pt);
 
@@ -81,6 +91,18 @@ public class GraphLoader {
 		loadRoadMap(filename, map, null, null);
 	}
 
+	/** Read in a file specifying a map, as loadRoadMap above, and remove the
+	 * small strongly connected components that maps cut out of a larger area
+	 * have at their border, see MapGraph.pruneComponents.
+	 * @param filename The file containing the road data, in the format described.
+	 * @param map The graph to load the map into.  The graph is assumed to be directed.
+	 * @param minComponentSize The fewest intersections of a component that is kept
+	 * @return The number of intersections removed */
+	public static int loadRoadMap(String filename, roadgraph.MapGraph map, int minComponentSize) {
+		loadRoadMap(filename, map, null, null);
+		return map.pruneComponents(minComponentSize);
+	}
+
 	/** Read in a file specifying a map.
 	 * The file contains data lines as follows:
 	 * lat1 lon1 lat2 lon2 roadName roadType
@@ -93,12 +115,28 @@ public class GraphLoader {
 	public static void loadRoadMap(String filename, roadgraph.MapGraph map,  
 			HashMap<GeographicPoint,HashSet<RoadSegment>> segments, 
 			Set<GeographicPoint> intersectionsToLoad)
+	{
+		loadRoadMap(filename, map, segments, intersectionsToLoad, null);
+	}
+	
+	/** Read in a file specifying a map, as loadRoadMap above, using the threads of an executor.
+	 * The file is parsed in chunks, and the intersections are classified and the 
+	 * roads traced in parallel. The results are merged in the order of the 
+	 * sequential loader, so the graph and the segments are exactly the same.
+	 * @param filename The file containing the road data, in the format described.
+	 * @param map The graph to load the map into.  The graph is assumed to be directed.
+	 * @param segments Receives the RoadSegments at every intersection, or null
+	 * @param intersectionsToLoad Receives the intersections, or null
+	 * @param executor Runs the parallel steps, or null to load on the calling thread */
+	public static void loadRoadMap(String filename, roadgraph.MapGraph map,  
+			HashMap<GeographicPoint,HashSet<RoadSegment>> segments, 
+			Set<GeographicPoint> intersectionsToLoad, ExecutorService executor)
 	{
 		Collection<GeographicPoint> nodes = new HashSet<GeographicPoint>();
-        HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = buildPointMapOneWay(filename);
+        HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = buildPointMapOneWay(filename, executor);
 		
         // Add the nodes to the graph
-		List<GeographicPoint> intersections = findIntersections(pointMap);
+		List<GeographicPoint> intersections = findIntersections(pointMap, executor);
 		for (GeographicPoint pt : intersections) {
 			map.addVertex(pt);
 			if (intersectionsToLoad != null)
@@ -106,7 +144,7 @@ public class GraphLoader {
 			
 			nodes.add(pt);
 		}
-		addEdgesAndSegments(nodes, pointMap, map, segments);
+		addEdgesAndSegments(nodes, pointMap, map, segments, executor);
 	}
 	
 	/** Read in a file specifying a map.
@@ -120,13 +158,13 @@ public class GraphLoader {
 	 * @param theGraph The graph to load the map into.  The graph is assumed to be directed. */
 	public static void loadRoadMap(String filename, basicgraph.Graph theGraph)
 	{
-		HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = buildPointMapOneWay(filename);
+		HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = buildPointMapOneWay(filename, null);
 		
 		HashMap<Integer,GeographicPoint> vertexMap = new HashMap<Integer,GeographicPoint>();
 		HashMap<GeographicPoint,Integer> reverseMap = new HashMap<GeographicPoint,Integer>();
 		
         // Add the nodes to the graph
-		List<GeographicPoint> intersections = findIntersections(pointMap);
+		List<GeographicPoint> intersections = findIntersections(pointMap, null);
 		
 		int index = 0;
 		for (GeographicPoint pt : intersections) {
@@ -249,52 +287,104 @@ public class GraphLoader {
 	
 	// Once you have built the pointMap and added the Nodes, 
 	// add the edges and build the road segments if the segments map is not null.
-	private static void addEdgesAndSegments(Collection<GeographicPoint> nodes, 
-			HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap,
+	// The roads are traced in parallel if there is an executor, and added 
+	// to the graph in the same order either way.
+	private static void addEdgesAndSegments(final Collection<GeographicPoint> nodes, 
+			final HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap,
 			MapGraph map, 
-			HashMap<GeographicPoint,HashSet<RoadSegment>> segments)
+			HashMap<GeographicPoint,HashSet<RoadSegment>> segments,
+			ExecutorService executor)
 	{
-	
-		// Now we need to add the edges
-		// This is the tricky part
+		// Collect the roads leaving every node, in the order they are added
+		final List<GeographicPoint> starts = new ArrayList<GeographicPoint>();
+		final List<RoadLineInfo> infos = new ArrayList<RoadLineInfo>();
 		for (GeographicPoint pt : nodes) {
-			// Trace the node to its next node, building up the points 
-			// on the edge as you go.
-			List<LinkedList<RoadLineInfo>> inAndOut = pointMap.get(pt);
-			LinkedList<RoadLineInfo> outgoing = inAndOut.get(0);
-			for (RoadLineInfo info : outgoing) {
-				HashSet<GeographicPoint> used = new HashSet<GeographicPoint>();
-				used.add(pt);
-				
-				List<GeographicPoint> pointsOnEdge = 
-						findPointsOnEdge(pointMap, info, nodes);
-				GeographicPoint end = pointsOnEdge.remove(pointsOnEdge.size()-1);
-				double length = getRoadLength(pt, end, pointsOnEdge);
-				map.addEdge(pt, end, info.roadName, info.roadType, length);
+			for (RoadLineInfo info : pointMap.get(pt).get(0)) {
+				starts.add(pt);
+				infos.add(info);
+			}
+		}
 
-				// If the segments variable is not null, then we 
-				// save the road geometry
-				if (segments != null) {
-					// Now create road Segments for each edge
-					HashSet<RoadSegment> segs = segments.get(pt);
-					if (segs == null) {
-						segs = new HashSet<RoadSegment>();
-						segments.put(pt,segs);
-					}
-					RoadSegment seg = new RoadSegment(pt, end, pointsOnEdge, 
-							info.roadName, info.roadType, length);
-					segs.add(seg);
-					segs = segments.get(end);
-					if (segs == null) {
-						segs = new HashSet<RoadSegment>();
-						segments.put(end,segs);
-					}
-					segs.add(seg);
+		// Trace each road to its next node, building up the points 
+		// on the edge as you go.
+		final int count = infos.size();
+		final List<List<GeographicPoint>> paths = new ArrayList<List<GeographicPoint>>(Collections.nCopies(count, (List<GeographicPoint>)null));
+		final GeographicPoint[] ends = new GeographicPoint[count];
+		final double[] lengths = new double[count];
+		forEachIndex(count, executor, (i) -> {
+			List<GeographicPoint> pointsOnEdge = findPointsOnEdge(pointMap, infos.get(i), nodes);
+			ends[i] = pointsOnEdge.remove(pointsOnEdge.size()-1);
+			lengths[i] = getRoadLength(starts.get(i), ends[i], pointsOnEdge);
+			paths.set(i, pointsOnEdge);
+		});
+
+		// Now we need to add the edges
+		for (int i = 0; i < count; i++) {
+			GeographicPoint pt = starts.get(i);
+			GeographicPoint end = ends[i];
+			RoadLineInfo info = infos.get(i);
+			map.addEdge(pt, end, info.roadName, info.roadType, lengths[i]);
+
+			// If the segments variable is not null, then we 
+			// save the road geometry
+			if (segments != null) {
+				// Now create road Segments for each edge
+				HashSet<RoadSegment> segs = segments.get(pt);
+				if (segs == null) {
+					segs = new HashSet<RoadSegment>();
+					segments.put(pt,segs);
+				}
+				RoadSegment seg = new RoadSegment(pt, end, paths.get(i), 
+						info.roadName, info.roadType, lengths[i]);
+				segs.add(seg);
+				segs = segments.get(end);
+				if (segs == null) {
+					segs = new HashSet<RoadSegment>();
+					segments.put(end,segs);
 				}
+				segs.add(seg);
 			}
 		}
 	}	
 	
+	// Run body for every index from 0 to count-1, split into tasks of 
+	// the executor if there is one.  Returns when all indices are done.
+	private static void forEachIndex(int count, ExecutorService executor, final IntConsumer body) {
+		if (executor == null || count < 2) {
+			for (int i = 0; i < count; i++)
+				body.accept(i);
+			return;
+		}
+		int tasks = Math.min(count, Runtime.getRuntime().availableProcessors() * 4);
+		List<Future<?>> futures = new ArrayList<Future<?>>(tasks);
+		for (int t = 0; t < tasks; t++) {
+			final int from = (int)((long)count * t / tasks);
+			final int to = (int)((long)count * (t + 1) / tasks);
+			futures.add(executor.submit(() -> {
+				for (int i = from; i < to; i++)
+					body.accept(i);
+			}));
+		}
+		waitFor(futures);
+	}
+	
+	// Wait for all tasks, passing on the first failure
+	private static void waitFor(List<? extends Future<?>> futures) {
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("GraphLoader: interrupted", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			throw new IllegalStateException("GraphLoader: loading failed", e.getCause());
+		}
+	}
+	
 	// Calculate the length of this road segment taking into account all of the 
 	// intermediate geographic points.
 	private static double getRoadLength(GeographicPoint start, GeographicPoint end, List<GeographicPoint> path) {
@@ -372,60 +462,71 @@ public class GraphLoader {
 	// (1 road in and 1 road out, which are the reverse of each other)
 	// or intersections between two different roads, or where three
 	// or more segments of the same road meet.
-	private static List<GeographicPoint> findIntersections(HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap) {
+	// The points are classified in parallel if there is an executor, 
+	// and listed in the order of the pointMap either way.
+	private static List<GeographicPoint> findIntersections(final HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap, 
+			ExecutorService executor) {
 		// Now find the intersections.  These are roads that do not have
 		// Exactly 1 or 2 roads coming in and out, where the roads in
 		// match the roads out.
+		final List<GeographicPoint> points = new ArrayList<GeographicPoint>(pointMap.keySet());
+		final boolean[] isNode = new boolean[points.size()];
+		forEachIndex(points.size(), executor, (i) -> isNode[i] = isIntersection(pointMap.get(points.get(i))));
+		
 		List<GeographicPoint> intersections = new LinkedList<GeographicPoint>();
-		for (GeographicPoint pt : pointMap.keySet()) {
-			List<LinkedList<RoadLineInfo>> roadsInAndOut = pointMap.get(pt);
-			LinkedList<RoadLineInfo> roadsOut = roadsInAndOut.get(0);
-			LinkedList<RoadLineInfo> roadsIn = roadsInAndOut.get(1);
-			
-			boolean isNode = true;
-			
-			if (roadsIn.size() == 1 && roadsOut.size() == 1) {
-				// If these are the reverse of each other, then this is
-				// and intersection (dead end)
-				if (!(roadsIn.get(0).point1.equals(roadsOut.get(0).point2) &&
-						roadsIn.get(0).point2.equals(roadsOut.get(0).point1))
-						&& roadsIn.get(0).roadName.equals(roadsOut.get(0).roadName)) {
-					isNode = false;
-				}
+		for (int i = 0; i < isNode.length; i++) {
+			if (isNode[i])
+				intersections.add(points.get(i));
+		}
+		return intersections;
+	}
+	
+	// true if the point with these roads in and out is an intersection
+	private static boolean isIntersection(List<LinkedList<RoadLineInfo>> roadsInAndOut) {
+		LinkedList<RoadLineInfo> roadsOut = roadsInAndOut.get(0);
+		LinkedList<RoadLineInfo> roadsIn = roadsInAndOut.get(1);
+		
+		boolean isNode = true;
+		
+		if (roadsIn.size() == 1 && roadsOut.size() == 1) {
+			// If these are the reverse of each other, then this is
+			// and intersection (dead end)
+			if (!(roadsIn.get(0).point1.equals(roadsOut.get(0).point2) &&
+					roadsIn.get(0).point2.equals(roadsOut.get(0).point1))
+					&& roadsIn.get(0).roadName.equals(roadsOut.get(0).roadName)) {
+				isNode = false;
 			}
-			if (roadsIn.size() == 2 && roadsOut.size() == 2) {
-				// If all the road segments have the same name, 
-				// And there are two pairs of reversed nodes, then 
-				// this is not an intersection because the roads pass
-				// through.
-			
-				String name = roadsIn.get(0).roadName;
-				boolean sameName = true;
-				for (RoadLineInfo info : roadsIn)
-					if (!info.roadName.equals(name)) 
-						sameName = false;
-
-				for (RoadLineInfo info : roadsOut)
-					if (!info.roadName.equals(name))
-						sameName = false;
-				
-				RoadLineInfo in1 = roadsIn.get(0);
-				RoadLineInfo in2 = roadsIn.get(1);
-				RoadLineInfo out1 = roadsOut.get(0);
-				RoadLineInfo out2 = roadsOut.get(1);
+		}
+		if (roadsIn.size() == 2 && roadsOut.size() == 2) {
+			// If all the road segments have the same name, 
+			// And there are two pairs of reversed nodes, then 
+			// this is not an intersection because the roads pass
+			// through.
 		
-				boolean passThrough = false;
-				if ((in1.isReverse(out1) && in2.isReverse(out2)) || (in1.isReverse(out2) && in2.isReverse(out1)))
-					passThrough = true;
-				
-				if (sameName && passThrough)
-					isNode = false;
+			String name = roadsIn.get(0).roadName;
+			boolean sameName = true;
+			for (RoadLineInfo info : roadsIn)
+				if (!info.roadName.equals(name)) 
+					sameName = false;
 
-			} 
-			if (isNode)
-				intersections.add(pt);
-		}
-		return intersections;
+			for (RoadLineInfo info : roadsOut)
+				if (!info.roadName.equals(name))
+					sameName = false;
+			
+			RoadLineInfo in1 = roadsIn.get(0);
+			RoadLineInfo in2 = roadsIn.get(1);
+			RoadLineInfo out1 = roadsOut.get(0);
+			RoadLineInfo out2 = roadsOut.get(1);
+	
+			boolean passThrough = false;
+			if ((in1.isReverse(out1) && in2.isReverse(out2)) || (in1.isReverse(out2) && in2.isReverse(out1)))
+				passThrough = true;
+			
+			if (sameName && passThrough)
+				isNode = false;
+
+		} 
+		return isNode;
 	}
 		
 	// Build the map from points to lists of lists of lines.
@@ -433,19 +534,28 @@ public class GraphLoader {
 	// are lists of length two where each entry in the list is a list.
 	// The first list stores the outgoing roads while the second 
 	// stores the outgoing roads.
-	private static HashMap<GeographicPoint, List<LinkedList<RoadLineInfo>>> buildPointMapOneWay(String filename) {
-		BufferedReader reader = null;
+	// The file is parsed in chunks in parallel if there is an executor; the 
+	// lines are still added in file order, which fixes the order of the map.
+	private static HashMap<GeographicPoint, List<LinkedList<RoadLineInfo>>> buildPointMapOneWay(String filename, 
+			ExecutorService executor) {
         HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>> pointMap = 
         		new HashMap<GeographicPoint,List<LinkedList<RoadLineInfo>>>();
-		try {
-            String nextLine;
-            reader = new BufferedReader(new FileReader(filename));
-            // Read the lines out of the file and put them in a HashMap by points
-            while ((nextLine = reader.readLine()) != null) {
-            	RoadLineInfo line = splitInputString(nextLine);
-            	addToPointsMapOneWay(line, pointMap);
-            }
-            reader.close();
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			// Read the lines straight from the mapped file and put them in a HashMap by points
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			List<List<RoadLineInfo>> chunks = readLines(buffer, executor);
+			
+			// Names of different chunks are separate strings, share them again
+			HashMap<String, String> names = new HashMap<String, String>();
+			for (List<RoadLineInfo> chunk : chunks) {
+				for (RoadLineInfo line : chunk) {
+					if (chunks.size() > 1) {
+						line.roadName = share(line.roadName, names);
+						line.roadType = share(line.roadType, names);
+					}
+					addToPointsMapOneWay(line, pointMap);
+				}
+			}
         } catch (IOException e) {
             System.err.println("Problem loading dictionary file: " + filename);
             e.printStackTrace();
@@ -453,6 +563,68 @@ public class GraphLoader {
 		
 		return pointMap;
 	}
+	
+	private static String share(String name, HashMap<String, String> names) {
+		String shared = names.putIfAbsent(name, name);
+		return shared == null ? name : shared;
+	}
+	
+	// Parse the lines of the buffer, in chunks that start at line boundaries 
+	// if there is an executor.  Returns the lines of each chunk in file order.
+	private static List<List<RoadLineInfo>> readLines(ByteBuffer buffer, ExecutorService executor) {
+		int size = buffer.limit();
+		int count = (executor == null) ? 1 : 
+			Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4, size / MIN_CHUNK_SIZE));
+		if (count == 1) 
+			return Collections.singletonList(readChunk(buffer));
+		
+		int[] bounds = new int[count + 1];
+		for (int c = 1; c < count; c++)
+			bounds[c] = Math.max(bounds[c - 1], nextLineStart(buffer, (int)((long)size * c / count)));
+		bounds[count] = size;
+		
+		List<Future<List<RoadLineInfo>>> futures = new ArrayList<Future<List<RoadLineInfo>>>(count);
+		for (int c = 0; c < count; c++) {
+			final ByteBuffer chunk = buffer.duplicate();
+			chunk.limit(bounds[c + 1]);
+			chunk.position(bounds[c]);
+			futures.add(executor.submit(() -> readChunk(chunk)));
+		}
+		waitFor(futures);
+		
+		List<List<RoadLineInfo>> chunks = new ArrayList<List<RoadLineInfo>>(count);
+		for (Future<List<RoadLineInfo>> future : futures) {
+			try {
+				chunks.add(future.get());
+			} catch (InterruptedException | ExecutionException e) {
+				// waitFor has already seen all tasks complete
+				throw new IllegalStateException(e);
+			}
+		}
+		return chunks;
+	}
+	
+	private static List<RoadLineInfo> readChunk(ByteBuffer chunk) {
+		List<RoadLineInfo> lines = new ArrayList<RoadLineInfo>();
+		MapFileTokenizer tokenizer = new MapFileTokenizer(chunk, Charset.defaultCharset());
+		while (tokenizer.next()) {
+			lines.add(new RoadLineInfo(tokenizer.getPoint1(), tokenizer.getPoint2(), 
+					tokenizer.getRoadName(), tokenizer.getRoadType()));
+		}
+		return lines;
+	}
+	
+	// The start of the first line after position
+	private static int nextLineStart(ByteBuffer buffer, int position) {
+		int limit = buffer.limit();
+		while (position < limit && buffer.get(position) != '\n' && buffer.get(position) != '\r')
+			position++;
+		if (position < limit && buffer.get(position) == '\r')
+			position++;
+		if (position < limit && buffer.get(position) == '\n')
+			position++;
+		return position;
+	}
 
 	// Add the next line read from the file to the points map.
 	private static void 
@@ -478,32 +650,6 @@ public class GraphLoader {
 		incoming.add(line);
 	}
 	
-	// Split the input string into the line information
-	private static RoadLineInfo splitInputString(String input) {	
-		ArrayList<String> tokens = new ArrayList<String>();
-		Pattern tokSplitter = Pattern.compile("[^\\s\"']+|\"([^\"]*)\"");
-		Matcher m = tokSplitter.matcher(input);
-		
-		while (m.find()) {
-			if (m.group(1) != null) {
-				tokens.add(m.group(1));	
-			}
-			else {
-				tokens.add(m.group());
-			}
-		}
-
-    	double lat1 = Double.parseDouble(tokens.get(0));
-        double lon1 = Double.parseDouble(tokens.get(1));
-        double lat2 = Double.parseDouble(tokens.get(2));
-        double lon2 = Double.parseDouble(tokens.get(3));
-        GeographicPoint p1 = new GeographicPoint(lat1, lon1);
-        GeographicPoint p2 = new GeographicPoint(lat2, lon2);
-
-        return new RoadLineInfo(p1, p2, tokens.get(4), tokens.get(5));
-		
-	}
-	
 	public static void main(String[] args) {
 		GraphLoader.createIntersectionsFile("data/maps/hollywood_small.map", "data/intersections/hollywood_small.intersections");
 		GraphLoader.createIntersectionsFile("data/maps/new_york.map", "data/intersections/new_york.intersections");
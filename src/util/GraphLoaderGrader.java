@@ -0,0 +1,91 @@
+/** Grader for the parallel map loader.
+ * Loads every bundled map on the calling thread and on an executor and
+ * checks that both give the same intersections, roads and road segments. */
+package util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import geography.*;
+import roadgraph.GraderFixture;
+import roadgraph.MapGraph;
+
+public class GraphLoaderGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final String[] MAPS = { "hollywood_large.map", "hollywood_small.map", "new_york.map",
+            "newbury_small.map", "newbury_verysmall.map", "san_diego.map", "ucsd.map", "utc.map" };
+    private static final int TESTS = MAPS.length;
+    private static final int THREADS = 4;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        GraphLoaderGrader grader = new GraphLoaderGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Load one map serially and on an executor and compare the results.
+     * @param i The test number
+     * @param file The map file to read from
+     * @param executor The executor of the parallel load */
+    public void runTest(int i, String file, ExecutorService executor) throws Exception {
+        feedback += appendFeedback(i, "Loading " + file + " on " + THREADS + " threads");
+        MapGraph expected = new MapGraph();
+        HashMap<GeographicPoint, HashSet<RoadSegment>> expectedSegments = new HashMap<GeographicPoint, HashSet<RoadSegment>>();
+        HashSet<GeographicPoint> expectedIntersections = new HashSet<GeographicPoint>();
+        GraphLoader.loadRoadMap("data/maps/" + file, expected, expectedSegments, expectedIntersections);
+
+        MapGraph loaded = new MapGraph();
+        HashMap<GeographicPoint, HashSet<RoadSegment>> segments = new HashMap<GeographicPoint, HashSet<RoadSegment>>();
+        HashSet<GeographicPoint> intersections = new HashSet<GeographicPoint>();
+        GraphLoader.loadRoadMap("data/maps/" + file, loaded, segments, intersections, executor);
+
+        if (!intersections.equals(expectedIntersections) || !loaded.getVertices().equals(expected.getVertices()))
+            feedback += "FAILED. The intersections differ from the serial load.";
+        else if (!MapFixture.describeRoads(loaded.freeze()).equals(MapFixture.describeRoads(expected.freeze())))
+            feedback += "FAILED. The roads differ from the serial load.";
+        else if (!MapFixture.describeSegments(segments).equals(MapFixture.describeSegments(expectedSegments)))
+            feedback += "FAILED. The road segments differ from the serial load.";
+        else {
+            feedback += "PASSED.";
+            correct++;
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int i = 0; i < MAPS.length; i++)
+                runTest(i + 1, MAPS[i], executor);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        } finally {
+            executor.shutdown();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}
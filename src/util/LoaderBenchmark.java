@@ -0,0 +1,92 @@
+/** Measures how fast the lines of the bundled .map files are read.
+ * The regular expression split that GraphLoader used before and the
+ * MapFileTokenizer each read every file for a number of rounds after
+ * warm-up; the throughput is reported in MB/s of file content. */
+package util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import geography.GeographicPoint;
+import roadgraph.MapGraph;
+
+public class LoaderBenchmark {
+	private static final int WARMUP = 20;
+	private static final int ROUNDS = 50;
+	/** keeps the parsed values alive */
+	private static double sink;
+
+	public static void main(String[] args) throws IOException {
+		String[] maps = args.length > 0 ? args : new String[] { "data/maps/ucsd.map", "data/maps/new_york.map",
+				"data/maps/san_diego.map", "data/maps/hollywood_large.map" };
+		for(String map : maps) {
+			byte[] content = Files.readAllBytes(Paths.get(map));
+			String text = new String(content, Charset.defaultCharset());
+			double megabytes = content.length / 1e6;
+
+			for(int i = 0; i < WARMUP; i++) {
+				splitWithRegex(text);
+				splitWithTokenizer(content);
+			}
+			long start = System.nanoTime();
+			int lines = 0;
+			for(int i = 0; i < ROUNDS; i++)
+				lines = splitWithRegex(text);
+			double regex = (System.nanoTime() - start) / 1e9;
+
+			start = System.nanoTime();
+			for(int i = 0; i < ROUNDS; i++)
+				splitWithTokenizer(content);
+			double tokenizer = (System.nanoTime() - start) / 1e9;
+
+			start = System.nanoTime();
+			for(int i = 0; i < ROUNDS; i++)
+				GraphLoader.loadRoadMap(map, new MapGraph());
+			double load = (System.nanoTime() - start) / 1e9;
+
+			System.out.printf("%s: %.2f MB, %d lines%n", map, megabytes, lines);
+			System.out.printf("  regex split     %8.1f MB/s%n", megabytes * ROUNDS / regex);
+			System.out.printf("  tokenizer       %8.1f MB/s%n", megabytes * ROUNDS / tokenizer);
+			System.out.printf("  loadRoadMap     %8.1f ms%n", load * 1000 / ROUNDS);
+		}
+		if(sink == 0)
+			System.out.println();
+	}
+
+	/** the split of GraphLoader before MapFileTokenizer, returning the number of lines */
+	private static int splitWithRegex(String text) throws IOException {
+		BufferedReader reader = new BufferedReader(new StringReader(text));
+		int lines = 0;
+		String line;
+		while((line = reader.readLine()) != null) {
+			ArrayList<String> tokens = new ArrayList<String>();
+			Pattern tokSplitter = Pattern.compile("[^\\s\"']+|\"([^\"]*)\"");
+			Matcher m = tokSplitter.matcher(line);
+			while(m.find())
+				tokens.add(m.group(1) != null ? m.group(1) : m.group());
+			GeographicPoint p1 = new GeographicPoint(Double.parseDouble(tokens.get(0)), Double.parseDouble(tokens.get(1)));
+			GeographicPoint p2 = new GeographicPoint(Double.parseDouble(tokens.get(2)), Double.parseDouble(tokens.get(3)));
+			sink += p1.getX() + p2.getX();
+			lines++;
+		}
+		return lines;
+	}
+
+	private static int splitWithTokenizer(byte[] content) {
+		MapFileTokenizer tokenizer = new MapFileTokenizer(ByteBuffer.wrap(content), Charset.defaultCharset());
+		int lines = 0;
+		while(tokenizer.next()) {
+			sink += tokenizer.getPoint1().getX() + tokenizer.getPoint2().getX();
+			lines++;
+		}
+		return lines;
+	}
+}
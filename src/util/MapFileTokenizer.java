@@ -0,0 +1,289 @@
+/** Reads the lines of a .map file straight from a byte buffer.
+ * Every line holds lat1 lon1 lat2 lon2 roadName roadType, where a field is
+ * either a run of characters other than white space and quotes, or text in
+ * double quotes. This is the same split the regular expression
+ * [^\s"']+|"([^"]*)" did before, without building any String per line:
+ * coordinates are parsed from the bytes, equal points are returned as one
+ * shared GeographicPoint and equal road names and types as one shared String. */
+package util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import geography.GeographicPoint;
+
+final class MapFileTokenizer {
+	private static final int FIELDS = 6;
+	/** exact powers of ten for the fast path of parseDouble */
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final ByteBuffer buffer;
+	private final int limit;
+	private final Charset charset;
+	private int position;
+
+	/** start and end of every field of the current line */
+	private final int[] starts = new int[FIELDS];
+	private final int[] ends = new int[FIELDS];
+
+	private GeographicPoint point1;
+	private GeographicPoint point2;
+	private String roadName;
+	private String roadType;
+
+	/** shared points, by the bits of their coordinates (open addressing) */
+	private GeographicPoint[] points = new GeographicPoint[1024];
+	private int pointCount;
+
+	/** shared strings, by their bytes (open addressing) */
+	private byte[][] stringBytes = new byte[256][];
+	private String[] strings = new String[256];
+	private int stringCount;
+
+	/** @param buffer The file content from position to limit
+	 * @param charset The charset of the names in the file */
+	MapFileTokenizer(ByteBuffer buffer, Charset charset) {
+		this.buffer = buffer;
+		this.limit = buffer.limit();
+		this.charset = charset;
+		this.position = buffer.position();
+	}
+
+	/** Move to the next line that is not blank.
+	 * @return false at the end of the buffer
+	 * @throws NumberFormatException If a coordinate is not a number
+	 * @throws IllegalArgumentException If the line has less than six fields */
+	boolean next() {
+		while(position < limit) {
+			int fields = splitLine();
+			if(fields == 0)
+				continue;
+			if(fields < FIELDS)
+				throw new IllegalArgumentException("map file: line with " + fields + " fields");
+
+			point1 = point(parseDouble(starts[0], ends[0]), parseDouble(starts[1], ends[1]));
+			point2 = point(parseDouble(starts[2], ends[2]), parseDouble(starts[3], ends[3]));
+			roadName = string(starts[4], ends[4]);
+			roadType = string(starts[5], ends[5]);
+			return true;
+		}
+		return false;
+	}
+
+	GeographicPoint getPoint1() {
+		return point1;
+	}
+
+	GeographicPoint getPoint2() {
+		return point2;
+	}
+
+	String getRoadName() {
+		return roadName;
+	}
+
+	String getRoadType() {
+		return roadType;
+	}
+
+	/** find the first fields of the line at position and move past its end
+	 * @return The number of fields found, at most FIELDS */
+	private int splitLine() {
+		int fields = 0;
+		int i = position;
+		while(i < limit) {
+			byte c = buffer.get(i);
+			if(c == '\n' || c == '\r') {
+				// \r\n ends a line once
+				i++;
+				if(c == '\r' && i < limit && buffer.get(i) == '\n')
+					i++;
+				break;
+			}
+			if(isSpace(c) || c == '\'') {
+				i++;
+			}
+			else if(c == '"') {
+				int close = i + 1;
+				byte d = 0;
+				while(close < limit && (d = buffer.get(close)) != '"' && d != '\n' && d != '\r')
+					close++;
+				if(close < limit && d == '"') {
+					if(fields < FIELDS) {
+						starts[fields] = i + 1;
+						ends[fields] = close;
+					}
+					fields++;
+					i = close + 1;
+				}
+				else {
+					// an unmatched quote is not part of any field
+					i++;
+				}
+			}
+			else {
+				int start = i;
+				while(i < limit && !isDelimiter(buffer.get(i)))
+					i++;
+				if(fields < FIELDS) {
+					starts[fields] = start;
+					ends[fields] = i;
+				}
+				fields++;
+			}
+		}
+		position = i;
+		return Math.min(fields, FIELDS);
+	}
+
+	private static boolean isSpace(byte c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+	}
+
+	private static boolean isDelimiter(byte c) {
+		return isSpace(c) || c == '"' || c == '\'';
+	}
+
+	/** Parse a decimal number. Up to 15 significant digits and 22 decimals
+	 * the value is the exact digits divided by an exact power of ten, which
+	 * IEEE division rounds correctly, so it equals Double.parseDouble.
+	 * Anything else is handed to Double.parseDouble. */
+	private double parseDouble(int start, int end) {
+		int i = start;
+		boolean isNegative = false;
+		if(i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			isNegative = buffer.get(i) == '-';
+			i++;
+		}
+		long digits = 0;
+		int count = 0;
+		int decimals = 0;
+		boolean hasDot = false;
+		boolean hasDigit = false;
+		for(; i < end; i++) {
+			byte c = buffer.get(i);
+			if(c >= '0' && c <= '9') {
+				hasDigit = true;
+				if(hasDot)
+					decimals++;
+				// leading zeros are not significant
+				if(digits == 0 && c == '0')
+					continue;
+				if(count == 15)
+					return parseSlow(start, end);
+				digits = digits * 10 + (c - '0');
+				count++;
+			}
+			else if(c == '.' && !hasDot) {
+				hasDot = true;
+			}
+			else {
+				return parseSlow(start, end);
+			}
+		}
+		if(!hasDigit || decimals >= POWERS_OF_TEN.length)
+			return parseSlow(start, end);
+		double value = digits / POWERS_OF_TEN[decimals];
+		return isNegative ? -value : value;
+	}
+
+	private double parseSlow(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(start + i);
+		return Double.parseDouble(new String(bytes, charset));
+	}
+
+	/** the shared point at lat, lon */
+	private GeographicPoint point(double lat, double lon) {
+		long x = Double.doubleToLongBits(lat);
+		long y = Double.doubleToLongBits(lon);
+		int mask = points.length - 1;
+		int slot = mix(x * 31 + y) & mask;
+		GeographicPoint point;
+		while((point = points[slot]) != null) {
+			if(Double.doubleToLongBits(point.getX()) == x && Double.doubleToLongBits(point.getY()) == y)
+				return point;
+			slot = (slot + 1) & mask;
+		}
+		point = new GeographicPoint(lat, lon);
+		points[slot] = point;
+		if(++pointCount * 2 > points.length)
+			growPoints();
+		return point;
+	}
+
+	private void growPoints() {
+		GeographicPoint[] old = points;
+		points = new GeographicPoint[old.length * 2];
+		int mask = points.length - 1;
+		for(GeographicPoint point : old) {
+			if(point == null)
+				continue;
+			long hash = Double.doubleToLongBits(point.getX()) * 31 + Double.doubleToLongBits(point.getY());
+			int slot = mix(hash) & mask;
+			while(points[slot] != null)
+				slot = (slot + 1) & mask;
+			points[slot] = point;
+		}
+	}
+
+	/** the shared string with the bytes from start to end */
+	private String string(int start, int end) {
+		// same hash as Arrays.hashCode of the bytes
+		int hash = 1;
+		for(int i = start; i < end; i++)
+			hash = 31 * hash + buffer.get(i);
+		int mask = strings.length - 1;
+		int slot = mix(hash) & mask;
+		byte[] bytes;
+		while((bytes = stringBytes[slot]) != null) {
+			if(equals(bytes, start, end))
+				return strings[slot];
+			slot = (slot + 1) & mask;
+		}
+		bytes = new byte[end - start];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(start + i);
+		String string = new String(bytes, charset);
+		stringBytes[slot] = bytes;
+		strings[slot] = string;
+		if(++stringCount * 2 > strings.length)
+			growStrings();
+		return string;
+	}
+
+	private boolean equals(byte[] bytes, int start, int end) {
+		if(bytes.length != end - start)
+			return false;
+		for(int i = 0; i < bytes.length; i++) {
+			if(bytes[i] != buffer.get(start + i))
+				return false;
+		}
+		return true;
+	}
+
+	private void growStrings() {
+		byte[][] oldBytes = stringBytes;
+		String[] oldStrings = strings;
+		stringBytes = new byte[oldBytes.length * 2][];
+		strings = new String[oldStrings.length * 2];
+		int mask = strings.length - 1;
+		for(int i = 0; i < oldBytes.length; i++) {
+			if(oldBytes[i] == null)
+				continue;
+			int slot = mix(Arrays.hashCode(oldBytes[i])) & mask;
+			while(stringBytes[slot] != null)
+				slot = (slot + 1) & mask;
+			stringBytes[slot] = oldBytes[i];
+			strings[slot] = oldStrings[i];
+		}
+	}
+
+	private static int mix(long hash) {
+		hash *= 0x9E3779B97F4A7C15L;
+		return (int)(hash ^ (hash >>> 32));
+	}
+}
@@ -0,0 +1,47 @@
+/** Fixture shared by the graders of the map loaders: the roads and road
+ * segments of a loaded map as sorted lines of text, with every cost written
+ * by its exact bits, so that two ways of loading a map can be compared. */
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import geography.*;
+import roadgraph.CompactRoadGraph;
+
+final class MapFixture {
+    private MapFixture() {
+    }
+
+    /** Describe every road of graph by its ends, name, type, length and time */
+    static List<String> describeRoads(CompactRoadGraph graph) {
+        List<String> roads = new ArrayList<String>();
+        for (int v = 0; v < graph.getNumVertices(); v++) {
+            for (int e = graph.getFirstEdge(v); e < graph.getEndEdge(v); e++) {
+                roads.add(graph.getLocation(v) + " -> " + graph.getLocation(graph.getTarget(e)) + " | "
+                        + graph.getRoadName(e) + " | " + graph.getRoadType(e) + " | "
+                        + Long.toHexString(Double.doubleToLongBits(graph.getLength(e))) + " | "
+                        + Long.toHexString(Double.doubleToLongBits(graph.getTime(e))));
+            }
+        }
+        Collections.sort(roads);
+        return roads;
+    }
+
+    /** Describe every road segment at every intersection by its points, name, type and length */
+    static List<String> describeSegments(HashMap<GeographicPoint, HashSet<RoadSegment>> segments) {
+        List<String> described = new ArrayList<String>();
+        for (Map.Entry<GeographicPoint, HashSet<RoadSegment>> entry : segments.entrySet()) {
+            for (RoadSegment segment : entry.getValue()) {
+                described.add(entry.getKey() + " | " + segment + " | "
+                        + Long.toHexString(Double.doubleToLongBits(segment.getLength())));
+            }
+        }
+        Collections.sort(described);
+        return described;
+    }
+}
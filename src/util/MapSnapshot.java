@@ -0,0 +1,284 @@
+/** A binary snapshot of a road map, read back without any text parsing.
+ * The snapshot holds the intersection graph as GraphLoader collapses it from
+ * a .map file, together with the geometry of every road, so loading it skips
+ * the regex per line and the search for intersections. The file is memory
+ * mapped and its sections are copied into arrays with bulk reads.
+ *
+ * Layout (big endian): magic, version, number of intersections n, roads m,
+ * strings s and geometry points g, followed by
+ * n latitude/longitude pairs, n+1 road offsets, m targets, m lengths,
+ * m times, m road name indices, m road type indices, m+1 geometry offsets,
+ * g latitude/longitude pairs and s strings as length and UTF-8 bytes. */
+package util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import geography.GeographicPoint;
+import geography.RoadSegment;
+import roadgraph.CompactRoadGraph;
+import roadgraph.MapGraph;
+
+public class MapSnapshot {
+	private static final int MAGIC = 0x5543534d;
+	private static final int VERSION = 1;
+
+	/** get the name of the snapshot file kept next to a map file */
+	public static String getFile(String mapFile) {
+		return mapFile + ".snapshot";
+	}
+
+	/** true if mapFile has a snapshot that is at least as new as the map file */
+	public static boolean isCurrent(String mapFile) {
+		File snapshot = new File(getFile(mapFile));
+		return snapshot.exists() && snapshot.lastModified() >= new File(mapFile).lastModified();
+	}
+
+	/** Convert a .map file into a snapshot file.
+	 * @param mapFile The road data, in the format read by GraphLoader.loadRoadMap
+	 * @param snapshotFile The file to write */
+	public static void write(String mapFile, String snapshotFile) throws IOException {
+		MapGraph map = new MapGraph();
+		HashMap<GeographicPoint, HashSet<RoadSegment>> segments = new HashMap<GeographicPoint, HashSet<RoadSegment>>();
+		GraphLoader.loadRoadMap(mapFile, map, segments, null);
+		write(map.freeze(), segments, snapshotFile);
+	}
+
+	/** Write a graph and the geometry of its roads into a snapshot file.
+	 * @param segments The road segments at every intersection, as filled in by GraphLoader.loadRoadMap */
+	public static void write(CompactRoadGraph graph, HashMap<GeographicPoint, HashSet<RoadSegment>> segments,
+			String snapshotFile) throws IOException {
+		int n = graph.getNumVertices();
+		int m = graph.getNumEdges();
+
+		// distinct road names and types, and the geometry of every road
+		HashMap<String, Integer> stringIds = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		int[] nameIndex = new int[m];
+		int[] typeIndex = new int[m];
+		int[] geometryOffsets = new int[m + 1];
+		List<GeographicPoint> geometry = new ArrayList<GeographicPoint>();
+		for(int v = 0; v < n; v++) {
+			GeographicPoint start = graph.getLocation(v);
+			for(int e = graph.getFirstEdge(v); e < graph.getEndEdge(v); e++) {
+				GeographicPoint end = graph.getLocation(graph.getTarget(e));
+				nameIndex[e] = stringId(graph.getRoadName(e), stringIds, strings);
+				typeIndex[e] = stringId(graph.getRoadType(e), stringIds, strings);
+				geometryOffsets[e] = geometry.size();
+				RoadSegment segment = findSegment(segments.get(start), start, end, graph.getRoadName(e), graph.getLength(e));
+				if(segment != null) {
+					List<GeographicPoint> points = segment.getPoints(start, end);
+					geometry.addAll(points.subList(1, points.size() - 1));
+				}
+			}
+		}
+		geometryOffsets[m] = geometry.size();
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshotFile)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(n);
+			out.writeInt(m);
+			out.writeInt(strings.size());
+			out.writeInt(geometry.size());
+			for(int v = 0; v < n; v++) {
+				out.writeDouble(graph.getLocation(v).getX());
+				out.writeDouble(graph.getLocation(v).getY());
+			}
+			for(int v = 0; v < n; v++)
+				out.writeInt(graph.getFirstEdge(v));
+			out.writeInt(m);
+			for(int e = 0; e < m; e++)
+				out.writeInt(graph.getTarget(e));
+			for(int e = 0; e < m; e++)
+				out.writeDouble(graph.getLength(e));
+			for(int e = 0; e < m; e++)
+				out.writeDouble(graph.getTime(e));
+			for(int e = 0; e < m; e++)
+				out.writeInt(nameIndex[e]);
+			for(int e = 0; e < m; e++)
+				out.writeInt(typeIndex[e]);
+			for(int offset : geometryOffsets)
+				out.writeInt(offset);
+			for(GeographicPoint point : geometry) {
+				out.writeDouble(point.getX());
+				out.writeDouble(point.getY());
+			}
+			for(String string : strings) {
+				byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+	}
+
+	/** Read a snapshot into a new, frozen MapGraph.
+	 * @param snapshotFile The file written by write
+	 * @param isLengthCompare true to find the shortest paths, false to find the fastest paths
+	 * @param segments Receives the road segments at every intersection, or null to skip the geometry
+	 * @param intersectionsToLoad Receives the intersections, or null
+	 * @throws IOException If the file can not be read or is not a snapshot */
+	public static MapGraph load(String snapshotFile, boolean isLengthCompare,
+			HashMap<GeographicPoint, HashSet<RoadSegment>> segments, Set<GeographicPoint> intersectionsToLoad)
+			throws IOException {
+		MappedByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(Paths.get(snapshotFile), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				throw new IOException(snapshotFile + " is not a map snapshot");
+			int n = buffer.getInt();
+			int m = buffer.getInt();
+			int s = buffer.getInt();
+			int g = buffer.getInt();
+			if(n < 0 || m < 0 || s < 0 || g < 0)
+				throw new IOException(snapshotFile + " is damaged");
+
+			GeographicPoint[] points = readPoints(buffer, n);
+			int[] offsets = readInts(buffer, n + 1);
+			int[] targets = readInts(buffer, m);
+			double[] lengths = readDoubles(buffer, m);
+			double[] times = readDoubles(buffer, m);
+			int[] nameIndex = readInts(buffer, m);
+			int[] typeIndex = readInts(buffer, m);
+			int[] geometryOffsets = readInts(buffer, m + 1);
+			double[] geometry = readDoubles(buffer, 2 * g);
+			String[] strings = new String[s];
+			for(int i = 0; i < s; i++) {
+				byte[] bytes = new byte[buffer.getInt()];
+				buffer.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+
+			String[] roadNames = new String[m];
+			String[] roadTypes = new String[m];
+			for(int e = 0; e < m; e++) {
+				roadNames[e] = strings[nameIndex[e]];
+				roadTypes[e] = strings[typeIndex[e]];
+			}
+			CompactRoadGraph graph = CompactRoadGraph.create(points, offsets, targets, lengths, times, roadNames,
+					roadTypes);
+
+			if(intersectionsToLoad != null) {
+				for(GeographicPoint point : points)
+					intersectionsToLoad.add(point);
+			}
+			if(segments != null)
+				addSegments(graph, geometryOffsets, geometry, segments);
+			return new MapGraph(graph, isLengthCompare);
+		}
+		catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException(snapshotFile + " is damaged", e);
+		}
+	}
+
+	/** create the road segments in the same way as GraphLoader.loadRoadMap */
+	private static void addSegments(CompactRoadGraph graph, int[] geometryOffsets, double[] geometry,
+			HashMap<GeographicPoint, HashSet<RoadSegment>> segments) {
+		for(int v = 0; v < graph.getNumVertices(); v++) {
+			GeographicPoint start = graph.getLocation(v);
+			for(int e = graph.getFirstEdge(v); e < graph.getEndEdge(v); e++) {
+				GeographicPoint end = graph.getLocation(graph.getTarget(e));
+				List<GeographicPoint> points = new ArrayList<GeographicPoint>(geometryOffsets[e + 1] - geometryOffsets[e]);
+				for(int i = geometryOffsets[e]; i < geometryOffsets[e + 1]; i++)
+					points.add(new GeographicPoint(geometry[2 * i], geometry[2 * i + 1]));
+				RoadSegment segment = new RoadSegment(start, end, points, graph.getRoadName(e), graph.getRoadType(e),
+						graph.getLength(e));
+				addSegment(segments, start, segment);
+				addSegment(segments, end, segment);
+			}
+		}
+	}
+
+	private static void addSegment(HashMap<GeographicPoint, HashSet<RoadSegment>> segments, GeographicPoint point,
+			RoadSegment segment) {
+		HashSet<RoadSegment> set = segments.get(point);
+		if(set == null) {
+			set = new HashSet<RoadSegment>();
+			segments.put(point, set);
+		}
+		set.add(segment);
+	}
+
+	/** the segment of the road from start to end, or null if it was not recorded */
+	private static RoadSegment findSegment(HashSet<RoadSegment> segments, GeographicPoint start, GeographicPoint end,
+			String roadName, double length) {
+		if(segments == null)
+			return null;
+		for(RoadSegment segment : segments) {
+			if(segment.connects(start, end) && segment.getRoadName().equals(roadName) && segment.getLength() == length)
+				return segment;
+		}
+		return null;
+	}
+
+	private static int stringId(String string, HashMap<String, Integer> ids, List<String> strings) {
+		Integer id = ids.get(string);
+		if(id == null) {
+			id = strings.size();
+			ids.put(string, id);
+			strings.add(string);
+		}
+		return id;
+	}
+
+	private static GeographicPoint[] readPoints(ByteBuffer buffer, int count) {
+		double[] coordinates = readDoubles(buffer, 2 * count);
+		GeographicPoint[] points = new GeographicPoint[count];
+		for(int i = 0; i < count; i++)
+			points[i] = new GeographicPoint(coordinates[2 * i], coordinates[2 * i + 1]);
+		return points;
+	}
+
+	private static int[] readInts(ByteBuffer buffer, int count) {
+		int[] values = new int[count];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + count * 4);
+		return values;
+	}
+
+	private static double[] readDoubles(ByteBuffer buffer, int count) {
+		double[] values = new double[count];
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + count * 8);
+		return values;
+	}
+
+	/** Write a snapshot next to every map file given, or next to all bundled maps */
+	public static void main(String[] args) throws IOException {
+		String[] maps = args;
+		if(maps.length == 0) {
+			List<String> found = new ArrayList<String>();
+			File[] files = new File("data/maps").listFiles();
+			if(files != null) {
+				for(File file : files) {
+					if(file.getName().endsWith(".map"))
+						found.add(file.getPath());
+				}
+			}
+			maps = found.toArray(new String[found.size()]);
+		}
+		for(String map : maps) {
+			long start = System.nanoTime();
+			write(map, getFile(map));
+			System.out.printf("%s: written in %d ms%n", getFile(map), (System.nanoTime() - start) / 1000000);
+		}
+	}
+}
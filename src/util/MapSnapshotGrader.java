@@ -0,0 +1,122 @@
+/** Grader for the map snapshots.
+ * Writes a snapshot of every bundled map to a temporary file, reads it back
+ * and compares the intersections, roads and road segments with the map read
+ * by GraphLoader.loadRoadMap, and checks that a snapshot older than its map
+ * is not current. */
+package util;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import geography.*;
+import roadgraph.GraderFixture;
+import roadgraph.MapGraph;
+
+public class MapSnapshotGrader implements Runnable {
+    public String feedback;
+    public int correct;
+    private static final String[] MAPS = { "hollywood_large.map", "hollywood_small.map", "new_york.map",
+            "newbury_small.map", "newbury_verysmall.map", "san_diego.map", "ucsd.map", "utc.map" };
+    private static final int TESTS = MAPS.length + 1;
+
+    /** Format readable feedback */
+    public static String printOutput(double score, String feedback) {
+        return "Score: " + score + "\nFeedback: " + feedback;
+    }
+
+    /** Format test number and description */
+    public static String appendFeedback(int num, String test) {
+        return "\n** Test #" + num + ": " + test + "...";
+    }
+
+    public static void main(String[] args) {
+        MapSnapshotGrader grader = new MapSnapshotGrader();
+
+        // Infinite loop detection
+        if (!GraderFixture.runWithTimeLimit(grader))
+            System.out.println(printOutput((double)grader.correct / TESTS, grader.feedback + "\nYour program entered an infinite loop."));
+    }
+
+    /** Write a snapshot of one map, read it back and compare it with the map.
+     * @param i The test number
+     * @param file The map file to read from */
+    public void runTest(int i, String file) throws Exception {
+        feedback += appendFeedback(i, "Reading a snapshot of " + file + " back");
+        MapGraph expected = new MapGraph();
+        HashMap<GeographicPoint, HashSet<RoadSegment>> expectedSegments = new HashMap<GeographicPoint, HashSet<RoadSegment>>();
+        GraphLoader.loadRoadMap("data/maps/" + file, expected, expectedSegments, null);
+
+        File snapshot = File.createTempFile("map", ".snapshot");
+        try {
+            MapSnapshot.write("data/maps/" + file, snapshot.getPath());
+            HashMap<GeographicPoint, HashSet<RoadSegment>> segments = new HashMap<GeographicPoint, HashSet<RoadSegment>>();
+            MapGraph loaded = MapSnapshot.load(snapshot.getPath(), true, segments, null);
+
+            if (!loaded.getVertices().equals(expected.getVertices()))
+                feedback += "FAILED. The intersections differ from the map.";
+            else if (!MapFixture.describeRoads(loaded.freeze()).equals(MapFixture.describeRoads(expected.freeze())))
+                feedback += "FAILED. The roads differ from the map.";
+            else if (!MapFixture.describeSegments(segments).equals(MapFixture.describeSegments(expectedSegments)))
+                feedback += "FAILED. The road segments differ from the map.";
+            else {
+                feedback += "PASSED.";
+                correct++;
+            }
+        } finally {
+            snapshot.delete();
+        }
+    }
+
+    /** Check that a snapshot is current until its map file changes.
+     * @param i The test number */
+    public void runCurrentTest(int i) throws Exception {
+        feedback += appendFeedback(i, "Checking that a snapshot goes out of date when its map changes");
+        File directory = Files.createTempDirectory("maps").toFile();
+        File map = new File(directory, "ucsd.map");
+        File snapshot = new File(MapSnapshot.getFile(map.getPath()));
+        try {
+            Files.copy(new File("data/maps/ucsd.map").toPath(), map.toPath());
+            MapSnapshot.write(map.getPath(), snapshot.getPath());
+            boolean isCurrentBefore = MapSnapshot.isCurrent(map.getPath());
+            map.setLastModified(snapshot.lastModified() + 2000);
+            boolean isCurrentAfter = MapSnapshot.isCurrent(map.getPath());
+
+            if (!isCurrentBefore)
+                feedback += "FAILED. A snapshot written after its map is not current.";
+            else if (isCurrentAfter)
+                feedback += "FAILED. A snapshot older than its map is still current.";
+            else {
+                feedback += "PASSED.";
+                correct++;
+            }
+        } finally {
+            snapshot.delete();
+            map.delete();
+            directory.delete();
+        }
+    }
+
+    /** Run the grader */
+    public void run() {
+        feedback = "";
+        correct = 0;
+        try {
+            for (int i = 0; i < MAPS.length; i++)
+                runTest(i + 1, MAPS[i]);
+
+            runCurrentTest(MAPS.length + 1);
+
+            if (correct == TESTS)
+                feedback = "All tests passed. Great job!" + feedback;
+            else
+                feedback = "Some tests failed. Check your code for errors, then try again:" + feedback;
+
+        } catch (Exception e) {
+            feedback += "\nError during runtime: " + e;
+            e.printStackTrace();
+        }
+        System.out.println(printOutput((double)correct / TESTS, feedback));
+    }
+}